@@ -11,4 +11,8 @@ module se.uu.ub.cora.sqldatabase {
 	exports se.uu.ub.cora.sqldatabase;
 	exports se.uu.ub.cora.sqldatabase.table;
 	exports se.uu.ub.cora.sqldatabase.sequence;
+	exports se.uu.ub.cora.sqldatabase.cache;
+	exports se.uu.ub.cora.sqldatabase.transaction;
+	exports se.uu.ub.cora.sqldatabase.replica;
+	exports se.uu.ub.cora.sqldatabase.shard;
 }
\ No newline at end of file
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018, 2021 Uppsala University Library
+ * Copyright 2018, 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,8 +21,13 @@ package se.uu.ub.cora.sqldatabase;
 
 import java.sql.Connection;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 
 /**
  * DatabaseFacade reads and changes data in a sql database using prepared statements.
@@ -81,6 +86,36 @@ public interface DatabaseFacade extends AutoCloseable {
 	 */
 	Row readOneRowOrFailUsingSqlAndValues(String sql, List<Object> values);
 
+	/**
+	 * readUsingSqlAndValuesRowByRow reads rows from the database using the supplied sql (prepared
+	 * statement) and the supplied values, handing them to the rowHandler one at a time as they are
+	 * read, instead of returning them all at once. This makes it possible to read results that are
+	 * too large to keep in memory.
+	 * <p>
+	 * Implementations MUST read the rows using a database cursor, fetching at most fetchSize rows
+	 * from the database at a time. If the rowHandler returns false MUST the reading stop, and no
+	 * more rows be handed to the rowHandler.
+	 * <p>
+	 * If no transaction is started MUST the cursor be read in a transaction that is ended before
+	 * this method returns. Rows are always read from the primary database.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown. Exceptions thrown by the rowHandler MUST be passed on
+	 * unchanged.
+	 * 
+	 * @param sql
+	 *            A String with a prepared statement
+	 * @param values
+	 *            A List of Objects matching the values for the prepared statement
+	 * @param fetchSize
+	 *            An int with the number of rows to fetch from the database at a time
+	 * @param rowHandler
+	 *            A Predicate that handles each read {@link Row}, returning true to continue reading
+	 *            or false to stop
+	 */
+	void readUsingSqlAndValuesRowByRow(String sql, List<Object> values, int fetchSize,
+			Predicate<Row> rowHandler);
+
 	/**
 	 * executeSqlWithValues executes a sql statement as a preparedQuery returning the number of rows
 	 * affected.
@@ -99,6 +134,32 @@ public interface DatabaseFacade extends AutoCloseable {
 	 */
 	int executeSqlWithValues(String sql, List<Object> values);
 
+	/**
+	 * executeSqlWithValuesReturningColumns executes an insert, update or delete sql statement as a
+	 * preparedQuery in the same way as {@link #executeSqlWithValues(String, List)}, but returns
+	 * the requested columns from the affected rows instead of the number of affected rows.
+	 * Implementations MUST append a returning clause with the requested columns to the sql, or a
+	 * returning clause with all columns if the list of returning columns is empty. This makes it
+	 * possible to get generated values such as ids, defaults and values set by triggers without
+	 * reading the rows again.
+	 * <p>
+	 * If an executions finds a duplicate key a {@link SqlConflictException} MUST be thrown,
+	 * indicating that the execution will not be performed.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param sql
+	 *            A String with the prepared statement to execute, without a returning clause
+	 * @param values
+	 *            A List with Objects to use in the prepared statement
+	 * @param returningColumns
+	 *            A List of Strings with the columns to return from the affected rows
+	 * @return A List with {@link Row}s with one entry in the list for each affected row
+	 */
+	List<Row> executeSqlWithValuesReturningColumns(String sql, List<Object> values,
+			List<String> returningColumns);
+
 	/**
 	 * startTransaction starts a new transaction setting the underlying connection to
 	 * autocommit(false). To commit the transaction run {@link #endTransaction()}.
@@ -108,15 +169,139 @@ public interface DatabaseFacade extends AutoCloseable {
 	 */
 	public void startTransaction();
 
+	/**
+	 * startTransactionUsingReadCache starts a new transaction in the same way as
+	 * {@link #startTransaction()}, but also starts a read cache scoped to the transaction.
+	 * <p>
+	 * Implementations MUST answer repeated identical reads, same sql and same values, made in the
+	 * transaction from the read cache instead of reading from the database again. Implementations
+	 * MUST NOT cache reads using volatile functions such as nextval, as repeating them gives a
+	 * different result.
+	 * <p>
+	 * Implementations MUST remove cached reads for a table when the table is written to in the
+	 * transaction, so that reads after a write see the written data. If the written table can not
+	 * be determined from the sql MUST all cached reads be removed.
+	 * <p>
+	 * Implementations MUST discard the read cache when {@link #endTransaction()},
+	 * {@link #rollback()} or {@link #close()} is called.
+	 * <p>
+	 * The read cache is only useful when the same data is read several times in one transaction,
+	 * for instance for validation and then for the final read, it does not share rows between
+	 * transactions.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 */
+	void startTransactionUsingReadCache();
+
+	/**
+	 * startTransactionUsingOptions starts a new transaction in the same way as
+	 * {@link #startTransaction()}, using the provided options for read only, isolation level,
+	 * deferrable and imported snapshot.
+	 * <p>
+	 * Implementations SHOULD apply the options without extra round trips to the database where
+	 * possible, and MUST apply all options that need a sql statement using one statement, except
+	 * an imported snapshot that MUST be set using a second statement after the isolation level is
+	 * set. Setting the options MUST NOT be handled as a write, it MUST NOT invalidate caches.
+	 * Implementations MUST make sure that the options only apply to the started transaction and
+	 * not to later transactions or work done without a transaction.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param options
+	 *            A TransactionOptions with the options for the transaction
+	 */
+	void startTransactionUsingOptions(TransactionOptions options);
+
 	/**
 	 * endTransaction ends the currently going transaction, and sets the underlying connection back
-	 * to autocommit(true)
+	 * to autocommit(true). Nested scopes that are still begun are ended with the transaction.
 	 * <p>
 	 * If an exception occurs while interacting with the database MUST an
 	 * {@link SqlDatabaseException} be thrown.
 	 */
 	public void endTransaction();
 
+	/**
+	 * runInTransaction runs the provided work in a transaction. The transaction is started before
+	 * the work is run and ended, committing it, when the work returns. If the work throws an
+	 * exception MUST the transaction be rolled back and the exception be thrown.
+	 * <p>
+	 * If the transaction fails because of a conflict with a concurrent transaction, a
+	 * serialization failure (SQLState 40001) or a deadlock (SQLState 40P01), MUST the whole
+	 * transaction be rolled back and run again, after a random wait. The number of attempts is
+	 * limited, see {@link se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier}, and when the
+	 * limit is reached MUST the exception from the last attempt be thrown.
+	 * <p>
+	 * As the work can be run more than once, the work SHOULD NOT have side effects outside the
+	 * database, and it MUST only use the provided DatabaseFacade for its database work.
+	 * <p>
+	 * If a transaction is already started MUST an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param work
+	 *            A Function doing the work of the transaction using the provided DatabaseFacade
+	 * @return The result returned by the work
+	 */
+	<T> T runInTransaction(Function<DatabaseFacade, T> work);
+
+	/**
+	 * runInTransactionUsingOptions runs the provided work in a transaction in the same way as
+	 * {@link #runInTransaction(Function)}, starting each attempt using the provided options, see
+	 * {@link #startTransactionUsingOptions(TransactionOptions)}.
+	 * 
+	 * @param options
+	 *            A TransactionOptions with the options for the transaction
+	 * @param work
+	 *            A Function doing the work of the transaction using the provided DatabaseFacade
+	 * @return The result returned by the work
+	 */
+	<T> T runInTransactionUsingOptions(TransactionOptions options,
+			Function<DatabaseFacade, T> work);
+
+	/**
+	 * beginNested begins a nested scope in the currently started transaction by setting a
+	 * savepoint. Nested scopes can themselves be nested, each call to beginNested MUST be matched
+	 * by a call to either {@link #releaseNested()} or {@link #rollbackToNested()}, which ends the
+	 * innermost nested scope.
+	 * <p>
+	 * Nested scopes make it possible to undo the work done in a failing sub step, without having
+	 * to rollback and redo all the work done earlier in the transaction.
+	 * <p>
+	 * If no transaction is started MUST an {@link SqlDatabaseException} be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 */
+	void beginNested();
+
+	/**
+	 * releaseNested ends the innermost nested scope keeping the work done in it. The work is
+	 * committed or rolled back with the surrounding transaction.
+	 * <p>
+	 * If no nested scope has been begun MUST an {@link SqlDatabaseException} be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 */
+	void releaseNested();
+
+	/**
+	 * rollbackToNested ends the innermost nested scope undoing all work done since the nested scope
+	 * was begun. Work done in the transaction before the nested scope was begun is kept, and the
+	 * transaction can be continued.
+	 * <p>
+	 * Implementations using a read cache for the transaction, see
+	 * {@link #startTransactionUsingReadCache()}, MUST empty the read cache, as it might hold rows
+	 * read after writes that are now undone.
+	 * <p>
+	 * If no nested scope has been begun MUST an {@link SqlDatabaseException} be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 */
+	void rollbackToNested();
+
 	/**
 	 * rollback rollbacks a started transaction.
 	 * <p>
@@ -148,4 +333,34 @@ public interface DatabaseFacade extends AutoCloseable {
 	 *             .
 	 */
 	void executeSql(String sql);
+
+	/**
+	 * getConsistencyToken returns the {@link ConsistencyToken} captured after the latest commit of
+	 * writes made using this facade, or the latest token provided using
+	 * {@link #useConsistencyToken(ConsistencyToken)}. The token can be passed on to other facades,
+	 * for instance facades used by later requests in the same user session, so that they see the
+	 * writes.
+	 * <p>
+	 * Implementations routing reads to read replicas MUST capture the position in the write ahead
+	 * log of the primary after each commit of writes. Implementations not using read replicas MAY
+	 * return an empty Optional.
+	 * 
+	 * @return An Optional with the latest ConsistencyToken, or an empty Optional if no token has
+	 *         been captured or provided
+	 */
+	Optional<ConsistencyToken> getConsistencyToken();
+
+	/**
+	 * useConsistencyToken makes reads made using this facade carry the provided token, so that
+	 * they see the writes committed before the token was captured.
+	 * <p>
+	 * Implementations routing reads to read replicas MUST only run reads on replicas that have
+	 * replayed the write ahead log up to the token, or on the primary if no replica has caught up
+	 * within a bounded wait. If a token is already held MUST the one furthest ahead in the log be
+	 * kept.
+	 * 
+	 * @param token
+	 *            A ConsistencyToken, usually from {@link #getConsistencyToken()} of another facade
+	 */
+	void useConsistencyToken(ConsistencyToken token);
 }
@@ -20,6 +20,7 @@
 package se.uu.ub.cora.sqldatabase;
 
 import se.uu.ub.cora.sqldatabase.sequence.Sequence;
+import se.uu.ub.cora.sqldatabase.table.RowLoader;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
 
@@ -67,6 +68,22 @@ public interface SqlDatabaseFactory {
 	 */
 	TableQuery factorTableQuery(String tableName);
 
+	/**
+	 * factorRowLoader creates and returns a new instance of RowLoader that loads rows from the
+	 * specified table by the value in the specified key column. Use a RowLoader instead of one
+	 * {@link TableFacade#readOneRowForQuery(TableQuery)} for each key, when many rows are to be
+	 * read by key.
+	 * 
+	 * @param tableName
+	 *            A String with the name of the table to load rows from
+	 * @param keyColumn
+	 *            A String with the name of the column to load rows by
+	 * @param keySqlType
+	 *            A String with the sql type of the key column, such as bigint, text or uuid
+	 * @return A RowLoader set up to load rows from the specified table
+	 */
+	RowLoader factorRowLoader(String tableName, String keyColumn, String keySqlType);
+
 	/**
 	 * factorSequence creates and returns a new instance of Sequence.
 	 * 
@@ -78,4 +95,21 @@ public interface SqlDatabaseFactory {
 	 */
 	Sequence factorSequence();
 
+	/**
+	 * factorAllocatingSequence creates and returns a new instance of Sequence that hands out next
+	 * values from blocks of values reserved in the database, instead of calling the database for
+	 * each value. The blocks are shared between all allocating Sequences created by the same
+	 * factory.
+	 * <p>
+	 * Values reserved but not handed out before the application stops are lost, and values are not
+	 * guaranteed to be handed out in increasing order. Use {@link #factorSequence()} if that is
+	 * needed.
+	 * <p>
+	 * <em>Note, Sequence uses the {@link AutoCloseable} interface so it is adviced to wrapp this
+	 * call in an try-with-resources block.</em>
+	 * 
+	 * @return A Sequence adapter that allocates values in blocks.
+	 */
+	Sequence factorAllocatingSequence();
+
 }
@@ -19,19 +19,42 @@
 
 package se.uu.ub.cora.sqldatabase;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescer;
+import se.uu.ub.cora.sqldatabase.cache.internal.QueryResultCacheImp;
+import se.uu.ub.cora.sqldatabase.cache.internal.QueryResultCacheInvalidationListener;
+import se.uu.ub.cora.sqldatabase.cache.internal.ReadCoalescerImp;
 import se.uu.ub.cora.sqldatabase.connection.ContextConnectionProviderImp;
 import se.uu.ub.cora.sqldatabase.connection.ParameterConnectionProviderImp;
 import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
 import se.uu.ub.cora.sqldatabase.internal.DatabaseFacadeImp;
+import se.uu.ub.cora.sqldatabase.replica.HedgeStatistics;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedger;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouter;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaSelection;
+import se.uu.ub.cora.sqldatabase.replica.internal.ReadHedgerImp;
+import se.uu.ub.cora.sqldatabase.replica.internal.ReplicaRouterImp;
 import se.uu.ub.cora.sqldatabase.sequence.Sequence;
+import se.uu.ub.cora.sqldatabase.sequence.internal.AllocatingSequenceImp;
+import se.uu.ub.cora.sqldatabase.sequence.internal.SequenceBlockAllocator;
 import se.uu.ub.cora.sqldatabase.sequence.internal.SequenceImp;
+import se.uu.ub.cora.sqldatabase.table.RowLoader;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.RowLoaderImp;
 import se.uu.ub.cora.sqldatabase.table.internal.TableFacadeImp;
 import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetryStatistics;
+import se.uu.ub.cora.sqldatabase.transaction.internal.TransactionRetrierImp;
 
 /**
  * SqlDatabaseFactoryImp implements {@link SqlDatabaseFactory}. To get an instance of this class
@@ -46,6 +69,14 @@ public class SqlDatabaseFactoryImp implements SqlDatabaseFactory {
 	private String url;
 	private String user;
 	private String password;
+	private SequenceBlockAllocator sequenceBlockAllocator;
+	private QueryResultCache queryResultCache;
+	private String invalidationChannel;
+	private QueryResultCacheInvalidationListener invalidationListener;
+	private ReadCoalescer readCoalescer;
+	private TransactionRetrier transactionRetrier = TransactionRetrierImp.usingDefaults();
+	private ReplicaRouterImp replicaRouter;
+	private ReadHedgerImp readHedger;
 
 	/**
 	 * usingLookupNameFromContext creates a new instance of this class that uses the provided
@@ -91,13 +122,327 @@ public class SqlDatabaseFactoryImp implements SqlDatabaseFactory {
 	@Override
 	public TableFacade factorTableFacade() {
 		DatabaseFacade dbFacade = factorDatabaseFacade();
-		return TableFacadeImp.usingDatabaseFacade(dbFacade);
+		return createTableFacadeUsingReadSettings(dbFacade);
+	}
+
+	private TableFacade createTableFacadeUsingReadSettings(DatabaseFacade dbFacade) {
+		TableFacadeImp tableFacade = createTableFacadeUsingCacheSettings(dbFacade);
+		tableFacade.setScanDatabaseFacadeSupplier(this::factorDatabaseFacade);
+		return tableFacade;
+	}
+
+	private synchronized TableFacadeImp createTableFacadeUsingCacheSettings(
+			DatabaseFacade dbFacade) {
+		QueryResultCache cacheForReads = getQueryResultCacheForReads();
+		if (null == cacheForReads && null == readCoalescer) {
+			return TableFacadeImp.usingDatabaseFacade(dbFacade);
+		}
+		return TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(dbFacade,
+				cacheForReads, readCoalescer);
+	}
+
+	private QueryResultCache getQueryResultCacheForReads() {
+		if (null != replicaRouter) {
+			return null;
+		}
+		return queryResultCache;
 	}
 
 	@Override
 	public DatabaseFacade factorDatabaseFacade() {
 		createConnectionProviderIfNotCreatedSinceBefore();
-		return DatabaseFacadeImp.usingSqlConnectionProvider(sqlConnectionProvider);
+		return createDatabaseFacadeUsingSettings();
+	}
+
+	private synchronized DatabaseFacade createDatabaseFacadeUsingSettings() {
+		DatabaseFacadeImp databaseFacade = createDatabaseFacadeUsingQueryResultCacheSettings();
+		databaseFacade.setTransactionRetrier(transactionRetrier);
+		databaseFacade.setReplicaRouter(replicaRouter);
+		databaseFacade.setReadHedger(readHedger);
+		return databaseFacade;
+	}
+
+	private DatabaseFacadeImp createDatabaseFacadeUsingQueryResultCacheSettings() {
+		if (null == queryResultCache) {
+			return DatabaseFacadeImp.usingSqlConnectionProvider(sqlConnectionProvider);
+		}
+		if (null == invalidationChannel) {
+			return DatabaseFacadeImp.usingSqlConnectionProviderAndQueryResultCache(
+					sqlConnectionProvider, queryResultCache);
+		}
+		return DatabaseFacadeImp.usingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel(
+				sqlConnectionProvider, queryResultCache, invalidationChannel);
+	}
+
+	/**
+	 * useQueryResultCache turns on caching of rows read using
+	 * {@link TableFacade#readRowsForQuery(TableQuery)}, for TableFacades created by this factory
+	 * after the call. The cache is shared between all TableFacades and DatabaseFacades created by
+	 * this factory, and writes made through them invalidates the cached rows for the written
+	 * tables.
+	 * <p>
+	 * Writes made to the database in other ways, such as by other applications, are not seen by
+	 * the cache. Rows from such tables are served from the cache until they expire.
+	 * <p>
+	 * Reads are not cached for TableFacades created while read replicas are used, see
+	 * {@link #useReadReplicas(List, ReplicaSelection, Duration)}, as rows read from a lagging
+	 * replica could be put in the cache after the write that changed them invalidated it.
+	 * 
+	 * @param maxNumberOfEntries
+	 *            An int with the maximum number of cached reads, the least recently used read is
+	 *            evicted when the cache is full
+	 * @param timeToLive
+	 *            A Duration with how long a read is cached
+	 * @return The QueryResultCache used, to be able to read statistics from it
+	 */
+	public synchronized QueryResultCache useQueryResultCache(int maxNumberOfEntries,
+			Duration timeToLive) {
+		stopInvalidationListenerIfStarted();
+		queryResultCache = QueryResultCacheImp
+				.usingMaxNumberOfEntriesAndTimeToLive(maxNumberOfEntries, timeToLive);
+		return queryResultCache;
+	}
+
+	/**
+	 * useReadCoalescing turns on coalescing of identical reads made at the same time using
+	 * {@link TableFacade#readRowsForQuery(TableQuery)}, for TableFacades created by this factory
+	 * after the call. While a read is in flight, other TableFacades making the same read wait for
+	 * and share its result instead of using a connection of their own.
+	 * <p>
+	 * A coalesced read can return rows read before the call was made, see {@link ReadCoalescer}.
+	 * Reads made by a TableFacade that has written to the database, or that holds a consistency
+	 * token, are therefore never coalesced, so that the TableFacade reads its own writes.
+	 * 
+	 * @return The ReadCoalescer used, to be able to read statistics from it
+	 */
+	public synchronized ReadCoalescer useReadCoalescing() {
+		if (null == readCoalescer) {
+			readCoalescer = ReadCoalescerImp.create();
+		}
+		return readCoalescer;
+	}
+
+	/**
+	 * useTransactionRetries sets how transactions run using
+	 * {@link DatabaseFacade#runInTransaction(java.util.function.Function)} and
+	 * {@link TableFacade#runInTransaction(java.util.function.Function)} are retried when they fail
+	 * because of serialization failures or deadlocks, for facades created by this factory after
+	 * the call. If not called are transactions run with at most 5 attempts, waiting at most 10
+	 * milliseconds before the first retry and at most 1 second before any retry.
+	 * <p>
+	 * The wait before each retry is random, and its upper bound doubles for each retry until it
+	 * reaches maxBackoff.
+	 * 
+	 * @param maxAttempts
+	 *            An int with the max number of attempts for each transaction, including the
+	 *            first attempt
+	 * @param initialBackoff
+	 *            A Duration with the longest wait before the first retry
+	 * @param maxBackoff
+	 *            A Duration with the longest wait before any retry
+	 * @return The TransactionRetrier used, to be able to read statistics from it
+	 */
+	public synchronized TransactionRetrier useTransactionRetries(int maxAttempts,
+			Duration initialBackoff, Duration maxBackoff) {
+		transactionRetrier = TransactionRetrierImp
+				.usingMaxAttemptsAndInitialBackoffAndMaxBackoff(maxAttempts, initialBackoff,
+						maxBackoff);
+		return transactionRetrier;
+	}
+
+	/**
+	 * useReadReplicas turns on routing of reads to read replicas, for facades created by this
+	 * factory after the call. Reads made outside of transactions are run on a healthy replica,
+	 * while writes, transactions and reads that change data or lock rows stay on the primary.
+	 * <p>
+	 * Each replica gets a connection provider of its own. If this factory was created using
+	 * {@link #usingLookupNameFromContext(String)} are the replicas lookup names of data sources in
+	 * the context, each with a pool of its own. If this factory was created using
+	 * {@link #usingUriAndUserAndPassword(String, String, String)} are the replicas urls, connected
+	 * to using the same user and password as the primary.
+	 * <p>
+	 * A replica that can not be connected to is evicted, and probed in the background until it
+	 * answers. If no replica is healthy are reads run on the primary.
+	 * <p>
+	 * Replicas lag behind the primary, so reads might not see writes just committed on the
+	 * primary. TableFacades created while replicas are used therefore do not cache their reads,
+	 * even if {@link #useQueryResultCache(int, Duration)} has been called.
+	 * 
+	 * @param replicas
+	 *            A List of Strings with a lookup name or url for each replica
+	 * @param selection
+	 *            A ReplicaSelection with the strategy to select a replica for a read
+	 * @param probeInterval
+	 *            A Duration with how often evicted replicas are probed
+	 * @return The ReplicaRouter used, to be able to read the number of healthy replicas
+	 */
+	public synchronized ReplicaRouter useReadReplicas(List<String> replicas,
+			ReplicaSelection selection, Duration probeInterval) {
+		List<SqlConnectionProvider> replicaProviders = replicas.stream()
+				.map(this::createConnectionProviderForReplica).toList();
+		stopReplicaRouterIfStarted();
+		replicaRouter = ReplicaRouterImp.usingReplicaProvidersAndSelectionAndProbeInterval(
+				replicaProviders, selection, probeInterval);
+		replicaRouter.start();
+		return replicaRouter;
+	}
+
+	private SqlConnectionProvider createConnectionProviderForReplica(String replica) {
+		if (connectionInfoIsProvidedInContext()) {
+			return createContextConnectionProviderForReplica(replica);
+		}
+		return ParameterConnectionProviderImp.usingUriAndUserAndPassword(replica, user, password);
+	}
+
+	private SqlConnectionProvider createContextConnectionProviderForReplica(
+			String replicaLookupName) {
+		try {
+			return ContextConnectionProviderImp.usingInitialContextAndName(new InitialContext(),
+					replicaLookupName);
+		} catch (NamingException e) {
+			throw SqlDatabaseException.withMessageAndException(e.getMessage(), e);
+		}
+	}
+
+	private void stopReplicaRouterIfStarted() {
+		if (null != replicaRouter) {
+			replicaRouter.close();
+		}
+	}
+
+	/**
+	 * useReplicaCatchUpWait sets the longest time a read carrying a consistency token waits for a
+	 * replica to catch up to the token, before the read is run on the primary instead. Facades
+	 * created by this factory capture a token after each commit of writes, so that later reads
+	 * using the same facade see the writes. If not set is 500 milliseconds used.
+	 * <p>
+	 * useReplicaCatchUpWait MUST be called after
+	 * {@link #useReadReplicas(List, ReplicaSelection, Duration)}, and calling useReadReplicas
+	 * again resets the wait to the default.
+	 * 
+	 * @param maxCatchUpWait
+	 *            A Duration with the longest time to wait for a replica to catch up
+	 */
+	public synchronized void useReplicaCatchUpWait(Duration maxCatchUpWait) {
+		throwErrorIfReadReplicasAreNotUsed();
+		replicaRouter.setMaxCatchUpWait(maxCatchUpWait);
+	}
+
+	private void throwErrorIfReadReplicasAreNotUsed() {
+		if (null == replicaRouter) {
+			throw SqlDatabaseException
+					.withMessage("Read replicas must be used before setting a catch up wait.");
+		}
+	}
+
+	/**
+	 * useHedgedReads turns on hedging of reads run on read replicas, for facades created by this
+	 * factory after the call. A read that has not answered within the provided percentile of the
+	 * latencies of recent reads is sent to a second replica as well, and the answer that arrives
+	 * first is used. The slower read is cancelled.
+	 * <p>
+	 * Hedging only applies to reads run on replicas, see
+	 * {@link #useReadReplicas(List, ReplicaSelection, Duration)}, and not to reads carrying a
+	 * consistency token. No read is hedged until 20 reads have been made, as the delay is
+	 * calculated from their latencies. Calling useHedgedReads again replaces the hedger and its
+	 * statistics.
+	 * 
+	 * @param percentile
+	 *            A double greater than 0 and at most 100, with the percentile of recent read
+	 *            latencies to wait before hedging a read, such as 95
+	 * @param minimumDelay
+	 *            A Duration with the shortest wait before hedging a read
+	 * @param maxHedgeRate
+	 *            A double between 0 and 1, with the largest share of reads that may be hedged,
+	 *            such as 0.05
+	 * @return The ReadHedger used, to be able to read statistics from it
+	 */
+	public synchronized ReadHedger useHedgedReads(double percentile, Duration minimumDelay,
+			double maxHedgeRate) {
+		ReadHedgerImp newReadHedger = ReadHedgerImp
+				.usingPercentileAndMinimumDelayAndMaxHedgeRate(percentile, minimumDelay,
+						maxHedgeRate);
+		stopReadHedgerIfStarted();
+		readHedger = newReadHedger;
+		return readHedger;
+	}
+
+	private void stopReadHedgerIfStarted() {
+		if (null != readHedger) {
+			readHedger.close();
+		}
+	}
+
+	/**
+	 * getHedgeStatistics returns statistics about how many reads that have been made and hedged
+	 * by facades created by this factory, since hedged reads were last turned on using
+	 * {@link #useHedgedReads(double, Duration, double)}. If hedged reads are not used are all
+	 * numbers zero.
+	 * 
+	 * @return A HedgeStatistics with the current statistics
+	 */
+	public synchronized HedgeStatistics getHedgeStatistics() {
+		if (null == readHedger) {
+			return new HedgeStatistics(0, 0, 0, 0, null);
+		}
+		return readHedger.getStatistics();
+	}
+
+	/**
+	 * getTransactionRetryStatistics returns statistics about how many transactions that have been
+	 * run and retried by facades created by this factory, since the retry settings were last set
+	 * using {@link #useTransactionRetries(int, Duration, Duration)}.
+	 * 
+	 * @return A TransactionRetryStatistics with the current statistics
+	 */
+	public synchronized TransactionRetryStatistics getTransactionRetryStatistics() {
+		return transactionRetrier.getStatistics();
+	}
+
+	/**
+	 * useQueryResultCacheInvalidationChannel keeps the query result cache in sync with writes made
+	 * by other application nodes using the same database. Writes made through facades created by
+	 * this factory after the call publishes the written table on the channel, and a background
+	 * listener invalidates the tables published on the channel by all nodes.
+	 * <p>
+	 * The listener uses a connection of its own for as long as the application runs. If the
+	 * connection is lost is the whole cache invalidated when the listener has reconnected.
+	 * <p>
+	 * useQueryResultCacheInvalidationChannel MUST be called after
+	 * {@link #useQueryResultCache(int, Duration)}, and calling useQueryResultCache again stops the
+	 * listener.
+	 * 
+	 * @param channel
+	 *            A String with the name of the notification channel, the same on all nodes
+	 */
+	public synchronized void useQueryResultCacheInvalidationChannel(String channel) {
+		throwErrorIfQueryResultCacheIsNotUsed();
+		stopInvalidationListenerIfStarted();
+		createConnectionProviderIfNotCreatedSinceBefore();
+		invalidationListener = QueryResultCacheInvalidationListener
+				.usingSqlConnectionProviderAndCacheAndChannel(sqlConnectionProvider,
+						queryResultCache, channel);
+		invalidationListener.start();
+		invalidationChannel = channel;
+	}
+
+	private void throwErrorIfQueryResultCacheIsNotUsed() {
+		if (null == queryResultCache) {
+			throw SqlDatabaseException.withMessage(
+					"Query result cache must be used before setting an invalidation channel.");
+		}
+	}
+
+	private void stopInvalidationListenerIfStarted() {
+		if (null != invalidationListener) {
+			invalidationListener.close();
+			invalidationListener = null;
+			invalidationChannel = null;
+		}
+	}
+
+	QueryResultCacheInvalidationListener onlyForTestGetInvalidationListener() {
+		return invalidationListener;
 	}
 
 	private synchronized void createConnectionProviderIfNotCreatedSinceBefore() {
@@ -151,11 +496,49 @@ public class SqlDatabaseFactoryImp implements SqlDatabaseFactory {
 		return TableQueryImp.usingTableName(tableName);
 	}
 
+	@Override
+	public RowLoader factorRowLoader(String tableName, String keyColumn, String keySqlType) {
+		return RowLoaderImp.usingTableFacadeSupplierAndTableQuerySupplier(this::factorTableFacade,
+				() -> factorTableQuery(tableName), keyColumn, keySqlType);
+	}
+
 	@Override
 	public Sequence factorSequence() {
 		return SequenceImp.usingDatabaseFacade(factorDatabaseFacade());
 	}
 
+	@Override
+	public Sequence factorAllocatingSequence() {
+		return AllocatingSequenceImp.usingSequenceAndAllocator(factorSequence(),
+				getSequenceBlockAllocator());
+	}
+
+	/**
+	 * setSequenceBlockSize sets the number of values to reserve in each block for the specified
+	 * sequence, for Sequences created using {@link #factorAllocatingSequence()}.
+	 * 
+	 * @param sequenceName
+	 *            A String with the name of the sequence
+	 * @param blockSize
+	 *            An int with the number of values to reserve in each block
+	 */
+	public void setSequenceBlockSize(String sequenceName, int blockSize) {
+		getSequenceBlockAllocator().setBlockSizeForSequence(sequenceName, blockSize);
+	}
+
+	private synchronized SequenceBlockAllocator getSequenceBlockAllocator() {
+		if (null == sequenceBlockAllocator) {
+			sequenceBlockAllocator = SequenceBlockAllocator.usingDatabaseFacadeSupplierAndExecutor(
+					this::factorDatabaseFacade, createExecutorForSequenceBlocks());
+		}
+		return sequenceBlockAllocator;
+	}
+
+	private ExecutorService createExecutorForSequenceBlocks() {
+		return Executors.newThreadPerTaskExecutor(
+				Thread.ofVirtual().name("sequence-block-allocator-", 0).factory());
+	}
+
 	public String onlyForTestGetLookupName() {
 		return lookupName;
 	}
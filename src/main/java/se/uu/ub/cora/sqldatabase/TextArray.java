@@ -0,0 +1,73 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * TextArray is a value for a prepared statement that is sent to the database as one text array
+ * parameter, that can be cast to an array of any sql type in the sql, for example
+ * <code>?::bigint[]</code>.
+ * <p>
+ * Unlike a Java array, TextArray is equal to another TextArray with the same texts, so that reads
+ * using TextArray values can be cached and coalesced by their sql and values.
+ * 
+ * @param texts
+ *            An unmodifiable List of Strings with the texts in the array, null for sql null
+ */
+public record TextArray(List<String> texts) {
+
+	public TextArray {
+		texts = Collections.unmodifiableList(new ArrayList<>(texts));
+	}
+
+	/**
+	 * fromValues creates a TextArray with the text form of the provided values. Null and
+	 * {@link DatabaseValues#NULL} are sent as sql null.
+	 * 
+	 * @param values
+	 *            A List with the values to send as texts
+	 * @return A TextArray with the values as texts
+	 */
+	public static TextArray fromValues(List<?> values) {
+		List<String> texts = new ArrayList<>(values.size());
+		for (Object value : values) {
+			texts.add(convertToText(value));
+		}
+		return new TextArray(texts);
+	}
+
+	private static String convertToText(Object value) {
+		if (value == null || value == DatabaseValues.NULL) {
+			return null;
+		}
+		return String.valueOf(value);
+	}
+
+	/**
+	 * toArray returns the texts as an array, as it is bound to the prepared statement.
+	 * 
+	 * @return A String array with the texts
+	 */
+	public String[] toArray() {
+		return texts.toArray(new String[0]);
+	}
+}
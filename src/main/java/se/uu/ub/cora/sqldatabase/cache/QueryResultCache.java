@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
+
+import java.util.List;
+import java.util.Optional;
+
+import se.uu.ub.cora.sqldatabase.Row;
+
+/**
+ * QueryResultCache is a cache for rows read from the database, keyed by the sql and the values used
+ * to read them. Cached rows are grouped by the table they were read from, so that all rows read
+ * from a table can be invalidated when the table is written to.
+ * <p>
+ * To make sure that rows read before a write are not put in the cache after the write has
+ * invalidated the table, MUST readers call {@link #getGeneration()} before reading from the
+ * database and pass the returned generation to
+ * {@link #putRowsForSqlAndValues(String, String, List, List, long)}.
+ * <p>
+ * Implementations of QueryResultCache MUST be threadsafe.
+ */
+public interface QueryResultCache {
+
+	/**
+	 * getRowsForSqlAndValues returns the cached rows for the specified sql and values, if any.
+	 * Entries that have been in the cache longer than the cache time to live MUST NOT be returned.
+	 * <p>
+	 * Implementations MUST return a new list for each call, so that changes to the returned list
+	 * does not change the cached rows.
+	 * 
+	 * @param sql
+	 *            A String with the sql used to read the rows
+	 * @param values
+	 *            A List with the values used to read the rows
+	 * @return An Optional with a List of cached rows, or an empty Optional if no rows are cached
+	 */
+	Optional<List<Row>> getRowsForSqlAndValues(String sql, List<Object> values);
+
+	/**
+	 * getGeneration returns the current generation of the cache. The generation MUST be increased
+	 * each time a table or the whole cache is invalidated.
+	 * 
+	 * @return A long with the current generation of the cache
+	 */
+	long getGeneration();
+
+	/**
+	 * putRowsForSqlAndValues puts rows read from the specified table in the cache. The rows MUST
+	 * NOT be cached if the table, or the whole cache, has been invalidated after the specified
+	 * generation, as the rows then might be stale.
+	 * <p>
+	 * If the cache is full SHOULD the least recently used entry be evicted.
+	 * 
+	 * @param tableName
+	 *            A String with the name of the table the rows were read from
+	 * @param sql
+	 *            A String with the sql used to read the rows
+	 * @param values
+	 *            A List with the values used to read the rows
+	 * @param rows
+	 *            A List with the read rows
+	 * @param generation
+	 *            A long with the generation returned from {@link #getGeneration()} before the rows
+	 *            were read
+	 */
+	void putRowsForSqlAndValues(String tableName, String sql, List<Object> values, List<Row> rows,
+			long generation);
+
+	/**
+	 * invalidateTable removes all cached rows read from the specified table. Table names MUST be
+	 * compared without schema, quotes and case, so that rows read from a table are invalidated
+	 * regardless of how the table name was written in the sql writing to it.
+	 * 
+	 * @param tableName
+	 *            A String with the name of the table to invalidate
+	 */
+	void invalidateTable(String tableName);
+
+	/**
+	 * invalidateAll removes all cached rows.
+	 */
+	void invalidateAll();
+
+	/**
+	 * getStatistics returns statistics about how the cache has been used since it was created.
+	 * 
+	 * @return A QueryResultCacheStatistics with the current statistics for the cache
+	 */
+	QueryResultCacheStatistics getStatistics();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
+
+/**
+ * QueryResultCacheStatistics holds statistics about how a {@link QueryResultCache} has been used.
+ * 
+ * @param hits
+ *            A long with the number of reads that were answered from the cache
+ * @param misses
+ *            A long with the number of reads that were not answered from the cache
+ * @param evictions
+ *            A long with the number of entries removed to keep the cache within its size
+ * @param expirations
+ *            A long with the number of entries removed as they had been cached longer than the
+ *            time to live
+ * @param invalidations
+ *            A long with the number of entries removed as their table was written to
+ * @param numberOfEntries
+ *            An int with the number of entries currently in the cache
+ */
+public record QueryResultCacheStatistics(long hits, long misses, long evictions, long expirations,
+		long invalidations, int numberOfEntries) {
+
+	/**
+	 * hitRatio returns the share of reads that were answered from the cache.
+	 * 
+	 * @return A double between 0 and 1 with the hit ratio, 0 if no reads have been made
+	 */
+	public double hitRatio() {
+		long reads = hits + misses;
+		if (reads == 0) {
+			return 0;
+		}
+		return (double) hits / reads;
+	}
+}
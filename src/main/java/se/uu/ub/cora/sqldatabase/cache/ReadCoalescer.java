@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.Row;
+
+/**
+ * ReadCoalescer coalesces identical reads made at the same time into one read from the database.
+ * While a read with the same sql and values is in flight, other callers wait for and share its
+ * result instead of reading from the database themselves.
+ * <p>
+ * A caller joining a read in flight can get a result read before the caller made its call, so
+ * coalescing SHOULD only be used for reads where that is acceptable, such as reads of metadata.
+ * <p>
+ * Implementations of ReadCoalescer MUST be threadsafe.
+ */
+public interface ReadCoalescer {
+
+	/**
+	 * readUsingSqlAndValues returns the rows from a read with the same sql and values that is in
+	 * flight, or reads the rows using the provided reader if no such read is in flight.
+	 * <p>
+	 * If the read fails MUST all callers waiting for it get the exception thrown by the reader.
+	 * Implementations MUST return a new list to each caller that joined a read in flight, so that
+	 * callers can not change the rows returned to each other.
+	 * 
+	 * @param sql
+	 *            A String with the sql used to read the rows
+	 * @param values
+	 *            A List with the values used to read the rows
+	 * @param reader
+	 *            A Supplier that reads the rows from the database
+	 * @return A List with the read rows
+	 */
+	List<Row> readUsingSqlAndValues(String sql, List<Object> values, Supplier<List<Row>> reader);
+
+	/**
+	 * getStatistics returns statistics about how many reads that have been made and how many that
+	 * have been saved by coalescing since the ReadCoalescer was created.
+	 * 
+	 * @return A ReadCoalescerStatistics with the current statistics
+	 */
+	ReadCoalescerStatistics getStatistics();
+}
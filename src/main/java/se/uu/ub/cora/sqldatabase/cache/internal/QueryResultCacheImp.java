@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCacheStatistics;
+
+/**
+ * QueryResultCacheImp implements {@link QueryResultCache} as a least recently used cache with a
+ * maximum number of entries and a time to live for each entry.
+ * <p>
+ * QueryResultCacheImp is threadsafe
+ */
+public final class QueryResultCacheImp implements QueryResultCache {
+	private final int maxNumberOfEntries;
+	private final long timeToLiveInNanos;
+	private final LongSupplier nanoClock;
+	private final LinkedHashMap<CacheKey, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f,
+			true);
+	private final Map<String, Long> invalidatedGenerationByTable = new HashMap<>();
+	private long generation = 0;
+	private long invalidatedAllGeneration = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long expirations = 0;
+	private long invalidations = 0;
+
+	public static QueryResultCacheImp usingMaxNumberOfEntriesAndTimeToLive(int maxNumberOfEntries,
+			Duration timeToLive) {
+		return new QueryResultCacheImp(maxNumberOfEntries, timeToLive, System::nanoTime);
+	}
+
+	static QueryResultCacheImp usingMaxNumberOfEntriesAndTimeToLiveAndNanoClock(
+			int maxNumberOfEntries, Duration timeToLive, LongSupplier nanoClock) {
+		// package private for test reasons
+		return new QueryResultCacheImp(maxNumberOfEntries, timeToLive, nanoClock);
+	}
+
+	private QueryResultCacheImp(int maxNumberOfEntries, Duration timeToLive,
+			LongSupplier nanoClock) {
+		throwErrorIfMaxNumberOfEntriesIsNotPositive(maxNumberOfEntries);
+		this.maxNumberOfEntries = maxNumberOfEntries;
+		this.timeToLiveInNanos = timeToLive.toNanos();
+		this.nanoClock = nanoClock;
+	}
+
+	private void throwErrorIfMaxNumberOfEntriesIsNotPositive(int maxNumberOfEntries) {
+		if (maxNumberOfEntries < 1) {
+			throw SqlDatabaseException
+					.withMessage("Max number of entries must be positive for query result cache.");
+		}
+	}
+
+	@Override
+	public synchronized Optional<List<Row>> getRowsForSqlAndValues(String sql,
+			List<Object> values) {
+		CacheKey key = new CacheKey(sql, values);
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return Optional.empty();
+		}
+		if (entryHasExpired(entry)) {
+			entries.remove(key);
+			expirations++;
+			misses++;
+			return Optional.empty();
+		}
+		hits++;
+		return Optional.of(new ArrayList<>(entry.rows()));
+	}
+
+	private boolean entryHasExpired(CacheEntry entry) {
+		return nanoClock.getAsLong() - entry.expiresAt() >= 0;
+	}
+
+	@Override
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public synchronized void putRowsForSqlAndValues(String tableName, String sql,
+			List<Object> values, List<Row> rows, long generationBeforeRead) {
+		String normalizedTableName = normalizeTableName(tableName);
+		if (invalidatedAfterGeneration(normalizedTableName, generationBeforeRead)) {
+			return;
+		}
+		CacheKey key = new CacheKey(sql, new ArrayList<>(values));
+		long expiresAt = nanoClock.getAsLong() + timeToLiveInNanos;
+		entries.put(key, new CacheEntry(normalizedTableName, new ArrayList<>(rows), expiresAt));
+		evictLeastRecentlyUsedEntriesOverMaxNumberOfEntries();
+	}
+
+	private boolean invalidatedAfterGeneration(String normalizedTableName,
+			long generationBeforeRead) {
+		long tableInvalidatedGeneration = invalidatedGenerationByTable
+				.getOrDefault(normalizedTableName, 0L);
+		return Math.max(tableInvalidatedGeneration, invalidatedAllGeneration) > generationBeforeRead;
+	}
+
+	private void evictLeastRecentlyUsedEntriesOverMaxNumberOfEntries() {
+		Iterator<CacheKey> leastRecentlyUsedFirst = entries.keySet().iterator();
+		while (entries.size() > maxNumberOfEntries) {
+			leastRecentlyUsedFirst.next();
+			leastRecentlyUsedFirst.remove();
+			evictions++;
+		}
+	}
+
+	@Override
+	public synchronized void invalidateTable(String tableName) {
+		String normalizedTableName = normalizeTableName(tableName);
+		generation++;
+		invalidatedGenerationByTable.put(normalizedTableName, generation);
+		int numberOfEntriesBefore = entries.size();
+		entries.values().removeIf(entry -> entry.tableName().equals(normalizedTableName));
+		invalidations += numberOfEntriesBefore - entries.size();
+	}
+
+	private String normalizeTableName(String tableName) {
+		String withoutQuotes = tableName.replace("\"", "").toLowerCase(Locale.ROOT);
+		return withoutQuotes.substring(withoutQuotes.lastIndexOf('.') + 1);
+	}
+
+	@Override
+	public synchronized void invalidateAll() {
+		generation++;
+		invalidatedAllGeneration = generation;
+		invalidations += entries.size();
+		entries.clear();
+	}
+
+	@Override
+	public synchronized QueryResultCacheStatistics getStatistics() {
+		return new QueryResultCacheStatistics(hits, misses, evictions, expirations, invalidations,
+				entries.size());
+	}
+
+	public int onlyForTestGetMaxNumberOfEntries() {
+		return maxNumberOfEntries;
+	}
+
+	public Duration onlyForTestGetTimeToLive() {
+		return Duration.ofNanos(timeToLiveInNanos);
+	}
+
+	private record CacheKey(String sql, List<Object> values) {
+	}
+
+	private record CacheEntry(String tableName, List<Row> rows, long expiresAt) {
+	}
+}
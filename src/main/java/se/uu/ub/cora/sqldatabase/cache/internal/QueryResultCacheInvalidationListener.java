@@ -0,0 +1,221 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import se.uu.ub.cora.logger.Logger;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
+
+/**
+ * QueryResultCacheInvalidationListener keeps a {@link QueryResultCache} in sync with writes made
+ * on other nodes. It holds a connection of its own that listens on a notification channel, and
+ * invalidates the table named in each notification. A notification with {@link #INVALIDATE_ALL}
+ * as payload invalidates the whole cache.
+ * <p>
+ * Notifications sent while the listener is not connected are lost, so the whole cache is
+ * invalidated each time the listener (re)connects.
+ */
+public final class QueryResultCacheInvalidationListener implements AutoCloseable {
+	public static final String INVALIDATE_ALL = "*";
+	private static final Pattern CHANNEL_PATTERN = Pattern.compile("^[A-Za-z_]\\w{0,62}$");
+	private static final int NOTIFICATION_TIMEOUT_MILLIS = 1000;
+	private Logger log = LoggerProvider
+			.getLoggerForClass(QueryResultCacheInvalidationListener.class);
+	private final SqlConnectionProvider sqlConnectionProvider;
+	private final QueryResultCache queryResultCache;
+	private final String channel;
+	private long reconnectDelayMillis = 1000;
+	private volatile boolean running = true;
+	private volatile Connection connection;
+	private Thread listenerThread;
+
+	public static QueryResultCacheInvalidationListener usingSqlConnectionProviderAndCacheAndChannel(
+			SqlConnectionProvider sqlConnectionProvider, QueryResultCache queryResultCache,
+			String channel) {
+		return new QueryResultCacheInvalidationListener(sqlConnectionProvider, queryResultCache,
+				channel);
+	}
+
+	private QueryResultCacheInvalidationListener(SqlConnectionProvider sqlConnectionProvider,
+			QueryResultCache queryResultCache, String channel) {
+		throwErrorIfChannelIsNotValid(channel);
+		this.sqlConnectionProvider = sqlConnectionProvider;
+		this.queryResultCache = queryResultCache;
+		this.channel = channel;
+	}
+
+	/**
+	 * throwErrorIfChannelIsNotValid throws an {@link SqlDatabaseException} if the channel is not a
+	 * plain sql identifier, as the channel is used unquoted in a listen statement.
+	 * 
+	 * @param channel
+	 *            A String with the name of the channel
+	 */
+	public static void throwErrorIfChannelIsNotValid(String channel) {
+		if (channel == null || !CHANNEL_PATTERN.matcher(channel).matches()) {
+			throw SqlDatabaseException.withMessage(
+					"Invalidation channel contains character outside the allowed regexp.");
+		}
+	}
+
+	/**
+	 * start starts listening for notifications in a background thread, until {@link #close()} is
+	 * called.
+	 */
+	public synchronized void start() {
+		listenerThread = Thread.ofVirtual().name("query-result-cache-invalidation-listener")
+				.start(this::listenUntilClosed);
+	}
+
+	private void listenUntilClosed() {
+		while (running) {
+			readNotificationsOnce();
+		}
+		closeConnection();
+	}
+
+	void readNotificationsOnce() {
+		// package private for test reasons
+		try {
+			tryToReadNotificationsOnce();
+		} catch (Exception e) {
+			handleLostConnection(e);
+		}
+	}
+
+	private void tryToReadNotificationsOnce() throws SQLException {
+		connectAndListenIfNotConnected();
+		PGConnection pgConnection = connection.unwrap(PGConnection.class);
+		PGNotification[] notifications = pgConnection
+				.getNotifications(NOTIFICATION_TIMEOUT_MILLIS);
+		if (notifications != null) {
+			invalidateForNotifications(notifications);
+		}
+	}
+
+	private void connectAndListenIfNotConnected() throws SQLException {
+		if (connection == null) {
+			connection = sqlConnectionProvider.getConnection();
+			try (PreparedStatement statement = connection.prepareStatement("listen " + channel)) {
+				statement.execute();
+			}
+			queryResultCache.invalidateAll();
+		}
+	}
+
+	private void invalidateForNotifications(PGNotification[] notifications) {
+		for (PGNotification notification : notifications) {
+			invalidateForPayload(notification.getParameter());
+		}
+	}
+
+	private void invalidateForPayload(String payload) {
+		if (INVALIDATE_ALL.equals(payload)) {
+			queryResultCache.invalidateAll();
+		} else {
+			queryResultCache.invalidateTable(payload);
+		}
+	}
+
+	private void handleLostConnection(Exception e) {
+		closeConnection();
+		if (running) {
+			log.logWarnUsingMessageAndException(
+					"Lost connection listening for cache invalidations on channel: " + channel
+							+ ", reconnecting.",
+					e);
+			waitBeforeReconnecting();
+		}
+	}
+
+	private void closeConnection() {
+		Connection closingConnection = connection;
+		connection = null;
+		if (closingConnection != null) {
+			closeIgnoringErrors(closingConnection);
+		}
+	}
+
+	private void closeIgnoringErrors(Connection closingConnection) {
+		try {
+			closingConnection.close();
+		} catch (Exception e) {
+			// nothing more to do with a broken connection
+		}
+	}
+
+	private void waitBeforeReconnecting() {
+		try {
+			Thread.sleep(reconnectDelayMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+
+	/**
+	 * close stops the listener and closes its connection.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (listenerThread != null) {
+			listenerThread.interrupt();
+		}
+	}
+
+	void setReconnectDelayMillis(long reconnectDelayMillis) {
+		// package private for test reasons
+		this.reconnectDelayMillis = reconnectDelayMillis;
+	}
+
+	public Thread onlyForTestGetListenerThread() {
+		return listenerThread;
+	}
+
+	public boolean onlyForTestIsRunning() {
+		return running;
+	}
+
+	public Connection onlyForTestGetConnection() {
+		return connection;
+	}
+
+	public String onlyForTestGetChannel() {
+		return channel;
+	}
+
+	public QueryResultCache onlyForTestGetQueryResultCache() {
+		return queryResultCache;
+	}
+
+	public SqlConnectionProvider onlyForTestGetSqlConnectionProvider() {
+		return sqlConnectionProvider;
+	}
+}
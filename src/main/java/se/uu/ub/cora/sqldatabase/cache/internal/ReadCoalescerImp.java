@@ -0,0 +1,104 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescer;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescerStatistics;
+
+/**
+ * ReadCoalescerImp implements {@link ReadCoalescer} by keeping a future for each read in flight,
+ * that callers making the same read wait for.
+ * <p>
+ * ReadCoalescerImp is threadsafe
+ */
+public final class ReadCoalescerImp implements ReadCoalescer {
+	private final ConcurrentMap<ReadKey, CompletableFuture<List<Row>>> readsInFlight =
+			new ConcurrentHashMap<>();
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder coalescedReads = new LongAdder();
+
+	public static ReadCoalescerImp create() {
+		return new ReadCoalescerImp();
+	}
+
+	private ReadCoalescerImp() {
+	}
+
+	@Override
+	public List<Row> readUsingSqlAndValues(String sql, List<Object> values,
+			Supplier<List<Row>> reader) {
+		ReadKey key = new ReadKey(sql, new ArrayList<>(values));
+		CompletableFuture<List<Row>> newRead = new CompletableFuture<>();
+		CompletableFuture<List<Row>> readInFlight = readsInFlight.putIfAbsent(key, newRead);
+		if (readInFlight != null) {
+			coalescedReads.increment();
+			return waitForReadInFlight(readInFlight);
+		}
+		reads.increment();
+		return readAndShareResult(key, newRead, reader);
+	}
+
+	private List<Row> waitForReadInFlight(CompletableFuture<List<Row>> readInFlight) {
+		try {
+			return new ArrayList<>(readInFlight.join());
+		} catch (CompletionException e) {
+			throw rethrowCause(e);
+		}
+	}
+
+	private RuntimeException rethrowCause(CompletionException e) {
+		if (e.getCause() instanceof RuntimeException runtimeException) {
+			return runtimeException;
+		}
+		return SqlDatabaseException.withMessageAndException("Error in coalesced read.", e);
+	}
+
+	private List<Row> readAndShareResult(ReadKey key, CompletableFuture<List<Row>> newRead,
+			Supplier<List<Row>> reader) {
+		try {
+			List<Row> rows = reader.get();
+			newRead.complete(List.copyOf(rows));
+			return rows;
+		} catch (RuntimeException e) {
+			newRead.completeExceptionally(e);
+			throw e;
+		} finally {
+			readsInFlight.remove(key, newRead);
+		}
+	}
+
+	@Override
+	public ReadCoalescerStatistics getStatistics() {
+		return new ReadCoalescerStatistics(reads.sum(), coalescedReads.sum());
+	}
+
+	private record ReadKey(String sql, List<Object> values) {
+	}
+}
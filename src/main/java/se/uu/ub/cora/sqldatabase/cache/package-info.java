@@ -0,0 +1,8 @@
+/**
+ * The cache package contains interfaces for caching rows read from the database, so that reads
+ * from small, rarely changing tables does not have to go to the database each time.
+ * <p>
+ * Caching is turned on using
+ * {@link se.uu.ub.cora.sqldatabase.SqlDatabaseFactoryImp#useQueryResultCache(int, java.time.Duration)}.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018, 2019, 2021 Uppsala University Library
+ * Copyright 2018, 2019, 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -24,10 +24,21 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.sql.Savepoint;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import se.uu.ub.cora.sqldatabase.DatabaseFacade;
 import se.uu.ub.cora.sqldatabase.DatabaseValues;
@@ -36,21 +47,102 @@ import se.uu.ub.cora.sqldatabase.SqlConflictException;
 import se.uu.ub.cora.sqldatabase.SqlDataException;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
 import se.uu.ub.cora.sqldatabase.SqlNotFoundException;
+import se.uu.ub.cora.sqldatabase.TextArray;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.internal.QueryResultCacheInvalidationListener;
 import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.replica.HedgedRead;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedger;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouter;
+import se.uu.ub.cora.sqldatabase.transaction.IsolationLevel;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.internal.TransactionRetrierImp;
 
 public final class DatabaseFacadeImp implements DatabaseFacade {
 	private SqlConnectionProvider sqlConnectionProvider;
 	private Connection connection;
 	private static final int SQL_NULL = java.sql.Types.NULL;
 	private static final String ERROR_READING_DATA_USING_SQL = "Error reading data using sql: ";
-
-	private DatabaseFacadeImp(SqlConnectionProvider sqlConnectionProvider) {
+	private static final String UNIQUE_VIOLATION = "23505";
+	private static final Pattern WRITTEN_TABLE_PATTERN = Pattern.compile(
+			"^\\s*(?:insert\\s+into|update|delete\\s+from)\\s+(?:only\\s+)?([^\\s(]+)",
+			Pattern.CASE_INSENSITIVE);
+	private static final String NOTIFY_SQL = "select pg_notify(?, ?)";
+	private static final Pattern REPLICA_UNSAFE_SQL_PATTERN = Pattern.compile(
+			"\\b(?:insert|update|delete|nextval|setval|currval|lastval|pg_notify|pg_advisory\\w*"
+					+ "|txid_current|pg_current_wal_lsn)\\b|\\bfor\\s+(?:key\\s+)?share\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final String CONNECTION_EXCEPTION_CLASS = "08";
+	private static final String OPERATOR_INTERVENTION_CLASS = "57P";
+	private static final String CURRENT_LSN_SQL = "select pg_current_wal_lsn()::text as lsn";
+	private QueryResultCache queryResultCache;
+	private String invalidationChannel;
+	private boolean inTransaction = false;
+	private Set<String> tablesWrittenInTransaction = new HashSet<>();
+	private boolean allWrittenInTransaction = false;
+	private TransactionReadCache transactionReadCache;
+	private Deque<Savepoint> nestedScopes = new ArrayDeque<>();
+	private TransactionRetrier transactionRetrier = TransactionRetrierImp.usingDefaults();
+	private boolean readOnlySetOnConnection = false;
+	private ReplicaRouter replicaRouter;
+	private ReplicaLease replicaLease;
+	private ReadHedger readHedger;
+	private ConsistencyToken consistencyToken;
+	private boolean writtenSinceConsistencyToken = false;
+
+	private DatabaseFacadeImp(SqlConnectionProvider sqlConnectionProvider,
+			QueryResultCache queryResultCache, String invalidationChannel) {
 		this.sqlConnectionProvider = sqlConnectionProvider;
+		this.queryResultCache = queryResultCache;
+		this.invalidationChannel = invalidationChannel;
 	}
 
 	public static DatabaseFacadeImp usingSqlConnectionProvider(
 			SqlConnectionProvider sqlConnectionProvider) {
-		return new DatabaseFacadeImp(sqlConnectionProvider);
+		return new DatabaseFacadeImp(sqlConnectionProvider, null, null);
+	}
+
+	/**
+	 * usingSqlConnectionProviderAndQueryResultCache creates a new instance that invalidates the
+	 * tables it writes to in the provided cache. Writes made in a transaction are invalidated again
+	 * when the transaction is ended, so that rows read by others before the commit are not kept in
+	 * the cache.
+	 * 
+	 * @param sqlConnectionProvider
+	 *            A SqlConnectionProvider to get connections from
+	 * @param queryResultCache
+	 *            A QueryResultCache to invalidate written tables in
+	 * @return A new instance of DatabaseFacadeImp
+	 */
+	public static DatabaseFacadeImp usingSqlConnectionProviderAndQueryResultCache(
+			SqlConnectionProvider sqlConnectionProvider, QueryResultCache queryResultCache) {
+		return new DatabaseFacadeImp(sqlConnectionProvider, queryResultCache, null);
+	}
+
+	/**
+	 * usingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel creates a new instance
+	 * that, in addition to invalidating written tables in the provided cache, publishes the name of
+	 * each written table as a notification on the invalidation channel. Other nodes listening on
+	 * the channel, see {@link QueryResultCacheInvalidationListener}, can then invalidate their
+	 * caches. Writes made in a transaction are published when the transaction is ended, once for
+	 * each written table, and not at all if the transaction is rolled back.
+	 * 
+	 * @param sqlConnectionProvider
+	 *            A SqlConnectionProvider to get connections from
+	 * @param queryResultCache
+	 *            A QueryResultCache to invalidate written tables in
+	 * @param invalidationChannel
+	 *            A String with the name of the channel to publish invalidations on
+	 * @return A new instance of DatabaseFacadeImp
+	 */
+	public static DatabaseFacadeImp usingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel(
+			SqlConnectionProvider sqlConnectionProvider, QueryResultCache queryResultCache,
+			String invalidationChannel) {
+		return new DatabaseFacadeImp(sqlConnectionProvider, queryResultCache,
+				invalidationChannel);
 	}
 
 	@Override
@@ -93,8 +185,25 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 
 	@Override
 	public List<Row> readUsingSqlAndValues(String sql, List<Object> values) {
+		if (transactionReadCache != null) {
+			return readUsingTransactionReadCache(sql, values);
+		}
+		return readFromDatabaseUsingSqlAndValues(sql, values);
+	}
+
+	private List<Row> readUsingTransactionReadCache(String sql, List<Object> values) {
+		Optional<List<Row>> cachedRows = transactionReadCache.getRowsForSqlAndValues(sql, values);
+		if (cachedRows.isPresent()) {
+			return cachedRows.get();
+		}
+		List<Row> readRows = readFromDatabaseUsingSqlAndValues(sql, values);
+		transactionReadCache.putRowsForSqlAndValues(sql, values, readRows);
+		return readRows;
+	}
+
+	private List<Row> readFromDatabaseUsingSqlAndValues(String sql, List<Object> values) {
 		try {
-			return tryToReadUsingSqlAndValues(sql, values);
+			return readFromReplicaOrPrimaryUsingSqlAndValues(sql, values);
 		} catch (SQLException e) {
 			String message = ERROR_READING_DATA_USING_SQL + sql;
 			throw throwSqlDatabaseException(message, e);
@@ -105,15 +214,100 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 		return SqlDatabaseException.withMessageAndException(message, e);
 	}
 
+	private List<Row> readFromReplicaOrPrimaryUsingSqlAndValues(String sql, List<Object> values)
+			throws SQLException {
+		if (readCanUseReplica(sql)) {
+			Optional<List<Row>> rowsFromReplica = possiblyReadFromReplica(sql, values);
+			if (rowsFromReplica.isPresent()) {
+				return rowsFromReplica.get();
+			}
+		}
+		return tryToReadUsingSqlAndValues(sql, values);
+	}
+
+	private boolean readCanUseReplica(String sql) throws SQLException {
+		return replicaRouter != null && !transactionIsStarted()
+				&& !REPLICA_UNSAFE_SQL_PATTERN.matcher(sql).find();
+	}
+
+	private Optional<List<Row>> possiblyReadFromReplica(String sql, List<Object> values)
+			throws SQLException {
+		leaseReplicaConnectionIfNotLeasedSinceBefore();
+		if (replicaLease == null) {
+			return Optional.empty();
+		}
+		try {
+			return Optional.of(readFromLeasedReplicaUsingSqlAndValues(sql, values));
+		} catch (SQLException e) {
+			throwErrorIfNotConnectionFailure(e);
+			replicaLease.releaseAsFailed(e);
+			replicaLease = null;
+			return Optional.empty();
+		}
+	}
+
+	private List<Row> readFromLeasedReplicaUsingSqlAndValues(String sql, List<Object> values)
+			throws SQLException {
+		if (readCanBeHedged()) {
+			return readFromReplicaUsingHedging(sql, values);
+		}
+		return readUsingConnectionAndSqlAndValues(replicaLease.getConnection(), sql, values);
+	}
+
+	private boolean readCanBeHedged() {
+		return readHedger != null && consistencyToken == null;
+	}
+
+	private List<Row> readFromReplicaUsingHedging(String sql, List<Object> values)
+			throws SQLException {
+		ReplicaLease firstLease = replicaLease;
+		HedgedRead<List<Row>> hedgedRead = readHedger.readUsingHedging(firstLease,
+				() -> replicaRouter.leaseAnotherReplicaConnection(firstLease), sql,
+				statement -> readUsingStatementAndValues(statement, values));
+		replicaLease = hedgedRead.lease();
+		return hedgedRead.result();
+	}
+
+	private void leaseReplicaConnectionIfNotLeasedSinceBefore() {
+		if (replicaLease == null) {
+			replicaLease = leaseReplicaConnectionCaughtUpToConsistencyToken().orElse(null);
+		}
+	}
+
+	private Optional<ReplicaLease> leaseReplicaConnectionCaughtUpToConsistencyToken() {
+		if (consistencyToken == null) {
+			return replicaRouter.leaseReplicaConnection();
+		}
+		return replicaRouter.leaseReplicaConnectionCaughtUpTo(consistencyToken);
+	}
+
+	private void throwErrorIfNotConnectionFailure(SQLException e) throws SQLException {
+		String sqlState = String.valueOf(e.getSQLState());
+		if (!sqlState.startsWith(CONNECTION_EXCEPTION_CLASS)
+				&& !sqlState.startsWith(OPERATOR_INTERVENTION_CLASS)) {
+			throw e;
+		}
+	}
+
 	private List<Row> tryToReadUsingSqlAndValues(String sql, List<Object> values)
 			throws SQLException {
 		createConnectionIfNotCreatedSinceBefore();
-		try (PreparedStatement prepareStatement = connection.prepareStatement(sql);) {
-			addValuesToPreparedStatement(values, prepareStatement);
-			return getResultUsingQuery(prepareStatement);
+		return readUsingConnectionAndSqlAndValues(connection, sql, values);
+	}
+
+	private List<Row> readUsingConnectionAndSqlAndValues(Connection connectionToUse, String sql,
+			List<Object> values) throws SQLException {
+		try (PreparedStatement prepareStatement = connectionToUse.prepareStatement(sql);) {
+			return readUsingStatementAndValues(prepareStatement, values);
 		}
 	}
 
+	private List<Row> readUsingStatementAndValues(PreparedStatement prepareStatement,
+			List<Object> values) throws SQLException {
+		addValuesToPreparedStatement(values, prepareStatement);
+		return getResultUsingQuery(prepareStatement);
+	}
+
 	private void addValuesToPreparedStatement(List<Object> values,
 			PreparedStatement preparedStatement) throws SQLException {
 		int position = 1;
@@ -129,6 +323,8 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 			preparedStatement.setTimestamp(position, (Timestamp) value);
 		} else if (isDatabaseNull(value)) {
 			preparedStatement.setNull(position, SQL_NULL);
+		} else if (value instanceof TextArray textArray) {
+			preparedStatement.setObject(position, textArray.toArray());
 		} else {
 			preparedStatement.setObject(position, value);
 		}
@@ -184,12 +380,67 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 		return row;
 	}
 
+	@Override
+	public void readUsingSqlAndValuesRowByRow(String sql, List<Object> values, int fetchSize,
+			Predicate<Row> rowHandler) {
+		try {
+			tryToReadUsingSqlAndValuesRowByRow(sql, values, fetchSize, rowHandler);
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException(ERROR_READING_DATA_USING_SQL + sql, e);
+		}
+	}
+
+	private void tryToReadUsingSqlAndValuesRowByRow(String sql, List<Object> values,
+			int fetchSize, Predicate<Row> rowHandler) throws SQLException {
+		createConnectionIfNotCreatedSinceBefore();
+		if (transactionIsStarted()) {
+			readRowByRowUsingCursor(sql, values, fetchSize, rowHandler);
+		} else {
+			readRowByRowUsingCursorInOwnTransaction(sql, values, fetchSize, rowHandler);
+		}
+	}
+
+	private void readRowByRowUsingCursorInOwnTransaction(String sql, List<Object> values,
+			int fetchSize, Predicate<Row> rowHandler) throws SQLException {
+		connection.setAutoCommit(false);
+		try {
+			readRowByRowUsingCursor(sql, values, fetchSize, rowHandler);
+		} finally {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+	}
+
+	private void readRowByRowUsingCursor(String sql, List<Object> values, int fetchSize,
+			Predicate<Row> rowHandler) throws SQLException {
+		try (PreparedStatement prepareStatement = connection.prepareStatement(sql);) {
+			prepareStatement.setFetchSize(fetchSize);
+			addValuesToPreparedStatement(values, prepareStatement);
+			handleRowsUsingQuery(prepareStatement, rowHandler);
+		}
+	}
+
+	private void handleRowsUsingQuery(PreparedStatement prepareStatement,
+			Predicate<Row> rowHandler) throws SQLException {
+		try (ResultSet result = prepareStatement.executeQuery();) {
+			List<String> columnNames = createListOfColumnNamesFromResultSet(result);
+			boolean continueReading = true;
+			while (continueReading && result.next()) {
+				continueReading = rowHandler
+						.test(createMapForCurrentRowInResultSet(result, columnNames));
+			}
+		}
+	}
+
 	@Override
 	public int executeSqlWithValues(String sql, List<Object> values) {
 		try {
-			return executeUsingSqlAndValues(sql, values);
+			int updatedRows = executeUsingSqlAndValues(sql, values);
+			possiblyInvalidateCachesForWrittenSql(sql);
+			possiblyCaptureConsistencyTokenAfterWrite();
+			return updatedRows;
 		} catch (SQLException e) {
-			if (e.getMessage().contains("duplicate key")) {
+			if (isUniqueViolation(e)) {
 				throw SqlConflictException.withMessageAndException(
 						"Error executing statement, duplicated key: " + sql, e);
 			}
@@ -197,10 +448,115 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 		}
 	}
 
+	@Override
+	public List<Row> executeSqlWithValuesReturningColumns(String sql, List<Object> values,
+			List<String> returningColumns) {
+		String sqlWithReturning = sql + " returning " + joinReturningColumns(returningColumns);
+		try {
+			List<Row> rows = tryToReadUsingSqlAndValues(sqlWithReturning, values);
+			possiblyInvalidateCachesForWrittenSql(sql);
+			possiblyCaptureConsistencyTokenAfterWrite();
+			return rows;
+		} catch (SQLException e) {
+			if (isUniqueViolation(e)) {
+				throw SqlConflictException.withMessageAndException(
+						"Error executing statement, duplicated key: " + sqlWithReturning, e);
+			}
+			throw throwSqlDatabaseException("Error executing statement: " + sqlWithReturning, e);
+		}
+	}
+
+	private String joinReturningColumns(List<String> returningColumns) {
+		if (returningColumns.isEmpty()) {
+			return "*";
+		}
+		return String.join(", ", returningColumns);
+	}
+
+	private boolean isUniqueViolation(SQLException e) {
+		return UNIQUE_VIOLATION.equals(e.getSQLState());
+	}
+
+	private void possiblyInvalidateCachesForWrittenSql(String sql) throws SQLException {
+		Matcher matcher = WRITTEN_TABLE_PATTERN.matcher(sql);
+		if (matcher.find()) {
+			possiblyInvalidateTableInCaches(matcher.group(1));
+		} else {
+			possiblyInvalidateAllInCaches();
+		}
+	}
+
+	private void possiblyCaptureConsistencyTokenAfterWrite() throws SQLException {
+		if (replicaRouter != null) {
+			writtenSinceConsistencyToken = true;
+			captureConsistencyTokenIfWritesAreCommitted();
+		}
+	}
+
+	private void captureConsistencyTokenIfWritesAreCommitted() throws SQLException {
+		if (writtenSinceConsistencyToken && !transactionIsStarted()) {
+			writtenSinceConsistencyToken = false;
+			List<Row> rows = tryToReadUsingSqlAndValues(CURRENT_LSN_SQL, Collections.emptyList());
+			String lsn = (String) rows.get(0).getValueByColumn("lsn");
+			moveConsistencyTokenTo(ConsistencyToken.fromLsn(lsn));
+		}
+	}
+
+	private void moveConsistencyTokenTo(ConsistencyToken token) {
+		consistencyToken = consistencyToken == null ? token : consistencyToken.latest(token);
+		releaseReplicaLeaseIfLeased();
+	}
+
+	private void possiblyInvalidateTableInCaches(String tableName) throws SQLException {
+		if (transactionReadCache != null) {
+			transactionReadCache.invalidateTable(tableName);
+		}
+		if (queryResultCache != null) {
+			invalidateTable(tableName);
+			possiblyPublishInvalidation(tableName);
+		}
+	}
+
+	private void possiblyInvalidateAllInCaches() throws SQLException {
+		possiblyInvalidateTransactionReadCache();
+		if (queryResultCache != null) {
+			invalidateAll();
+			possiblyPublishInvalidation(QueryResultCacheInvalidationListener.INVALIDATE_ALL);
+		}
+	}
+
+	private void possiblyPublishInvalidation(String payload) throws SQLException {
+		if (!inTransaction) {
+			possiblyPublishInvalidationUsingPayload(payload);
+		}
+	}
+
+	private void possiblyPublishInvalidationUsingPayload(String payload) throws SQLException {
+		if (invalidationChannel != null) {
+			tryToReadUsingSqlAndValues(NOTIFY_SQL, List.of(invalidationChannel, payload));
+		}
+	}
+
+	private void invalidateTable(String tableName) {
+		queryResultCache.invalidateTable(tableName);
+		if (inTransaction) {
+			tablesWrittenInTransaction.add(tableName);
+		}
+	}
+
+	private void invalidateAll() {
+		queryResultCache.invalidateAll();
+		if (inTransaction) {
+			allWrittenInTransaction = true;
+		}
+	}
+
 	@Override
 	public void executeSql(String sql) {
 		try {
 			executeUsingSql(sql);
+			possiblyInvalidateCachesForWrittenSql(sql);
+			possiblyCaptureConsistencyTokenAfterWrite();
 		} catch (Exception e) {
 			throw SqlDatabaseException.withMessageAndException("Error executing statement: " + sql,
 					e);
@@ -239,9 +595,18 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 
 	@Override
 	public void close() {
+		forgetTransactionScopedState();
+		releaseReplicaLeaseIfLeased();
 		closingConnectionUsingAutoClosable();
 	}
 
+	private void releaseReplicaLeaseIfLeased() {
+		if (replicaLease != null) {
+			replicaLease.release();
+			replicaLease = null;
+		}
+	}
+
 	private void closingConnectionUsingAutoClosable() {
 		try (Connection makingConnectionAutoClosable = connection) {
 			rollbackAndThrowExceptionIfTransactionIsNotEnded();
@@ -253,6 +618,7 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 	private void rollbackAndThrowExceptionIfTransactionIsNotEnded() throws SQLException {
 		if (transactionIsStarted()) {
 			rollback();
+			inTransaction = false;
 			throw SqlDatabaseException
 					.withMessage("Close called on running transaction, rollback perfromed.");
 		}
@@ -267,30 +633,301 @@ public final class DatabaseFacadeImp implements DatabaseFacade {
 		try {
 			createConnectionIfNotCreatedSinceBefore();
 			connection.setAutoCommit(false);
+			inTransaction = true;
 		} catch (SQLException e) {
 			throw throwSqlDatabaseException("Error starting transaction.", e);
 		}
 	}
 
+	@Override
+	public void startTransactionUsingReadCache() {
+		startTransaction();
+		transactionReadCache = new TransactionReadCache();
+	}
+
+	@Override
+	public void startTransactionUsingOptions(TransactionOptions options) {
+		startTransaction();
+		try {
+			applyTransactionOptions(options);
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException("Error setting transaction options.", e);
+		}
+	}
+
+	private void applyTransactionOptions(TransactionOptions options) throws SQLException {
+		if (TransactionOptions.readOnlyDefaults().equals(options)) {
+			connection.setReadOnly(true);
+			readOnlySetOnConnection = true;
+		} else if (hasTransactionModes(options)) {
+			executeUsingSql(createSetTransactionSql(options));
+		}
+		possiblyImportSnapshot(options);
+	}
+
+	private boolean hasTransactionModes(TransactionOptions options) {
+		return options.isolationLevel() != IsolationLevel.DATABASE_DEFAULT || options.readOnly()
+				|| options.deferrable();
+	}
+
+	private void possiblyImportSnapshot(TransactionOptions options) throws SQLException {
+		if (options.snapshotId() != null) {
+			executeUsingSql("set transaction snapshot '" + options.snapshotId() + "'");
+		}
+	}
+
+	private String createSetTransactionSql(TransactionOptions options) {
+		List<String> modes = new ArrayList<>();
+		if (options.isolationLevel() != IsolationLevel.DATABASE_DEFAULT) {
+			modes.add("isolation level " + options.isolationLevel().sql());
+		}
+		if (options.readOnly()) {
+			modes.add("read only");
+		}
+		if (options.deferrable()) {
+			modes.add("deferrable");
+		}
+		return "set transaction " + String.join(", ", modes);
+	}
+
 	@Override
 	public void endTransaction() {
+		forgetTransactionScopedState();
 		try {
 			connection.setAutoCommit(true);
+			inTransaction = false;
+			resetReadOnlyIfSet();
+			invalidateCacheForWritesInTransaction();
+			captureConsistencyTokenIfWritesAreCommitted();
 		} catch (SQLException e) {
 			throw throwSqlDatabaseException("Error ending transaction.", e);
 		}
 
 	}
 
+	private void resetReadOnlyIfSet() throws SQLException {
+		if (readOnlySetOnConnection) {
+			readOnlySetOnConnection = false;
+			connection.setReadOnly(false);
+		}
+	}
+
+	private void forgetTransactionScopedState() {
+		transactionReadCache = null;
+		nestedScopes.clear();
+	}
+
+	private void invalidateCacheForWritesInTransaction() throws SQLException {
+		if (allWrittenInTransaction) {
+			queryResultCache.invalidateAll();
+			possiblyPublishInvalidationUsingPayload(
+					QueryResultCacheInvalidationListener.INVALIDATE_ALL);
+		} else {
+			invalidateTablesWrittenInTransaction();
+		}
+		forgetWritesInTransaction();
+	}
+
+	private void invalidateTablesWrittenInTransaction() throws SQLException {
+		for (String tableName : tablesWrittenInTransaction) {
+			queryResultCache.invalidateTable(tableName);
+			possiblyPublishInvalidationUsingPayload(tableName);
+		}
+	}
+
+	private void forgetWritesInTransaction() {
+		tablesWrittenInTransaction.clear();
+		allWrittenInTransaction = false;
+	}
+
+	@Override
+	public <T> T runInTransaction(Function<DatabaseFacade, T> work) {
+		return runInTransactionUsingOptions(TransactionOptions.defaults(), work);
+	}
+
+	@Override
+	public <T> T runInTransactionUsingOptions(TransactionOptions options,
+			Function<DatabaseFacade, T> work) {
+		throwErrorIfTransactionIsAlreadyStarted();
+		return transactionRetrier.runUsingRetries(() -> runAttemptInTransaction(options, work));
+	}
+
+	private void throwErrorIfTransactionIsAlreadyStarted() {
+		try {
+			if (transactionIsStarted()) {
+				throw SqlDatabaseException
+						.withMessage("Run in transaction can not be used in a started transaction.");
+			}
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException("Error running in transaction.", e);
+		}
+	}
+
+	private <T> T runAttemptInTransaction(TransactionOptions options,
+			Function<DatabaseFacade, T> work) {
+		try {
+			startTransactionUsingOptions(options);
+			T result = work.apply(this);
+			endTransaction();
+			return result;
+		} catch (RuntimeException e) {
+			rollbackAndEndFailedAttempt(e);
+			throw e;
+		}
+	}
+
+	private void rollbackAndEndFailedAttempt(RuntimeException e) {
+		try {
+			rollback();
+			connection.setAutoCommit(true);
+			inTransaction = false;
+		} catch (Exception rollbackError) {
+			e.addSuppressed(rollbackError);
+		}
+	}
+
+	@Override
+	public Optional<ConsistencyToken> getConsistencyToken() {
+		return Optional.ofNullable(consistencyToken);
+	}
+
+	@Override
+	public void useConsistencyToken(ConsistencyToken token) {
+		moveConsistencyTokenTo(token);
+	}
+
+	/**
+	 * setTransactionRetrier sets the TransactionRetrier used by
+	 * {@link #runInTransaction(Function)}, so that retry settings and statistics can be shared by
+	 * all facades created by the same factory. If not set is a TransactionRetrier using default
+	 * settings used.
+	 * 
+	 * @param transactionRetrier
+	 *            A TransactionRetrier to run transactions with
+	 */
+	public void setTransactionRetrier(TransactionRetrier transactionRetrier) {
+		this.transactionRetrier = transactionRetrier;
+	}
+
+	/**
+	 * setReplicaRouter sets the ReplicaRouter used to run reads made outside of transactions on
+	 * read replicas. Reads that change data or lock rows, such as reads using nextval or select for
+	 * update, are always run on the primary. If no replica is healthy, or the connection to the
+	 * replica fails, is the read run on the primary. If not set are all reads run on the primary.
+	 * <p>
+	 * When a router is set is a {@link ConsistencyToken} captured from the primary after each
+	 * commit of writes, and later reads are only run on replicas that have caught up to it.
+	 * 
+	 * @param replicaRouter
+	 *            A ReplicaRouter to lease replica connections from
+	 */
+	public void setReplicaRouter(ReplicaRouter replicaRouter) {
+		this.replicaRouter = replicaRouter;
+	}
+
+	/**
+	 * setReadHedger sets the ReadHedger used to send reads that are slow to answer on a replica to
+	 * a second replica as well, using the answer that arrives first. Hedging is only used for reads
+	 * run on replicas, see {@link #setReplicaRouter(ReplicaRouter)}, and not for reads carrying a
+	 * {@link ConsistencyToken}, as the second replica might not have caught up. If not set are
+	 * reads not hedged.
+	 * 
+	 * @param readHedger
+	 *            A ReadHedger to run replica reads with
+	 */
+	public void setReadHedger(ReadHedger readHedger) {
+		this.readHedger = readHedger;
+	}
+
+	public ReadHedger onlyForTestGetReadHedger() {
+		return readHedger;
+	}
+
+	public ReplicaRouter onlyForTestGetReplicaRouter() {
+		return replicaRouter;
+	}
+
+	public TransactionRetrier onlyForTestGetTransactionRetrier() {
+		return transactionRetrier;
+	}
+
+	@Override
+	public void beginNested() {
+		try {
+			throwErrorIfTransactionIsNotStarted();
+			nestedScopes.push(connection.setSavepoint());
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException("Error beginning nested scope.", e);
+		}
+	}
+
+	private void throwErrorIfTransactionIsNotStarted() throws SQLException {
+		if (!transactionIsStarted()) {
+			throw SqlDatabaseException
+					.withMessage("Nested scope can only be begun in a started transaction.");
+		}
+	}
+
+	@Override
+	public void releaseNested() {
+		Savepoint savepoint = takeInnermostNestedScope();
+		try {
+			connection.releaseSavepoint(savepoint);
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException("Error releasing nested scope.", e);
+		}
+	}
+
+	private Savepoint takeInnermostNestedScope() {
+		if (nestedScopes.isEmpty()) {
+			throw SqlDatabaseException.withMessage("No nested scope has been begun.");
+		}
+		return nestedScopes.pop();
+	}
+
+	@Override
+	public void rollbackToNested() {
+		Savepoint savepoint = takeInnermostNestedScope();
+		try {
+			connection.rollback(savepoint);
+			connection.releaseSavepoint(savepoint);
+			possiblyInvalidateTransactionReadCache();
+		} catch (SQLException e) {
+			throw throwSqlDatabaseException("Error doing rollback to nested scope.", e);
+		}
+	}
+
+	private void possiblyInvalidateTransactionReadCache() {
+		if (transactionReadCache != null) {
+			transactionReadCache.invalidateAll();
+		}
+	}
+
 	public SqlConnectionProvider getSqlConnectionProvider() {
 		// needed for test
 		return sqlConnectionProvider;
 	}
 
+	public QueryResultCache onlyForTestGetQueryResultCache() {
+		return queryResultCache;
+	}
+
+	public String onlyForTestGetInvalidationChannel() {
+		return invalidationChannel;
+	}
+
+	TransactionReadCache onlyForTestGetTransactionReadCache() {
+		return transactionReadCache;
+	}
+
 	@Override
 	public void rollback() {
+		forgetTransactionScopedState();
 		try {
 			connection.rollback();
+			resetReadOnlyIfSet();
+			forgetWritesInTransaction();
+			writtenSinceConsistencyToken = false;
 		} catch (SQLException e) {
 			throw throwSqlDatabaseException("Error doing rollBack on connection.", e);
 		}
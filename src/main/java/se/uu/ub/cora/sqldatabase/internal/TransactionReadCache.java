@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import se.uu.ub.cora.sqldatabase.Row;
+
+/**
+ * TransactionReadCache holds the rows read during one transaction in {@link DatabaseFacadeImp},
+ * so that repeated identical reads in the transaction can be answered without asking the database
+ * again.
+ * <p>
+ * Reads using volatile functions such as nextval or random are never cached. Written tables are
+ * invalidated by removing all entries with sql that mentions the table, which might remove more
+ * entries than needed but never keeps an entry that could have been changed by the write.
+ * <p>
+ * TransactionReadCache is not threadsafe, it is used by one DatabaseFacadeImp only.
+ */
+final class TransactionReadCache {
+	private static final Pattern VOLATILE_SQL_PATTERN = Pattern.compile(
+			"\\b(?:nextval|setval|currval|lastval|random|clock_timestamp|pg_notify)\\s*\\(",
+			Pattern.CASE_INSENSITIVE);
+	private final Map<ReadKey, List<Row>> entries = new HashMap<>();
+
+	Optional<List<Row>> getRowsForSqlAndValues(String sql, List<Object> values) {
+		List<Row> rows = entries.get(new ReadKey(sql, values));
+		if (rows == null) {
+			return Optional.empty();
+		}
+		return Optional.of(new ArrayList<>(rows));
+	}
+
+	void putRowsForSqlAndValues(String sql, List<Object> values, List<Row> rows) {
+		if (isCacheable(sql)) {
+			entries.put(new ReadKey(sql, new ArrayList<>(values)), List.copyOf(rows));
+		}
+	}
+
+	private boolean isCacheable(String sql) {
+		return !VOLATILE_SQL_PATTERN.matcher(sql).find();
+	}
+
+	void invalidateTable(String tableName) {
+		Pattern tablePattern = createPatternForTableName(tableName);
+		Iterator<ReadKey> keys = entries.keySet().iterator();
+		while (keys.hasNext()) {
+			if (tablePattern.matcher(keys.next().sql()).find()) {
+				keys.remove();
+			}
+		}
+	}
+
+	private Pattern createPatternForTableName(String tableName) {
+		String unquotedName = tableName.replace("\"", "");
+		String nameWithoutSchema = unquotedName.substring(unquotedName.lastIndexOf('.') + 1);
+		return Pattern.compile("\\b" + Pattern.quote(nameWithoutSchema) + "\\b",
+				Pattern.CASE_INSENSITIVE);
+	}
+
+	void invalidateAll() {
+		entries.clear();
+	}
+
+	int onlyForTestGetNumberOfEntries() {
+		return entries.size();
+	}
+
+	private record ReadKey(String sql, List<Object> values) {
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+/**
+ * ConsistencyToken holds a position in the write ahead log of the primary database, a log
+ * sequence number (LSN), captured after a commit. A read carrying the token is only run on a
+ * replica that has replayed the log up to that position, so that the read sees the committed
+ * writes.
+ * 
+ * @param lsn
+ *            A long with the log sequence number
+ */
+public record ConsistencyToken(long lsn) {
+	private static final int HIGH_PART_SHIFT = 32;
+
+	/**
+	 * fromLsn creates a ConsistencyToken from a log sequence number on the textual form used by
+	 * the database, two hexadecimal numbers separated by a slash, such as "16/B374D848".
+	 * 
+	 * @param lsn
+	 *            A String with the log sequence number
+	 * @return A ConsistencyToken for the log sequence number
+	 */
+	public static ConsistencyToken fromLsn(String lsn) {
+		try {
+			String[] parts = lsn.split("/");
+			long high = Long.parseLong(parts[0], 16);
+			long low = Long.parseLong(parts[1], 16);
+			return new ConsistencyToken((high << HIGH_PART_SHIFT) | low);
+		} catch (RuntimeException e) {
+			throw SqlDatabaseException.withMessageAndException("Not a log sequence number: " + lsn,
+					e);
+		}
+	}
+
+	/**
+	 * toLsn returns the log sequence number of this token on the textual form used by the
+	 * database.
+	 * 
+	 * @return A String with the log sequence number
+	 */
+	public String toLsn() {
+		return Long.toHexString(lsn >>> HIGH_PART_SHIFT).toUpperCase() + "/"
+				+ Long.toHexString(lsn & 0xFFFFFFFFL).toUpperCase();
+	}
+
+	/**
+	 * isReachedBy returns true if the provided replayed position is at or after the position of
+	 * this token.
+	 * 
+	 * @param replayed
+	 *            A ConsistencyToken with the position a replica has replayed the log to
+	 * @return A boolean, true if the replayed position has reached this token
+	 */
+	public boolean isReachedBy(ConsistencyToken replayed) {
+		return Long.compareUnsigned(replayed.lsn, lsn) >= 0;
+	}
+
+	/**
+	 * latest returns the token of this and the provided token that is furthest ahead in the log.
+	 * 
+	 * @param other
+	 *            A ConsistencyToken to compare with
+	 * @return The ConsistencyToken furthest ahead in the log
+	 */
+	public ConsistencyToken latest(ConsistencyToken other) {
+		return isReachedBy(other) ? other : this;
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.time.Duration;
+
+/**
+ * HedgeStatistics holds statistics about how a {@link ReadHedger} has been used.
+ * 
+ * @param reads
+ *            A long with the number of reads made
+ * @param hedges
+ *            A long with the number of reads that were also sent to a second replica
+ * @param hedgeWins
+ *            A long with the number of hedges where the second replica answered first
+ * @param cappedHedges
+ *            A long with the number of reads that were not hedged because the max hedge rate was
+ *            reached
+ * @param hedgeDelay
+ *            A Duration with the current delay before a read is hedged, or null if not enough
+ *            reads have been made to calculate it
+ */
+public record HedgeStatistics(long reads, long hedges, long hedgeWins, long cappedHedges,
+		Duration hedgeDelay) {
+
+	/**
+	 * hedgeRate returns the share of reads that were hedged.
+	 * 
+	 * @return A double between 0 and 1 with the share of hedged reads
+	 */
+	public double hedgeRate() {
+		if (reads == 0) {
+			return 0;
+		}
+		return (double) hedges / reads;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * ReadHedger lowers the tail latency of reads made on read replicas, by sending a read that is
+ * slow to answer to a second replica as well and using the answer that arrives first. It is used
+ * by facades created by a factory with hedged reads turned on, and there is normally no need to
+ * use it directly.
+ * <p>
+ * Only reads that do not change data may be hedged, as the same query can be run twice.
+ * <p>
+ * Implementations of ReadHedger MUST be threadsafe, as one ReadHedger is shared by all facades
+ * created by the same factory.
+ */
+public interface ReadHedger {
+
+	/**
+	 * readUsingHedging prepares the provided sql on the connection of the provided lease and reads
+	 * the result using the provided reader.
+	 * <p>
+	 * If the read has not answered within the hedge delay MUST a second lease be taken from the
+	 * provided hedge leaser and the same read be started on it. The hedge delay MUST be calculated
+	 * from a percentile of the latencies of recent reads. Implementations MUST cap the share of
+	 * reads that are hedged, and MUST NOT hedge a read when the cap is reached or when the hedge
+	 * leaser returns an empty Optional.
+	 * <p>
+	 * The first read to answer wins. The other read MUST be cancelled using
+	 * {@link java.sql.Statement#cancel()} and its lease MUST be released when it has stopped. The
+	 * lease of the winning read MUST be returned still leased.
+	 * <p>
+	 * If a read fails while the other is still running MUST the answer of the other be waited
+	 * for. If all started reads fail MUST the hedge lease be released and the exception from the
+	 * read on the provided lease be thrown, leaving the provided lease to the caller.
+	 * 
+	 * @param lease
+	 *            A ReplicaLease to run the read on first
+	 * @param hedgeLeaser
+	 *            A Supplier that leases a connection to another replica for a hedge
+	 * @param sql
+	 *            A String with the sql to prepare
+	 * @param reader
+	 *            A StatementReader that sets values, runs the statement and maps the result
+	 * @return A HedgedRead with the result and lease of the read that answered first
+	 * @throws SQLException
+	 *             If all started reads fail
+	 */
+	<T> HedgedRead<T> readUsingHedging(ReplicaLease lease,
+			Supplier<Optional<ReplicaLease>> hedgeLeaser, String sql, StatementReader<T> reader)
+			throws SQLException;
+
+	/**
+	 * getStatistics returns statistics about how many reads that have been made and hedged since
+	 * the ReadHedger was created.
+	 * 
+	 * @return A HedgeStatistics with the current statistics
+	 */
+	HedgeStatistics getStatistics();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.sql.Connection;
+
+/**
+ * ReplicaLease is a connection to a replica leased from a {@link ReplicaRouter}. The lease MUST
+ * be ended by calling either {@link #release()} or {@link #releaseAsFailed(Exception)}, so that
+ * the router knows how many connections that are in use for each replica.
+ */
+public interface ReplicaLease {
+
+	/**
+	 * getConnection returns the leased connection to the replica.
+	 * 
+	 * @return A Connection to the replica
+	 */
+	Connection getConnection();
+
+	/**
+	 * release ends the lease and closes the connection.
+	 * <p>
+	 * Implementations MUST make it possible to call release more than once.
+	 */
+	void release();
+
+	/**
+	 * releaseAsFailed ends the lease and closes the connection, as {@link #release()}, and reports
+	 * the replica as unhealthy. The router MUST NOT use the replica again until it has answered a
+	 * health probe.
+	 * 
+	 * @param cause
+	 *            An Exception with the failure that made the replica unhealthy
+	 */
+	void releaseAsFailed(Exception cause);
+}
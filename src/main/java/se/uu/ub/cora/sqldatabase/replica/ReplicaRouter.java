@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.util.Optional;
+
+/**
+ * ReplicaRouter leases connections to read replicas of the primary database. Facades use it to
+ * run reads made outside of transactions on a replica, while writes and transactions stay on the
+ * primary.
+ * <p>
+ * Replicas lag behind the primary, so a read from a replica might not see writes just committed
+ * on the primary.
+ * <p>
+ * Implementations of ReplicaRouter MUST be threadsafe.
+ */
+public interface ReplicaRouter {
+
+	/**
+	 * leaseReplicaConnection leases a connection to one of the healthy replicas, selected using the
+	 * {@link ReplicaSelection} the router is configured with.
+	 * <p>
+	 * If getting a connection to the selected replica fails MUST the replica be marked as unhealthy
+	 * and another healthy replica be tried. Unhealthy replicas MUST be probed in the background and
+	 * taken back into use when they answer.
+	 * <p>
+	 * If no replica is healthy MUST an empty Optional be returned, so that the caller can use the
+	 * primary instead.
+	 * 
+	 * @return An Optional with a ReplicaLease, or an empty Optional if no replica is healthy
+	 */
+	Optional<ReplicaLease> leaseReplicaConnection();
+
+	/**
+	 * leaseAnotherReplicaConnection leases a connection to one of the healthy replicas other than
+	 * the replica of the provided lease, as {@link #leaseReplicaConnection()}. It is used to send a
+	 * slow read to a second replica, see {@link ReadHedger}.
+	 * <p>
+	 * If no other replica is healthy MUST an empty Optional be returned.
+	 * 
+	 * @param lease
+	 *            A ReplicaLease for the replica not to lease a connection to
+	 * @return An Optional with a ReplicaLease to another replica, or an empty Optional if no other
+	 *         replica is healthy
+	 */
+	Optional<ReplicaLease> leaseAnotherReplicaConnection(ReplicaLease lease);
+
+	/**
+	 * leaseReplicaConnectionCaughtUpTo leases a connection to one of the healthy replicas, as
+	 * {@link #leaseReplicaConnection()}, but only returns the lease when the replica has replayed
+	 * the write ahead log up to the position of the provided {@link ConsistencyToken}, so that
+	 * reads made on the connection see the writes the token was captured after.
+	 * <p>
+	 * Implementations SHOULD lease a replica that has already caught up if there is one, instead
+	 * of waiting for a lagging replica to catch up.
+	 * <p>
+	 * Implementations MUST only wait a bounded time for the replica to catch up. If the replica
+	 * has not caught up within that time MUST the lease be released and an empty Optional be
+	 * returned, so that the caller can use the primary instead.
+	 * 
+	 * @param token
+	 *            A ConsistencyToken with the position in the log the replica must have reached
+	 * @return An Optional with a ReplicaLease to a replica that has caught up, or an empty
+	 *         Optional if no replica has caught up in time
+	 */
+	Optional<ReplicaLease> leaseReplicaConnectionCaughtUpTo(ConsistencyToken token);
+
+	/**
+	 * getNumberOfHealthyReplicas returns the number of replicas currently in use.
+	 * 
+	 * @return An int with the number of healthy replicas
+	 */
+	int getNumberOfHealthyReplicas();
+}
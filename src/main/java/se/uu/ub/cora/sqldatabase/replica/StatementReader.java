@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * StatementReader reads the result of a query using a prepared statement, setting the values of
+ * the statement and mapping the result. It is used by {@link ReadHedger} to run the same query on
+ * more than one replica.
+ */
+@FunctionalInterface
+public interface StatementReader<T> {
+
+	/**
+	 * readUsingStatement sets the values of the provided statement, runs it and returns the mapped
+	 * result.
+	 * 
+	 * @param statement
+	 *            A PreparedStatement for the query, prepared on a replica connection
+	 * @return The mapped result of the query
+	 * @throws SQLException
+	 *             If the query fails or is cancelled
+	 */
+	T readUsingStatement(PreparedStatement statement) throws SQLException;
+}
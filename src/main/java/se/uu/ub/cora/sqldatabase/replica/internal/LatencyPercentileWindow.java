@@ -0,0 +1,60 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * LatencyPercentileWindow keeps the latencies of the most recent reads in a fixed size ring, so
+ * that a percentile of the current latencies can be calculated without keeping all latencies
+ * ever recorded.
+ * <p>
+ * LatencyPercentileWindow is threadsafe
+ */
+final class LatencyPercentileWindow {
+	private final long[] latencies;
+	private int nextPosition = 0;
+	private int numberOfLatencies = 0;
+
+	LatencyPercentileWindow(int capacity) {
+		latencies = new long[capacity];
+	}
+
+	synchronized void recordLatency(Duration latency) {
+		latencies[nextPosition] = latency.toNanos();
+		nextPosition = (nextPosition + 1) % latencies.length;
+		numberOfLatencies = Math.min(numberOfLatencies + 1, latencies.length);
+	}
+
+	synchronized int getNumberOfLatencies() {
+		return numberOfLatencies;
+	}
+
+	synchronized Optional<Duration> getPercentile(double percentile) {
+		if (numberOfLatencies == 0) {
+			return Optional.empty();
+		}
+		long[] sorted = Arrays.copyOf(latencies, numberOfLatencies);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * numberOfLatencies) - 1;
+		return Optional.of(Duration.ofNanos(sorted[Math.max(index, 0)]));
+	}
+}
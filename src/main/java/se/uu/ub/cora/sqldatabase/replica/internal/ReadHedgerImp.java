@@ -0,0 +1,350 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.replica.HedgeStatistics;
+import se.uu.ub.cora.sqldatabase.replica.HedgedRead;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedger;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.StatementReader;
+
+/**
+ * ReadHedgerImp implements {@link ReadHedger} running each read in a virtual thread, so that the
+ * calling thread can wait for the first answer of up to two reads.
+ * <p>
+ * The hedge delay is the configured percentile of the latencies of the 1000 most recent reads,
+ * but never shorter than the configured minimum delay. No read is hedged until 20 latencies have
+ * been recorded. The share of hedged reads is capped using an allowance that grows with the max
+ * hedge rate for each read and shrinks by one for each hedge.
+ * <p>
+ * ReadHedgerImp is threadsafe
+ */
+public final class ReadHedgerImp implements ReadHedger, AutoCloseable {
+	private static final int LATENCY_WINDOW_SIZE = 1000;
+	private static final int MIN_LATENCIES_FOR_HEDGING = 20;
+	private static final int LATENCIES_BETWEEN_DELAY_UPDATES = 50;
+	private static final double MAX_HEDGE_ALLOWANCE = 10;
+	private final double percentile;
+	private final Duration minimumDelay;
+	private final double maxHedgeRate;
+	private final LatencyPercentileWindow latencyWindow = new LatencyPercentileWindow(
+			LATENCY_WINDOW_SIZE);
+	private final AtomicInteger latenciesSinceDelayUpdate = new AtomicInteger();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private volatile Duration hedgeDelay;
+	private double hedgeAllowance = 0;
+	private final LongAdder reads = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private final LongAdder hedgeWins = new LongAdder();
+	private final LongAdder cappedHedges = new LongAdder();
+
+	/**
+	 * usingPercentileAndMinimumDelayAndMaxHedgeRate creates a new ReadHedgerImp.
+	 * 
+	 * @param percentile
+	 *            A double greater than 0 and at most 100, with the percentile of recent read
+	 *            latencies to wait before hedging a read
+	 * @param minimumDelay
+	 *            A Duration with the shortest wait before hedging a read
+	 * @param maxHedgeRate
+	 *            A double between 0 and 1, with the largest share of reads that may be hedged
+	 * @return A new ReadHedgerImp
+	 */
+	public static ReadHedgerImp usingPercentileAndMinimumDelayAndMaxHedgeRate(double percentile,
+			Duration minimumDelay, double maxHedgeRate) {
+		return new ReadHedgerImp(percentile, minimumDelay, maxHedgeRate);
+	}
+
+	private ReadHedgerImp(double percentile, Duration minimumDelay, double maxHedgeRate) {
+		throwErrorIfPercentileIsOutOfRange(percentile);
+		throwErrorIfMaxHedgeRateIsOutOfRange(maxHedgeRate);
+		this.percentile = percentile;
+		this.minimumDelay = minimumDelay;
+		this.maxHedgeRate = maxHedgeRate;
+	}
+
+	private void throwErrorIfPercentileIsOutOfRange(double percentile) {
+		if (percentile <= 0 || percentile > 100) {
+			throw SqlDatabaseException
+					.withMessage("Hedge percentile must be greater than 0 and at most 100.");
+		}
+	}
+
+	private void throwErrorIfMaxHedgeRateIsOutOfRange(double maxHedgeRate) {
+		if (maxHedgeRate < 0 || maxHedgeRate > 1) {
+			throw SqlDatabaseException.withMessage("Max hedge rate must be between 0 and 1.");
+		}
+	}
+
+	@Override
+	public <T> HedgedRead<T> readUsingHedging(ReplicaLease lease,
+			Supplier<Optional<ReplicaLease>> hedgeLeaser, String sql, StatementReader<T> reader)
+			throws SQLException {
+		reads.increment();
+		addHedgeAllowance();
+		long start = System.nanoTime();
+		HedgeRace<T> race = new HedgeRace<>(sql, reader);
+		race.startAttemptUsingLease(lease);
+		if (noAnswerWithinHedgeDelay(race)) {
+			possiblyStartHedge(race, hedgeLeaser);
+		}
+		HedgedRead<T> hedgedRead = race.awaitWinner();
+		recordReadLatency(Duration.ofNanos(System.nanoTime() - start));
+		return hedgedRead;
+	}
+
+	private boolean noAnswerWithinHedgeDelay(HedgeRace<?> race) {
+		Duration currentDelay = hedgeDelay;
+		return currentDelay != null && !race.hasAnswerWithin(currentDelay);
+	}
+
+	private void possiblyStartHedge(HedgeRace<?> race,
+			Supplier<Optional<ReplicaLease>> hedgeLeaser) {
+		if (!takeHedgeAllowance()) {
+			cappedHedges.increment();
+			return;
+		}
+		Optional<ReplicaLease> hedgeLease = hedgeLeaser.get();
+		if (hedgeLease.isEmpty()) {
+			returnHedgeAllowance();
+			return;
+		}
+		hedges.increment();
+		race.startAttemptUsingLease(hedgeLease.get());
+	}
+
+	private synchronized void addHedgeAllowance() {
+		hedgeAllowance = Math.min(MAX_HEDGE_ALLOWANCE, hedgeAllowance + maxHedgeRate);
+	}
+
+	private synchronized boolean takeHedgeAllowance() {
+		if (hedgeAllowance < 1) {
+			return false;
+		}
+		hedgeAllowance--;
+		return true;
+	}
+
+	private synchronized void returnHedgeAllowance() {
+		hedgeAllowance++;
+	}
+
+	void recordReadLatency(Duration latency) {
+		// package private for test reasons
+		latencyWindow.recordLatency(latency);
+		if (hedgeDelay == null || latenciesSinceDelayUpdate
+				.incrementAndGet() >= LATENCIES_BETWEEN_DELAY_UPDATES) {
+			updateHedgeDelay();
+		}
+	}
+
+	private void updateHedgeDelay() {
+		latenciesSinceDelayUpdate.set(0);
+		if (latencyWindow.getNumberOfLatencies() >= MIN_LATENCIES_FOR_HEDGING) {
+			Duration percentileLatency = latencyWindow.getPercentile(percentile).orElseThrow();
+			hedgeDelay = percentileLatency.compareTo(minimumDelay) < 0 ? minimumDelay
+					: percentileLatency;
+		}
+	}
+
+	@Override
+	public HedgeStatistics getStatistics() {
+		return new HedgeStatistics(reads.sum(), hedges.sum(), hedgeWins.sum(), cappedHedges.sum(),
+				hedgeDelay);
+	}
+
+	/**
+	 * close stops the threads running reads, once the reads in progress have answered.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	public double onlyForTestGetPercentile() {
+		return percentile;
+	}
+
+	public Duration onlyForTestGetMinimumDelay() {
+		return minimumDelay;
+	}
+
+	public double onlyForTestGetMaxHedgeRate() {
+		return maxHedgeRate;
+	}
+
+	private final class HedgeRace<T> {
+		private final String sql;
+		private final StatementReader<T> reader;
+		private final List<Attempt<T>> attempts = new CopyOnWriteArrayList<>();
+		private final CompletableFuture<Attempt<T>> winner = new CompletableFuture<>();
+
+		private HedgeRace(String sql, StatementReader<T> reader) {
+			this.sql = sql;
+			this.reader = reader;
+		}
+
+		private void startAttemptUsingLease(ReplicaLease lease) {
+			Attempt<T> attempt = new Attempt<>(lease);
+			attempts.add(attempt);
+			attempt.answer.whenComplete((result, error) -> attemptHasAnswered(attempt, error));
+			executor.execute(() -> attempt.run(sql, reader));
+		}
+
+		private void attemptHasAnswered(Attempt<T> attempt, Throwable error) {
+			if (error == null) {
+				winner.complete(attempt);
+			} else if (allAttemptsHaveFailed()) {
+				winner.completeExceptionally(getErrorFromFirstAttempt());
+			}
+		}
+
+		private boolean allAttemptsHaveFailed() {
+			return attempts.stream().allMatch(attempt -> attempt.answer.isCompletedExceptionally());
+		}
+
+		private Throwable getErrorFromFirstAttempt() {
+			return attempts.get(0).answer.exceptionNow();
+		}
+
+		private boolean hasAnswerWithin(Duration delay) {
+			try {
+				winner.get(delay.toNanos(), TimeUnit.NANOSECONDS);
+				return true;
+			} catch (TimeoutException e) {
+				return false;
+			} catch (ExecutionException e) {
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+
+		private HedgedRead<T> awaitWinner() throws SQLException {
+			try {
+				Attempt<T> winningAttempt = winner.get();
+				stopAttemptsOtherThan(winningAttempt);
+				countHedgeWin(winningAttempt);
+				return new HedgedRead<>(winningAttempt.answer.join(), winningAttempt.lease);
+			} catch (ExecutionException e) {
+				stopAttemptsOtherThan(attempts.get(0));
+				throw rethrowUncheckedOrReturnSqlException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopAttemptsOtherThan(attempts.get(0));
+				attempts.get(0).cancel();
+				throw SqlDatabaseException
+						.withMessageAndException("Interrupted while waiting for hedged read.", e);
+			}
+		}
+
+		private void stopAttemptsOtherThan(Attempt<T> keptAttempt) {
+			for (Attempt<T> attempt : attempts) {
+				if (attempt != keptAttempt) {
+					attempt.cancel();
+					attempt.answer.whenComplete((result, error) -> attempt.lease.release());
+				}
+			}
+		}
+
+		private void countHedgeWin(Attempt<T> winningAttempt) {
+			if (winningAttempt != attempts.get(0)) {
+				hedgeWins.increment();
+			}
+		}
+
+		private SQLException rethrowUncheckedOrReturnSqlException(Throwable error) {
+			if (error instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (error instanceof Error seriousError) {
+				throw seriousError;
+			}
+			return (SQLException) error;
+		}
+	}
+
+	private static final class Attempt<T> {
+		private final ReplicaLease lease;
+		private final CompletableFuture<T> answer = new CompletableFuture<>();
+		private PreparedStatement statement;
+		private boolean cancelled = false;
+
+		private Attempt(ReplicaLease lease) {
+			this.lease = lease;
+		}
+
+		private void run(String sql, StatementReader<T> reader) {
+			try {
+				answer.complete(readUsingNewStatement(sql, reader));
+			} catch (Throwable e) {
+				answer.completeExceptionally(e);
+			}
+		}
+
+		private T readUsingNewStatement(String sql, StatementReader<T> reader)
+				throws SQLException {
+			try (PreparedStatement prepared = lease.getConnection().prepareStatement(sql)) {
+				throwErrorIfCancelledOrKeepStatement(prepared);
+				return reader.readUsingStatement(prepared);
+			}
+		}
+
+		private synchronized void throwErrorIfCancelledOrKeepStatement(PreparedStatement prepared)
+				throws SQLException {
+			if (cancelled) {
+				throw new SQLException("Hedged read was cancelled before it was started.");
+			}
+			statement = prepared;
+		}
+
+		private synchronized void cancel() {
+			cancelled = true;
+			if (statement != null) {
+				cancelStatement();
+			}
+		}
+
+		private void cancelStatement() {
+			try {
+				statement.cancel();
+			} catch (SQLException e) {
+				// the read is left to finish and its lease is released when it has
+			}
+		}
+	}
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import se.uu.ub.cora.logger.Logger;
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouter;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaSelection;
+
+/**
+ * ReplicaRouterImp implements {@link ReplicaRouter} using one {@link SqlConnectionProvider} per
+ * replica, so that each replica has a pool of its own. The number of connections in use is
+ * tracked per replica, for {@link ReplicaSelection#LEAST_LOADED}.
+ * <p>
+ * A replica is evicted when getting a connection to it fails or when a lease is released as
+ * failed. Evicted replicas are probed in a background thread, started using {@link #start()},
+ * and taken back into use when they return a valid connection.
+ * <p>
+ * The last read replay position of each replica is remembered. Leases for reads carrying a
+ * {@link ConsistencyToken} go to a healthy replica known to have caught up to the token if there
+ * is one. Otherwise is the replay position of each healthy replica read, and if none of them has
+ * caught up is the replica furthest ahead polled until it has, for at most the time set using
+ * {@link #setMaxCatchUpWait(Duration)}.
+ * <p>
+ * ReplicaRouterImp is threadsafe
+ */
+public final class ReplicaRouterImp implements ReplicaRouter, AutoCloseable {
+	private static final int PROBE_TIMEOUT_SECONDS = 2;
+	private static final String REPLAY_LSN_SQL = "select pg_last_wal_replay_lsn()";
+	private static final Duration DEFAULT_MAX_CATCH_UP_WAIT = Duration.ofMillis(500);
+	private static final Duration CATCH_UP_POLL_INTERVAL = Duration.ofMillis(10);
+	private Logger log = LoggerProvider.getLoggerForClass(ReplicaRouterImp.class);
+	private final List<Replica> replicas = new ArrayList<>();
+	private final ReplicaSelection selection;
+	private final Duration probeInterval;
+	private final AtomicInteger nextRoundRobinIndex = new AtomicInteger();
+	private volatile boolean running = true;
+	private volatile Duration maxCatchUpWait = DEFAULT_MAX_CATCH_UP_WAIT;
+	private Thread proberThread;
+
+	public static ReplicaRouterImp usingReplicaProvidersAndSelectionAndProbeInterval(
+			List<SqlConnectionProvider> replicaProviders, ReplicaSelection selection,
+			Duration probeInterval) {
+		return new ReplicaRouterImp(replicaProviders, selection, probeInterval);
+	}
+
+	private ReplicaRouterImp(List<SqlConnectionProvider> replicaProviders,
+			ReplicaSelection selection, Duration probeInterval) {
+		throwErrorIfNoReplicas(replicaProviders);
+		this.selection = selection;
+		this.probeInterval = probeInterval;
+		for (int i = 0; i < replicaProviders.size(); i++) {
+			replicas.add(new Replica(i, replicaProviders.get(i)));
+		}
+	}
+
+	private void throwErrorIfNoReplicas(List<SqlConnectionProvider> replicaProviders) {
+		if (replicaProviders.isEmpty()) {
+			throw SqlDatabaseException.withMessage("At least one replica must be provided.");
+		}
+	}
+
+	@Override
+	public Optional<ReplicaLease> leaseReplicaConnection() {
+		return leaseReplicaConnectionMatching(Replica::isHealthy);
+	}
+
+	@Override
+	public Optional<ReplicaLease> leaseAnotherReplicaConnection(ReplicaLease lease) {
+		Replica skippedReplica = getReplicaForLease(lease);
+		return leaseReplicaConnectionMatching(
+				replica -> replica != skippedReplica && replica.isHealthy());
+	}
+
+	private Replica getReplicaForLease(ReplicaLease lease) {
+		if (lease instanceof Lease leaseFromThisRouter) {
+			return leaseFromThisRouter.replica;
+		}
+		return null;
+	}
+
+	private Optional<ReplicaLease> leaseReplicaConnectionMatching(Predicate<Replica> usable) {
+		for (int attempt = 0; attempt < replicas.size(); attempt++) {
+			Optional<Replica> replica = selectReplicaMatching(usable);
+			if (replica.isEmpty()) {
+				return Optional.empty();
+			}
+			Optional<Lease> lease = tryToLeaseConnectionFromReplica(replica.get());
+			if (lease.isPresent()) {
+				return Optional.of(lease.get());
+			}
+		}
+		return Optional.empty();
+	}
+
+	private Optional<Replica> selectReplicaMatching(Predicate<Replica> usable) {
+		List<Replica> usableReplicas = getReplicasMatchingInSelectionOrder(usable);
+		if (usableReplicas.isEmpty()) {
+			return Optional.empty();
+		}
+		return Optional.of(usableReplicas.get(0));
+	}
+
+	private List<Replica> getReplicasMatchingInSelectionOrder(Predicate<Replica> usable) {
+		if (selection == ReplicaSelection.LEAST_LOADED) {
+			return replicas.stream().filter(usable)
+					.sorted(Comparator.comparingInt(Replica::getLoad)).toList();
+		}
+		return getReplicasMatchingInRoundRobinOrder(usable);
+	}
+
+	private List<Replica> getReplicasMatchingInRoundRobinOrder(Predicate<Replica> usable) {
+		List<Replica> usableReplicas = new ArrayList<>(replicas.size());
+		int start = Math.floorMod(nextRoundRobinIndex.getAndIncrement(), replicas.size());
+		for (int i = 0; i < replicas.size(); i++) {
+			Replica replica = replicas.get((start + i) % replicas.size());
+			if (usable.test(replica)) {
+				usableReplicas.add(replica);
+			}
+		}
+		return usableReplicas;
+	}
+
+	private Optional<Lease> tryToLeaseConnectionFromReplica(Replica replica) {
+		replica.load.incrementAndGet();
+		try {
+			Connection connection = replica.provider.getConnection();
+			return Optional.of(new Lease(replica, connection));
+		} catch (RuntimeException e) {
+			replica.load.decrementAndGet();
+			evictReplica(replica, e);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public Optional<ReplicaLease> leaseReplicaConnectionCaughtUpTo(ConsistencyToken token) {
+		long deadline = System.nanoTime() + maxCatchUpWait.toNanos();
+		Optional<ReplicaLease> knownCaughtUp = possiblyLeaseReplicaKnownToHaveCaughtUp(token);
+		if (knownCaughtUp.isPresent()) {
+			return knownCaughtUp;
+		}
+		Optional<Lease> furthestAhead = leaseReplicaFurthestAhead(token);
+		if (furthestAhead.isEmpty()) {
+			return Optional.empty();
+		}
+		return waitForLeasedReplicaToCatchUp(furthestAhead.get(), token, deadline);
+	}
+
+	private Optional<ReplicaLease> possiblyLeaseReplicaKnownToHaveCaughtUp(
+			ConsistencyToken token) {
+		Predicate<Replica> knownToHaveCaughtUp = replica -> replica.isHealthy()
+				&& replica.hasReplayedTo(token);
+		if (replicas.stream().noneMatch(knownToHaveCaughtUp)) {
+			return Optional.empty();
+		}
+		return leaseReplicaConnectionMatching(knownToHaveCaughtUp);
+	}
+
+	private Optional<Lease> leaseReplicaFurthestAhead(ConsistencyToken token) {
+		Lease furthestAhead = null;
+		for (Replica replica : getReplicasMatchingInSelectionOrder(Replica::isHealthy)) {
+			Optional<Lease> lease = tryToLeaseReplicaWithReadReplayPosition(replica);
+			if (lease.isPresent()) {
+				furthestAhead = keepLeaseFurthestAhead(furthestAhead, lease.get());
+				if (replica.hasReplayedTo(token)) {
+					return Optional.of(furthestAhead);
+				}
+			}
+		}
+		return Optional.ofNullable(furthestAhead);
+	}
+
+	private Optional<Lease> tryToLeaseReplicaWithReadReplayPosition(Replica replica) {
+		Optional<Lease> lease = tryToLeaseConnectionFromReplica(replica);
+		if (lease.isPresent()) {
+			return readReplayPositionOrReleaseAsFailed(lease.get());
+		}
+		return lease;
+	}
+
+	private Optional<Lease> readReplayPositionOrReleaseAsFailed(Lease lease) {
+		try {
+			readReplayPosition(lease);
+			return Optional.of(lease);
+		} catch (SQLException e) {
+			lease.releaseAsFailed(e);
+			return Optional.empty();
+		}
+	}
+
+	private Lease keepLeaseFurthestAhead(Lease furthestAhead, Lease lease) {
+		if (furthestAhead == null) {
+			return lease;
+		}
+		if (lease.replica.isFurtherAheadThan(furthestAhead.replica)) {
+			furthestAhead.release();
+			return lease;
+		}
+		lease.release();
+		return furthestAhead;
+	}
+
+	private Optional<ReplicaLease> waitForLeasedReplicaToCatchUp(Lease lease,
+			ConsistencyToken token, long deadline) {
+		try {
+			while (!lease.replica.hasReplayedTo(token)) {
+				if (System.nanoTime() - deadline >= 0) {
+					lease.release();
+					return Optional.empty();
+				}
+				Thread.sleep(CATCH_UP_POLL_INTERVAL);
+				readReplayPosition(lease);
+			}
+			return Optional.of(lease);
+		} catch (SQLException e) {
+			lease.releaseAsFailed(e);
+			return Optional.empty();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			lease.release();
+			return Optional.empty();
+		}
+	}
+
+	private void readReplayPosition(Lease lease) throws SQLException {
+		try (PreparedStatement statement = lease.getConnection().prepareStatement(REPLAY_LSN_SQL);
+				ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			String replayedLsn = resultSet.getString(1);
+			if (replayedLsn != null) {
+				lease.replica.moveReplayedTo(ConsistencyToken.fromLsn(replayedLsn));
+			}
+		}
+	}
+
+	private void evictReplica(Replica replica, Exception e) {
+		replica.replayed.set(null);
+		if (replica.healthy.compareAndSet(true, false)) {
+			log.logWarnUsingMessageAndException("Replica number " + replica.number
+					+ " is unhealthy, evicted until it answers a probe.", e);
+		}
+	}
+
+	@Override
+	public int getNumberOfHealthyReplicas() {
+		return (int) replicas.stream().filter(Replica::isHealthy).count();
+	}
+
+	/**
+	 * setMaxCatchUpWait sets the longest time to wait for a replica to catch up to a
+	 * {@link ConsistencyToken}, before the read is run on the primary instead. If not set is 500
+	 * milliseconds used.
+	 * 
+	 * @param maxCatchUpWait
+	 *            A Duration with the longest time to wait for a replica to catch up
+	 */
+	public void setMaxCatchUpWait(Duration maxCatchUpWait) {
+		this.maxCatchUpWait = maxCatchUpWait;
+	}
+
+	/**
+	 * start starts probing evicted replicas in a background thread, until {@link #close()} is
+	 * called.
+	 */
+	public synchronized void start() {
+		proberThread = Thread.ofVirtual().name("replica-health-prober")
+				.start(this::probeUntilClosed);
+	}
+
+	private void probeUntilClosed() {
+		while (running) {
+			waitForNextProbe();
+			probeEvictedReplicasOnce();
+		}
+	}
+
+	private void waitForNextProbe() {
+		try {
+			Thread.sleep(probeInterval);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+	}
+
+	void probeEvictedReplicasOnce() {
+		// package private for test reasons
+		for (Replica replica : replicas) {
+			if (!replica.isHealthy()) {
+				probeReplica(replica);
+			}
+		}
+	}
+
+	private void probeReplica(Replica replica) {
+		try (Connection connection = replica.provider.getConnection()) {
+			if (connection.isValid(PROBE_TIMEOUT_SECONDS)) {
+				replica.healthy.set(true);
+				log.logInfoUsingMessage(
+						"Replica number " + replica.number + " answered probe, back in use.");
+			}
+		} catch (Exception e) {
+			// the replica stays evicted until it answers
+		}
+	}
+
+	/**
+	 * close stops probing evicted replicas.
+	 */
+	@Override
+	public synchronized void close() {
+		running = false;
+		if (proberThread != null) {
+			proberThread.interrupt();
+		}
+	}
+
+	public ReplicaSelection onlyForTestGetSelection() {
+		return selection;
+	}
+
+	public Duration onlyForTestGetProbeInterval() {
+		return probeInterval;
+	}
+
+	public List<SqlConnectionProvider> onlyForTestGetReplicaProviders() {
+		return replicas.stream().map(replica -> replica.provider).toList();
+	}
+
+	public int onlyForTestGetLoadForReplica(int replicaNumber) {
+		return replicas.get(replicaNumber).getLoad();
+	}
+
+	public Duration onlyForTestGetMaxCatchUpWait() {
+		return maxCatchUpWait;
+	}
+
+	public Thread onlyForTestGetProberThread() {
+		return proberThread;
+	}
+
+	public boolean onlyForTestIsRunning() {
+		return running;
+	}
+
+	private static final class Replica {
+		private final int number;
+		private final SqlConnectionProvider provider;
+		private final AtomicInteger load = new AtomicInteger();
+		private final AtomicBoolean healthy = new AtomicBoolean(true);
+		private final AtomicReference<ConsistencyToken> replayed = new AtomicReference<>();
+
+		private Replica(int number, SqlConnectionProvider provider) {
+			this.number = number;
+			this.provider = provider;
+		}
+
+		private boolean isHealthy() {
+			return healthy.get();
+		}
+
+		private void moveReplayedTo(ConsistencyToken position) {
+			replayed.accumulateAndGet(position,
+					(previous, next) -> previous == null ? next : previous.latest(next));
+		}
+
+		private boolean hasReplayedTo(ConsistencyToken token) {
+			ConsistencyToken position = replayed.get();
+			return position != null && token.isReachedBy(position);
+		}
+
+		private boolean isFurtherAheadThan(Replica other) {
+			ConsistencyToken position = replayed.get();
+			ConsistencyToken otherPosition = other.replayed.get();
+			if (position == null) {
+				return false;
+			}
+			return otherPosition == null || !position.isReachedBy(otherPosition);
+		}
+
+		private int getLoad() {
+			return load.get();
+		}
+	}
+
+	private final class Lease implements ReplicaLease {
+		private final Replica replica;
+		private final Connection connection;
+		private final AtomicBoolean released = new AtomicBoolean(false);
+
+		private Lease(Replica replica, Connection connection) {
+			this.replica = replica;
+			this.connection = connection;
+		}
+
+		@Override
+		public Connection getConnection() {
+			return connection;
+		}
+
+		@Override
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				replica.load.decrementAndGet();
+				closeConnection();
+			}
+		}
+
+		private void closeConnection() {
+			try {
+				connection.close();
+			} catch (Exception e) {
+				// nothing more to do with a connection that can not be closed
+			}
+		}
+
+		@Override
+		public void releaseAsFailed(Exception cause) {
+			release();
+			evictReplica(replica, cause);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * The replica package contains interfaces for routing reads to read replicas of the primary
+ * database, so that read load can be spread over several database servers.
+ * <p>
+ * Replicas lag behind the primary. A {@link ConsistencyToken} captured after a commit makes later
+ * reads wait for a replica that has caught up, so that they see the committed writes.
+ * <p>
+ * A {@link ReadHedger} can send reads that are slow to answer to a second replica as well, to
+ * lower the tail latency caused by occasionally slow replicas.
+ * <p>
+ * Replicas are turned on using
+ * {@link se.uu.ub.cora.sqldatabase.SqlDatabaseFactoryImp#useReadReplicas(java.util.List, ReplicaSelection, java.time.Duration)}.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
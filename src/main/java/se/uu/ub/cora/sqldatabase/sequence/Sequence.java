@@ -1,5 +1,5 @@
 /*
- * Copyright 2025 Uppsala University Library
+ * Copyright 2025, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -66,6 +66,23 @@ public interface Sequence extends AutoCloseable {
 	 */
 	long getNextValueForSequence(String sequenceName);
 
+	/**
+	 * getNextValuesForSequence method retrieves the specified number of next values from the
+	 * sequence using one call to the database. The sequence name MUST be sent as a value to the
+	 * database, not as a part of the sql.
+	 * 
+	 * @param sequenceName
+	 *            the name of the sequence to get the next values from
+	 * @param count
+	 *            the number of values to get, if less than one is an empty array returned
+	 * 
+	 * @thows {@link SqlDatabaseException} if there is an error reading the next values, or if the
+	 *        sequence does not exist
+	 *
+	 * @return an array with the next values in the sequence
+	 */
+	long[] getNextValuesForSequence(String sequenceName, int count);
+
 	/**
 	 * resetSequenceValue method sets the current value of the sequence to the specified value. The
 	 * next call to getNextValueForSequence will return value + 1.
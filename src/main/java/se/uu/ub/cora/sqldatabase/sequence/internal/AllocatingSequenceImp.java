@@ -0,0 +1,90 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.sequence.internal;
+
+import se.uu.ub.cora.sqldatabase.sequence.Sequence;
+
+/**
+ * AllocatingSequenceImp is a {@link Sequence} that hands out next values from blocks of values
+ * reserved by a shared {@link SequenceBlockAllocator}, instead of calling the database for each
+ * value. All other methods are delegated to the wrapped Sequence.
+ * <p>
+ * As values are reserved in blocks, does {@link #getCurrentValueForSequence(String)} return the
+ * last value reserved in the database, not the last value handed out.
+ */
+public class AllocatingSequenceImp implements Sequence {
+
+	private Sequence sequence;
+	private SequenceBlockAllocator allocator;
+
+	public static AllocatingSequenceImp usingSequenceAndAllocator(Sequence sequence,
+			SequenceBlockAllocator allocator) {
+		return new AllocatingSequenceImp(sequence, allocator);
+	}
+
+	private AllocatingSequenceImp(Sequence sequence, SequenceBlockAllocator allocator) {
+		this.sequence = sequence;
+		this.allocator = allocator;
+	}
+
+	@Override
+	public void createSequence(String sequenceName, long startValue) {
+		sequence.createSequence(sequenceName, startValue);
+	}
+
+	@Override
+	public long getCurrentValueForSequence(String sequenceName) {
+		return sequence.getCurrentValueForSequence(sequenceName);
+	}
+
+	@Override
+	public long getNextValueForSequence(String sequenceName) {
+		return allocator.getNextValueForSequence(sequenceName);
+	}
+
+	@Override
+	public long[] getNextValuesForSequence(String sequenceName, int count) {
+		return sequence.getNextValuesForSequence(sequenceName, count);
+	}
+
+	@Override
+	public void updateSequenceValue(String sequenceName, long value) {
+		sequence.updateSequenceValue(sequenceName, value);
+		allocator.discardBlocksForSequence(sequenceName);
+	}
+
+	@Override
+	public void deleteSequence(String sequenceName) {
+		sequence.deleteSequence(sequenceName);
+		allocator.discardBlocksForSequence(sequenceName);
+	}
+
+	@Override
+	public void close() {
+		sequence.close();
+	}
+
+	public Sequence onlyForTestGetSequence() {
+		return sequence;
+	}
+
+	public SequenceBlockAllocator onlyForTestGetAllocator() {
+		return allocator;
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.sequence.internal;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.sequence.Sequence;
+
+/**
+ * SequenceBlockAllocator reserves blocks of values from database sequences and hands them out one
+ * at a time, so that only one call to the database is needed per block instead of one per value.
+ * <p>
+ * Blocks are reserved using {@link Sequence#getNextValuesForSequence(String, int)}. Values are
+ * handed out from the current block without locking. When half of the current block is
+ * used is the next block reserved in the background using the provided executor, so that it
+ * normally is ready when the current block is exhausted.
+ * <p>
+ * Values reserved in a block but never handed out are lost, which leaves gaps in the sequence.
+ * Values from different JVMs, or from blocks reserved at the same time, are not handed out in
+ * increasing order.
+ * <p>
+ * SequenceBlockAllocator is threadsafe and is intended to be shared by all Sequences created by
+ * one factory.
+ */
+public class SequenceBlockAllocator {
+	static final int DEFAULT_BLOCK_SIZE = 100;
+	private Supplier<DatabaseFacade> databaseFacadeSupplier;
+	private Executor executor;
+	private Map<String, Integer> blockSizes = new ConcurrentHashMap<>();
+	private Map<String, SequenceBlocks> blocksBySequence = new ConcurrentHashMap<>();
+
+	/**
+	 * usingDatabaseFacadeSupplierAndExecutor creates a new SequenceBlockAllocator
+	 * 
+	 * @param databaseFacadeSupplier
+	 *            A Supplier of DatabaseFacades used to reserve blocks, each supplied
+	 *            DatabaseFacade is closed after use
+	 * @param executor
+	 *            An Executor used to reserve blocks in the background
+	 * @return A new SequenceBlockAllocator
+	 */
+	public static SequenceBlockAllocator usingDatabaseFacadeSupplierAndExecutor(
+			Supplier<DatabaseFacade> databaseFacadeSupplier, Executor executor) {
+		return new SequenceBlockAllocator(databaseFacadeSupplier, executor);
+	}
+
+	private SequenceBlockAllocator(Supplier<DatabaseFacade> databaseFacadeSupplier,
+			Executor executor) {
+		this.databaseFacadeSupplier = databaseFacadeSupplier;
+		this.executor = executor;
+	}
+
+	/**
+	 * setBlockSizeForSequence sets the number of values to reserve in each block for the specified
+	 * sequence. Sequences without a set block size use {@value #DEFAULT_BLOCK_SIZE}. The new block
+	 * size is used from the next reserved block.
+	 * 
+	 * @param sequenceName
+	 *            A String with the name of the sequence
+	 * @param blockSize
+	 *            An int with the number of values to reserve in each block, must be positive
+	 */
+	public void setBlockSizeForSequence(String sequenceName, int blockSize) {
+		if (blockSize < 1) {
+			throw SqlDatabaseException.withMessage(
+					"Block size must be positive for sequence: " + sequenceName);
+		}
+		blockSizes.put(sequenceName, blockSize);
+	}
+
+	public long getNextValueForSequence(String sequenceName) {
+		return blocksBySequence.computeIfAbsent(sequenceName, SequenceBlocks::new).getNextValue();
+	}
+
+	/**
+	 * discardBlocksForSequence forgets all reserved values for the specified sequence, so that the
+	 * next value is taken from a new block. This is needed when the sequence is changed or removed
+	 * in the database.
+	 * 
+	 * @param sequenceName
+	 *            A String with the name of the sequence
+	 */
+	public void discardBlocksForSequence(String sequenceName) {
+		blocksBySequence.remove(sequenceName);
+	}
+
+	public int getBlockSizeForSequence(String sequenceName) {
+		return blockSizes.getOrDefault(sequenceName, DEFAULT_BLOCK_SIZE);
+	}
+
+	private record Block(long[] values, AtomicInteger nextPosition) {
+		int positionToStartReservingNextBlock() {
+			return values.length / 2;
+		}
+	}
+
+	private final class SequenceBlocks {
+		private final String sequenceName;
+		private final AtomicReference<Block> currentBlock = new AtomicReference<>(
+				new Block(new long[0], new AtomicInteger()));
+		private final AtomicReference<CompletableFuture<Block>> nextBlock = new AtomicReference<>();
+
+		SequenceBlocks(String sequenceName) {
+			this.sequenceName = sequenceName;
+		}
+
+		long getNextValue() {
+			while (true) {
+				Block block = currentBlock.get();
+				int position = block.nextPosition().getAndIncrement();
+				if (position < block.values().length) {
+					possiblyStartReservingNextBlock(block, position);
+					return block.values()[position];
+				}
+				replaceExhaustedBlock(block);
+			}
+		}
+
+		private void possiblyStartReservingNextBlock(Block block, int position) {
+			if (position == block.positionToStartReservingNextBlock()) {
+				startReservingNextBlockIfNotStarted();
+			}
+		}
+
+		private CompletableFuture<Block> startReservingNextBlockIfNotStarted() {
+			CompletableFuture<Block> reserving = new CompletableFuture<>();
+			if (nextBlock.compareAndSet(null, reserving)) {
+				executor.execute(() -> completeWithReservedBlock(reserving));
+				return reserving;
+			}
+			return nextBlock.get();
+		}
+
+		private void completeWithReservedBlock(CompletableFuture<Block> reserving) {
+			try {
+				reserving.complete(reserveBlock());
+			} catch (Exception e) {
+				reserving.completeExceptionally(e);
+			}
+		}
+
+		private Block reserveBlock() {
+			try (Sequence sequence = SequenceImp.usingDatabaseFacade(databaseFacadeSupplier.get())) {
+				long[] values = sequence.getNextValuesForSequence(sequenceName,
+						getBlockSizeForSequence(sequenceName));
+				throwErrorIfNoValuesReserved(values);
+				return new Block(values, new AtomicInteger());
+			}
+		}
+
+		private void throwErrorIfNoValuesReserved(long[] values) {
+			if (values.length == 0) {
+				throw SqlDatabaseException.withMessage("No values reserved");
+			}
+		}
+
+		private void replaceExhaustedBlock(Block exhaustedBlock) {
+			CompletableFuture<Block> reserving = startReservingNextBlockIfNotStarted();
+			Block reservedBlock = waitForReservedBlock(reserving);
+			if (currentBlock.compareAndSet(exhaustedBlock, reservedBlock)) {
+				nextBlock.compareAndSet(reserving, null);
+			}
+		}
+
+		private Block waitForReservedBlock(CompletableFuture<Block> reserving) {
+			try {
+				return reserving.join();
+			} catch (CompletionException e) {
+				nextBlock.compareAndSet(reserving, null);
+				throw SqlDatabaseException.withMessageAndException(
+						"Error reserving values for sequence: " + sequenceName,
+						(Exception) e.getCause());
+			}
+		}
+	}
+
+	public Supplier<DatabaseFacade> onlyForTestGetDatabaseFacadeSupplier() {
+		return databaseFacadeSupplier;
+	}
+
+	public Executor onlyForTestGetExecutor() {
+		return executor;
+	}
+}
@@ -26,6 +26,10 @@ import se.uu.ub.cora.sqldatabase.Row;
 import se.uu.ub.cora.sqldatabase.sequence.Sequence;
 
 public class SequenceImp implements Sequence {
+	private static final String NEXTVAL_SQL = "select nextval(?::regclass) as nextval";
+	private static final String NEXTVALS_SQL = "select nextval(?::regclass) as nextval"
+			+ " from generate_series(1, ?)";
+	private static final String LAST_VALUE_SQL = "select last_value from %s;";
 
 	private DatabaseFacade databaseFacade;
 
@@ -72,19 +76,40 @@ public class SequenceImp implements Sequence {
 
 	@Override
 	public long getNextValueForSequence(String sequenceName) {
-		String sql = String.format("select nextval('%s');", sequenceName);
-		return readOneRowAndColumnAsLongUsingSql(sql, "nextval");
+		return readOneRowAndColumnAsLongUsingSql(NEXTVAL_SQL, sequenceName, "nextval");
 	}
 
-	private long readOneRowAndColumnAsLongUsingSql(String sql, String column) {
-		Row row = databaseFacade.readOneRowOrFailUsingSqlAndValues(sql, Collections.emptyList());
+	@Override
+	public long[] getNextValuesForSequence(String sequenceName, int count) {
+		List<Row> rows = databaseFacade.readUsingSqlAndValues(NEXTVALS_SQL,
+				List.of(sequenceName, count));
+		return readNextvalFromRows(rows);
+	}
+
+	private long[] readNextvalFromRows(List<Row> rows) {
+		long[] values = new long[rows.size()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = (Long) rows.get(i).getValueByColumn("nextval");
+		}
+		return values;
+	}
+
+	private long readOneRowAndColumnAsLongUsingSql(String sql, String sequenceName,
+			String column) {
+		return readOneRowAndColumnAsLongUsingSqlAndValues(sql, List.of(sequenceName), column);
+	}
+
+	private long readOneRowAndColumnAsLongUsingSqlAndValues(String sql, List<Object> values,
+			String column) {
+		Row row = databaseFacade.readOneRowOrFailUsingSqlAndValues(sql, values);
 		return (Long) row.getValueByColumn(column);
 	}
 
 	@Override
 	public long getCurrentValueForSequence(String sequenceName) {
-		String sql = String.format("select last_value FROM %s;", sequenceName);
-		return readOneRowAndColumnAsLongUsingSql(sql, "last_value");
+		String sql = String.format(LAST_VALUE_SQL, sequenceName);
+		return readOneRowAndColumnAsLongUsingSqlAndValues(sql, Collections.emptyList(),
+				"last_value");
 	}
 
 	@Override
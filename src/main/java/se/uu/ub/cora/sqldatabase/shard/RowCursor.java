@@ -0,0 +1,43 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
+
+import java.util.Iterator;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+/**
+ * RowCursor is an Iterator over rows that are read while the cursor is used, so that large results
+ * can be handled without keeping all rows in memory.
+ * <p>
+ * If an exception occurs while reading rows MUST {@link #hasNext()} or {@link #next()} throw an
+ * {@link SqlDatabaseException}.
+ * <p>
+ * <em> RowCursor holds open database resources. Clients MUST use a try-with-resources block or
+ * manually call the {@link #close()} method to release them, also when not all rows are read.
+ * </em>
+ */
+public interface RowCursor extends Iterator<Row>, AutoCloseable {
+	/**
+	 * close stops all reading and releases the database resources held by the cursor.
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
+
+import java.util.List;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+
+/**
+ * ScatterGatherReader reads a {@link TableQuery} from all shards at once, for queries that have no
+ * shard key, such as listing queries. The query is run in parallel on all shards, each on its own
+ * connection, and the results are merged into one result, as if it was read from one database.
+ * <p>
+ * Implementations MUST merge the rows according to the order by columns of the query, and apply
+ * the from number and to number of the query to the merged rows. Memory used SHOULD be bounded by
+ * the page size of the query times the number of shards, independent of the from number.
+ * <p>
+ * If an exception occurs while reading from any of the shards MUST an {@link SqlDatabaseException}
+ * be thrown.
+ * <p>
+ * Implementations of ScatterGatherReader MUST be threadsafe.
+ */
+public interface ScatterGatherReader {
+	/**
+	 * openCursorForQuery starts reading the query from all shards and returns a cursor that merges
+	 * the rows from the shards as they are read.
+	 * <p>
+	 * Rows are merged by comparing the values of the order by columns, in Java natural order, with
+	 * null values last for ascending columns and first for descending columns, as in the database.
+	 * The order by columns MUST therefore be read by the query.
+	 * <p>
+	 * Java can not compare text in the same way as the collation of the database, so
+	 * implementations MUST order the order by columns of the table that have a collatable type
+	 * using the C collation on each shard, see
+	 * {@link TableQuery#assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(List)}, and merge
+	 * text values in code point order. Text order by columns MUST therefore be columns of the
+	 * table, not aliases of values read from json. The provided TableQuery MUST NOT be changed.
+	 * <p>
+	 * <em>Text is therefore NOT ordered as in the collation of the database, and the merged rows
+	 * can come in another order than when the same query is read from one database using
+	 * {@link se.uu.ub.cora.sqldatabase.table.TableFacade#readRowsForQuery(TableQuery)}. Text is
+	 * ordered by the code points of its characters, so for example all upper case letters A-Z
+	 * come before all lower case letters a-z, and letters outside of A-Z, such as ä, come after
+	 * them.</em>
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery to read from all shards
+	 * @return A RowCursor with the merged rows, that MUST be closed
+	 */
+	RowCursor openCursorForQuery(TableQuery tableQuery);
+
+	/**
+	 * readRowsForQuery reads the query from all shards in the same way as
+	 * {@link #openCursorForQuery(TableQuery)}, returning all merged rows at once. Text order by
+	 * columns are ordered in code point order, not in the collation of the database, see
+	 * {@link #openCursorForQuery(TableQuery)}.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery to read from all shards
+	 * @return A List with the merged rows
+	 */
+	List<Row> readRowsForQuery(TableQuery tableQuery);
+
+	/**
+	 * readNumberOfRows counts the rows matching the query on all shards in parallel and returns
+	 * the sum, with the from number and to number of the query applied to the sum.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery to count rows for on all shards
+	 * @return A long with the number of rows on all shards
+	 */
+	long readNumberOfRows(TableQuery tableQuery);
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
+
+import java.util.List;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+
+/**
+ * ShardedSqlDatabaseFactory is a factory interface that spreads rows over several databases,
+ * shards, each reached through its own {@link SqlDatabaseFactory}. Which shard a row belongs to is
+ * decided by hashing the values of a configured list of shard key columns, such as record type and
+ * id.
+ * <p>
+ * Implementations MUST place shards on a consistent hashing ring, so that adding a shard only
+ * moves the rows that hash to the new shard, and all other rows stay on the shard they were on.
+ * <p>
+ * Implementations of ShardedSqlDatabaseFactory MUST be threadsafe.
+ */
+public interface ShardedSqlDatabaseFactory {
+	/**
+	 * factorTableQuery creates and returns a new instance of TableQuery for the named table, in the
+	 * same way as {@link SqlDatabaseFactory#factorTableQuery(String)}. The returned TableQuery is
+	 * not bound to any shard.
+	 * 
+	 * @param tableName
+	 *            A String with the name of the table to create a TableQuery for
+	 * @return A new TableQuery for the table
+	 */
+	TableQuery factorTableQuery(String tableName);
+
+	/**
+	 * factorTableFacadeForQuery creates and returns a new instance of TableFacade connected to the
+	 * shard that owns the row the tableQuery is about. The shard key values MUST be read from the
+	 * tableQuery using {@link TableQuery#getConditionOrParameterValue(String)}, in the order the
+	 * shard key columns are configured.
+	 * <p>
+	 * If the tableQuery is missing a value for any of the shard key columns MUST an
+	 * {@link SqlDatabaseException} be thrown, before any shard is contacted, as the query can not be
+	 * sent to a single shard.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with values for all shard key columns
+	 * @return A new TableFacade for the shard that owns the queried row
+	 */
+	TableFacade factorTableFacadeForQuery(TableQuery tableQuery);
+
+	/**
+	 * factorTableFacadeForShardKey creates and returns a new instance of TableFacade connected to
+	 * the shard that owns rows with the given shard key values. This is useful to run several
+	 * queries for the same key, such as a record and its links, in one transaction.
+	 * <p>
+	 * If the number of values differ from the number of shard key columns MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param shardKeyValues
+	 *            A List with one value for each shard key column, in the configured order
+	 * @return A new TableFacade for the shard that owns the shard key
+	 */
+	TableFacade factorTableFacadeForShardKey(List<Object> shardKeyValues);
+
+	/**
+	 * factorScatterGatherReader creates and returns a new instance of ScatterGatherReader that
+	 * reads from all shards that exist when it is created. This is used for queries that have no
+	 * shard key, and therefore can not be sent to one shard.
+	 * 
+	 * @return A new ScatterGatherReader for all current shards
+	 */
+	ScatterGatherReader factorScatterGatherReader();
+
+	/**
+	 * getShardNameForShardKey returns the name of the shard that owns rows with the given shard key
+	 * values, so that rows can be moved to their new shard when shards are added.
+	 * <p>
+	 * If the number of values differ from the number of shard key columns MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param shardKeyValues
+	 *            A List with one value for each shard key column, in the configured order
+	 * @return A String with the name of the shard that owns the shard key
+	 */
+	String getShardNameForShardKey(List<Object> shardKeyValues);
+
+	/**
+	 * addShard adds a new shard to the ring. Once added, rows whose shard key hash to the new shard
+	 * are expected to be found in it, so the rows MUST be moved to the new shard by the caller.
+	 * <p>
+	 * If a shard with the same name already exists MUST an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param shardName
+	 *            A String with a name for the shard that is unique and stable over time, as the
+	 *            placement of the shard on the ring is calculated from it
+	 * @param shard
+	 *            A SqlDatabaseFactory that connects to the database of the shard
+	 */
+	void addShard(String shardName, SqlDatabaseFactory shard);
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.shard.internal.ConsistentHashRing;
+import se.uu.ub.cora.sqldatabase.shard.internal.ScatterGatherReaderImp;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
+
+/**
+ * ShardedSqlDatabaseFactoryImp implements {@link ShardedSqlDatabaseFactory}. To get an instance of
+ * this class use {@link #usingShardsAndShardKeyColumns(Map, List)}, with one
+ * {@link SqlDatabaseFactory} per shard, normally a
+ * {@link se.uu.ub.cora.sqldatabase.SqlDatabaseFactoryImp}, and the columns that together form the
+ * shard key.
+ * <p>
+ * Shard key values are hashed using their text form, so the value 12 and the value "12" belong to
+ * the same shard.
+ */
+public class ShardedSqlDatabaseFactoryImp implements ShardedSqlDatabaseFactory {
+	private static final int VIRTUAL_NODES_PER_SHARD = 160;
+	private static final String SHARD_KEY_VALUE_SEPARATOR = "\u0000";
+	private final List<String> shardKeyColumns;
+	private volatile ConsistentHashRing<SqlDatabaseFactory> ring;
+
+	/**
+	 * usingShardsAndShardKeyColumns creates a new instance of ShardedSqlDatabaseFactoryImp
+	 * 
+	 * @param shards
+	 *            A Map with a stable and unique name for each shard, and the SqlDatabaseFactory to
+	 *            use for that shard
+	 * @param shardKeyColumns
+	 *            A List with the names of the columns that form the shard key, such as type and id
+	 * @return A new ShardedSqlDatabaseFactoryImp
+	 */
+	public static ShardedSqlDatabaseFactoryImp usingShardsAndShardKeyColumns(
+			Map<String, SqlDatabaseFactory> shards, List<String> shardKeyColumns) {
+		throwErrorIfEmpty(shards.isEmpty(), "At least one shard must be provided.");
+		throwErrorIfEmpty(shardKeyColumns.isEmpty(),
+				"At least one shard key column must be provided.");
+		return new ShardedSqlDatabaseFactoryImp(shards, shardKeyColumns);
+	}
+
+	private static void throwErrorIfEmpty(boolean empty, String message) {
+		if (empty) {
+			throw SqlDatabaseException.withMessage(message);
+		}
+	}
+
+	private ShardedSqlDatabaseFactoryImp(Map<String, SqlDatabaseFactory> shards,
+			List<String> shardKeyColumns) {
+		this.shardKeyColumns = List.copyOf(shardKeyColumns);
+		ring = ConsistentHashRing.usingNodesAndVirtualNodesPerNode(shards,
+				VIRTUAL_NODES_PER_SHARD);
+	}
+
+	@Override
+	public TableQuery factorTableQuery(String tableName) {
+		return TableQueryImp.usingTableName(tableName);
+	}
+
+	@Override
+	public TableFacade factorTableFacadeForQuery(TableQuery tableQuery) {
+		return factorTableFacadeForShardKey(readShardKeyValuesFromQuery(tableQuery));
+	}
+
+	private List<Object> readShardKeyValuesFromQuery(TableQuery tableQuery) {
+		List<Object> shardKeyValues = new ArrayList<>();
+		for (String column : shardKeyColumns) {
+			shardKeyValues.add(readShardKeyValueFromQuery(tableQuery, column));
+		}
+		return shardKeyValues;
+	}
+
+	private Object readShardKeyValueFromQuery(TableQuery tableQuery, String column) {
+		return tableQuery.getConditionOrParameterValue(column)
+				.orElseThrow(() -> SqlDatabaseException.withMessage("No shard key value for column "
+						+ column + " in query for table " + tableQuery.getTableName() + "."));
+	}
+
+	private String createShardKey(List<Object> shardKeyValues) {
+		return shardKeyValues.stream().map(String::valueOf)
+				.collect(Collectors.joining(SHARD_KEY_VALUE_SEPARATOR));
+	}
+
+	@Override
+	public TableFacade factorTableFacadeForShardKey(List<Object> shardKeyValues) {
+		throwErrorIfWrongNumberOfShardKeyValues(shardKeyValues);
+		return ring.getNodeForKey(createShardKey(shardKeyValues)).factorTableFacade();
+	}
+
+	private void throwErrorIfWrongNumberOfShardKeyValues(List<Object> shardKeyValues) {
+		if (shardKeyValues.size() != shardKeyColumns.size()) {
+			throw SqlDatabaseException.withMessage("Expected " + shardKeyColumns.size()
+					+ " shard key values but got " + shardKeyValues.size() + ".");
+		}
+	}
+
+	@Override
+	public ScatterGatherReader factorScatterGatherReader() {
+		return ScatterGatherReaderImp.usingShards(ring.getNodes());
+	}
+
+	@Override
+	public String getShardNameForShardKey(List<Object> shardKeyValues) {
+		throwErrorIfWrongNumberOfShardKeyValues(shardKeyValues);
+		return ring.getNodeNameForKey(createShardKey(shardKeyValues));
+	}
+
+	@Override
+	public synchronized void addShard(String shardName, SqlDatabaseFactory shard) {
+		if (ring.hasNode(shardName)) {
+			throw SqlDatabaseException.withMessage("Shard already exists: " + shardName);
+		}
+		ring = ring.withNode(shardName, shard);
+	}
+
+	public List<String> onlyForTestGetShardKeyColumns() {
+		return shardKeyColumns;
+	}
+
+	public Map<String, SqlDatabaseFactory> onlyForTestGetShards() {
+		return ring.getNodes();
+	}
+
+	public int onlyForTestGetVirtualNodesPerShard() {
+		return ring.onlyForTestGetVirtualNodesPerNode();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+/**
+ * ConsistentHashRing places named nodes on a ring of hash values, each node at a number of
+ * virtual points, and finds the node for a key by walking clockwise from the hash of the key to
+ * the next point. Adding a node only moves the keys that land just before its points, all other
+ * keys keep their node.
+ * <p>
+ * Hashes are calculated using MD5 of the names, so that the ring is the same between restarts
+ * and between JVMs.
+ * <p>
+ * ConsistentHashRing is immutable, adding a node returns a new ring.
+ */
+public final class ConsistentHashRing<T> {
+	private final int virtualNodesPerNode;
+	private final Map<String, T> nodes;
+	private final NavigableMap<Long, String> points = new TreeMap<>();
+
+	public static <T> ConsistentHashRing<T> usingNodesAndVirtualNodesPerNode(Map<String, T> nodes,
+			int virtualNodesPerNode) {
+		return new ConsistentHashRing<>(nodes, virtualNodesPerNode);
+	}
+
+	private ConsistentHashRing(Map<String, T> nodes, int virtualNodesPerNode) {
+		this.virtualNodesPerNode = virtualNodesPerNode;
+		this.nodes = Collections.unmodifiableMap(new LinkedHashMap<>(nodes));
+		nodes.keySet().forEach(this::addPointsForNode);
+	}
+
+	private void addPointsForNode(String nodeName) {
+		for (int i = 0; i < virtualNodesPerNode; i++) {
+			points.put(hash(nodeName + "#" + i), nodeName);
+		}
+	}
+
+	public ConsistentHashRing<T> withNode(String nodeName, T node) {
+		Map<String, T> nodesIncludingNew = new LinkedHashMap<>(nodes);
+		nodesIncludingNew.put(nodeName, node);
+		return new ConsistentHashRing<>(nodesIncludingNew, virtualNodesPerNode);
+	}
+
+	public boolean hasNode(String nodeName) {
+		return nodes.containsKey(nodeName);
+	}
+
+	public Map<String, T> getNodes() {
+		return nodes;
+	}
+
+	public String getNodeNameForKey(String key) {
+		Entry<Long, String> point = points.ceilingEntry(hash(key));
+		if (point == null) {
+			point = points.firstEntry();
+		}
+		return point.getValue();
+	}
+
+	public T getNodeForKey(String key) {
+		return nodes.get(getNodeNameForKey(key));
+	}
+
+	static long hash(String text) {
+		// package private for test reasons
+		byte[] digest = getMd5Digest().digest(text.getBytes(StandardCharsets.UTF_8));
+		return ByteBuffer.wrap(digest).getLong();
+	}
+
+	private static MessageDigest getMd5Digest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw SqlDatabaseException.withMessageAndException("MD5 is not available.", e);
+		}
+	}
+
+	public int onlyForTestGetVirtualNodesPerNode() {
+		return virtualNodesPerNode;
+	}
+}
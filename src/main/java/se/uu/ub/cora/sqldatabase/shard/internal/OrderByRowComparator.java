@@ -0,0 +1,101 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import java.util.Comparator;
+import java.util.List;
+
+import se.uu.ub.cora.sqldatabase.DatabaseValues;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.table.OrderByColumn;
+
+/**
+ * OrderByRowComparator compares rows in the same way as the database orders them for a list of
+ * order by columns, so that rows already ordered by several databases can be merged. Null values
+ * are sorted last for ascending columns and first for descending columns, as in the database.
+ * <p>
+ * Strings are compared in code point order, the order of the C collation, and not in the UTF-16
+ * order of {@link String#compareTo(String)}, which differs for characters outside the basic
+ * multilingual plane. Text columns must therefore be ordered using the C collation in the
+ * database.
+ */
+final class OrderByRowComparator implements Comparator<Row> {
+	private static final Comparator<Object> NULLS_LAST = Comparator
+			.nullsLast(OrderByRowComparator::compareValues);
+	private final List<OrderByColumn> orderByColumns;
+
+	OrderByRowComparator(List<OrderByColumn> orderByColumns) {
+		this.orderByColumns = orderByColumns;
+	}
+
+	@Override
+	public int compare(Row row, Row otherRow) {
+		for (OrderByColumn orderByColumn : orderByColumns) {
+			int comparison = compareColumn(orderByColumn, row, otherRow);
+			if (comparison != 0) {
+				return comparison;
+			}
+		}
+		return 0;
+	}
+
+	private int compareColumn(OrderByColumn orderByColumn, Row row, Row otherRow) {
+		String column = orderByColumn.column();
+		int comparison = NULLS_LAST.compare(readComparableValue(row, column),
+				readComparableValue(otherRow, column));
+		return orderByColumn.ascending() ? comparison : -comparison;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compareValues(Object value, Object otherValue) {
+		if (value instanceof String text && otherValue instanceof String otherText) {
+			return compareInCodePointOrder(text, otherText);
+		}
+		return ((Comparable<Object>) value).compareTo(otherValue);
+	}
+
+	private static int compareInCodePointOrder(String text, String otherText) {
+		int index = 0;
+		int otherIndex = 0;
+		while (index < text.length() && otherIndex < otherText.length()) {
+			int codePoint = text.codePointAt(index);
+			int otherCodePoint = otherText.codePointAt(otherIndex);
+			if (codePoint != otherCodePoint) {
+				return Integer.compare(codePoint, otherCodePoint);
+			}
+			index += Character.charCount(codePoint);
+			otherIndex += Character.charCount(otherCodePoint);
+		}
+		return Integer.compare(text.length() - index, otherText.length() - otherIndex);
+	}
+
+	private Object readComparableValue(Row row, String column) {
+		Object value = row.getValueByColumn(column);
+		if (value == DatabaseValues.NULL) {
+			return null;
+		}
+		if (!(value instanceof Comparable)) {
+			throw SqlDatabaseException.withMessage(
+					"Rows can not be merged on column " + column + " as its values can not be "
+							+ "compared.");
+		}
+		return value;
+	}
+}
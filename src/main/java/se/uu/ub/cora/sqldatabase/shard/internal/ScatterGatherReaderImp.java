@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.shard.RowCursor;
+import se.uu.ub.cora.sqldatabase.shard.ScatterGatherReader;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+
+public final class ScatterGatherReaderImp implements ScatterGatherReader {
+	private static final String COUNT_COLUMN_NAME = "count";
+	private static final String COLUMN_NAME_COLUMN_NAME = "column_name";
+	private static final int DEFAULT_PAGE_SIZE = 100;
+	private static final int MAX_PAGE_SIZE = 1000;
+	private final Map<String, SqlDatabaseFactory> shards;
+	private final Map<String, List<String>> collatableColumnsBySql = new ConcurrentHashMap<>();
+
+	public static ScatterGatherReaderImp usingShards(Map<String, SqlDatabaseFactory> shards) {
+		return new ScatterGatherReaderImp(shards);
+	}
+
+	private ScatterGatherReaderImp(Map<String, SqlDatabaseFactory> shards) {
+		this.shards = new LinkedHashMap<>(shards);
+	}
+
+	@Override
+	public RowCursor openCursorForQuery(TableQuery tableQuery) {
+		String sql = assembleReadSqlForShards(tableQuery);
+		return new ShardMergingCursor(shards, tableQuery, sql, calculatePageSize(tableQuery));
+	}
+
+	private String assembleReadSqlForShards(TableQuery tableQuery) {
+		if (tableQuery.getOrderByColumns().isEmpty()) {
+			return tableQuery.assembleReadWithoutOffsetSql();
+		}
+		return tableQuery.assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(
+				readCollatableColumns(tableQuery));
+	}
+
+	private List<String> readCollatableColumns(TableQuery tableQuery) {
+		String sql = tableQuery.assembleCollatableColumnsSql();
+		return collatableColumnsBySql.computeIfAbsent(sql,
+				this::readCollatableColumnsFromFirstShard);
+	}
+
+	private List<String> readCollatableColumnsFromFirstShard(String sql) {
+		SqlDatabaseFactory firstShard = shards.values().iterator().next();
+		try (DatabaseFacade databaseFacade = firstShard.factorDatabaseFacade()) {
+			List<Row> rows = databaseFacade.readUsingSqlAndValues(sql, Collections.emptyList());
+			return getColumnNamesFromRows(rows);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error reading collatable columns using sql: " + sql, e);
+		}
+	}
+
+	private List<String> getColumnNamesFromRows(List<Row> rows) {
+		List<String> columnNames = new ArrayList<>(rows.size());
+		for (Row row : rows) {
+			columnNames.add((String) row.getValueByColumn(COLUMN_NAME_COLUMN_NAME));
+		}
+		return columnNames;
+	}
+
+	int calculatePageSize(TableQuery tableQuery) {
+		// package private for test reasons
+		if (tableQuery.getToNo().isEmpty()) {
+			return DEFAULT_PAGE_SIZE;
+		}
+		long fromNo = tableQuery.getFromNo().orElse(1L);
+		long pageSize = tableQuery.getToNo().get() - fromNo + 1;
+		return Math.clamp(pageSize, 1, MAX_PAGE_SIZE);
+	}
+
+	@Override
+	public List<Row> readRowsForQuery(TableQuery tableQuery) {
+		List<Row> rows = new ArrayList<>();
+		try (RowCursor cursor = openCursorForQuery(tableQuery)) {
+			cursor.forEachRemaining(rows::add);
+		}
+		return rows;
+	}
+
+	@Override
+	public long readNumberOfRows(TableQuery tableQuery) {
+		String sql = tableQuery.assembleCountWithoutOffsetSql();
+		List<Object> values = tableQuery.getQueryValues();
+		long numberOfRowsOnAllShards = readAndSumCountsFromAllShards(sql, values);
+		return applyFromNoAndToNo(tableQuery, numberOfRowsOnAllShards);
+	}
+
+	private long readAndSumCountsFromAllShards(String sql, List<Object> values) {
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			Map<String, Future<Long>> counts = new LinkedHashMap<>();
+			for (Entry<String, SqlDatabaseFactory> shard : shards.entrySet()) {
+				counts.put(shard.getKey(),
+						executor.submit(() -> readCountFromShard(shard.getValue(), sql, values)));
+			}
+			return sumCounts(counts);
+		}
+	}
+
+	private long readCountFromShard(SqlDatabaseFactory shard, String sql, List<Object> values) {
+		try (DatabaseFacade databaseFacade = shard.factorDatabaseFacade()) {
+			Row count = databaseFacade.readOneRowOrFailUsingSqlAndValues(sql, values);
+			return (long) count.getValueByColumn(COUNT_COLUMN_NAME);
+		}
+	}
+
+	private long sumCounts(Map<String, Future<Long>> counts) {
+		long sum = 0;
+		for (Entry<String, Future<Long>> count : counts.entrySet()) {
+			sum += getCountFromShard(count.getKey(), count.getValue());
+		}
+		return sum;
+	}
+
+	private long getCountFromShard(String shardName, Future<Long> count) {
+		try {
+			return count.get();
+		} catch (ExecutionException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error reading number of rows from shard: " + shardName, getCauseOf(e));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw SqlDatabaseException.withMessageAndException(
+					"Interrupted while reading number of rows from shard: " + shardName, e);
+		}
+	}
+
+	private Exception getCauseOf(ExecutionException e) {
+		if (e.getCause() instanceof Exception cause) {
+			return cause;
+		}
+		return e;
+	}
+
+	private long applyFromNoAndToNo(TableQuery tableQuery, long numberOfRows) {
+		long upToToNo = tableQuery.getToNo().map(toNo -> Math.min(toNo, numberOfRows))
+				.orElse(numberOfRows);
+		long rowsBeforeFromNo = tableQuery.getFromNo().map(fromNo -> fromNo - 1).orElse(0L);
+		return Math.max(upToToNo - rowsBeforeFromNo, 0);
+	}
+
+	public Map<String, SqlDatabaseFactory> onlyForTestGetShards() {
+		return shards;
+	}
+}
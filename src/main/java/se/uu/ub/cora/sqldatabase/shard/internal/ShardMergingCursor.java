@@ -0,0 +1,189 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.shard.RowCursor;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+
+/**
+ * ShardMergingCursor reads a query from all shards, each on its own virtual thread and database
+ * connection, and does a k-way merge of the ordered rows from the shards. Each shard hands its rows
+ * over through a queue holding at most one page of rows, so the reading from a shard waits while
+ * its rows are not yet needed by the merge.
+ * <p>
+ * The from number of the query is applied by skipping rows in the merge, and the to number by
+ * stopping the merge, as the sql sent to each shard starts from the first row.
+ */
+final class ShardMergingCursor implements RowCursor {
+	private static final Object END_OF_ROWS = new Object();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final List<ShardStream> shardStreams = new ArrayList<>();
+	private final PriorityQueue<ShardHead> heads;
+	private final int pageSize;
+	private long rowsToSkip;
+	private long rowsLeft;
+	private boolean started = false;
+
+	ShardMergingCursor(Map<String, SqlDatabaseFactory> shards, TableQuery tableQuery, String sql,
+			int pageSize) {
+		this.pageSize = pageSize;
+		heads = new PriorityQueue<>(createHeadComparator(tableQuery));
+		rowsToSkip = tableQuery.getFromNo().map(fromNo -> fromNo - 1).orElse(0L);
+		rowsLeft = tableQuery.getToNo().map(toNo -> Math.max(toNo - rowsToSkip, 0))
+				.orElse(Long.MAX_VALUE);
+		startReadingFromShards(shards, sql, tableQuery.getQueryValues());
+	}
+
+	private Comparator<ShardHead> createHeadComparator(TableQuery tableQuery) {
+		Comparator<Row> rowComparator = new OrderByRowComparator(tableQuery.getOrderByColumns());
+		return Comparator.comparing(ShardHead::row, rowComparator)
+				.thenComparingInt(head -> head.shardStream().position);
+	}
+
+	private void startReadingFromShards(Map<String, SqlDatabaseFactory> shards, String sql,
+			List<Object> values) {
+		for (Entry<String, SqlDatabaseFactory> shard : shards.entrySet()) {
+			ShardStream shardStream = new ShardStream(shardStreams.size(), shard.getKey(),
+					shard.getValue(), pageSize);
+			shardStreams.add(shardStream);
+			executor.execute(() -> shardStream.readShard(sql, values));
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		startMergeIfNotStarted();
+		return rowsLeft > 0 && !heads.isEmpty();
+	}
+
+	private void startMergeIfNotStarted() {
+		if (!started) {
+			started = true;
+			shardStreams.forEach(this::takeNextHeadFromShard);
+			skipRowsBeforeFromNo();
+		}
+	}
+
+	private void skipRowsBeforeFromNo() {
+		while (rowsToSkip > 0 && !heads.isEmpty()) {
+			takeNextHeadFromShard(heads.poll().shardStream());
+			rowsToSkip--;
+		}
+	}
+
+	private void takeNextHeadFromShard(ShardStream shardStream) {
+		Object item = shardStream.take();
+		if (item instanceof Row row) {
+			heads.add(new ShardHead(row, shardStream));
+		} else if (item instanceof RuntimeException e) {
+			close();
+			throw SqlDatabaseException
+					.withMessageAndException("Error reading from shard: " + shardStream.name, e);
+		}
+	}
+
+	@Override
+	public Row next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		ShardHead head = heads.poll();
+		takeNextHeadFromShard(head.shardStream());
+		rowsLeft--;
+		return head.row();
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	public int onlyForTestGetNumberOfShardStreams() {
+		return shardStreams.size();
+	}
+
+	public int onlyForTestGetPageSize() {
+		return pageSize;
+	}
+
+	private record ShardHead(Row row, ShardStream shardStream) {
+	}
+
+	private static final class ShardStream {
+		private final int position;
+		private final String name;
+		private final SqlDatabaseFactory shard;
+		private final int pageSize;
+		private final BlockingQueue<Object> rows;
+
+		ShardStream(int position, String name, SqlDatabaseFactory shard, int pageSize) {
+			this.position = position;
+			this.name = name;
+			this.shard = shard;
+			this.pageSize = pageSize;
+			rows = new ArrayBlockingQueue<>(pageSize);
+		}
+
+		void readShard(String sql, List<Object> values) {
+			try (DatabaseFacade databaseFacade = shard.factorDatabaseFacade()) {
+				databaseFacade.readUsingSqlAndValuesRowByRow(sql, values, pageSize, this::put);
+			} catch (RuntimeException e) {
+				put(e);
+				return;
+			}
+			put(END_OF_ROWS);
+		}
+
+		private boolean put(Object item) {
+			try {
+				rows.put(item);
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		Object take() {
+			try {
+				return rows.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw SqlDatabaseException
+						.withMessageAndException("Interrupted while reading from shard: " + name, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,14 @@
+/**
+ * The shard package contains interfaces for spreading rows over several databases, shards, by
+ * hashing a shard key such as record type and id.
+ * <p>
+ * Shards are placed on a consistent hashing ring so that more shards can be added later, while
+ * moving as few rows as possible.
+ * <p>
+ * Queries without a shard key are read from all shards at once using a
+ * {@link ScatterGatherReader}, that merges the rows from the shards into one result.
+ * <p>
+ * A sharded factory is created using
+ * {@link ShardedSqlDatabaseFactoryImp#usingShardsAndShardKeyColumns(java.util.Map, java.util.List)}.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
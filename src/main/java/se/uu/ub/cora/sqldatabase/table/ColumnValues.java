@@ -0,0 +1,37 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table;
+
+import java.util.List;
+
+/**
+ * ColumnValues holds the values for one column in a bulk update, see
+ * {@link TableFacade#updateRowsUsingColumnValues(TableQuery, ColumnValues, List)}. The values for
+ * the different columns in a bulk update are parallel lists, the value at a position in each list
+ * belongs to the same row.
+ * 
+ * @param column
+ *            A String with the name of the column
+ * @param sqlType
+ *            A String with the sql type of the column, such as bigint, text or timestamp
+ * @param values
+ *            A List with the values for the column, one for each row to update
+ */
+public record ColumnValues(String column, String sqlType, List<?> values) {
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table;
+
+/**
+ * OrderByColumn holds one order by column added to a {@link TableQuery}, see
+ * {@link TableQuery#getOrderByColumns()}.
+ * 
+ * @param column
+ *            A String with the name of the column to order by
+ * @param ascending
+ *            A boolean, true if the order is ascending, false if it is descending
+ */
+public record OrderByColumn(String column, boolean ascending) {
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+/**
+ * RowLoader loads single rows from one table by key, collecting the keys requested and reading all
+ * of them using one query, instead of making one query for each key.
+ * <p>
+ * Keys are collected until {@link #dispatch()} is called, or, if a batch window is set using
+ * {@link #setBatchWindow(Duration)}, until the window after the first collected key has passed.
+ * <p>
+ * Implementations of RowLoader MUST be threadsafe.
+ */
+public interface RowLoader {
+
+	/**
+	 * loadRowByKey collects a key to read in the next dispatch and returns a future that is
+	 * completed when the key has been read. Keys are compared as text, so the same key MUST be
+	 * read only once per dispatch no matter how many times it is requested.
+	 * <p>
+	 * The future MUST be completed with an empty Optional if no row exists for the key, and
+	 * completed exceptionally with an {@link SqlDatabaseException} if the read fails.
+	 * 
+	 * @param key
+	 *            An Object with the key to read the row for
+	 * @return A CompletableFuture with an Optional with the row for the key
+	 */
+	CompletableFuture<Optional<Row>> loadRowByKey(Object key);
+
+	/**
+	 * dispatch reads all collected keys using one query and completes their futures. Keys collected
+	 * while the query is running are read in the next dispatch.
+	 */
+	void dispatch();
+
+	/**
+	 * setBatchWindow makes the RowLoader dispatch collected keys automatically, the specified
+	 * window after the first key in a batch was collected. The window is only used for batches
+	 * started after the call.
+	 * 
+	 * @param window
+	 *            A Duration with how long to collect keys before dispatching them
+	 */
+	void setBatchWindow(Duration window);
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table;
+
+import java.util.List;
+
+import se.uu.ub.cora.sqldatabase.Row;
+
+/**
+ * RowsAndTotalNumberOfRows holds the rows read for a {@link TableQuery} together with the total
+ * number of rows that match the conditions of the query, regardless of the fromNo and toNo set in
+ * the query.
+ * 
+ * @param rows
+ *            A List of Rows with the rows read for the query
+ * @param totalNumberOfRows
+ *            A long with the total number of rows matching the conditions of the query
+ */
+public record RowsAndTotalNumberOfRows(List<Row> rows, long totalNumberOfRows) {
+}
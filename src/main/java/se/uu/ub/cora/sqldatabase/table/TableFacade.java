@@ -1,5 +1,5 @@
 /*
- * Copyright 2018, 2021 Uppsala University Library
+ * Copyright 2018, 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,6 +21,9 @@ package se.uu.ub.cora.sqldatabase.table;
 
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import se.uu.ub.cora.sqldatabase.DatabaseFacade;
 import se.uu.ub.cora.sqldatabase.Row;
@@ -28,6 +31,8 @@ import se.uu.ub.cora.sqldatabase.SqlConflictException;
 import se.uu.ub.cora.sqldatabase.SqlDataException;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
 import se.uu.ub.cora.sqldatabase.SqlNotFoundException;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 
 /**
  * TableFacade interacts with data from a sql database without the need to write sql statements.
@@ -55,6 +60,129 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	void insertRowUsingQuery(TableQuery tableQuery);
 
+	/**
+	 * insertRowUsingQueryReturningRow creates a new row in database according to the specified
+	 * TableQuery in the same way as {@link #insertRowUsingQuery(TableQuery)}, and returns the
+	 * returning columns from the TableQuery for the created row, or all columns if no returning
+	 * columns are set. The insert and return of the row MUST be done using only one call to the
+	 * database.
+	 * <p>
+	 * If an execution finds a duplicate key a {@link SqlConflictException} MUST be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, parameters and values to add to the database and
+	 *            optionally the columns to return
+	 * @return A Row with the returning columns for the created row
+	 */
+	Row insertRowUsingQueryReturningRow(TableQuery tableQuery);
+
+	/**
+	 * insertRowsUsingQueries creates one new row in database for each of the specified
+	 * TableQueries, using insert statements with multiple rows in the values part to reduce the
+	 * number of calls to the database.
+	 * <p>
+	 * All TableQueries MUST have the same table and the same parameter names in the same order, if
+	 * not MUST an {@link SqlDatabaseException} be thrown before anything is inserted.
+	 * <p>
+	 * Implementations MUST split the rows into chunks so that no statement uses more bind
+	 * parameters than the database allows. As each chunk is inserted using a separate statement,
+	 * SHOULD clients that need all rows or none to be inserted call this method within a
+	 * transaction.
+	 * <p>
+	 * If an execution finds a duplicate key a {@link SqlConflictException} MUST be thrown. If an
+	 * exception occurs while interacting with the database MUST an {@link SqlDatabaseException} be
+	 * thrown. The message of the exceptions MUST state which rows in the list of TableQueries were
+	 * part of the chunk that failed.
+	 * 
+	 * @param tableQueries
+	 *            A List of TableQueries with the table, parameters and values for each row to add
+	 *            to the database
+	 * @return An int with the number of rows inserted
+	 */
+	int insertRowsUsingQueries(List<TableQuery> tableQueries);
+
+	/**
+	 * insertRowsIfAbsentUsingQueries creates one new row in database for each of the specified
+	 * TableQueries that does not conflict with an existing row, in the same way as
+	 * {@link #insertRowIfAbsentUsingQuery(TableQuery)}, using insert statements with multiple rows
+	 * in the values part in the same way as {@link #insertRowsUsingQueries(List)}.
+	 * <p>
+	 * All TableQueries MUST have the same table, parameter names and conflict columns, if not MUST
+	 * an {@link SqlDatabaseException} be thrown before anything is inserted.
+	 * <p>
+	 * If an execution finds a duplicate key for a constraint that is not ignored by the
+	 * TableQueries a {@link SqlConflictException} MUST be thrown. If an exception occurs while
+	 * interacting with the database MUST an {@link SqlDatabaseException} be thrown. The message of
+	 * the exceptions MUST state which rows in the list of TableQueries were part of the chunk that
+	 * failed.
+	 * 
+	 * @param tableQueries
+	 *            A List of TableQueries with the table, parameters and values for each row to add
+	 *            to the database and optionally the conflict columns to ignore conflicts for
+	 * @return An int with the number of rows inserted, not counting rows that already existed
+	 */
+	int insertRowsIfAbsentUsingQueries(List<TableQuery> tableQueries);
+
+	/**
+	 * upsertRowsUsingQueries creates or updates one row in database for each of the specified
+	 * TableQueries, in the same way as {@link #upsertRowUsingQuery(TableQuery)}, using insert
+	 * statements with multiple rows in the values part in the same way as
+	 * {@link #insertRowsUsingQueries(List)}.
+	 * <p>
+	 * All TableQueries MUST have the same table, parameter names and conflict columns, if not MUST
+	 * an {@link SqlDatabaseException} be thrown before anything is written. The database does not
+	 * allow one statement to update the same row twice, so if two TableQueries in the same chunk
+	 * have the same values for the conflict columns MUST an {@link SqlDatabaseException} be
+	 * thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown. The message of the exception MUST state which rows
+	 * in the list of TableQueries were part of the chunk that failed.
+	 * 
+	 * @param tableQueries
+	 *            A List of TableQueries with the table, conflict columns, parameters and values
+	 *            for each row to add to the database
+	 * @return An int with the number of rows inserted or updated
+	 */
+	int upsertRowsUsingQueries(List<TableQuery> tableQueries);
+
+	/**
+	 * upsertRowUsingQuery creates a new row in database according to the specified TableQuery, or
+	 * if a row with the same values for the conflict columns in the TableQuery already exists,
+	 * updates that row with the rest of the parameters in the TableQuery. The insert or update MUST
+	 * be done using only one call to the database.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conflict columns, parameters and values to add to
+	 *            the database
+	 * @return A boolean, true if a new row was inserted, false if an existing row was found
+	 */
+	boolean upsertRowUsingQuery(TableQuery tableQuery);
+
+	/**
+	 * insertRowIfAbsentUsingQuery creates a new row in database according to the specified
+	 * TableQuery, unless the row conflicts with an existing row in which case nothing is changed in
+	 * the database. The insert MUST be done using only one call to the database.
+	 * <p>
+	 * If an execution finds a duplicate key for a constraint that is not ignored by the TableQuery
+	 * a {@link SqlConflictException} MUST be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, parameters and values to add to the database and
+	 *            optionally the conflict columns to ignore conflicts for
+	 * @return A boolean, true if a new row was inserted, false if the row already existed
+	 */
+	boolean insertRowIfAbsentUsingQuery(TableQuery tableQuery);
+
 	/**
 	 * readRowsForQuery reads rows from a table or view as specified in the provided TableQuery
 	 * <p>
@@ -68,6 +196,34 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	List<Row> readRowsForQuery(TableQuery tableQuery);
 
+	/**
+	 * scanRowsInParallelForQuery reads all rows from a table as specified in the provided
+	 * TableQuery, using several database connections at once, handing each read row to the
+	 * rowHandler. This is intended for full scans of large tables, such as when reindexing.
+	 * <p>
+	 * Implementations MUST split the table into numberOfParts ranges of the table's blocks, and read
+	 * the parts concurrently, each on its own connection. All parts MUST be read using the same
+	 * snapshot of the database, exported from one transaction and imported by the others, so that
+	 * the scan sees the table as it was at one point in time.
+	 * <p>
+	 * The rowHandler is called concurrently from several threads and MUST therefore be threadsafe.
+	 * Rows are handed to the rowHandler in no specific order, order by, from number and to number
+	 * in the tableQuery are not used. The number of rows held in memory SHOULD be bounded, so that
+	 * tables larger than the memory can be scanned.
+	 * <p>
+	 * If an exception occurs while interacting with the database, or in the rowHandler, MUST the
+	 * scan of all parts be stopped and an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and read columns to use to read rows
+	 * @param numberOfParts
+	 *            An int with the number of parts to split the table into and read concurrently
+	 * @param rowHandler
+	 *            A threadsafe Consumer that handles each read {@link Row}
+	 */
+	void scanRowsInParallelForQuery(TableQuery tableQuery, int numberOfParts,
+			Consumer<Row> rowHandler);
+
 	/**
 	 * readOneRowForQuery reads one row from the database as specified in the provided TableQuery.
 	 * <p>
@@ -105,6 +261,63 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	long readNumberOfRows(TableQuery tableQuery);
 
+	/**
+	 * readNumberOfRowsCappedAt returns the numberOfRows in storage that matches the provided
+	 * TableQuery in the same way as {@link #readNumberOfRows(TableQuery)}, but stops counting when
+	 * the specified cap is reached. If the returned number is equal to the cap, there are at least
+	 * cap number of rows matching the TableQuery.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and other settings to use to count the
+	 *            number of rows that match this TableQuery.
+	 * @param cap
+	 *            A long with the maximum number of rows to count
+	 * @return A long with the number of rows matching the specified TableQuery, or the cap if
+	 *         more rows match
+	 */
+	long readNumberOfRowsCappedAt(TableQuery tableQuery, long cap);
+
+	/**
+	 * readEstimatedNumberOfRows returns the number of rows the database estimates match the
+	 * provided TableQuery, without counting the rows. The estimate is based on the statistics the
+	 * database keeps for the table and can differ from the number returned by
+	 * {@link #readNumberOfRows(TableQuery)}, it is intended for large tables where an approximate
+	 * number is good enough.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and other settings to use to estimate the
+	 *            number of rows that match this TableQuery.
+	 * @return A long with the estimated number of rows matching the specified TableQuery
+	 */
+	long readEstimatedNumberOfRows(TableQuery tableQuery);
+
+	/**
+	 * readRowsAndTotalNumberOfRowsForQuery reads rows from a table or view as specified in the
+	 * provided TableQuery, together with the total number of rows that match the conditions in the
+	 * TableQuery, as if no fromNo and toNo were set. This gives the same result as calling
+	 * {@link #readRowsForQuery(TableQuery)} and {@link #readNumberOfRows(TableQuery)} with a query
+	 * without fromNo and toNo, but uses only one call to the database.
+	 * <p>
+	 * Implementations MUST make sure that the returned rows only contain the columns read from the
+	 * table or view, and no extra columns used to calculate the total number of rows.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and other settings to use to read rows
+	 *            from the database.
+	 * @return A RowsAndTotalNumberOfRows with the read rows and the total number of rows matching
+	 *         the conditions in the TableQuery
+	 */
+	RowsAndTotalNumberOfRows readRowsAndTotalNumberOfRowsForQuery(TableQuery tableQuery);
+
 	/**
 	 * updateRowsUsingQuery updates rows in a table or view in the database according to the
 	 * specified TableQuery
@@ -119,6 +332,59 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	int updateRowsUsingQuery(TableQuery tableQuery);
 
+	/**
+	 * updateRowsUsingQueryReturningRows updates rows in a table in the database according to the
+	 * specified TableQuery in the same way as {@link #updateRowsUsingQuery(TableQuery)}, and
+	 * returns the returning columns from the TableQuery for the updated rows, or all columns if no
+	 * returning columns are set. The update and return of the rows MUST be done using only one call
+	 * to the database.
+	 * <p>
+	 * If an execution finds a duplicate key a {@link SqlConflictException} MUST be thrown.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and other settings to use to update data
+	 *            in the database and optionally the columns to return
+	 * @return A List of Rows with the returning columns, one for each updated row
+	 */
+	List<Row> updateRowsUsingQueryReturningRows(TableQuery tableQuery);
+
+	/**
+	 * updateRowsUsingColumnValues updates many rows in the table of the specified TableQuery at
+	 * once. For each position in the values of the key column is the row with that key updated
+	 * with the values at the same position in the values of the value columns. Parameters and
+	 * conditions in the TableQuery are not used.
+	 * <p>
+	 * Implementations MUST update the rows using statements that each update many rows, where the
+	 * values for each column are sent as one array, instead of one statement per row.
+	 * Implementations MUST lock the rows updated by each statement in the order of the key column
+	 * in the database, see {@link TableQuery#assembleUpdateFromArraysSql(ColumnValues, List)}, so
+	 * that concurrent bulk updates acquire row locks in the same order. As large updates are split
+	 * into chunks that are updated using separate statements, SHOULD clients that need all rows or
+	 * none to be updated call this method within a transaction. The chunks MUST be split from the
+	 * key values sorted in their natural order, so that the same keys end up in the same chunk.
+	 * <p>
+	 * If the key column and value columns do not have the same number of values, or a key value is
+	 * null or can not be compared to the other key values MUST an {@link SqlDatabaseException} be
+	 * thrown before anything is updated.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table to update
+	 * @param keyColumn
+	 *            A ColumnValues with the column identifying the rows to update and the key values
+	 *            of the rows to update
+	 * @param valueColumns
+	 *            A List of ColumnValues with the columns to update and the new values
+	 * @return An int with the number of rows updated
+	 */
+	int updateRowsUsingColumnValues(TableQuery tableQuery, ColumnValues keyColumn,
+			List<ColumnValues> valueColumns);
+
 	/**
 	 * deleteRowsForQuery deletes rows from a table or view in the database according to the
 	 * specified TableQuery
@@ -135,6 +401,23 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	int deleteRowsForQuery(TableQuery tableQuery);
 
+	/**
+	 * deleteRowsForQueryReturningRows deletes rows from a table in the database according to the
+	 * specified TableQuery in the same way as {@link #deleteRowsForQuery(TableQuery)}, and returns
+	 * the returning columns from the TableQuery for the deleted rows, or all columns if no
+	 * returning columns are set. The delete and return of the rows MUST be done using only one
+	 * call to the database.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param tableQuery
+	 *            A TableQuery with the table, conditions and other settings to use to delete rows
+	 *            from the database and optionally the columns to return
+	 * @return A List of Rows with the returning columns, one for each deleted row
+	 */
+	List<Row> deleteRowsForQueryReturningRows(TableQuery tableQuery);
+
 	/**
 	 * nextValueFromSequence returns the next value for the specified sequence
 	 * <p>
@@ -158,6 +441,31 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	public void startTransaction();
 
+	/**
+	 * startTransactionUsingReadCache starts a new transaction with a read cache scoped to the
+	 * transaction, see {@link DatabaseFacade#startTransactionUsingReadCache()}. Repeated identical
+	 * reads in the transaction are answered from the read cache, and writes to a table remove the
+	 * cached reads for that table. To commit the transaction run {@link #endTransaction()}.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 */
+	void startTransactionUsingReadCache();
+
+	/**
+	 * startTransactionUsingOptions starts a new transaction using the provided options for read
+	 * only, isolation level and deferrable, see
+	 * {@link DatabaseFacade#startTransactionUsingOptions(TransactionOptions)}. To commit the
+	 * transaction run {@link #endTransaction()}.
+	 * <p>
+	 * If an exception occurs while interacting with the database MUST an
+	 * {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param options
+	 *            A TransactionOptions with the options for the transaction
+	 */
+	void startTransactionUsingOptions(TransactionOptions options);
+
 	/**
 	 * endTransaction ends the currently going transaction, and sets the underlying connection back
 	 * to autocommit(true)
@@ -167,6 +475,63 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	public void endTransaction();
 
+	/**
+	 * runInTransaction runs the provided work in a transaction, committing it when the work
+	 * returns and rolling it back if the work throws an exception. Transactions failing because of
+	 * serialization failures or deadlocks are run again, see
+	 * {@link DatabaseFacade#runInTransaction(Function)}.
+	 * <p>
+	 * As the work can be run more than once, the work SHOULD NOT have side effects outside the
+	 * database, and it MUST only use the provided TableFacade for its database work.
+	 * <p>
+	 * If a transaction is already started MUST an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param work
+	 *            A Function doing the work of the transaction using the provided TableFacade
+	 * @return The result returned by the work
+	 */
+	<T> T runInTransaction(Function<TableFacade, T> work);
+
+	/**
+	 * runInTransactionUsingOptions runs the provided work in a transaction in the same way as
+	 * {@link #runInTransaction(Function)}, starting each attempt using the provided options.
+	 * 
+	 * @param options
+	 *            A TransactionOptions with the options for the transaction
+	 * @param work
+	 *            A Function doing the work of the transaction using the provided TableFacade
+	 * @return The result returned by the work
+	 */
+	<T> T runInTransactionUsingOptions(TransactionOptions options, Function<TableFacade, T> work);
+
+	/**
+	 * beginNested begins a nested scope in the currently started transaction, see
+	 * {@link DatabaseFacade#beginNested()}. Each call to beginNested MUST be matched by a call to
+	 * either {@link #releaseNested()} or {@link #rollbackToNested()}.
+	 * <p>
+	 * If no transaction is started or if an exception occurs while interacting with the database
+	 * MUST an {@link SqlDatabaseException} be thrown.
+	 */
+	void beginNested();
+
+	/**
+	 * releaseNested ends the innermost nested scope keeping the work done in it, see
+	 * {@link DatabaseFacade#releaseNested()}.
+	 * <p>
+	 * If no nested scope has been begun or if an exception occurs while interacting with the
+	 * database MUST an {@link SqlDatabaseException} be thrown.
+	 */
+	void releaseNested();
+
+	/**
+	 * rollbackToNested ends the innermost nested scope undoing all work done since it was begun,
+	 * see {@link DatabaseFacade#rollbackToNested()}. The surrounding transaction can be continued.
+	 * <p>
+	 * If no nested scope has been begun or if an exception occurs while interacting with the
+	 * database MUST an {@link SqlDatabaseException} be thrown.
+	 */
+	void rollbackToNested();
+
 	/**
 	 * rollback method calls a database rollback on an started transaction.
 	 * <p>
@@ -186,4 +551,22 @@ public interface TableFacade extends AutoCloseable {
 	 */
 	@Override
 	void close();
+
+	/**
+	 * getConsistencyToken returns the token captured after the latest commit of writes made using
+	 * this facade, see {@link DatabaseFacade#getConsistencyToken()}.
+	 * 
+	 * @return An Optional with the latest ConsistencyToken, or an empty Optional if no token has
+	 *         been captured or provided
+	 */
+	Optional<ConsistencyToken> getConsistencyToken();
+
+	/**
+	 * useConsistencyToken makes reads made using this facade see the writes committed before the
+	 * token was captured, see {@link DatabaseFacade#useConsistencyToken(ConsistencyToken)}.
+	 * 
+	 * @param token
+	 *            A ConsistencyToken, usually from {@link #getConsistencyToken()} of another facade
+	 */
+	void useConsistencyToken(ConsistencyToken token);
 }
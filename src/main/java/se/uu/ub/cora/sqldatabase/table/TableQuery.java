@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Uppsala University Library
+ * Copyright 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,10 +19,12 @@
 package se.uu.ub.cora.sqldatabase.table;
 
 import java.util.List;
+import java.util.Optional;
 
 import se.uu.ub.cora.sqldatabase.DatabaseValues;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.TextArray;
 
 /**
  * TableQuery contains methods for setting all parts needed to create prepared statements for
@@ -77,6 +79,199 @@ public interface TableQuery {
 	 */
 	void addCondition(String name, Object value);
 
+	/**
+	 * addConflictColumn adds a column that identifies an existing row when the sql from
+	 * {@link #assembleUpsertSql()} or {@link #assembleInsertIfAbsentSql()} is executed. The
+	 * conflict columns together MUST have a unique constraint or index in the table.
+	 * <p>
+	 * Implementations MUST ensure that if the name contains characters that are problematic for sql
+	 * injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of the column
+	 */
+	void addConflictColumn(String column);
+
+	/**
+	 * addReturningColumn adds a column to return from the rows affected when the sql from
+	 * {@link #assembleCreateSql()}, {@link #assembleUpdateSql()} or {@link #assembleDeleteSql()}
+	 * is executed using one of the returning methods in {@link TableFacade}. If no returning
+	 * columns are added are all columns returned.
+	 * <p>
+	 * Implementations MUST ensure that if the name contains characters that are problematic for sql
+	 * injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of a column to return
+	 */
+	void addReturningColumn(String column);
+
+	/**
+	 * getReturningColumns returns the columns added using {@link #addReturningColumn(String)}, in
+	 * the order they were added.
+	 * 
+	 * @return A List of Strings with the columns to return from affected rows
+	 */
+	List<String> getReturningColumns();
+
+	/**
+	 * getTableName returns the name of the table this query is for, as it was specified when the
+	 * query was created.
+	 * 
+	 * @return A String with the name of the table
+	 */
+	String getTableName();
+
+	/**
+	 * getConditionOrParameterValue returns the value added for the named column, so that callers
+	 * can inspect which row a query is about, for instance to decide which database shard the
+	 * query should be sent to.
+	 * <p>
+	 * The value of an equals condition added using {@link #addCondition(String, Object)} MUST be
+	 * returned before the value of a parameter with the same name added using
+	 * {@link #addParameter(String, Object)}, as conditions point out the rows that already exist.
+	 * Conditions added with a List of values MUST NOT be returned, as they do not point out a single
+	 * value.
+	 * <p>
+	 * If no value, or a null value, has been added for the column MUST an empty Optional be
+	 * returned.
+	 * 
+	 * @param column
+	 *            A String with the name of the column to get the value for
+	 * @return An Optional with the value for the column, or an empty Optional if no value has been
+	 *         added
+	 */
+	Optional<Object> getConditionOrParameterValue(String column);
+
+	/**
+	 * addReadColumn adds a column to read when reading rows using this query. If no read columns
+	 * are added are all columns read. If more than one read column is added MUST they be read in
+	 * the order they are added.
+	 * <p>
+	 * Implementations MUST ensure that if the name contains characters that are problematic for sql
+	 * injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of a column to read
+	 */
+	void addReadColumn(String column);
+
+	/**
+	 * addReadJsonPath adds a value from a json column to read when reading rows using this query.
+	 * The value found at the specified path in the json stored in the column is read as text into
+	 * a column with the specified alias, or as {@link DatabaseValues#NULL} if the path does not
+	 * exist. The path is a list of object keys and array positions, for the json <code>{"children":
+	 * [{"name": "x"}]}</code> is the path to x <code>children, 0, name</code>.
+	 * <p>
+	 * A read json path is read in the same way as a read column added using
+	 * {@link #addReadColumn(String)}, and is read in the order it is added.
+	 * <p>
+	 * Implementations MUST ensure that if the alias, column or path contains characters that are
+	 * problematic for sql injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param alias
+	 *            A String with the name of the column to read the value into
+	 * @param column
+	 *            A String with the name of the json column to read the value from
+	 * @param path
+	 *            A List of Strings with the path to the value in the json
+	 */
+	void addReadJsonPath(String alias, String column, List<String> path);
+
+	/**
+	 * addExcludedColumn adds a column that should not be read when reading rows using this query.
+	 * <p>
+	 * As the columns to read can not be known from the query alone, MUST the columns of the table
+	 * be set using {@link #setTableColumns(List)} before a read sql is assembled for a query with
+	 * excluded columns, see {@link #hasExcludedColumns()} and {@link #assembleTableColumnsSql()}.
+	 * <p>
+	 * Implementations MUST ensure that if the name contains characters that are problematic for sql
+	 * injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of a column to exclude when reading
+	 */
+	void addExcludedColumn(String column);
+
+	/**
+	 * hasExcludedColumns returns true if columns has been excluded from reading using
+	 * {@link #addExcludedColumn(String)}.
+	 * 
+	 * @return A boolean, true if this query has excluded columns
+	 */
+	boolean hasExcludedColumns();
+
+	/**
+	 * setTableColumns sets the names of all columns in the table or view, used to figure out what
+	 * columns to read when columns are excluded using {@link #addExcludedColumn(String)}.
+	 * 
+	 * @param tableColumns
+	 *            A List of Strings with the names of all columns in the table or view
+	 */
+	void setTableColumns(List<String> tableColumns);
+
+	/**
+	 * assembleTableColumnsSql assembles a prepared statement sql that reads the names of all
+	 * columns in the table or view, in the order they are defined. The statement MUST return one
+	 * row for each column with the name of the column in the column column_name.
+	 * 
+	 * @return A String with a sql statement reading the column names of the table
+	 */
+	String assembleTableColumnsSql();
+
+	/**
+	 * addJsonContainsCondition adds a condition that the json stored in the specified column
+	 * contains the specified json, such as <code>{"type": "book"}</code>. The condition is
+	 * evaluated using the jsonb containment operator (@&gt;) so that a GIN index on the column can
+	 * be used. If more than one condition is added will they be applied using the AND operator.
+	 * <p>
+	 * Implementations MUST ensure that if the column contains characters that are problematic for
+	 * sql injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of the json column
+	 * @param json
+	 *            A String with the json the column must contain
+	 */
+	void addJsonContainsCondition(String column, String json);
+
+	/**
+	 * addJsonPathExistsCondition adds a condition that the specified sql/json path, such as
+	 * <code>$.children[*] ? (@.name == "x")</code>, returns at least one item for the json stored
+	 * in the specified column. The condition is evaluated using the jsonb path operator (@?) so that
+	 * a GIN index on the column can be used. If more than one condition is added will they be
+	 * applied using the AND operator.
+	 * <p>
+	 * Implementations MUST ensure that if the column contains characters that are problematic for
+	 * sql injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of the json column
+	 * @param jsonPath
+	 *            A String with the sql/json path that must exist
+	 */
+	void addJsonPathExistsCondition(String column, String jsonPath);
+
+	/**
+	 * addAnyCondition adds a condition that the value in the specified column is one of the
+	 * specified values. The values are sent to the database as one {@link TextArray} parameter, so
+	 * that the sql is the same regardless of the number of values and reads with the same values
+	 * can be cached, and are compared as the specified sql type using
+	 * <code>column = any(?::sqlType[])</code>. If more than one condition is added will
+	 * they be applied using the AND operator.
+	 * <p>
+	 * Implementations MUST ensure that if the column or sql type contains characters that are
+	 * problematic for sql injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param column
+	 *            A String with the name of the column
+	 * @param sqlType
+	 *            A String with the sql type of the column, such as bigint, text or uuid
+	 * @param values
+	 *            A List with the values the column can have
+	 */
+	void addAnyCondition(String column, String sqlType, List<?> values);
+
 	/**
 	 * setFromNo sets the from number (in the result), indicating the first record that the
 	 * generated sql query should return. A from number of 1 is for the first record in the
@@ -120,6 +315,37 @@ public interface TableQuery {
 	 */
 	void addOrderByDesc(String column);
 
+	/**
+	 * getOrderByColumns returns the order by columns added using {@link #addOrderByAsc(String)} and
+	 * {@link #addOrderByDesc(String)}, in the order they were added.
+	 * 
+	 * @return A List of OrderByColumn with the columns the result is ordered by
+	 */
+	List<OrderByColumn> getOrderByColumns();
+
+	/**
+	 * assembleCollatableColumnsSql assembles a prepared statement sql that reads the names of all
+	 * columns in the table or view that have a collatable type, such as text. The statement MUST
+	 * return one row for each such column with the name of the column in the column column_name.
+	 * 
+	 * @return A String with a sql statement reading the names of the collatable columns
+	 */
+	String assembleCollatableColumnsSql();
+
+	/**
+	 * getFromNo returns the from number set using {@link #setFromNo(Long)}.
+	 * 
+	 * @return An Optional with the from number, or an empty Optional if no from number is set
+	 */
+	Optional<Long> getFromNo();
+
+	/**
+	 * getToNo returns the to number set using {@link #setToNo(Long)}.
+	 * 
+	 * @return An Optional with the to number, or an empty Optional if no to number is set
+	 */
+	Optional<Long> getToNo();
+
 	/**
 	 * assembleCreateSql assembles an insert prepared statement sql based on the table and
 	 * parameters added.
@@ -129,13 +355,140 @@ public interface TableQuery {
 	String assembleCreateSql();
 
 	/**
-	 * assembleReadSql assembles a read prepared statement sql based on the table, parameters,
-	 * conditions, fromNo, toNo and sortorders added.
+	 * assembleCreateSqlForNumberOfRows assembles an insert prepared statement sql based on the
+	 * table and parameters added, in the same way as {@link #assembleCreateSql()}, but with one set
+	 * of placeholders in the values part for each of the specified number of rows. The values for
+	 * the statement are the query values from one TableQuery with the same table and parameter
+	 * names for each row, in order.
+	 * 
+	 * @param numberOfRows
+	 *            An int with the number of rows to insert using the statement
+	 * @return A String with a sql insert statement for the specified number of rows
+	 */
+	String assembleCreateSqlForNumberOfRows(int numberOfRows);
+
+	/**
+	 * assembleUpsertSql assembles an insert prepared statement sql based on the table and
+	 * parameters added, that updates the existing row instead of inserting a new one if a row
+	 * with the same values for the added conflict columns already exists. All parameters that are
+	 * not conflict columns MUST be updated for an existing row, if all parameters are conflict
+	 * columns MUST the existing row be left as it is.
+	 * <p>
+	 * The statement MUST NOT have a returning clause, so that the caller can add one to find out
+	 * if a row was inserted or updated.
+	 * <p>
+	 * If no conflict columns has been added MUST an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @return A String with a sql upsert statement
+	 */
+	String assembleUpsertSql();
+
+	/**
+	 * assembleUpsertSqlForNumberOfRows assembles an upsert prepared statement sql in the same way
+	 * as {@link #assembleUpsertSql()}, but with one set of placeholders in the values part for
+	 * each of the specified number of rows, see {@link #assembleCreateSqlForNumberOfRows(int)}.
+	 * <p>
+	 * If no conflict columns has been added MUST an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param numberOfRows
+	 *            An int with the number of rows to upsert using the statement
+	 * @return A String with a sql upsert statement for the specified number of rows
+	 */
+	String assembleUpsertSqlForNumberOfRows(int numberOfRows);
+
+	/**
+	 * assembleInsertIfAbsentSql assembles an insert prepared statement sql based on the table and
+	 * parameters added, that does nothing if the row conflicts with an existing row. If conflict
+	 * columns has been added SHOULD only conflicts on those columns be ignored, otherwise MUST
+	 * conflicts on any unique constraint be ignored.
+	 * 
+	 * @return A String with a sql insert statement
+	 */
+	String assembleInsertIfAbsentSql();
+
+	/**
+	 * assembleInsertIfAbsentSqlForNumberOfRows assembles an insert prepared statement sql in the
+	 * same way as {@link #assembleInsertIfAbsentSql()}, but with one set of placeholders in the
+	 * values part for each of the specified number of rows, see
+	 * {@link #assembleCreateSqlForNumberOfRows(int)}.
+	 * 
+	 * @param numberOfRows
+	 *            An int with the number of rows to insert using the statement
+	 * @return A String with a sql insert statement for the specified number of rows
+	 */
+	String assembleInsertIfAbsentSqlForNumberOfRows(int numberOfRows);
+
+	/**
+	 * assembleReadSql assembles a read prepared statement sql based on the table, read columns,
+	 * excluded columns, parameters, conditions, fromNo, toNo and sortorders added.
+	 * <p>
+	 * If columns are excluded and no table columns has been set MUST an
+	 * {@link SqlDatabaseException} be thrown.
 	 * 
 	 * @return A String with an sql read statement
 	 */
 	String assembleReadSql();
 
+	/**
+	 * assembleReadWithTotalNumberOfRowsSql assembles a read prepared statement sql that returns the
+	 * same rows as {@link #assembleReadSql()} together with the total number of rows matching the
+	 * conditions, as if fromNo and toNo were not set, in one statement.
+	 * <p>
+	 * The statement MUST return at least one row, also when no rows match the conditions or the
+	 * fromNo is past the last matching row. Every returned row MUST have the column
+	 * total_number_of_rows with the total number of rows and the column page_row_number that is
+	 * null for the extra row returned when no rows are read, and otherwise holds the position of
+	 * the row in the read rows.
+	 * 
+	 * @return A String with an sql read statement that also reads the total number of rows
+	 */
+	String assembleReadWithTotalNumberOfRowsSql();
+
+	/**
+	 * assembleReadWithoutOffsetSql assembles a read prepared statement sql in the same way as
+	 * {@link #assembleReadSql()}, but starting from the first row even if a from number is set.
+	 * The statement MUST still stop at the to number, if set.
+	 * <p>
+	 * This is used when rows from several databases are merged, as the from number can only be
+	 * applied after the rows are merged.
+	 * 
+	 * @return A String with a sql select statement reading rows up to the to number
+	 */
+	String assembleReadWithoutOffsetSql();
+
+	/**
+	 * assembleReadWithoutOffsetSqlUsingBinaryCollationColumns assembles a read prepared statement
+	 * sql in the same way as {@link #assembleReadWithoutOffsetSql()}, but with the specified order
+	 * by columns ordered using the C collation, that is in the byte order of their values instead
+	 * of in the collation of the database. The columns are only used for the returned sql, and
+	 * MUST NOT change the sql assembled by any other method in this TableQuery.
+	 * <p>
+	 * The C collation can only be used for columns with a collatable type, such as text, see
+	 * {@link #assembleCollatableColumnsSql()}. Rows ordered by the C collation can be merged with
+	 * rows from other databases by comparing the values in code point order, which is not possible
+	 * for any other collation.
+	 * 
+	 * @param binaryCollationColumns
+	 *            A List of Strings with the names of the order by columns to order using the C
+	 *            collation
+	 * @return A String with a sql select statement reading rows up to the to number
+	 */
+	String assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(
+			List<String> binaryCollationColumns);
+
+	/**
+	 * assembleReadForBlockRangeSql assembles a read prepared statement sql in the same way as
+	 * {@link #assembleReadSql()}, but only for the rows stored in a range of the table's blocks.
+	 * This is used to split a scan of a table into parts that can be read in parallel.
+	 * <p>
+	 * The statement MUST use two more values after the values from {@link #getQueryValues()}, the
+	 * first tid (inclusive) and the last tid (exclusive) of the range, as text such as "(0,0)".
+	 * Order by, from number and to number MUST NOT be used, as the parts are read in parallel.
+	 * 
+	 * @return A String with a sql select statement for a range of blocks
+	 */
+	String assembleReadForBlockRangeSql();
+
 	/**
 	 * assembleUpdateSql assembles an update prepared statement sql based on the table, parameters
 	 * and conditions added.
@@ -144,6 +497,33 @@ public interface TableQuery {
 	 */
 	String assembleUpdateSql();
 
+	/**
+	 * assembleUpdateFromArraysSql assembles an update prepared statement sql that updates many rows
+	 * in the table at once, using one array value for the key column and one array value for each
+	 * of the value columns. The rows to update are the rows where the key column matches a value
+	 * in the key array, and the value columns are set to the values at the same position in the
+	 * value arrays. The values in the arrays are sent as text and MUST be cast to the sql type of
+	 * each column in the statement.
+	 * <p>
+	 * The statement MUST lock the rows to update in the order of the key column in the database,
+	 * before updating them, so that concurrent statements acquire row locks in the same order.
+	 * <p>
+	 * Parameters, conditions and other settings added to this TableQuery are not used by the
+	 * statement, only the table name.
+	 * <p>
+	 * Implementations MUST ensure that if a column name or sql type contains characters that are
+	 * problematic for sql injection will an {@link SqlDatabaseException} be thrown.
+	 * 
+	 * @param keyColumn
+	 *            A ColumnValues with the name and sql type of the column identifying the rows to
+	 *            update
+	 * @param valueColumns
+	 *            A List of ColumnValues with the name and sql type of the columns to update
+	 * @return A String with a sql update statement taking one array value per column, key column
+	 *         first
+	 */
+	String assembleUpdateFromArraysSql(ColumnValues keyColumn, List<ColumnValues> valueColumns);
+
 	/**
 	 * assembleDeleteSql assembles a delete prepared statement sql based on the table and conditions
 	 * added.
@@ -163,10 +543,47 @@ public interface TableQuery {
 
 	/**
 	 * assembleCountSql assembles an count prepared statement sql based on the table, parameters,
-	 * conditions, fromNo, toNo added.
+	 * conditions, fromNo, toNo added. The statement MUST return one row with the exact number of
+	 * rows in the column count.
+	 * <p>
+	 * Implementations SHOULD count the rows without reading the columns of the rows.
 	 * 
 	 * @return A String with a sql count statement
 	 */
 	String assembleCountSql();
 
+	/**
+	 * assembleCappedCountSql assembles a count prepared statement sql in the same way as
+	 * {@link #assembleCountSql()}, but the counting stops when the specified cap is reached. The
+	 * statement MUST return one row with the column count, holding the exact number of rows if it
+	 * is less than the cap, otherwise the cap.
+	 * 
+	 * @param cap
+	 *            A long with the maximum number of rows to count
+	 * @return A String with a sql count statement
+	 */
+	String assembleCappedCountSql(long cap);
+
+	/**
+	 * assembleCountWithoutOffsetSql assembles a count prepared statement sql in the same way as
+	 * {@link #assembleCountSql()}, but counting from the first row even if a from number is set.
+	 * The counting MUST still stop at the to number, if set.
+	 * <p>
+	 * This is used when counts from several databases are summed, as the from number can only be
+	 * applied to the sum.
+	 * 
+	 * @return A String with a sql count statement
+	 */
+	String assembleCountWithoutOffsetSql();
+
+	/**
+	 * assembleEstimatedCountSql assembles a prepared statement sql that asks the database for its
+	 * estimated number of rows matching the table, conditions, fromNo and toNo added, without
+	 * reading the rows. The statement MUST return one row with the column "QUERY PLAN" holding the
+	 * query plan in json format, where the first "Plan Rows" holds the estimated number of rows.
+	 * 
+	 * @return A String with a sql statement returning the estimated number of rows
+	 */
+	String assembleEstimatedCountSql();
+
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.transaction.IsolationLevel;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
+
+/**
+ * ParallelTableScanner reads all rows of a table in parts, each part being a range of the table's
+ * blocks read on its own virtual thread and database connection.
+ * <p>
+ * One transaction exports its snapshot using pg_export_snapshot, and keeps it open while the parts
+ * are read. The transaction reading each part imports the snapshot using
+ * {@link TransactionOptions#withSnapshot(String)}, so that all parts see the table as it was when
+ * the snapshot was exported. The number of blocks is read after the snapshot is exported, as the
+ * table can only have grown since then, and the last part is read to the end of the table.
+ * <p>
+ * Rows are read using a database cursor, so each part holds at most one fetch of rows in memory.
+ */
+final class ParallelTableScanner {
+	private static final String EXPORT_SNAPSHOT_SQL = "select pg_export_snapshot() as snapshot";
+	private static final String SNAPSHOT_COLUMN_NAME = "snapshot";
+	private static final String NUMBER_OF_BLOCKS_SQL = "select pg_relation_size(?::regclass)"
+			+ " / current_setting('block_size')::bigint as blocks";
+	private static final String BLOCKS_COLUMN_NAME = "blocks";
+	private static final long END_OF_TABLE_BLOCK = 4294967295L;
+	private static final int FETCH_SIZE = 1000;
+	private static final TransactionOptions SNAPSHOT_OPTIONS = TransactionOptions
+			.readOnlyDefaults().withIsolationLevel(IsolationLevel.REPEATABLE_READ);
+	private final Supplier<DatabaseFacade> databaseFacadeSupplier;
+	private final AtomicReference<RuntimeException> firstError = new AtomicReference<>();
+
+	ParallelTableScanner(Supplier<DatabaseFacade> databaseFacadeSupplier) {
+		this.databaseFacadeSupplier = databaseFacadeSupplier;
+	}
+
+	void scan(TableQuery tableQuery, int numberOfParts, Consumer<Row> rowHandler) {
+		try (DatabaseFacade exportingFacade = databaseFacadeSupplier.get()) {
+			exportingFacade.startTransactionUsingOptions(SNAPSHOT_OPTIONS);
+			try {
+				scanUsingExportedSnapshot(exportingFacade, tableQuery, numberOfParts, rowHandler);
+			} finally {
+				exportingFacade.endTransaction();
+			}
+		}
+		throwFirstErrorIfAnyPartFailed();
+	}
+
+	private void scanUsingExportedSnapshot(DatabaseFacade exportingFacade, TableQuery tableQuery,
+			int numberOfParts, Consumer<Row> rowHandler) {
+		TransactionOptions partOptions = SNAPSHOT_OPTIONS
+				.withSnapshot(exportSnapshot(exportingFacade));
+		long numberOfBlocks = readNumberOfBlocks(exportingFacade, tableQuery.getTableName());
+		List<BlockRange> parts = createParts(numberOfBlocks, numberOfParts);
+		scanPartsInParallel(tableQuery, parts, partOptions, rowHandler);
+	}
+
+	private String exportSnapshot(DatabaseFacade exportingFacade) {
+		Row row = exportingFacade.readOneRowOrFailUsingSqlAndValues(EXPORT_SNAPSHOT_SQL,
+				List.of());
+		return (String) row.getValueByColumn(SNAPSHOT_COLUMN_NAME);
+	}
+
+	private long readNumberOfBlocks(DatabaseFacade exportingFacade, String tableName) {
+		Row row = exportingFacade.readOneRowOrFailUsingSqlAndValues(NUMBER_OF_BLOCKS_SQL,
+				List.of(tableName));
+		return (long) row.getValueByColumn(BLOCKS_COLUMN_NAME);
+	}
+
+	List<BlockRange> createParts(long numberOfBlocks, int numberOfParts) {
+		// package private for test reasons
+		int partsToCreate = Math.clamp(numberOfBlocks, 1, numberOfParts);
+		long blocksPerPart = Math.ceilDiv(numberOfBlocks, partsToCreate);
+		List<BlockRange> parts = new ArrayList<>(partsToCreate);
+		for (int i = 0; i < partsToCreate - 1; i++) {
+			parts.add(new BlockRange(i * blocksPerPart, (i + 1) * blocksPerPart));
+		}
+		parts.add(new BlockRange((partsToCreate - 1) * blocksPerPart, END_OF_TABLE_BLOCK));
+		return parts;
+	}
+
+	private void scanPartsInParallel(TableQuery tableQuery, List<BlockRange> parts,
+			TransactionOptions partOptions, Consumer<Row> rowHandler) {
+		String sql = tableQuery.assembleReadForBlockRangeSql();
+		List<Object> queryValues = tableQuery.getQueryValues();
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			for (BlockRange part : parts) {
+				List<Object> values = createValuesForPart(queryValues, part);
+				executor.execute(() -> scanPart(sql, values, partOptions, rowHandler));
+			}
+		}
+	}
+
+	private List<Object> createValuesForPart(List<Object> queryValues, BlockRange part) {
+		List<Object> values = new ArrayList<>(queryValues);
+		values.add(toTid(part.firstBlock()));
+		values.add(toTid(part.endBlock()));
+		return values;
+	}
+
+	private String toTid(long block) {
+		return "(" + block + ",0)";
+	}
+
+	private void scanPart(String sql, List<Object> values, TransactionOptions partOptions,
+			Consumer<Row> rowHandler) {
+		try (DatabaseFacade partFacade = databaseFacadeSupplier.get()) {
+			partFacade.startTransactionUsingOptions(partOptions);
+			try {
+				partFacade.readUsingSqlAndValuesRowByRow(sql, values, FETCH_SIZE,
+						row -> handleRowUnlessAnyPartFailed(row, rowHandler));
+			} finally {
+				partFacade.endTransaction();
+			}
+		} catch (RuntimeException e) {
+			firstError.compareAndSet(null, e);
+		}
+	}
+
+	private boolean handleRowUnlessAnyPartFailed(Row row, Consumer<Row> rowHandler) {
+		if (firstError.get() != null) {
+			return false;
+		}
+		rowHandler.accept(row);
+		return true;
+	}
+
+	private void throwFirstErrorIfAnyPartFailed() {
+		if (firstError.get() != null) {
+			throw firstError.get();
+		}
+	}
+
+	record BlockRange(long firstBlock, long endBlock) {
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table.internal;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.table.RowLoader;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+
+/**
+ * RowLoaderImp implements {@link RowLoader} by reading the collected keys using a
+ * <code>key = any(?)</code> condition, see
+ * {@link TableQuery#addAnyCondition(String, String, List)}. Each dispatch uses a new TableFacade
+ * from the provided supplier, so that a RowLoader can be shared between threads.
+ * <p>
+ * RowLoaderImp is threadsafe
+ */
+public final class RowLoaderImp implements RowLoader {
+	private final Supplier<TableFacade> tableFacadeSupplier;
+	private final Supplier<TableQuery> tableQuerySupplier;
+	private final String keyColumn;
+	private final String keySqlType;
+	private final Executor executor;
+	private Map<String, List<CompletableFuture<Optional<Row>>>> collectedLoads =
+			new LinkedHashMap<>();
+	private Duration batchWindow;
+
+	public static RowLoaderImp usingTableFacadeSupplierAndTableQuerySupplier(
+			Supplier<TableFacade> tableFacadeSupplier, Supplier<TableQuery> tableQuerySupplier,
+			String keyColumn, String keySqlType) {
+		return new RowLoaderImp(tableFacadeSupplier, tableQuerySupplier, keyColumn, keySqlType,
+				command -> Thread.ofVirtual().name("row-loader").start(command));
+	}
+
+	static RowLoaderImp usingTableFacadeSupplierAndTableQuerySupplierAndExecutor(
+			Supplier<TableFacade> tableFacadeSupplier, Supplier<TableQuery> tableQuerySupplier,
+			String keyColumn, String keySqlType, Executor executor) {
+		// package private for test reasons
+		return new RowLoaderImp(tableFacadeSupplier, tableQuerySupplier, keyColumn, keySqlType,
+				executor);
+	}
+
+	private RowLoaderImp(Supplier<TableFacade> tableFacadeSupplier,
+			Supplier<TableQuery> tableQuerySupplier, String keyColumn, String keySqlType,
+			Executor executor) {
+		this.tableFacadeSupplier = tableFacadeSupplier;
+		this.tableQuerySupplier = tableQuerySupplier;
+		this.keyColumn = keyColumn;
+		this.keySqlType = keySqlType;
+		this.executor = executor;
+	}
+
+	@Override
+	public CompletableFuture<Optional<Row>> loadRowByKey(Object key) {
+		throwErrorIfKeyIsNull(key);
+		CompletableFuture<Optional<Row>> load = new CompletableFuture<>();
+		collectLoad(String.valueOf(key), load);
+		return load;
+	}
+
+	private void throwErrorIfKeyIsNull(Object key) {
+		if (key == null) {
+			throw SqlDatabaseException.withMessage("Key to load row for can not be null.");
+		}
+	}
+
+	private synchronized void collectLoad(String key, CompletableFuture<Optional<Row>> load) {
+		if (collectedLoads.isEmpty()) {
+			possiblyScheduleDispatch();
+		}
+		collectedLoads.computeIfAbsent(key, k -> new ArrayList<>()).add(load);
+	}
+
+	private void possiblyScheduleDispatch() {
+		if (batchWindow != null) {
+			Executor delayedExecutor = CompletableFuture.delayedExecutor(batchWindow.toNanos(),
+					TimeUnit.NANOSECONDS, executor);
+			delayedExecutor.execute(this::dispatch);
+		}
+	}
+
+	@Override
+	public void dispatch() {
+		Map<String, List<CompletableFuture<Optional<Row>>>> loads = takeCollectedLoads();
+		if (!loads.isEmpty()) {
+			readAndCompleteLoads(loads);
+		}
+	}
+
+	private synchronized Map<String, List<CompletableFuture<Optional<Row>>>> takeCollectedLoads() {
+		Map<String, List<CompletableFuture<Optional<Row>>>> loads = collectedLoads;
+		collectedLoads = new LinkedHashMap<>();
+		return loads;
+	}
+
+	private void readAndCompleteLoads(Map<String, List<CompletableFuture<Optional<Row>>>> loads) {
+		try {
+			List<Row> rows = readRowsForKeys(new ArrayList<>(loads.keySet()));
+			completeLoadsUsingRows(loads, rows);
+		} catch (RuntimeException e) {
+			completeLoadsExceptionally(loads, e);
+		}
+	}
+
+	private List<Row> readRowsForKeys(List<String> keys) {
+		TableQuery tableQuery = tableQuerySupplier.get();
+		tableQuery.addAnyCondition(keyColumn, keySqlType, keys);
+		try (TableFacade tableFacade = tableFacadeSupplier.get()) {
+			return tableFacade.readRowsForQuery(tableQuery);
+		}
+	}
+
+	private void completeLoadsUsingRows(Map<String, List<CompletableFuture<Optional<Row>>>> loads,
+			List<Row> rows) {
+		Map<String, Row> rowsByKey = createRowsByKey(rows);
+		for (var keyAndLoads : loads.entrySet()) {
+			Optional<Row> row = Optional.ofNullable(rowsByKey.get(keyAndLoads.getKey()));
+			for (CompletableFuture<Optional<Row>> load : keyAndLoads.getValue()) {
+				load.complete(row);
+			}
+		}
+	}
+
+	private Map<String, Row> createRowsByKey(List<Row> rows) {
+		Map<String, Row> rowsByKey = new HashMap<>(rows.size());
+		for (Row row : rows) {
+			rowsByKey.put(String.valueOf(row.getValueByColumn(keyColumn)), row);
+		}
+		return rowsByKey;
+	}
+
+	private void completeLoadsExceptionally(
+			Map<String, List<CompletableFuture<Optional<Row>>>> loads, RuntimeException e) {
+		SqlDatabaseException error = SqlDatabaseException.withMessageAndException(
+				"Error loading rows by key for keys: " + loads.keySet(), e);
+		for (List<CompletableFuture<Optional<Row>>> keyLoads : loads.values()) {
+			for (CompletableFuture<Optional<Row>> load : keyLoads) {
+				load.completeExceptionally(error);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void setBatchWindow(Duration window) {
+		this.batchWindow = window;
+	}
+
+	public Supplier<TableFacade> onlyForTestGetTableFacadeSupplier() {
+		return tableFacadeSupplier;
+	}
+
+	public Supplier<TableQuery> onlyForTestGetTableQuerySupplier() {
+		return tableQuerySupplier;
+	}
+
+	public String onlyForTestGetKeyColumn() {
+		return keyColumn;
+	}
+
+	public String onlyForTestGetKeySqlType() {
+		return keySqlType;
+	}
+
+	public synchronized Duration onlyForTestGetBatchWindow() {
+		return batchWindow;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2018, 2019 Uppsala University Library
+ * Copyright 2018, 2019, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,26 +19,108 @@
 
 package se.uu.ub.cora.sqldatabase.table.internal;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import se.uu.ub.cora.sqldatabase.DatabaseFacade;
 import se.uu.ub.cora.sqldatabase.Row;
 import se.uu.ub.cora.sqldatabase.SqlConflictException;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.TextArray;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescer;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.table.ColumnValues;
+import se.uu.ub.cora.sqldatabase.table.RowsAndTotalNumberOfRows;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 
 public final class TableFacadeImp implements TableFacade {
 	private DatabaseFacade dbFacade;
+	private QueryResultCache queryResultCache;
+	private ReadCoalescer readCoalescer;
+	private Supplier<DatabaseFacade> scanDatabaseFacadeSupplier;
+	private boolean inTransaction = false;
+	private boolean written = false;
+	private Map<String, List<String>> tableColumnsBySql = new HashMap<>();
 	private static final String NEXTVAL_COLUMN_NAME = "nextval";
+	private static final String COUNT_COLUMN_NAME = "count";
+	private static final String QUERY_PLAN_COLUMN_NAME = "QUERY PLAN";
+	private static final String COLUMN_NAME_COLUMN_NAME = "column_name";
+	private static final String INSERTED_COLUMN_NAME = "inserted";
+	private static final String INSERTED_RETURNING_COLUMN = "(xmax = 0) as "
+			+ INSERTED_COLUMN_NAME;
+	private static final int MAX_NUMBER_OF_BIND_PARAMETERS = 65535;
+	private static final int ROWS_PER_BULK_UPDATE = 10000;
+	private static final Pattern PLAN_ROWS_PATTERN = Pattern.compile("\"Plan Rows\":\\s*(\\d+)");
 
-	private TableFacadeImp(DatabaseFacade databaseFacade) {
+	private TableFacadeImp(DatabaseFacade databaseFacade, QueryResultCache queryResultCache,
+			ReadCoalescer readCoalescer) {
 		this.dbFacade = databaseFacade;
+		this.queryResultCache = queryResultCache;
+		this.readCoalescer = readCoalescer;
 	}
 
 	public static TableFacadeImp usingDatabaseFacade(DatabaseFacade dbFacade) {
-		return new TableFacadeImp(dbFacade);
+		return new TableFacadeImp(dbFacade, null, null);
+	}
+
+	/**
+	 * usingDatabaseFacadeAndQueryResultCache creates a new instance that uses the provided cache
+	 * for {@link #readRowsForQuery(TableQuery)}. Reads made in a transaction are never cached, as
+	 * they might see uncommitted writes. Reads made while the DatabaseFacade holds a consistency
+	 * token neither use nor fill the cache, as cached rows might be older than the token.
+	 * <p>
+	 * The provided DatabaseFacade is expected to invalidate the tables it writes to in the same
+	 * cache.
+	 * 
+	 * @param dbFacade
+	 *            A DatabaseFacade to use to access the database
+	 * @param queryResultCache
+	 *            A QueryResultCache to cache read rows in
+	 * @return A new instance of TableFacadeImp
+	 */
+	public static TableFacadeImp usingDatabaseFacadeAndQueryResultCache(DatabaseFacade dbFacade,
+			QueryResultCache queryResultCache) {
+		return new TableFacadeImp(dbFacade, queryResultCache, null);
+	}
+
+	/**
+	 * usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer creates a new instance that uses the
+	 * provided cache and coalescer for {@link #readRowsForQuery(TableQuery)}. Identical reads
+	 * that miss the cache at the same time are coalesced into one read from the database, and
+	 * only that read puts its rows in the cache. Reads made in a transaction are neither cached
+	 * nor coalesced.
+	 * <p>
+	 * Reads are not coalesced once the TableFacade has written to the database, or when its
+	 * DatabaseFacade has a consistency token, as a shared read might have been started before the
+	 * write and not see it. Reads made when the DatabaseFacade has a consistency token do also
+	 * neither use nor fill the cache.
+	 * 
+	 * @param dbFacade
+	 *            A DatabaseFacade to use to access the database
+	 * @param queryResultCache
+	 *            A QueryResultCache to cache read rows in, or null to not cache reads
+	 * @param readCoalescer
+	 *            A ReadCoalescer to coalesce identical reads with, or null to not coalesce reads
+	 * @return A new instance of TableFacadeImp
+	 */
+	public static TableFacadeImp usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+			DatabaseFacade dbFacade, QueryResultCache queryResultCache,
+			ReadCoalescer readCoalescer) {
+		return new TableFacadeImp(dbFacade, queryResultCache, readCoalescer);
 	}
 
 	@Override
@@ -46,7 +128,24 @@ public final class TableFacadeImp implements TableFacade {
 		String sql = tableQuery.assembleCreateSql();
 		List<Object> values = tableQuery.getQueryValues();
 		try {
-			dbFacade.executeSqlWithValues(sql, values);
+			writeUsingSqlAndValues(sql, values);
+		} catch (SqlConflictException e) {
+			throw SqlConflictException.withMessageAndException(
+					"Error inserting row, duplicated key, using sql: " + sql, e);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error inserting row using sql: " + sql, e);
+		}
+	}
+
+	@Override
+	public Row insertRowUsingQueryReturningRow(TableQuery tableQuery) {
+		String sql = tableQuery.assembleCreateSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			List<Row> rows = writeUsingSqlAndValuesReturningColumns(sql, values,
+					tableQuery.getReturningColumns());
+			return rows.get(0);
 		} catch (SqlConflictException e) {
 			throw SqlConflictException.withMessageAndException(
 					"Error inserting row, duplicated key, using sql: " + sql, e);
@@ -56,8 +155,126 @@ public final class TableFacadeImp implements TableFacade {
 		}
 	}
 
+	@Override
+	public int insertRowsUsingQueries(List<TableQuery> tableQueries) {
+		return writeRowsInChunks(tableQueries, "inserting", TableQuery::assembleCreateSql,
+				TableQuery::assembleCreateSqlForNumberOfRows);
+	}
+
+	@Override
+	public int insertRowsIfAbsentUsingQueries(List<TableQuery> tableQueries) {
+		return writeRowsInChunks(tableQueries, "inserting if absent",
+				TableQuery::assembleInsertIfAbsentSql,
+				TableQuery::assembleInsertIfAbsentSqlForNumberOfRows);
+	}
+
+	@Override
+	public int upsertRowsUsingQueries(List<TableQuery> tableQueries) {
+		return writeRowsInChunks(tableQueries, "upserting", TableQuery::assembleUpsertSql,
+				TableQuery::assembleUpsertSqlForNumberOfRows);
+	}
+
+	private int writeRowsInChunks(List<TableQuery> tableQueries, String action,
+			Function<TableQuery, String> sqlForOneRow,
+			BiFunction<TableQuery, Integer, String> sqlForRows) {
+		if (tableQueries.isEmpty()) {
+			return 0;
+		}
+		String sql = sqlForOneRow.apply(tableQueries.get(0));
+		throwErrorIfQueriesDoNotHaveSameShape(tableQueries, action, sqlForOneRow, sql);
+		int rowsPerChunk = calculateRowsPerChunk(tableQueries.get(0));
+		int writtenRows = 0;
+		for (int from = 0; from < tableQueries.size(); from += rowsPerChunk) {
+			int to = Math.min(from + rowsPerChunk, tableQueries.size());
+			List<TableQuery> chunk = tableQueries.subList(from, to);
+			String chunkSql = sqlForRows.apply(chunk.get(0), chunk.size());
+			writtenRows += writeChunk(chunk, from, action, chunkSql, sql);
+		}
+		return writtenRows;
+	}
+
+	private void throwErrorIfQueriesDoNotHaveSameShape(List<TableQuery> tableQueries,
+			String action, Function<TableQuery, String> sqlForOneRow, String sql) {
+		for (int i = 1; i < tableQueries.size(); i++) {
+			if (!sql.equals(sqlForOneRow.apply(tableQueries.get(i)))) {
+				throw SqlDatabaseException.withMessage("Error " + action
+						+ " rows, query at index " + i
+						+ " does not have the same table and parameters as the first query"
+						+ " using sql: " + sql);
+			}
+		}
+	}
+
+	private int calculateRowsPerChunk(TableQuery tableQuery) {
+		int valuesPerRow = Math.max(1, tableQuery.getQueryValues().size());
+		return MAX_NUMBER_OF_BIND_PARAMETERS / valuesPerRow;
+	}
+
+	private int writeChunk(List<TableQuery> chunk, int fromIndex, String action, String chunkSql,
+			String sql) {
+		List<Object> values = collectQueryValues(chunk);
+		String rowsInChunk = "rows " + fromIndex + " to " + (fromIndex + chunk.size() - 1);
+		try {
+			return writeUsingSqlAndValues(chunkSql, values);
+		} catch (SqlConflictException e) {
+			throw SqlConflictException.withMessageAndException("Error " + action + " "
+					+ rowsInChunk + ", duplicated key, using sql: " + sql, e);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error " + action + " " + rowsInChunk + " using sql: " + sql, e);
+		}
+	}
+
+	private List<Object> collectQueryValues(List<TableQuery> tableQueries) {
+		List<Object> values = new ArrayList<>();
+		for (TableQuery tableQuery : tableQueries) {
+			values.addAll(tableQuery.getQueryValues());
+		}
+		return values;
+	}
+
+	@Override
+	public boolean upsertRowUsingQuery(TableQuery tableQuery) {
+		String sql = tableQuery.assembleUpsertSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			List<Row> rows = writeUsingSqlAndValuesReturningColumns(sql, values,
+					List.of(INSERTED_RETURNING_COLUMN));
+			return rowWasInserted(rows);
+		} catch (SqlConflictException e) {
+			throw SqlConflictException.withMessageAndException(
+					"Error upserting row, duplicated key, using sql: " + sql, e);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error upserting row using sql: " + sql, e);
+		}
+	}
+
+	private boolean rowWasInserted(List<Row> rows) {
+		if (rows.isEmpty()) {
+			return false;
+		}
+		return (boolean) rows.get(0).getValueByColumn(INSERTED_COLUMN_NAME);
+	}
+
+	@Override
+	public boolean insertRowIfAbsentUsingQuery(TableQuery tableQuery) {
+		String sql = tableQuery.assembleInsertIfAbsentSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			return writeUsingSqlAndValues(sql, values) > 0;
+		} catch (SqlConflictException e) {
+			throw SqlConflictException.withMessageAndException(
+					"Error inserting row if absent, duplicated key, using sql: " + sql, e);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error inserting row if absent using sql: " + sql, e);
+		}
+	}
+
 	@Override
 	public Row readOneRowForQuery(TableQuery tableQuery) {
+		possiblySetTableColumnsForExcludedColumns(tableQuery);
 		String sql = tableQuery.assembleReadSql();
 		List<Object> values = tableQuery.getQueryValues();
 		try {
@@ -73,9 +290,108 @@ public final class TableFacadeImp implements TableFacade {
 		return readAllFromTableUsingSql(tableQuery);
 	}
 
+	@Override
+	public void scanRowsInParallelForQuery(TableQuery tableQuery, int numberOfParts,
+			Consumer<Row> rowHandler) {
+		throwErrorIfParallelScanIsNotPossible(numberOfParts);
+		possiblySetTableColumnsForExcludedColumns(tableQuery);
+		try {
+			ParallelTableScanner scanner = new ParallelTableScanner(scanDatabaseFacadeSupplier);
+			scanner.scan(tableQuery, numberOfParts, rowHandler);
+		} catch (RuntimeException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error scanning table in parallel: " + tableQuery.getTableName(), e);
+		}
+	}
+
+	private void throwErrorIfParallelScanIsNotPossible(int numberOfParts) {
+		if (scanDatabaseFacadeSupplier == null) {
+			throw SqlDatabaseException
+					.withMessage("A database facade supplier must be set to scan in parallel.");
+		}
+		if (numberOfParts < 1) {
+			throw SqlDatabaseException.withMessage("Number of parts must be at least 1.");
+		}
+	}
+
+	private void possiblySetTableColumnsForExcludedColumns(TableQuery tableQuery) {
+		if (tableQuery.hasExcludedColumns()) {
+			tableQuery.setTableColumns(readTableColumns(tableQuery));
+		}
+	}
+
+	private List<String> readTableColumns(TableQuery tableQuery) {
+		String sql = tableQuery.assembleTableColumnsSql();
+		return tableColumnsBySql.computeIfAbsent(sql, this::readTableColumnsUsingSql);
+	}
+
+	private List<String> readTableColumnsUsingSql(String sql) {
+		try {
+			List<Row> rows = dbFacade.readUsingSqlAndValues(sql, Collections.emptyList());
+			return getColumnNamesFromRows(rows);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error reading table columns using sql: " + sql, e);
+		}
+	}
+
+	private List<String> getColumnNamesFromRows(List<Row> rows) {
+		List<String> columnNames = new ArrayList<>(rows.size());
+		for (Row row : rows) {
+			columnNames.add((String) row.getValueByColumn(COLUMN_NAME_COLUMN_NAME));
+		}
+		return columnNames;
+	}
+
 	private List<Row> readAllFromTableUsingSql(TableQuery tableQuery) {
+		possiblySetTableColumnsForExcludedColumns(tableQuery);
 		String sql = tableQuery.assembleReadSql();
 		List<Object> queryValues = tableQuery.getQueryValues();
+		if (inTransaction) {
+			return readFromDatabase(sql, queryValues);
+		}
+		if (readCanUseCache()) {
+			return readFromCacheOrDatabase(tableQuery.getTableName(), sql, queryValues);
+		}
+		return possiblyCoalesceRead(sql, queryValues, () -> readFromDatabase(sql, queryValues));
+	}
+
+	private boolean readCanUseCache() {
+		return queryResultCache != null && dbFacade.getConsistencyToken().isEmpty();
+	}
+
+	private List<Row> readFromCacheOrDatabase(String tableName, String sql,
+			List<Object> queryValues) {
+		Optional<List<Row>> cachedRows = queryResultCache.getRowsForSqlAndValues(sql,
+				queryValues);
+		if (cachedRows.isPresent()) {
+			return cachedRows.get();
+		}
+		return possiblyCoalesceRead(sql, queryValues,
+				() -> readFromDatabaseAndPutInCache(tableName, sql, queryValues));
+	}
+
+	private List<Row> readFromDatabaseAndPutInCache(String tableName, String sql,
+			List<Object> queryValues) {
+		long generation = queryResultCache.getGeneration();
+		List<Row> rows = readFromDatabase(sql, queryValues);
+		queryResultCache.putRowsForSqlAndValues(tableName, sql, queryValues, rows, generation);
+		return rows;
+	}
+
+	private List<Row> possiblyCoalesceRead(String sql, List<Object> queryValues,
+			Supplier<List<Row>> reader) {
+		if (readCoalescer == null || mustReadOwnWrites()) {
+			return reader.get();
+		}
+		return readCoalescer.readUsingSqlAndValues(sql, queryValues, reader);
+	}
+
+	private boolean mustReadOwnWrites() {
+		return written || dbFacade.getConsistencyToken().isPresent();
+	}
+
+	private List<Row> readFromDatabase(String sql, List<Object> queryValues) {
 		try {
 			return dbFacade.readUsingSqlAndValues(sql, queryValues);
 		} catch (SqlDatabaseException e) {
@@ -87,22 +403,122 @@ public final class TableFacadeImp implements TableFacade {
 	@Override
 	public long readNumberOfRows(TableQuery tableQuery) {
 		String sql = tableQuery.assembleCountSql();
-		List<Object> values = tableQuery.getQueryValues();
+		return readCountUsingSqlAndValues(sql, tableQuery.getQueryValues());
+	}
+
+	private long readCountUsingSqlAndValues(String sql, List<Object> values) {
 		try {
 			Row count = dbFacade.readOneRowOrFailUsingSqlAndValues(sql, values);
-			return (long) count.getValueByColumn("count");
+			return (long) count.getValueByColumn(COUNT_COLUMN_NAME);
 		} catch (SqlDatabaseException e) {
 			throw SqlDatabaseException
 					.withMessageAndException("Error reading number of rows using sql: " + sql, e);
 		}
 	}
 
+	@Override
+	public long readNumberOfRowsCappedAt(TableQuery tableQuery, long cap) {
+		String sql = tableQuery.assembleCappedCountSql(cap);
+		return readCountUsingSqlAndValues(sql, tableQuery.getQueryValues());
+	}
+
+	@Override
+	public long readEstimatedNumberOfRows(TableQuery tableQuery) {
+		String sql = tableQuery.assembleEstimatedCountSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			Row queryPlan = dbFacade.readOneRowOrFailUsingSqlAndValues(sql, values);
+			return readPlanRowsFromQueryPlan(queryPlan);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error reading estimated number of rows using sql: " + sql, e);
+		}
+	}
+
+	private long readPlanRowsFromQueryPlan(Row queryPlan) {
+		String plan = String.valueOf(queryPlan.getValueByColumn(QUERY_PLAN_COLUMN_NAME));
+		Matcher matcher = PLAN_ROWS_PATTERN.matcher(plan);
+		if (matcher.find()) {
+			return Long.parseLong(matcher.group(1));
+		}
+		throw SqlDatabaseException.withMessage("No estimated number of rows found in: " + plan);
+	}
+
+	@Override
+	public RowsAndTotalNumberOfRows readRowsAndTotalNumberOfRowsForQuery(TableQuery tableQuery) {
+		possiblySetTableColumnsForExcludedColumns(tableQuery);
+		String sql = tableQuery.assembleReadWithTotalNumberOfRowsSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			List<Row> readRows = dbFacade.readUsingSqlAndValues(sql, values);
+			return createRowsAndTotalNumberOfRows(readRows);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error reading rows and total number of rows using sql: " + sql, e);
+		}
+	}
+
+	private RowsAndTotalNumberOfRows createRowsAndTotalNumberOfRows(List<Row> readRows) {
+		long totalNumberOfRows = readTotalNumberOfRowsFromFirstRow(readRows);
+		List<Row> rows = new ArrayList<>(readRows.size());
+		for (Row readRow : readRows) {
+			possiblyAddRowWithoutTotalColumns(rows, readRow);
+		}
+		return new RowsAndTotalNumberOfRows(rows, totalNumberOfRows);
+	}
+
+	private long readTotalNumberOfRowsFromFirstRow(List<Row> readRows) {
+		Row firstRow = readRows.get(0);
+		return (long) firstRow.getValueByColumn(TableQueryImp.TOTAL_NUMBER_OF_ROWS_COLUMN);
+	}
+
+	private void possiblyAddRowWithoutTotalColumns(List<Row> rows, Row readRow) {
+		if (readRow.hasColumnWithNonEmptyValue(TableQueryImp.PAGE_ROW_NUMBER_COLUMN)) {
+			rows.add(createRowWithoutTotalColumns(readRow));
+		}
+	}
+
+	private Row createRowWithoutTotalColumns(Row readRow) {
+		RowImp row = new RowImp();
+		for (String columnName : readRow.columnSet()) {
+			possiblyCopyColumn(readRow, row, columnName);
+		}
+		return row;
+	}
+
+	private void possiblyCopyColumn(Row readRow, RowImp row, String columnName) {
+		if (isNotTotalColumn(columnName)) {
+			row.addColumnWithValue(columnName, readRow.getValueByColumn(columnName));
+		}
+	}
+
+	private boolean isNotTotalColumn(String columnName) {
+		return !TableQueryImp.TOTAL_NUMBER_OF_ROWS_COLUMN.equals(columnName)
+				&& !TableQueryImp.PAGE_ROW_NUMBER_COLUMN.equals(columnName);
+	}
+
 	@Override
 	public int updateRowsUsingQuery(TableQuery tableQuery) {
 		String sql = tableQuery.assembleUpdateSql();
 		List<Object> values = tableQuery.getQueryValues();
 		try {
-			return dbFacade.executeSqlWithValues(sql, values);
+			return writeUsingSqlAndValues(sql, values);
+		} catch (SqlConflictException e) {
+			throw SqlConflictException.withMessageAndException(
+					"Error updating rows, duplicated key, using sql: " + sql, e);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error updating rows using sql: " + sql, e);
+		}
+	}
+
+	@Override
+	public List<Row> updateRowsUsingQueryReturningRows(TableQuery tableQuery) {
+		String sql = tableQuery.assembleUpdateSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			return writeUsingSqlAndValuesReturningColumns(sql, values,
+					tableQuery.getReturningColumns());
 		} catch (SqlConflictException e) {
 			throw SqlConflictException.withMessageAndException(
 					"Error updating rows, duplicated key, using sql: " + sql, e);
@@ -112,12 +528,119 @@ public final class TableFacadeImp implements TableFacade {
 		}
 	}
 
+	@Override
+	public int updateRowsUsingColumnValues(TableQuery tableQuery, ColumnValues keyColumn,
+			List<ColumnValues> valueColumns) {
+		String sql = tableQuery.assembleUpdateFromArraysSql(keyColumn, valueColumns);
+		throwErrorIfColumnsHaveDifferentNumberOfValues(keyColumn, valueColumns, sql);
+		List<Integer> positionsSortedByKey = sortPositionsByKey(keyColumn, sql);
+		List<ColumnValues> allColumns = new ArrayList<>();
+		allColumns.add(keyColumn);
+		allColumns.addAll(valueColumns);
+		int updatedRows = 0;
+		for (int from = 0; from < positionsSortedByKey.size(); from += ROWS_PER_BULK_UPDATE) {
+			int to = Math.min(from + ROWS_PER_BULK_UPDATE, positionsSortedByKey.size());
+			updatedRows += updateChunk(sql, allColumns, positionsSortedByKey.subList(from, to),
+					from);
+		}
+		return updatedRows;
+	}
+
+	private void throwErrorIfColumnsHaveDifferentNumberOfValues(ColumnValues keyColumn,
+			List<ColumnValues> valueColumns, String sql) {
+		int numberOfKeys = keyColumn.values().size();
+		for (ColumnValues valueColumn : valueColumns) {
+			if (valueColumn.values().size() != numberOfKeys) {
+				throw SqlDatabaseException.withMessage("Error updating rows, column "
+						+ valueColumn.column() + " does not have the same number of values as"
+						+ " the key column using sql: " + sql);
+			}
+		}
+	}
+
+	private List<Integer> sortPositionsByKey(ColumnValues keyColumn, String sql) {
+		List<?> keys = keyColumn.values();
+		throwErrorIfKeyIsNull(keys, sql);
+		List<Integer> positions = new ArrayList<>(keys.size());
+		for (int i = 0; i < keys.size(); i++) {
+			positions.add(i);
+		}
+		try {
+			positions.sort((a, b) -> compareKeys(keys.get(a), keys.get(b)));
+		} catch (ClassCastException e) {
+			throw SqlDatabaseException.withMessageAndException(
+					"Error updating rows, key values can not be compared using sql: " + sql, e);
+		}
+		return positions;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compareKeys(Object key, Object otherKey) {
+		return ((Comparable<Object>) key).compareTo(otherKey);
+	}
+
+	private void throwErrorIfKeyIsNull(List<?> keys, String sql) {
+		for (Object key : keys) {
+			if (key == null) {
+				throw SqlDatabaseException.withMessage(
+						"Error updating rows, key values can not be null using sql: " + sql);
+			}
+		}
+	}
+
+	private int updateChunk(String sql, List<ColumnValues> columns, List<Integer> positions,
+			int fromIndex) {
+		List<Object> values = new ArrayList<>(columns.size());
+		for (ColumnValues columnValues : columns) {
+			values.add(createTextArrayForPositions(columnValues.values(), positions));
+		}
+		try {
+			return writeUsingSqlAndValues(sql, values);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException.withMessageAndException("Error updating rows " + fromIndex
+					+ " to " + (fromIndex + positions.size() - 1) + " in key order using sql: "
+					+ sql, e);
+		}
+	}
+
+	private TextArray createTextArrayForPositions(List<?> columnValues, List<Integer> positions) {
+		List<Object> valuesAtPositions = new ArrayList<>(positions.size());
+		for (int position : positions) {
+			valuesAtPositions.add(columnValues.get(position));
+		}
+		return TextArray.fromValues(valuesAtPositions);
+	}
+
+	private int writeUsingSqlAndValues(String sql, List<Object> values) {
+		written = true;
+		return dbFacade.executeSqlWithValues(sql, values);
+	}
+
+	private List<Row> writeUsingSqlAndValuesReturningColumns(String sql, List<Object> values,
+			List<String> returningColumns) {
+		written = true;
+		return dbFacade.executeSqlWithValuesReturningColumns(sql, values, returningColumns);
+	}
+
 	@Override
 	public int deleteRowsForQuery(TableQuery tableQuery) {
 		String sql = tableQuery.assembleDeleteSql();
 		List<Object> values = tableQuery.getQueryValues();
 		try {
-			return dbFacade.executeSqlWithValues(sql, values);
+			return writeUsingSqlAndValues(sql, values);
+		} catch (SqlDatabaseException e) {
+			throw SqlDatabaseException
+					.withMessageAndException("Error deleting rows using sql: " + sql, e);
+		}
+	}
+
+	@Override
+	public List<Row> deleteRowsForQueryReturningRows(TableQuery tableQuery) {
+		String sql = tableQuery.assembleDeleteSql();
+		List<Object> values = tableQuery.getQueryValues();
+		try {
+			return writeUsingSqlAndValuesReturningColumns(sql, values,
+					tableQuery.getReturningColumns());
 		} catch (SqlDatabaseException e) {
 			throw SqlDatabaseException
 					.withMessageAndException("Error deleting rows using sql: " + sql, e);
@@ -136,6 +659,31 @@ public final class TableFacadeImp implements TableFacade {
 		return dbFacade;
 	}
 
+	/**
+	 * setScanDatabaseFacadeSupplier sets the supplier used to get one new DatabaseFacade, with its
+	 * own connection, for each part read by {@link #scanRowsInParallelForQuery}, as the parts are
+	 * read concurrently.
+	 * 
+	 * @param scanDatabaseFacadeSupplier
+	 *            A Supplier of new DatabaseFacades
+	 */
+	public void setScanDatabaseFacadeSupplier(
+			Supplier<DatabaseFacade> scanDatabaseFacadeSupplier) {
+		this.scanDatabaseFacadeSupplier = scanDatabaseFacadeSupplier;
+	}
+
+	public Supplier<DatabaseFacade> onlyForTestGetScanDatabaseFacadeSupplier() {
+		return scanDatabaseFacadeSupplier;
+	}
+
+	public QueryResultCache onlyForTestGetQueryResultCache() {
+		return queryResultCache;
+	}
+
+	public ReadCoalescer onlyForTestGetReadCoalescer() {
+		return readCoalescer;
+	}
+
 	@Override
 	public void close() {
 		dbFacade.close();
@@ -144,11 +692,71 @@ public final class TableFacadeImp implements TableFacade {
 	@Override
 	public void startTransaction() {
 		dbFacade.startTransaction();
+		inTransaction = true;
+	}
+
+	@Override
+	public void startTransactionUsingReadCache() {
+		dbFacade.startTransactionUsingReadCache();
+		inTransaction = true;
 	}
 
 	@Override
 	public void endTransaction() {
 		dbFacade.endTransaction();
+		inTransaction = false;
+	}
+
+	@Override
+	public void startTransactionUsingOptions(TransactionOptions options) {
+		dbFacade.startTransactionUsingOptions(options);
+		inTransaction = true;
+	}
+
+	@Override
+	public <T> T runInTransaction(Function<TableFacade, T> work) {
+		return dbFacade.runInTransaction(databaseFacade -> runWorkInTransaction(work));
+	}
+
+	@Override
+	public <T> T runInTransactionUsingOptions(TransactionOptions options,
+			Function<TableFacade, T> work) {
+		return dbFacade.runInTransactionUsingOptions(options,
+				databaseFacade -> runWorkInTransaction(work));
+	}
+
+	private <T> T runWorkInTransaction(Function<TableFacade, T> work) {
+		inTransaction = true;
+		try {
+			return work.apply(this);
+		} finally {
+			inTransaction = false;
+		}
+	}
+
+	@Override
+	public void beginNested() {
+		dbFacade.beginNested();
+	}
+
+	@Override
+	public void releaseNested() {
+		dbFacade.releaseNested();
+	}
+
+	@Override
+	public void rollbackToNested() {
+		dbFacade.rollbackToNested();
+	}
+
+	@Override
+	public Optional<ConsistencyToken> getConsistencyToken() {
+		return dbFacade.getConsistencyToken();
+	}
+
+	@Override
+	public void useConsistencyToken(ConsistencyToken token) {
+		dbFacade.useConsistencyToken(token);
 	}
 
 	@Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2021, 2022 Uppsala University Library
+ * Copyright 2021, 2022, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,27 +19,48 @@
 package se.uu.ub.cora.sqldatabase.table.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.StringJoiner;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.TextArray;
+import se.uu.ub.cora.sqldatabase.table.ColumnValues;
+import se.uu.ub.cora.sqldatabase.table.OrderByColumn;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
 
 public class TableQueryImp implements TableQuery {
 
 	private static final int OFFSET_DIFF = 1;
+	public static final String TOTAL_NUMBER_OF_ROWS_COLUMN = "total_number_of_rows";
+	public static final String PAGE_ROW_NUMBER_COLUMN = "page_row_number";
 	private String tableName;
 	private List<String> parameterNames = new ArrayList<>();
 	private List<Object> parameterValues = new ArrayList<>();
-	private List<String> conditionNames = new ArrayList<>();
+	private List<String> conditionParts = new ArrayList<>();
 	private List<Object> conditionValues = new ArrayList<>();
-	private List<String> orderBy = new ArrayList<>();
+	private Map<String, Object> equalsConditionValues = new HashMap<>();
+	private List<OrderByColumn> orderByColumns = new ArrayList<>();
+	private List<String> readColumns = new ArrayList<>();
+	private List<String> excludedColumns = new ArrayList<>();
+	private List<String> tableColumns;
+	private List<String> conflictColumns = new ArrayList<>();
+	private List<String> returningColumns = new ArrayList<>();
 	private Long offset;
 	private Long toNumber;
 	private static final String ALLOWED_REGEX = "^[.A-Za-z\\-_]*$";
 	private static Pattern allowedPattern = Pattern.compile(ALLOWED_REGEX);
+	private static final String ALLOWED_SQL_TYPE_REGEX = ""
+			+ "^[A-Za-z][A-Za-z0-9_ ]*(\\(\\d+(, ?\\d+)?\\))?$";
+	private static Pattern allowedSqlTypePattern = Pattern.compile(ALLOWED_SQL_TYPE_REGEX);
+	private static final String ALLOWED_JSON_PATH_ELEMENT_REGEX = "^[.A-Za-z0-9\\-_]+$";
+	private static Pattern allowedJsonPathElementPattern = Pattern
+			.compile(ALLOWED_JSON_PATH_ELEMENT_REGEX);
 
 	public static TableQueryImp usingTableName(String tableName) {
 		throwErrorIfInputContainsForbiddenCharacters(tableName);
@@ -72,23 +93,129 @@ public class TableQueryImp implements TableQuery {
 	@Override
 	public void addCondition(String name, Object value) {
 		throwErrorIfInputContainsForbiddenCharacters(name);
-		conditionNames.add(name);
+		addConditionPartWithValue(createCondition(name, value), value);
+		possiblyKeepEqualsConditionValue(name, value);
+	}
+
+	private void possiblyKeepEqualsConditionValue(String name, Object value) {
+		if (!conditionValueIsAList(value)) {
+			equalsConditionValues.putIfAbsent(name, value);
+		}
+	}
+
+	private void addConditionPartWithValue(String conditionPart, Object value) {
+		conditionParts.add(conditionPart);
 		conditionValues.add(value);
 	}
 
+	@Override
+	public void addJsonContainsCondition(String column, String json) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		addConditionPartWithValue(column + " @> ?::jsonb", json);
+	}
+
+	@Override
+	public void addJsonPathExistsCondition(String column, String jsonPath) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		// ?? is the jdbc driver escape for the ? in the operator @?
+		addConditionPartWithValue(column + " @?? ?::jsonpath", jsonPath);
+	}
+
+	@Override
+	public void addAnyCondition(String column, String sqlType, List<?> values) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		throwErrorIfSqlTypeContainsForbiddenCharacters(sqlType);
+		addConditionPartWithValue(column + " = any(?::" + sqlType + "[])",
+				TextArray.fromValues(values));
+	}
+
+	@Override
+	public void addConflictColumn(String column) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		conflictColumns.add(column);
+	}
+
+	@Override
+	public void addReturningColumn(String column) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		returningColumns.add(column);
+	}
+
+	@Override
+	public List<String> getReturningColumns() {
+		return returningColumns;
+	}
+
+	@Override
+	public void addReadColumn(String column) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		readColumns.add(column);
+	}
+
+	@Override
+	public void addReadJsonPath(String alias, String column, List<String> path) {
+		throwErrorIfInputContainsForbiddenCharacters(alias);
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		throwErrorIfJsonPathContainsForbiddenCharacters(path);
+		readColumns.add(column + " #>> '{" + String.join(",", path) + "}' as " + alias);
+	}
+
+	private void throwErrorIfJsonPathContainsForbiddenCharacters(List<String> path) {
+		for (String pathElement : path) {
+			if (!allowedJsonPathElementPattern.matcher(pathElement).matches()) {
+				throw SqlDatabaseException.withMessage(
+						"Json path element contains character outside the allowed regexp.");
+			}
+		}
+	}
+
+	@Override
+	public void addExcludedColumn(String column) {
+		throwErrorIfInputContainsForbiddenCharacters(column);
+		excludedColumns.add(column);
+	}
+
+	@Override
+	public boolean hasExcludedColumns() {
+		return !excludedColumns.isEmpty();
+	}
+
+	@Override
+	public void setTableColumns(List<String> tableColumns) {
+		this.tableColumns = tableColumns;
+	}
+
+	@Override
+	public String assembleTableColumnsSql() {
+		return "select attname as column_name from pg_attribute where attrelid = '" + tableName
+				+ "'::regclass and attnum > 0 and not attisdropped order by attnum";
+	}
+
 	@Override
 	public void addOrderByAsc(String column) {
-		tryToAddOrderByPart(column, "asc");
+		tryToAddOrderByColumn(column, true);
 	}
 
 	@Override
 	public void addOrderByDesc(String column) {
-		tryToAddOrderByPart(column, "desc");
+		tryToAddOrderByColumn(column, false);
 	}
 
-	private void tryToAddOrderByPart(String column, String orderDirection) {
+	private void tryToAddOrderByColumn(String column, boolean ascending) {
 		throwErrorIfInputContainsForbiddenCharacters(column);
-		this.orderBy.add(column + " " + orderDirection);
+		orderByColumns.add(new OrderByColumn(column, ascending));
+	}
+
+	@Override
+	public List<OrderByColumn> getOrderByColumns() {
+		return orderByColumns;
+	}
+
+	@Override
+	public String assembleCollatableColumnsSql() {
+		return "select attname as column_name from pg_attribute where attrelid = '" + tableName
+				+ "'::regclass and attnum > 0 and not attisdropped and attcollation <> 0"
+				+ " order by attnum";
 	}
 
 	@Override
@@ -96,21 +223,47 @@ public class TableQueryImp implements TableQuery {
 		this.offset = fromNo - OFFSET_DIFF;
 	}
 
+	@Override
+	public Optional<Long> getFromNo() {
+		if (offsetIsSet()) {
+			return Optional.of(offset + OFFSET_DIFF);
+		}
+		return Optional.empty();
+	}
+
 	@Override
 	public void setToNo(Long toNo) {
 		this.toNumber = toNo;
 	}
 
+	@Override
+	public Optional<Long> getToNo() {
+		return Optional.ofNullable(toNumber);
+	}
+
 	@Override
 	public String assembleCreateSql() {
+		return assembleCreateSqlForNumberOfRows(1);
+	}
+
+	@Override
+	public String assembleCreateSqlForNumberOfRows(int numberOfRows) {
 		String sql = "insert into " + tableName + "(";
 		sql += joinAllFromListAddingToAndSeparatingBy(parameterNames, "", ", ");
-		sql += ") values(";
-		sql += addPlaceHoldersForParameters();
-		sql += ")";
+		sql += ") values";
+		sql += addValuesPartForNumberOfRows(numberOfRows);
 		return sql;
 	}
 
+	private String addValuesPartForNumberOfRows(int numberOfRows) {
+		String valuesPart = "(" + addPlaceHoldersForParameters() + ")";
+		StringJoiner joiner = new StringJoiner(", ");
+		for (int i = 0; i < numberOfRows; i++) {
+			joiner.add(valuesPart);
+		}
+		return joiner.toString();
+	}
+
 	private String addPlaceHoldersForParameters() {
 		StringJoiner joiner = new StringJoiner(", ");
 		for (int i = 0; i < parameterNames.size(); i++) {
@@ -119,9 +272,76 @@ public class TableQueryImp implements TableQuery {
 		return joiner.toString();
 	}
 
+	@Override
+	public String assembleUpsertSql() {
+		return assembleUpsertSqlForNumberOfRows(1);
+	}
+
+	@Override
+	public String assembleUpsertSqlForNumberOfRows(int numberOfRows) {
+		throwErrorIfNoConflictColumns();
+		String sql = assembleCreateSqlForNumberOfRows(numberOfRows);
+		sql += " on conflict (" + joinConflictColumns() + ")";
+		sql += createConflictAction();
+		return sql;
+	}
+
+	private void throwErrorIfNoConflictColumns() {
+		if (conflictColumns.isEmpty()) {
+			throw SqlDatabaseException.withMessage("Upsert requires at least one conflict column.");
+		}
+	}
+
+	private String joinConflictColumns() {
+		return joinAllFromListAddingToAndSeparatingBy(conflictColumns, "", ", ");
+	}
+
+	private String createConflictAction() {
+		List<String> columnsToUpdate = getParameterNamesNotInConflictColumns();
+		if (columnsToUpdate.isEmpty()) {
+			return " do nothing";
+		}
+		return " do update set " + createSetFromExcludedPart(columnsToUpdate);
+	}
+
+	private List<String> getParameterNamesNotInConflictColumns() {
+		List<String> columnsToUpdate = new ArrayList<>(parameterNames);
+		columnsToUpdate.removeAll(conflictColumns);
+		return columnsToUpdate;
+	}
+
+	private String createSetFromExcludedPart(List<String> columnsToUpdate) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (String column : columnsToUpdate) {
+			joiner.add(column + " = excluded." + column);
+		}
+		return joiner.toString();
+	}
+
+	@Override
+	public String assembleInsertIfAbsentSql() {
+		return assembleInsertIfAbsentSqlForNumberOfRows(1);
+	}
+
+	@Override
+	public String assembleInsertIfAbsentSqlForNumberOfRows(int numberOfRows) {
+		String sql = assembleCreateSqlForNumberOfRows(numberOfRows);
+		sql += " on conflict";
+		sql += possiblyAddConflictTarget();
+		sql += " do nothing";
+		return sql;
+	}
+
+	private String possiblyAddConflictTarget() {
+		if (!conflictColumns.isEmpty()) {
+			return " (" + joinConflictColumns() + ")";
+		}
+		return "";
+	}
+
 	@Override
 	public String assembleReadSql() {
-		String sql = "select * from " + tableName;
+		String sql = assembleSelectFromPart();
 		sql += possiblyAddConditions();
 		sql += possiblyAddOrderBy();
 		sql += possiblyAddOffset();
@@ -130,13 +350,123 @@ public class TableQueryImp implements TableQuery {
 		return sql;
 	}
 
+	@Override
+	public String assembleReadWithoutOffsetSql() {
+		return assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(Collections.emptyList());
+	}
+
+	@Override
+	public String assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(
+			List<String> binaryCollationColumns) {
+		String sql = assembleSelectFromPart();
+		sql += possiblyAddConditions();
+		sql += possiblyAddOrderByUsingBinaryCollationColumns(binaryCollationColumns);
+		sql += possiblyAddLimitWithoutOffset();
+		return sql;
+	}
+
+	@Override
+	public String assembleReadForBlockRangeSql() {
+		String sql = assembleSelectFromPart();
+		sql += hasConditions() ? createWherePart() + " and" : " where";
+		sql += " ctid >= ?::tid and ctid < ?::tid";
+		return sql;
+	}
+
+	private String possiblyAddLimitWithoutOffset() {
+		if (toNumberIsSet()) {
+			return " limit " + toNumber;
+		}
+		return "";
+	}
+
+	private String assembleSelectFromPart() {
+		return "select " + assembleColumnsToRead() + " from " + tableName;
+	}
+
+	private String assembleColumnsToRead() {
+		if (readColumns.isEmpty() && excludedColumns.isEmpty()) {
+			return "*";
+		}
+		List<String> columns = getColumnsToReadWithoutExcludedColumns();
+		throwErrorIfNoColumnsToRead(columns);
+		return joinAllFromListAddingToAndSeparatingBy(columns, "", ", ");
+	}
+
+	private List<String> getColumnsToReadWithoutExcludedColumns() {
+		List<String> columns = new ArrayList<>(getColumnsToReadBeforeExclusion());
+		columns.removeAll(excludedColumns);
+		return columns;
+	}
+
+	private List<String> getColumnsToReadBeforeExclusion() {
+		if (!readColumns.isEmpty()) {
+			return readColumns;
+		}
+		throwErrorIfTableColumnsNotSet();
+		return tableColumns;
+	}
+
+	private void throwErrorIfTableColumnsNotSet() {
+		if (tableColumns == null) {
+			throw SqlDatabaseException
+					.withMessage("Table columns must be set when columns are excluded.");
+		}
+	}
+
+	private void throwErrorIfNoColumnsToRead(List<String> columns) {
+		if (columns.isEmpty()) {
+			throw SqlDatabaseException.withMessage("No columns left to read for: " + tableName);
+		}
+	}
+
 	private String possiblyAddOrderBy() {
-		if (!orderBy.isEmpty()) {
-			return " order by " + joinAllFromListAddingToAndSeparatingBy(orderBy, "", ", ");
+		return possiblyAddOrderByUsingBinaryCollationColumns(Collections.emptyList());
+	}
+
+	private String possiblyAddOrderByUsingBinaryCollationColumns(
+			List<String> binaryCollationColumns) {
+		if (!orderByColumns.isEmpty()) {
+			return " order by " + joinOrderBy(binaryCollationColumns);
+		}
+		return "";
+	}
+
+	private String joinOrderBy(List<String> binaryCollationColumns) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (OrderByColumn orderByColumn : orderByColumns) {
+			String column = orderByColumn.column();
+			joiner.add(column + possiblyAddBinaryCollation(binaryCollationColumns, column)
+					+ (orderByColumn.ascending() ? " asc" : " desc"));
+		}
+		return joiner.toString();
+	}
+
+	private String possiblyAddBinaryCollation(List<String> binaryCollationColumns,
+			String column) {
+		if (binaryCollationColumns.contains(column)) {
+			return " collate \"C\"";
 		}
 		return "";
 	}
 
+	@Override
+	public String assembleReadWithTotalNumberOfRowsSql() {
+		String sql = "with matching as not materialized (select * from " + tableName;
+		sql += possiblyAddConditions() + ")";
+		sql += " select page.*, total." + TOTAL_NUMBER_OF_ROWS_COLUMN;
+		sql += " from (select count(*) as " + TOTAL_NUMBER_OF_ROWS_COLUMN
+				+ " from matching) as total";
+		sql += " left join (select " + assembleColumnsToRead() + ", row_number() over ("
+				+ possiblyAddOrderBy().trim() + ") as " + PAGE_ROW_NUMBER_COLUMN
+				+ " from matching";
+		sql += possiblyAddOrderBy();
+		sql += possiblyAddOffset();
+		sql += possiblyAddLimit();
+		sql += ") as page on true order by page." + PAGE_ROW_NUMBER_COLUMN;
+		return sql;
+	}
+
 	private String possiblyAddConditions() {
 		if (hasConditions()) {
 			return createWherePart();
@@ -145,23 +475,11 @@ public class TableQueryImp implements TableQuery {
 	}
 
 	public boolean hasConditions() {
-		return !conditionNames.isEmpty();
+		return !conditionParts.isEmpty();
 	}
 
 	private String createWherePart() {
-		StringBuilder wherePart = new StringBuilder(" where ");
-		wherePart.append(joinAllFromListSeparatingByConditions(conditionNames));
-		return wherePart.toString();
-	}
-
-	private String joinAllFromListSeparatingByConditions(List<String> conditionNames) {
-		StringJoiner conditionsPart = new StringJoiner(" and ");
-		int position = 0;
-		for (String conditionName : conditionNames) {
-			conditionsPart.add(createCondition(conditionName, conditionValues.get(position)));
-			position++;
-		}
-		return conditionsPart.toString();
+		return " where " + joinAllFromListAddingToAndSeparatingBy(conditionParts, "", " and ");
 	}
 
 	private String createCondition(String conditionName, Object conditionValue) {
@@ -234,11 +552,88 @@ public class TableQueryImp implements TableQuery {
 		return sql;
 	}
 
+	@Override
+	public String assembleUpdateFromArraysSql(ColumnValues keyColumn,
+			List<ColumnValues> valueColumns) {
+		List<ColumnValues> allColumns = new ArrayList<>();
+		allColumns.add(keyColumn);
+		allColumns.addAll(valueColumns);
+		throwErrorIfColumnsContainForbiddenCharacters(allColumns);
+		String key = keyColumn.column();
+		String sql = "update " + tableName + " set " + createSetFromArraysPart(valueColumns);
+		sql += " from (" + createLockRowsInKeyOrderSql(key, allColumns) + ") as v";
+		sql += " where " + tableName + "." + key + " = v." + key;
+		return sql;
+	}
+
+	private String createLockRowsInKeyOrderSql(String key, List<ColumnValues> allColumns) {
+		String sql = "select arrays.* from " + tableName + " as locking";
+		sql += " join unnest(" + createTypedArrayPlaceholders(allColumns) + ")";
+		sql += " as arrays(" + joinColumnNames(allColumns) + ")";
+		sql += " on locking." + key + " = arrays." + key;
+		sql += " order by locking." + key + " for update of locking";
+		return sql;
+	}
+
+	private void throwErrorIfColumnsContainForbiddenCharacters(List<ColumnValues> columns) {
+		for (ColumnValues columnValues : columns) {
+			throwErrorIfInputContainsForbiddenCharacters(columnValues.column());
+			throwErrorIfSqlTypeContainsForbiddenCharacters(columnValues.sqlType());
+		}
+	}
+
+	private void throwErrorIfSqlTypeContainsForbiddenCharacters(String sqlType) {
+		if (!allowedSqlTypePattern.matcher(sqlType).matches()) {
+			throw SqlDatabaseException
+					.withMessage("Sql type contains character outside the allowed regexp.");
+		}
+	}
+
+	private String createSetFromArraysPart(List<ColumnValues> valueColumns) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (ColumnValues columnValues : valueColumns) {
+			joiner.add(columnValues.column() + " = v." + columnValues.column());
+		}
+		return joiner.toString();
+	}
+
+	private String createTypedArrayPlaceholders(List<ColumnValues> columns) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (ColumnValues columnValues : columns) {
+			joiner.add("?::" + columnValues.sqlType() + "[]");
+		}
+		return joiner.toString();
+	}
+
+	private String joinColumnNames(List<ColumnValues> columns) {
+		StringJoiner joiner = new StringJoiner(", ");
+		for (ColumnValues columnValues : columns) {
+			joiner.add(columnValues.column());
+		}
+		return joiner.toString();
+	}
+
 	@Override
 	public String assembleDeleteSql() {
 		return "delete from " + tableName + possiblyAddConditions();
 	}
 
+	@Override
+	public Optional<Object> getConditionOrParameterValue(String column) {
+		if (equalsConditionValues.containsKey(column)) {
+			return Optional.ofNullable(equalsConditionValues.get(column));
+		}
+		return getParameterValue(column);
+	}
+
+	private Optional<Object> getParameterValue(String column) {
+		int index = parameterNames.indexOf(column);
+		if (index == -1) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(parameterValues.get(index));
+	}
+
 	@Override
 	public List<Object> getQueryValues() {
 		List<Object> queryValues = new ArrayList<>();
@@ -261,11 +656,56 @@ public class TableQueryImp implements TableQuery {
 
 	@Override
 	public String assembleCountSql() {
-		return "select count (*) from (" + assembleReadSql() + ") as count";
+		if (offsetIsSet() || toNumberIsSet()) {
+			return assembleCountSqlUsingLimit(possiblyAddLimit());
+		}
+		return "select count(*) from " + tableName + possiblyAddConditions();
+	}
+
+	private String assembleCountSqlUsingLimit(String limitPart) {
+		return assembleCountSqlUsingOffsetAndLimit(possiblyAddOffset(), limitPart);
+	}
+
+	private String assembleCountSqlUsingOffsetAndLimit(String offsetPart, String limitPart) {
+		String sql = "select count(*) from (select 1 from " + tableName;
+		sql += possiblyAddConditions();
+		sql += offsetPart;
+		sql += limitPart;
+		sql += ") as count";
+		return sql;
+	}
+
+	@Override
+	public String assembleCountWithoutOffsetSql() {
+		if (toNumberIsSet()) {
+			return assembleCountSqlUsingOffsetAndLimit("", possiblyAddLimitWithoutOffset());
+		}
+		return "select count(*) from " + tableName + possiblyAddConditions();
+	}
+
+	@Override
+	public String assembleCappedCountSql(long cap) {
+		return assembleCountSqlUsingLimit(" limit " + calculateCappedLimit(cap));
+	}
+
+	private long calculateCappedLimit(long cap) {
+		if (toNumberIsSet()) {
+			return Math.min(calculateLimit(), cap);
+		}
+		return cap;
+	}
+
+	@Override
+	public String assembleEstimatedCountSql() {
+		String sql = "explain (format json) select 1 from " + tableName;
+		sql += possiblyAddConditions();
+		sql += possiblyAddOffset();
+		sql += possiblyAddLimit();
+		return sql;
 	}
 
+	@Override
 	public String getTableName() {
-		// needed for test
 		return tableName;
 	}
 }
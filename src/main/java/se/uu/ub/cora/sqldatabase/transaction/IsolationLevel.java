@@ -0,0 +1,59 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction;
+
+/**
+ * IsolationLevel holds the transaction isolation levels that can be requested using
+ * {@link TransactionOptions}.
+ */
+public enum IsolationLevel {
+	/**
+	 * Use the default isolation level of the database, normally read committed.
+	 */
+	DATABASE_DEFAULT(null),
+	/**
+	 * Each statement sees data committed before the statement began.
+	 */
+	READ_COMMITTED("read committed"),
+	/**
+	 * All statements see data committed before the first statement in the transaction began.
+	 */
+	REPEATABLE_READ("repeatable read"),
+	/**
+	 * As repeatable read, and the transaction fails with a serialization failure if its result
+	 * could differ from running the concurrent transactions one at a time.
+	 */
+	SERIALIZABLE("serializable");
+
+	private final String sql;
+
+	IsolationLevel(String sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * sql returns the isolation level as written in a sql set transaction statement, or null for
+	 * {@link #DATABASE_DEFAULT}.
+	 * 
+	 * @return A String with the isolation level as sql
+	 */
+	public String sql() {
+		return sql;
+	}
+}
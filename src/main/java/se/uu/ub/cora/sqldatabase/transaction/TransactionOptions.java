@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction;
+
+import java.util.regex.Pattern;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+/**
+ * TransactionOptions holds the characteristics of a transaction started using
+ * {@link DatabaseFacade#startTransactionUsingOptions(TransactionOptions)}. Create options using
+ * {@link #defaults()} or {@link #readOnlyDefaults()} and change them using the with methods, for
+ * example
+ * <code>TransactionOptions.readOnlyDefaults().withIsolationLevel(IsolationLevel.SERIALIZABLE)</code>.
+ * <p>
+ * Read only transactions can not write to the database, which lets the database skip work and
+ * makes it possible to run them on replicas.
+ * <p>
+ * Deferrable only has an effect for read only transactions using
+ * {@link IsolationLevel#SERIALIZABLE}, the transaction then waits for a snapshot where it can not
+ * fail with serialization failures.
+ * <p>
+ * A snapshot id, exported from another transaction using pg_export_snapshot, makes the transaction
+ * see the database exactly as the exporting transaction does. Importing a snapshot requires
+ * {@link IsolationLevel#REPEATABLE_READ} or {@link IsolationLevel#SERIALIZABLE}.
+ * 
+ * @param isolationLevel
+ *            An IsolationLevel for the transaction
+ * @param readOnly
+ *            A boolean, true if the transaction is read only
+ * @param deferrable
+ *            A boolean, true if the transaction is deferrable
+ * @param snapshotId
+ *            A String with the id of a snapshot to import, or null to not import a snapshot
+ */
+public record TransactionOptions(IsolationLevel isolationLevel, boolean readOnly,
+		boolean deferrable, String snapshotId) {
+	private static final Pattern SNAPSHOT_ID_PATTERN = Pattern.compile("^[0-9A-Fa-f-]+$");
+
+	/**
+	 * TransactionOptions validates that the snapshot id, if set, only contains the hexadecimal
+	 * digits and dashes that pg_export_snapshot produces, as the id is used in sql.
+	 * 
+	 * @throws SqlDatabaseException
+	 *             if the snapshot id is not a snapshot id
+	 */
+	public TransactionOptions {
+		if (snapshotId != null && !SNAPSHOT_ID_PATTERN.matcher(snapshotId).matches()) {
+			throw SqlDatabaseException.withMessage("Not a snapshot id: " + snapshotId);
+		}
+	}
+
+	/**
+	 * TransactionOptions creates options that do not import a snapshot.
+	 * 
+	 * @param isolationLevel
+	 *            An IsolationLevel for the transaction
+	 * @param readOnly
+	 *            A boolean, true if the transaction is read only
+	 * @param deferrable
+	 *            A boolean, true if the transaction is deferrable
+	 */
+	public TransactionOptions(IsolationLevel isolationLevel, boolean readOnly,
+			boolean deferrable) {
+		this(isolationLevel, readOnly, deferrable, null);
+	}
+
+	/**
+	 * defaults returns options for a read write transaction using the default isolation level of
+	 * the database, the same as {@link DatabaseFacade#startTransaction()} uses.
+	 * 
+	 * @return A TransactionOptions with default options
+	 */
+	public static TransactionOptions defaults() {
+		return new TransactionOptions(IsolationLevel.DATABASE_DEFAULT, false, false);
+	}
+
+	/**
+	 * readOnlyDefaults returns options for a read only transaction using the default isolation
+	 * level of the database.
+	 * 
+	 * @return A TransactionOptions for a read only transaction
+	 */
+	public static TransactionOptions readOnlyDefaults() {
+		return defaults().withReadOnly();
+	}
+
+	/**
+	 * withIsolationLevel returns a copy of these options using the provided isolation level.
+	 * 
+	 * @param level
+	 *            An IsolationLevel to use
+	 * @return A new TransactionOptions
+	 */
+	public TransactionOptions withIsolationLevel(IsolationLevel level) {
+		return new TransactionOptions(level, readOnly, deferrable, snapshotId);
+	}
+
+	/**
+	 * withReadOnly returns a copy of these options for a read only transaction.
+	 * 
+	 * @return A new TransactionOptions
+	 */
+	public TransactionOptions withReadOnly() {
+		return new TransactionOptions(isolationLevel, true, deferrable, snapshotId);
+	}
+
+	/**
+	 * withDeferrable returns a copy of these options for a deferrable transaction.
+	 * 
+	 * @return A new TransactionOptions
+	 */
+	public TransactionOptions withDeferrable() {
+		return new TransactionOptions(isolationLevel, readOnly, true, snapshotId);
+	}
+
+	/**
+	 * withSnapshot returns a copy of these options for a transaction importing the snapshot with
+	 * the provided id.
+	 * 
+	 * @param snapshotId
+	 *            A String with a snapshot id returned by pg_export_snapshot
+	 * @return A new TransactionOptions
+	 * @throws SqlDatabaseException
+	 *             if the snapshot id is not a snapshot id
+	 */
+	public TransactionOptions withSnapshot(String snapshotId) {
+		return new TransactionOptions(isolationLevel, readOnly, deferrable, snapshotId);
+	}
+}
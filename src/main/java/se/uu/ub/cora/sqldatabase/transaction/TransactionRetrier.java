@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction;
+
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+
+/**
+ * TransactionRetrier runs attempts of a transaction, retrying the attempt when it fails because
+ * of a conflict with a concurrent transaction. It is used by
+ * {@link DatabaseFacade#runInTransaction(java.util.function.Function)} and there is normally no
+ * need to use it directly.
+ * <p>
+ * Implementations of TransactionRetrier MUST be threadsafe, as one TransactionRetrier is shared
+ * by all facades created by the same factory.
+ */
+public interface TransactionRetrier {
+
+	/**
+	 * runUsingRetries runs the provided attempt and returns its result.
+	 * <p>
+	 * If the attempt fails with an exception caused by a serialization failure (SQLState 40001)
+	 * or a deadlock (SQLState 40P01) MUST the attempt be run again, after waiting a random time
+	 * that grows with the number of failed attempts. Implementations MUST limit the number of
+	 * attempts and when the limit is reached MUST the exception from the last attempt be thrown.
+	 * <p>
+	 * If the attempt fails with any other exception MUST the exception be thrown without retrying.
+	 * <p>
+	 * The attempt MUST run a complete transaction, starting it and ending or rolling it back, so
+	 * that it can be safely run again.
+	 * 
+	 * @param attempt
+	 *            A Supplier that runs one attempt of the transaction
+	 * @return The result of the successful attempt
+	 */
+	<T> T runUsingRetries(Supplier<T> attempt);
+
+	/**
+	 * getStatistics returns statistics about how many transactions that have been run and retried
+	 * since the TransactionRetrier was created.
+	 * 
+	 * @return A TransactionRetryStatistics with the current statistics
+	 */
+	TransactionRetryStatistics getStatistics();
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction;
+
+/**
+ * TransactionRetryStatistics holds statistics about how a {@link TransactionRetrier} has been
+ * used.
+ * 
+ * @param transactions
+ *            A long with the number of transactions run, not counting retries
+ * @param serializationFailureRetries
+ *            A long with the number of retries made because of serialization failures
+ * @param deadlockRetries
+ *            A long with the number of retries made because of deadlocks
+ * @param exhaustedRetries
+ *            A long with the number of transactions that failed because the limit of attempts
+ *            was reached
+ */
+public record TransactionRetryStatistics(long transactions, long serializationFailureRetries,
+		long deadlockRetries, long exhaustedRetries) {
+
+	/**
+	 * retries returns the total number of retries made.
+	 * 
+	 * @return A long with the total number of retries
+	 */
+	public long retries() {
+		return serializationFailureRetries + deadlockRetries;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction.internal;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetryStatistics;
+
+/**
+ * TransactionRetrierImp implements {@link TransactionRetrier} using exponential backoff with full
+ * jitter. Before retry number n it waits a random time between zero and the initial backoff times
+ * 2^(n-1), but never longer than the max backoff. The random wait spreads out the retries of
+ * transactions that failed because of each other, so that they do not collide again.
+ * <p>
+ * TransactionRetrierImp is threadsafe
+ */
+public final class TransactionRetrierImp implements TransactionRetrier {
+	private static final String SERIALIZATION_FAILURE = "40001";
+	private static final String DEADLOCK_DETECTED = "40P01";
+	private static final int DEFAULT_MAX_ATTEMPTS = 5;
+	private static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofMillis(10);
+	private static final Duration DEFAULT_MAX_BACKOFF = Duration.ofSeconds(1);
+	private final int maxAttempts;
+	private final long initialBackoffNanos;
+	private final long maxBackoffNanos;
+	private final LongUnaryOperator jitter;
+	private final Sleeper sleeper;
+	private final LongAdder transactions = new LongAdder();
+	private final LongAdder serializationFailureRetries = new LongAdder();
+	private final LongAdder deadlockRetries = new LongAdder();
+	private final LongAdder exhaustedRetries = new LongAdder();
+
+	/**
+	 * usingDefaults creates a new TransactionRetrierImp making at most 5 attempts, waiting at most
+	 * 10 milliseconds before the first retry and at most 1 second before any retry.
+	 * 
+	 * @return A new TransactionRetrierImp
+	 */
+	public static TransactionRetrierImp usingDefaults() {
+		return usingMaxAttemptsAndInitialBackoffAndMaxBackoff(DEFAULT_MAX_ATTEMPTS,
+				DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+	}
+
+	/**
+	 * usingMaxAttemptsAndInitialBackoffAndMaxBackoff creates a new TransactionRetrierImp.
+	 * 
+	 * @param maxAttempts
+	 *            An int with the max number of attempts for each transaction, including the
+	 *            first attempt
+	 * @param initialBackoff
+	 *            A Duration with the longest wait before the first retry
+	 * @param maxBackoff
+	 *            A Duration with the longest wait before any retry
+	 * @return A new TransactionRetrierImp
+	 */
+	public static TransactionRetrierImp usingMaxAttemptsAndInitialBackoffAndMaxBackoff(
+			int maxAttempts, Duration initialBackoff, Duration maxBackoff) {
+		return new TransactionRetrierImp(maxAttempts, initialBackoff, maxBackoff,
+				cap -> ThreadLocalRandom.current().nextLong(cap + 1), Thread::sleep);
+	}
+
+	static TransactionRetrierImp usingMaxAttemptsAndInitialBackoffAndMaxBackoffAndJitterAndSleeper(
+			int maxAttempts, Duration initialBackoff, Duration maxBackoff, LongUnaryOperator jitter,
+			Sleeper sleeper) {
+		// package private for test reasons
+		return new TransactionRetrierImp(maxAttempts, initialBackoff, maxBackoff, jitter, sleeper);
+	}
+
+	private TransactionRetrierImp(int maxAttempts, Duration initialBackoff, Duration maxBackoff,
+			LongUnaryOperator jitter, Sleeper sleeper) {
+		throwErrorIfMaxAttemptsIsNotPositive(maxAttempts);
+		this.maxAttempts = maxAttempts;
+		this.initialBackoffNanos = initialBackoff.toNanos();
+		this.maxBackoffNanos = maxBackoff.toNanos();
+		this.jitter = jitter;
+		this.sleeper = sleeper;
+	}
+
+	private void throwErrorIfMaxAttemptsIsNotPositive(int maxAttempts) {
+		if (maxAttempts < 1) {
+			throw SqlDatabaseException
+					.withMessage("Max attempts must be positive for transaction retries.");
+		}
+	}
+
+	@Override
+	public <T> T runUsingRetries(Supplier<T> attempt) {
+		transactions.increment();
+		for (int attemptNumber = 1;; attemptNumber++) {
+			try {
+				return attempt.get();
+			} catch (RuntimeException e) {
+				handleFailedAttempt(attemptNumber, e);
+			}
+		}
+	}
+
+	private void handleFailedAttempt(int attemptNumber, RuntimeException e) {
+		Optional<String> retryableSqlState = findRetryableSqlState(e);
+		if (retryableSqlState.isEmpty()) {
+			throw e;
+		}
+		if (attemptNumber >= maxAttempts) {
+			exhaustedRetries.increment();
+			throw e;
+		}
+		countRetryForSqlState(retryableSqlState.get());
+		waitBeforeNextAttempt(attemptNumber, e);
+	}
+
+	private Optional<String> findRetryableSqlState(Throwable error) {
+		Throwable cause = error;
+		while (cause != null) {
+			if (cause instanceof SQLException sqlException
+					&& isRetryableSqlState(sqlException.getSQLState())) {
+				return Optional.of(sqlException.getSQLState());
+			}
+			cause = cause.getCause();
+		}
+		return Optional.empty();
+	}
+
+	private boolean isRetryableSqlState(String sqlState) {
+		return SERIALIZATION_FAILURE.equals(sqlState) || DEADLOCK_DETECTED.equals(sqlState);
+	}
+
+	private void countRetryForSqlState(String sqlState) {
+		if (SERIALIZATION_FAILURE.equals(sqlState)) {
+			serializationFailureRetries.increment();
+		} else {
+			deadlockRetries.increment();
+		}
+	}
+
+	private void waitBeforeNextAttempt(int attemptNumber, RuntimeException e) {
+		try {
+			sleeper.sleep(Duration.ofNanos(jitter.applyAsLong(calculateMaxWait(attemptNumber))));
+		} catch (InterruptedException interrupted) {
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+	}
+
+	private long calculateMaxWait(int attemptNumber) {
+		double exponentialBackoff = Math.scalb((double) initialBackoffNanos, attemptNumber - 1);
+		return (long) Math.min(maxBackoffNanos, exponentialBackoff);
+	}
+
+	@Override
+	public TransactionRetryStatistics getStatistics() {
+		return new TransactionRetryStatistics(transactions.sum(),
+				serializationFailureRetries.sum(), deadlockRetries.sum(), exhaustedRetries.sum());
+	}
+
+	public int onlyForTestGetMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public Duration onlyForTestGetInitialBackoff() {
+		return Duration.ofNanos(initialBackoffNanos);
+	}
+
+	public Duration onlyForTestGetMaxBackoff() {
+		return Duration.ofNanos(maxBackoffNanos);
+	}
+
+	@FunctionalInterface
+	interface Sleeper {
+		void sleep(Duration duration) throws InterruptedException;
+	}
+}
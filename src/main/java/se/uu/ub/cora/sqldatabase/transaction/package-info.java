@@ -0,0 +1,9 @@
+/**
+ * The transaction package contains interfaces for running work in transactions that are retried
+ * when they fail because of concurrent transactions, such as serialization failures and
+ * deadlocks.
+ * <p>
+ * Retries are configured using
+ * {@link se.uu.ub.cora.sqldatabase.SqlDatabaseFactoryImp#useTransactionRetries(int, java.time.Duration, java.time.Duration)}.
+ */
+package se.uu.ub.cora.sqldatabase.transaction;
@@ -1,6 +1,6 @@
 /*
 
- * Copyright 2018, 2019, 2021 Uppsala University Library
+ * Copyright 2018, 2019, 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -22,27 +22,45 @@ package se.uu.ub.cora.sqldatabase;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCacheSpy;
 import se.uu.ub.cora.sqldatabase.connection.ConnectionSpy;
 import se.uu.ub.cora.sqldatabase.connection.OldConnectionSpy;
 import se.uu.ub.cora.sqldatabase.connection.OldPreparedStatementSpy;
 import se.uu.ub.cora.sqldatabase.connection.OldResultSetSpy;
 import se.uu.ub.cora.sqldatabase.connection.PreparedStatementSpy;
 import se.uu.ub.cora.sqldatabase.internal.DatabaseFacadeImp;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.replica.HedgedRead;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedgerSpy;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLeaseSpy;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouterSpy;
+import se.uu.ub.cora.sqldatabase.replica.StatementReader;
+import se.uu.ub.cora.sqldatabase.transaction.IsolationLevel;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.internal.TransactionRetrierImp;
 
 public class DatabaseFacadeTest {
 	private static final String ERROR_READING_DATA_USING_SQL = "Error reading data using sql: ";
@@ -57,6 +75,7 @@ public class DatabaseFacadeTest {
 	private static final String UPDATE_SQL = "update testTable set x=? where y = ?";
 
 	private static final String SOME_SQL = "select x from y";
+	private static final String CURRENT_LSN_SQL = "select pg_current_wal_lsn()::text as lsn";
 	private List<Object> values;
 
 	@BeforeMethod
@@ -435,6 +454,107 @@ public class DatabaseFacadeTest {
 		}
 	}
 
+	@Test
+	public void testReadRowByRowHandsAllRowsToRowHandler() {
+		setThreeRowsInResultSetSpy();
+		List<Row> handledRows = new ArrayList<>();
+
+		databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, values, 50, row -> {
+			handledRows.add(row);
+			return true;
+		});
+
+		assertEquals(oldConnection.sql, SELECT_SQL);
+		oldPreparedStatement.MCR.assertParameters("setFetchSize", 0, 50);
+		assertEquals(handledRows.size(), 3);
+		assertEquals(handledRows.get(0).getValueByColumn("someColumnName"), "value1");
+		assertEquals(handledRows.get(2).getValueByColumn("someColumnName"), "value12");
+		assertTrue(oldResultSet.closeWasCalled);
+		assertTrue(oldPreparedStatement.closeWasCalled);
+	}
+
+	private void setThreeRowsInResultSetSpy() {
+		List<String> columnNames = createListOfColumnNames();
+		oldResultSet.columnNames = columnNames;
+		List<Map<String, Object>> rowValues = new ArrayList<>();
+		rowValues.add(createMapWithColumnNamesAndValues(columnNames, ""));
+		rowValues.add(createMapWithColumnNamesAndValues(columnNames, "1"));
+		rowValues.add(createMapWithColumnNamesAndValues(columnNames, "2"));
+		oldResultSet.rowValues = rowValues;
+	}
+
+	@Test
+	public void testReadRowByRowOutsideTransactionReadsInOwnTransaction() {
+		databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, values, 50, row -> true);
+
+		oldConnection.MCR.assertParameters("setAutoCommit", 0, false);
+		oldConnection.MCR.assertParameters("setAutoCommit", 1, true);
+		oldConnection.MCR.assertNumberOfCallsToMethod("rollback", 1);
+	}
+
+	@Test
+	public void testReadRowByRowInTransactionUsesTransaction() {
+		databaseFacade.startTransaction();
+		oldConnection.MCR.assertNumberOfCallsToMethod("setAutoCommit", 1);
+
+		databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, values, 50, row -> true);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("setAutoCommit", 1);
+		oldConnection.MCR.assertMethodNotCalled("rollback");
+	}
+
+	@Test
+	public void testReadRowByRowStopsWhenRowHandlerReturnsFalse() {
+		setThreeRowsInResultSetSpy();
+		List<Row> handledRows = new ArrayList<>();
+
+		databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, values, 50, row -> {
+			handledRows.add(row);
+			return handledRows.size() < 2;
+		});
+
+		assertEquals(handledRows.size(), 2);
+		assertTrue(oldResultSet.closeWasCalled);
+	}
+
+	@Test
+	public void testReadRowByRowWithDatabaseNull() {
+		List<Object> valuesWithNull = prepareValuesWithDatabaseNullValue();
+
+		databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, valuesWithNull, 50, row -> true);
+
+		assertDatabaseNullValue();
+	}
+
+	@Test
+	public void testReadRowByRowSqlErrorThrowsError() {
+		oldConnection.throwErrorConnection = true;
+		try {
+			databaseFacade.readUsingSqlAndValuesRowByRow(SOME_SQL, values, 50, row -> true);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), ERROR_READING_DATA_USING_SQL + SOME_SQL);
+			assertEquals(e.getCause().getMessage(), "error thrown from setAutoCommit in spy");
+		}
+	}
+
+	@Test
+	public void testReadRowByRowRowHandlerErrorIsPassedOnAndTransactionEnded() {
+		setThreeRowsInResultSetSpy();
+		RuntimeException handlerError = new RuntimeException("error from row handler");
+		try {
+			databaseFacade.readUsingSqlAndValuesRowByRow(SELECT_SQL, values, 50, row -> {
+				throw handlerError;
+			});
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(e, handlerError);
+		}
+		oldConnection.MCR.assertNumberOfCallsToMethod("rollback", 1);
+		oldConnection.MCR.assertParameters("setAutoCommit", 1, true);
+		assertTrue(oldResultSet.closeWasCalled);
+	}
+
 	@Test
 	public void testSqlSetAsPreparedStatement() {
 		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
@@ -564,6 +684,72 @@ public class DatabaseFacadeTest {
 		}
 	}
 
+	@Test
+	public void testExecuteSqlThrowsSqlConflictExceptionUsingSqlStateNotMessage() {
+		oldPreparedStatement.throwDuplicateKeyException = true;
+		oldPreparedStatement.duplicateErrorMessage = "dubblettnyckel bryter mot unikhetsvillkor";
+		try {
+			databaseFacade.executeSqlWithValues("someSQL", values);
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(), "Error executing statement, duplicated key: someSQL");
+		}
+	}
+
+	@Test
+	public void testExecuteSqlReturningColumnsAddsReturningToSql() {
+		setValuesInResultSetSpy(oldResultSet);
+		values.add("SE");
+
+		List<Row> rows = databaseFacade.executeSqlWithValuesReturningColumns(UPDATE_SQL, values,
+				List.of("id", "created"));
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				UPDATE_SQL + " returning id, created");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("1"), "SE");
+		assertTrue(oldPreparedStatement.executeQueryWasCalled);
+		assertFalse(oldPreparedStatement.executeUpdateWasCalled);
+		assertTrue(oldPreparedStatement.closeWasCalled);
+		assertEquals(rows.size(), 1);
+	}
+
+	@Test
+	public void testExecuteSqlReturningNoColumnsReturnsAllColumns() {
+		databaseFacade.executeSqlWithValuesReturningColumns(UPDATE_SQL, values,
+				Collections.emptyList());
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0, UPDATE_SQL + " returning *");
+	}
+
+	@Test
+	public void testExecuteSqlReturningColumnsThrowsSqlConflictException() {
+		oldPreparedStatement.throwDuplicateKeyException = true;
+		try {
+			databaseFacade.executeSqlWithValuesReturningColumns("someSQL", values,
+					List.of("id"));
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(),
+					"Error executing statement, duplicated key: someSQL returning id");
+		}
+	}
+
+	@Test
+	public void testExecuteSqlReturningColumnsThrowsError() {
+		oldConnection.throwErrorConnection = true;
+		try {
+			databaseFacade.executeSqlWithValuesReturningColumns("someSQL", values,
+					List.of("id"));
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error executing statement: someSQL returning id");
+			assertEquals(e.getCause().getMessage(), "error thrown from prepareStatement in spy");
+		}
+	}
+
 	@Test
 	public void testExecuteSqlErrorThrowsErrorAndSendsAlongOriginalError() {
 		oldConnection.throwErrorConnection = true;
@@ -639,6 +825,17 @@ public class DatabaseFacadeTest {
 		assertDatabaseNullValue();
 	}
 
+	@Test
+	public void testReadWithTextArrayValueSetsStringArray() throws Exception {
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL,
+				List.of(new TextArray(Arrays.asList("a", null))));
+
+		oldPreparedStatement.MCR.assertParameterAsEqual("setObject", 0, "parameterIndex", 1);
+		String[] boundArray = (String[]) oldPreparedStatement.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("setObject", 0, "x");
+		assertEquals(boundArray, new String[] { "a", null });
+	}
+
 	private List<Object> prepareValuesWithDatabaseNullValue() {
 		List<Object> valuesWithNull = new ArrayList<>();
 		valuesWithNull.add(DatabaseValues.NULL);
@@ -715,4 +912,1219 @@ public class DatabaseFacadeTest {
 		assertTrue(oldConnection.getAutoCommit());
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testStartTransactionUsingReadCache() throws Exception {
+		databaseFacade.startTransactionUsingReadCache();
+
+		assertTrue(oldSqlConnectionProvider.getConnectionHasBeenCalled);
+		assertFalse(oldConnection.getAutoCommit());
+	}
+
+	@Test
+	public void testRepeatedReadInTransactionWithoutReadCacheIsReadAgain() {
+		databaseFacade.startTransaction();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testRepeatedReadInTransactionUsingReadCacheIsReadOnce() {
+		setValuesInResultSetSpy(oldResultSet);
+		databaseFacade.startTransactionUsingReadCache();
+
+		List<Row> firstRead = databaseFacade.readUsingSqlAndValues(SELECT_SQL, List.of("se"));
+		List<Row> secondRead = databaseFacade.readUsingSqlAndValues(SELECT_SQL, List.of("se"));
+		databaseFacade.readOneRowOrFailUsingSqlAndValues(SELECT_SQL, List.of("se"));
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		assertEquals(secondRead, firstRead);
+	}
+
+	@Test
+	public void testReadsInTransactionUsingReadCacheWithOtherSqlOrValuesAreRead() {
+		databaseFacade.startTransactionUsingReadCache();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, List.of("se"));
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, List.of("no"));
+		databaseFacade.readUsingSqlAndValues(SOME_SQL, List.of("se"));
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+	}
+
+	@Test
+	public void testReadUsingVolatileFunctionIsNotCachedInTransaction() {
+		databaseFacade.startTransactionUsingReadCache();
+
+		databaseFacade.readUsingSqlAndValues("select nextval('someSequence')", values);
+		databaseFacade.readUsingSqlAndValues("select nextval('someSequence')", values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testWriteInTransactionRemovesCachedReadsForWrittenTable() {
+		String selectFromTestTable = "select * from testTable where y = ?";
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(selectFromTestTable, values);
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(selectFromTestTable, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 4);
+		oldConnection.MCR.assertParameters("prepareStatement", 3, selectFromTestTable);
+	}
+
+	@Test
+	public void testUnknownWriteInTransactionRemovesAllCachedReads() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		databaseFacade.executeSql("truncate someOtherTable");
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+	}
+
+	@Test
+	public void testEndTransactionDiscardsReadCache() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.endTransaction();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.startTransaction();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+	}
+
+	@Test
+	public void testRollbackDiscardsReadCache() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.rollback();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testCloseDiscardsReadCache() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		try {
+			databaseFacade.close();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Close called on running transaction, rollback perfromed.");
+		}
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testBeginNestedWithoutTransactionThrowsError() {
+		try {
+			databaseFacade.beginNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Nested scope can only be begun in a started transaction.");
+		}
+		oldConnection.MCR.assertMethodNotCalled("setSavepoint");
+	}
+
+	@Test
+	public void testBeginNestedSetsSavepoint() {
+		databaseFacade.startTransaction();
+
+		databaseFacade.beginNested();
+
+		oldConnection.MCR.assertMethodWasCalled("setSavepoint");
+	}
+
+	@Test
+	public void testBeginNestedThrowsError() {
+		databaseFacade.startTransaction();
+		oldConnection.throwErrorSavepoint = true;
+		try {
+			databaseFacade.beginNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error beginning nested scope.");
+			assertEquals(e.getCause().getMessage(),
+					"error thrown from savepoint method in ConnectionSpy");
+		}
+	}
+
+	@Test
+	public void testReleaseNestedWithoutNestedScopeThrowsError() {
+		databaseFacade.startTransaction();
+		try {
+			databaseFacade.releaseNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No nested scope has been begun.");
+		}
+	}
+
+	@Test
+	public void testReleaseNestedReleasesInnermostSavepoint() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		databaseFacade.beginNested();
+
+		databaseFacade.releaseNested();
+		databaseFacade.releaseNested();
+
+		var outerSavepoint = oldConnection.MCR.getReturnValue("setSavepoint", 0);
+		var innerSavepoint = oldConnection.MCR.getReturnValue("setSavepoint", 1);
+		oldConnection.MCR.assertParameters("releaseSavepoint", 0, innerSavepoint);
+		oldConnection.MCR.assertParameters("releaseSavepoint", 1, outerSavepoint);
+	}
+
+	@Test
+	public void testReleaseNestedThrowsError() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		oldConnection.throwErrorSavepoint = true;
+		try {
+			databaseFacade.releaseNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error releasing nested scope.");
+			assertEquals(e.getCause().getMessage(),
+					"error thrown from savepoint method in ConnectionSpy");
+		}
+	}
+
+	@Test
+	public void testRollbackToNestedWithoutNestedScopeThrowsError() {
+		databaseFacade.startTransaction();
+		try {
+			databaseFacade.rollbackToNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No nested scope has been begun.");
+		}
+	}
+
+	@Test
+	public void testRollbackToNestedRollsBackAndReleasesInnermostSavepoint() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		databaseFacade.beginNested();
+
+		databaseFacade.rollbackToNested();
+
+		var innerSavepoint = oldConnection.MCR.getReturnValue("setSavepoint", 1);
+		oldConnection.MCR.assertParameters("rollback", 0, innerSavepoint);
+		oldConnection.MCR.assertParameters("releaseSavepoint", 0, innerSavepoint);
+		oldConnection.MCR.assertNumberOfCallsToMethod("rollback", 1);
+	}
+
+	@Test
+	public void testRollbackToNestedThrowsError() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		oldConnection.throwErrorSavepoint = true;
+		try {
+			databaseFacade.rollbackToNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error doing rollback to nested scope.");
+			assertEquals(e.getCause().getMessage(),
+					"error thrown from savepoint method in ConnectionSpy");
+		}
+	}
+
+	@Test
+	public void testRollbackToNestedEmptiesTransactionReadCache() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.beginNested();
+
+		databaseFacade.rollbackToNested();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testReleaseNestedKeepsTransactionReadCache() {
+		databaseFacade.startTransactionUsingReadCache();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.beginNested();
+
+		databaseFacade.releaseNested();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+	}
+
+	@Test
+	public void testEndTransactionEndsNestedScopes() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		databaseFacade.endTransaction();
+		databaseFacade.startTransaction();
+		try {
+			databaseFacade.releaseNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No nested scope has been begun.");
+		}
+	}
+
+	@Test
+	public void testRollbackEndsNestedScopes() {
+		databaseFacade.startTransaction();
+		databaseFacade.beginNested();
+		databaseFacade.rollback();
+		try {
+			databaseFacade.rollbackToNested();
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No nested scope has been begun.");
+		}
+	}
+
+	@Test
+	public void testDefaultTransactionRetrier() {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+
+		TransactionRetrierImp retrier = (TransactionRetrierImp) databaseFacadeImp
+				.onlyForTestGetTransactionRetrier();
+
+		assertEquals(retrier.onlyForTestGetMaxAttempts(), 5);
+	}
+
+	@Test
+	public void testSetTransactionRetrier() {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+		TransactionRetrier retrier = TransactionRetrierImp.usingDefaults();
+
+		databaseFacadeImp.setTransactionRetrier(retrier);
+
+		assertSame(databaseFacadeImp.onlyForTestGetTransactionRetrier(), retrier);
+	}
+
+	@Test
+	public void testRunInTransactionRunsWorkInTransactionAndEndsIt() throws Exception {
+		List<Boolean> autoCommitInWork = new ArrayList<>();
+
+		String result = databaseFacade.runInTransaction(facade -> {
+			assertSame(facade, databaseFacade);
+			autoCommitInWork.add(getAutoCommit());
+			facade.executeSqlWithValues(UPDATE_SQL, values);
+			return "someResult";
+		});
+
+		assertEquals(result, "someResult");
+		assertEquals(autoCommitInWork, List.of(false));
+		assertTrue(oldConnection.getAutoCommit());
+		oldConnection.MCR.assertMethodNotCalled("rollback");
+	}
+
+	private boolean getAutoCommit() {
+		try {
+			return oldConnection.getAutoCommit();
+		} catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testRunInTransactionRollsBackAndThrowsErrorFromWork() throws Exception {
+		RuntimeException error = new RuntimeException("some error from work");
+		try {
+			databaseFacade.runInTransaction(facade -> {
+				throw error;
+			});
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(e, error);
+		}
+		oldConnection.MCR.assertNumberOfCallsToMethod("rollback", 1);
+		assertTrue(oldConnection.getAutoCommit());
+	}
+
+	@Test
+	public void testRunInTransactionAddsFailingRollbackAsSuppressed() {
+		RuntimeException error = new RuntimeException("some error from work");
+		oldConnection.throwErrorRollback = true;
+		try {
+			databaseFacade.runInTransaction(facade -> {
+				throw error;
+			});
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(e, error);
+			assertEquals(e.getSuppressed()[0].getMessage(), "Error doing rollBack on connection.");
+		}
+	}
+
+	@Test
+	public void testRunInTransactionInStartedTransactionThrowsError() {
+		databaseFacade.startTransaction();
+		try {
+			databaseFacade.runInTransaction(facade -> "someResult");
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Run in transaction can not be used in a started transaction.");
+		}
+		oldConnection.MCR.assertMethodNotCalled("rollback");
+	}
+
+	@Test
+	public void testRunInTransactionRetriesSerializationFailures() throws Exception {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+		TransactionRetrier retrier = TransactionRetrierImp
+				.usingMaxAttemptsAndInitialBackoffAndMaxBackoff(3, Duration.ZERO, Duration.ZERO);
+		databaseFacadeImp.setTransactionRetrier(retrier);
+		List<String> attempts = new ArrayList<>();
+
+		String result = databaseFacade.runInTransaction(facade -> {
+			attempts.add("attempt");
+			if (attempts.size() < 3) {
+				throw SqlDatabaseException.withMessageAndException("Error executing statement",
+						new SQLException("could not serialize access", "40001"));
+			}
+			return "result from attempt " + attempts.size();
+		});
+
+		assertEquals(result, "result from attempt 3");
+		oldConnection.MCR.assertNumberOfCallsToMethod("rollback", 2);
+		assertTrue(oldConnection.getAutoCommit());
+		assertEquals(retrier.getStatistics().serializationFailureRetries(), 2);
+	}
+
+	@Test
+	public void testStartTransactionUsingDefaultOptionsOnlyStartsTransaction() throws Exception {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.defaults());
+
+		assertFalse(oldConnection.getAutoCommit());
+		oldConnection.MCR.assertMethodNotCalled("setReadOnly");
+		oldConnection.MCR.assertMethodNotCalled("prepareStatement");
+	}
+
+	@Test
+	public void testStartTransactionUsingReadOnlyOptionsSetsReadOnlyOnConnection()
+			throws Exception {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults());
+
+		assertFalse(oldConnection.getAutoCommit());
+		oldConnection.MCR.assertParameters("setReadOnly", 0, true);
+		oldConnection.MCR.assertMethodNotCalled("prepareStatement");
+	}
+
+	@Test
+	public void testEndTransactionResetsReadOnly() {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults());
+		databaseFacade.endTransaction();
+		databaseFacade.startTransaction();
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("setReadOnly", 2);
+		oldConnection.MCR.assertParameters("setReadOnly", 1, false);
+	}
+
+	@Test
+	public void testRollbackResetsReadOnly() {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults());
+		databaseFacade.rollback();
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("setReadOnly", 2);
+		oldConnection.MCR.assertParameters("setReadOnly", 1, false);
+	}
+
+	@Test
+	public void testStartTransactionUsingOptionsThrowsError() {
+		oldConnection.throwErrorReadOnly = true;
+		try {
+			databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults());
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error setting transaction options.");
+			assertEquals(e.getCause().getMessage(),
+					"error thrown from setReadOnly in ConnectionSpy");
+		}
+	}
+
+	@Test
+	public void testStartTransactionUsingIsolationLevelSetsTransactionUsingOneStatement() {
+		databaseFacade.startTransactionUsingOptions(
+				TransactionOptions.defaults().withIsolationLevel(IsolationLevel.REPEATABLE_READ));
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				"set transaction isolation level repeatable read");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		oldConnection.MCR.assertMethodNotCalled("setReadOnly");
+	}
+
+	@Test
+	public void testStartTransactionUsingAllOptionsSetsTransactionUsingOneStatement() {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults()
+				.withIsolationLevel(IsolationLevel.SERIALIZABLE).withDeferrable());
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				"set transaction isolation level serializable, read only, deferrable");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		oldConnection.MCR.assertMethodNotCalled("setReadOnly");
+	}
+
+	@Test
+	public void testStartTransactionUsingReadCommittedAndDeferrable() {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.defaults()
+				.withIsolationLevel(IsolationLevel.READ_COMMITTED).withDeferrable());
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				"set transaction isolation level read committed, deferrable");
+	}
+
+	@Test
+	public void testStartTransactionUsingSnapshotSetsSnapshotAfterIsolationLevel() {
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults()
+				.withIsolationLevel(IsolationLevel.REPEATABLE_READ)
+				.withSnapshot("00000003-0000001B-1"));
+
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				"set transaction isolation level repeatable read, read only");
+		oldConnection.MCR.assertParameters("prepareStatement", 1,
+				"set transaction snapshot '00000003-0000001B-1'");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testStartTransactionUsingSnapshotDoesNotInvalidateCachesOrNotify() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingInvalidationChannel();
+
+		databaseFacade.startTransactionUsingOptions(TransactionOptions.readOnlyDefaults()
+				.withIsolationLevel(IsolationLevel.REPEATABLE_READ)
+				.withSnapshot("00000003-0000001B-1"));
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertMethodNotCalled("invalidateAll");
+		cache.MCR.assertMethodNotCalled("invalidateTable");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testTransactionOptionsWithInvalidSnapshotIdThrowsError() {
+		try {
+			TransactionOptions.readOnlyDefaults().withSnapshot("1'; drop table some");
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Not a snapshot id: 1'; drop table some");
+		}
+	}
+
+	@Test
+	public void testTransactionOptionsKeepSnapshotWhenChanged() {
+		TransactionOptions options = TransactionOptions.defaults().withSnapshot("0A-1")
+				.withReadOnly().withIsolationLevel(IsolationLevel.SERIALIZABLE).withDeferrable();
+
+		assertEquals(options.snapshotId(), "0A-1");
+		assertEquals(TransactionOptions.defaults().snapshotId(), null);
+	}
+
+	@Test
+	public void testRunInTransactionUsingOptions() throws Exception {
+		String result = databaseFacade.runInTransactionUsingOptions(
+				TransactionOptions.defaults().withIsolationLevel(IsolationLevel.SERIALIZABLE),
+				facade -> "someResult");
+
+		assertEquals(result, "someResult");
+		oldConnection.MCR.assertParameters("prepareStatement", 0,
+				"set transaction isolation level serializable");
+		assertTrue(oldConnection.getAutoCommit());
+	}
+
+	@Test
+	public void testNoReplicaRouterByDefault() {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+
+		assertEquals(databaseFacadeImp.onlyForTestGetReplicaRouter(), null);
+	}
+
+	@Test
+	public void testSetReplicaRouter() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+		assertSame(databaseFacadeImp.onlyForTestGetReplicaRouter(), replicaRouter);
+	}
+
+	private ReplicaRouterSpy setReplicaRouterSpy() {
+		ReplicaRouterSpy replicaRouter = new ReplicaRouterSpy();
+		((DatabaseFacadeImp) databaseFacade).setReplicaRouter(replicaRouter);
+		return replicaRouter;
+	}
+
+	@Test
+	public void testReadOutsideTransactionUsesReplica() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SOME_SQL, values);
+
+		replicaRouter.MCR.assertNumberOfCallsToMethod("leaseReplicaConnection", 1);
+		ConnectionSpy replicaConnection = getReplicaConnection(replicaRouter, 0);
+		replicaConnection.MCR.assertParameters("prepareStatement", 0, SELECT_SQL);
+		replicaConnection.MCR.assertParameters("prepareStatement", 1, SOME_SQL);
+		assertFalse(oldSqlConnectionProvider.getConnectionHasBeenCalled);
+	}
+
+	private ConnectionSpy getReplicaConnection(ReplicaRouterSpy replicaRouter, int callNumber) {
+		ReplicaLeaseSpy lease = getReplicaLease(replicaRouter, callNumber);
+		return (ConnectionSpy) lease.getConnection();
+	}
+
+	@SuppressWarnings("unchecked")
+	private ReplicaLeaseSpy getReplicaLease(ReplicaRouterSpy replicaRouter, int callNumber) {
+		Optional<ReplicaLease> lease = (Optional<ReplicaLease>) replicaRouter.MCR
+				.getReturnValue("leaseReplicaConnection", callNumber);
+		return (ReplicaLeaseSpy) lease.get();
+	}
+
+	@Test
+	public void testReadInTransactionUsesPrimary() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		databaseFacade.startTransaction();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		replicaRouter.MCR.assertMethodNotCalled("leaseReplicaConnection");
+		oldConnection.MCR.assertParameters("prepareStatement", 0, SELECT_SQL);
+	}
+
+	@Test
+	public void testReadsThatChangeDataOrLockRowsUsePrimary() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+
+		databaseFacade.readUsingSqlAndValues("select nextval('someSequence')", values);
+		databaseFacade.readUsingSqlAndValues("select * from someTable for update", values);
+		databaseFacade.readUsingSqlAndValues("select * from someTable for key share", values);
+		databaseFacade.readUsingSqlAndValues(
+				"with deleted as (delete from someTable returning id) select * from deleted",
+				values);
+		databaseFacade.readUsingSqlAndValues("select pg_advisory_lock(?)", values);
+
+		replicaRouter.MCR.assertMethodNotCalled("leaseReplicaConnection");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 5);
+	}
+
+	@Test
+	public void testWritesUsePrimary() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		setCurrentLsnOnPrimary("0/3000060");
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSqlWithValuesReturningColumns(UPDATE_SQL, values, List.of("x"));
+		databaseFacade.executeSql(SOME_SQL);
+
+		replicaRouter.MCR.assertMethodNotCalled("leaseReplicaConnection");
+		oldConnection.MCR.assertParameters("prepareStatement", 0, UPDATE_SQL);
+		oldConnection.MCR.assertParameters("prepareStatement", 2, UPDATE_SQL + " returning x");
+		oldConnection.MCR.assertParameters("prepareStatement", 4, SOME_SQL);
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 6);
+	}
+
+	@Test
+	public void testNoReadHedgerByDefault() {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+
+		assertEquals(databaseFacadeImp.onlyForTestGetReadHedger(), null);
+	}
+
+	@Test
+	public void testReplicaReadUsesReadHedger() throws Exception {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		ReadHedgerSpy readHedger = setReadHedgerSpy();
+
+		List<Row> rows = databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		ReplicaLeaseSpy firstLease = getReplicaLease(replicaRouter, 0);
+		readHedger.MCR.assertParameter("readUsingHedging", 0, "lease", firstLease);
+		readHedger.MCR.assertParameter("readUsingHedging", 0, "sql", SELECT_SQL);
+		HedgedRead<?> hedgedRead = (HedgedRead<?>) readHedger.MCR
+				.getReturnValue("readUsingHedging", 0);
+		assertSame(rows, hedgedRead.result());
+	}
+
+	private ReadHedgerSpy setReadHedgerSpy() {
+		ReadHedgerSpy readHedger = new ReadHedgerSpy();
+		((DatabaseFacadeImp) databaseFacade).setReadHedger(readHedger);
+		return readHedger;
+	}
+
+	@Test
+	public void testHedgeLeaserLeasesAnotherReplica() throws Exception {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		ReadHedgerSpy readHedger = setReadHedgerSpy();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		Supplier<?> hedgeLeaser = (Supplier<?>) readHedger.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("readUsingHedging", 0,
+						"hedgeLeaser");
+		Object hedgeLease = hedgeLeaser.get();
+
+		replicaRouter.MCR.assertParameters("leaseAnotherReplicaConnection", 0,
+				getReplicaLease(replicaRouter, 0));
+		replicaRouter.MCR.assertReturn("leaseAnotherReplicaConnection", 0, hedgeLease);
+	}
+
+	@Test
+	public void testHedgedReaderSetsValuesAndReadsResult() throws Exception {
+		setReplicaRouterSpy();
+		ReadHedgerSpy readHedger = setReadHedgerSpy();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, List.of("someValue"));
+		StatementReader<?> reader = (StatementReader<?>) readHedger.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("readUsingHedging", 0,
+						"reader");
+		PreparedStatementSpy statement = new PreparedStatementSpy();
+
+		Object rows = reader.readUsingStatement(statement);
+
+		statement.MCR.assertParameters("setObject", 0, 1, "someValue");
+		statement.MCR.assertMethodWasCalled("executeQuery");
+		assertEquals(rows, Collections.emptyList());
+	}
+
+	@Test
+	public void testHedgeWinnerLeaseIsUsedForLaterReads() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		ReadHedgerSpy readHedger = setReadHedgerSpy();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		HedgedRead<?> hedgedRead = (HedgedRead<?>) readHedger.MCR
+				.getReturnValue("readUsingHedging", 0);
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.close();
+
+		replicaRouter.MCR.assertNumberOfCallsToMethod("leaseReplicaConnection", 1);
+		readHedger.MCR.assertParameter("readUsingHedging", 1, "lease", hedgedRead.lease());
+		HedgedRead<?> secondHedgedRead = (HedgedRead<?>) readHedger.MCR
+				.getReturnValue("readUsingHedging", 1);
+		((ReplicaLeaseSpy) secondHedgedRead.lease()).MCR.assertMethodWasCalled("release");
+	}
+
+	@Test
+	public void testReadCarryingConsistencyTokenIsNotHedged() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		ReadHedgerSpy readHedger = setReadHedgerSpy();
+		databaseFacade.useConsistencyToken(ConsistencyToken.fromLsn("0/3000060"));
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		readHedger.MCR.assertMethodNotCalled("readUsingHedging");
+		Optional<?> lease = (Optional<?>) replicaRouter.MCR
+				.getReturnValue("leaseReplicaConnectionCaughtUpTo", 0);
+		ConnectionSpy replicaConnection = (ConnectionSpy) ((ReplicaLease) lease.get())
+				.getConnection();
+		replicaConnection.MCR.assertParameters("prepareStatement", 0, SELECT_SQL);
+	}
+
+	@Test
+	public void testNoConsistencyTokenWithoutReplicaRouter() {
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		assertTrue(databaseFacade.getConsistencyToken().isEmpty());
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+	}
+
+	@Test
+	public void testWriteOutsideTransactionCapturesConsistencyToken() {
+		setReplicaRouterSpy();
+		setCurrentLsnOnPrimary("0/3000060");
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		oldConnection.MCR.assertParameters("prepareStatement", 1, CURRENT_LSN_SQL);
+		assertEquals(databaseFacade.getConsistencyToken().get(),
+				ConsistencyToken.fromLsn("0/3000060"));
+	}
+
+	private void setCurrentLsnOnPrimary(String lsn) {
+		oldResultSet.columnNames = List.of("lsn");
+		oldResultSet.rowValues = List.of(Map.of("lsn", lsn));
+	}
+
+	@Test
+	public void testWriteInTransactionCapturesConsistencyTokenWhenTransactionIsEnded() {
+		setReplicaRouterSpy();
+		setCurrentLsnOnPrimary("0/3000060");
+		databaseFacade.startTransaction();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSql(SOME_SQL);
+		assertTrue(databaseFacade.getConsistencyToken().isEmpty());
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertParameters("prepareStatement", 2, CURRENT_LSN_SQL);
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+		assertEquals(databaseFacade.getConsistencyToken().get(),
+				ConsistencyToken.fromLsn("0/3000060"));
+	}
+
+	@Test
+	public void testTransactionWithoutWritesCapturesNoConsistencyToken() {
+		setReplicaRouterSpy();
+		databaseFacade.startTransaction();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		assertTrue(databaseFacade.getConsistencyToken().isEmpty());
+	}
+
+	@Test
+	public void testRolledBackWritesCaptureNoConsistencyToken() {
+		setReplicaRouterSpy();
+		databaseFacade.startTransaction();
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.rollback();
+
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		assertTrue(databaseFacade.getConsistencyToken().isEmpty());
+	}
+
+	@Test
+	public void testReadAfterWriteLeasesReplicaCaughtUpToConsistencyToken() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		setCurrentLsnOnPrimary("0/3000060");
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		replicaRouter.MCR.assertMethodNotCalled("leaseReplicaConnection");
+		replicaRouter.MCR.assertParametersAsEqual("leaseReplicaConnectionCaughtUpTo", 0,
+				ConsistencyToken.fromLsn("0/3000060"));
+	}
+
+	@Test
+	public void testReadUsesPrimaryWhenNoReplicaHasCaughtUp() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		replicaRouter.MRV.setDefaultReturnValuesSupplier("leaseReplicaConnectionCaughtUpTo",
+				Optional::empty);
+		setCurrentLsnOnPrimary("0/3000060");
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		oldConnection.MCR.assertParameters("prepareStatement", 2, SELECT_SQL);
+	}
+
+	@Test
+	public void testNewConsistencyTokenReleasesLeasedReplica() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		setCurrentLsnOnPrimary("0/3000060");
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		getReplicaLease(replicaRouter, 0).MCR.assertMethodWasCalled("release");
+		replicaRouter.MCR.assertNumberOfCallsToMethod("leaseReplicaConnectionCaughtUpTo", 1);
+	}
+
+	@Test
+	public void testUseConsistencyToken() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		ConsistencyToken token = ConsistencyToken.fromLsn("0/3000060");
+
+		databaseFacade.useConsistencyToken(token);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		assertSame(databaseFacade.getConsistencyToken().get(), token);
+		replicaRouter.MCR.assertParameters("leaseReplicaConnectionCaughtUpTo", 0, token);
+	}
+
+	@Test
+	public void testUseConsistencyTokenKeepsTokenFurthestAheadInLog() {
+		ConsistencyToken later = ConsistencyToken.fromLsn("0/3000060");
+
+		databaseFacade.useConsistencyToken(later);
+		databaseFacade.useConsistencyToken(ConsistencyToken.fromLsn("0/3000000"));
+
+		assertSame(databaseFacade.getConsistencyToken().get(), later);
+	}
+
+	@Test
+	public void testReadUsesPrimaryWhenNoReplicaIsHealthy() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		replicaRouter.MRV.setDefaultReturnValuesSupplier("leaseReplicaConnection",
+				Optional::empty);
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		replicaRouter.MCR.assertNumberOfCallsToMethod("leaseReplicaConnection", 2);
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+	}
+
+	@Test
+	public void testReplicaConnectionFailureReleasesLeaseAsFailedAndReadsFromPrimary() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		OldConnectionSpy failingConnection = createReplicaConnectionFailingWithSqlState("08006");
+		ReplicaLeaseSpy lease = new ReplicaLeaseSpy();
+		lease.MRV.setDefaultReturnValuesSupplier("getConnection", () -> failingConnection);
+		replicaRouter.MRV.setReturnValues("leaseReplicaConnection", List.of(Optional.of(lease)));
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		var error = failingConnection.MCR.getReturnValue("prepareStatement", 0);
+		lease.MCR.assertParameters("releaseAsFailed", 0, error);
+		oldConnection.MCR.assertParameters("prepareStatement", 0, SELECT_SQL);
+	}
+
+	private OldConnectionSpy createReplicaConnectionFailingWithSqlState(String sqlState) {
+		OldConnectionSpy failingConnection = new OldConnectionSpy();
+		failingConnection.throwErrorConnection = true;
+		failingConnection.sqlStateToThrow = sqlState;
+		return failingConnection;
+	}
+
+	@Test
+	public void testNewReplicaIsLeasedAfterReplicaConnectionFailure() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		OldConnectionSpy failingConnection = createReplicaConnectionFailingWithSqlState("57P01");
+		ReplicaLeaseSpy lease = new ReplicaLeaseSpy();
+		lease.MRV.setDefaultReturnValuesSupplier("getConnection", () -> failingConnection);
+		replicaRouter.MRV.setReturnValues("leaseReplicaConnection",
+				List.of(Optional.of(lease), Optional.of(new ReplicaLeaseSpy())));
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		replicaRouter.MCR.assertNumberOfCallsToMethod("leaseReplicaConnection", 2);
+		getReplicaConnection(replicaRouter, 1).MCR.assertParameters("prepareStatement", 0,
+				SELECT_SQL);
+	}
+
+	@Test
+	public void testReplicaReadErrorThatIsNotConnectionFailureIsThrown() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		OldConnectionSpy failingConnection = createReplicaConnectionFailingWithSqlState("42601");
+		ReplicaLeaseSpy lease = new ReplicaLeaseSpy();
+		lease.MRV.setDefaultReturnValuesSupplier("getConnection", () -> failingConnection);
+		replicaRouter.MRV.setReturnValues("leaseReplicaConnection", List.of(Optional.of(lease)));
+		try {
+			databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), ERROR_READING_DATA_USING_SQL + SELECT_SQL);
+			assertEquals(e.getCause().getMessage(), "error thrown from prepareStatement in spy");
+		}
+		lease.MCR.assertMethodNotCalled("releaseAsFailed");
+		assertFalse(oldSqlConnectionProvider.getConnectionHasBeenCalled);
+	}
+
+	@Test
+	public void testCloseReleasesReplicaLease() {
+		ReplicaRouterSpy replicaRouter = setReplicaRouterSpy();
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		databaseFacade.close();
+		databaseFacade.close();
+
+		getReplicaLease(replicaRouter, 0).MCR.assertNumberOfCallsToMethod("release", 1);
+	}
+
+	@Test
+	public void testUsingSqlConnectionProviderHasNoQueryResultCache() {
+		DatabaseFacadeImp databaseFacadeImp = (DatabaseFacadeImp) databaseFacade;
+
+		assertEquals(databaseFacadeImp.onlyForTestGetQueryResultCache(), null);
+	}
+
+	@Test
+	public void testUsingSqlConnectionProviderAndQueryResultCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+
+		DatabaseFacadeImp databaseFacadeImp = DatabaseFacadeImp
+				.usingSqlConnectionProviderAndQueryResultCache(oldSqlConnectionProvider, cache);
+
+		assertEquals(databaseFacadeImp.getSqlConnectionProvider(), oldSqlConnectionProvider);
+		assertEquals(databaseFacadeImp.onlyForTestGetQueryResultCache(), cache);
+	}
+
+	@Test
+	public void testExecuteSqlWithValuesInvalidatesWrittenTable() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSqlWithValues("insert into public.someTable(id) values(?)",
+				values);
+		databaseFacade.executeSqlWithValues(" DELETE FROM only \"otherTable\" where id = ?",
+				values);
+
+		cache.MCR.assertParameters("invalidateTable", 0, "testTable");
+		cache.MCR.assertParameters("invalidateTable", 1, "public.someTable");
+		cache.MCR.assertParameters("invalidateTable", 2, "\"otherTable\"");
+		cache.MCR.assertMethodNotCalled("invalidateAll");
+	}
+
+	private QueryResultCacheSpy createDatabaseFacadeUsingQueryResultCacheSpy() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		databaseFacade = DatabaseFacadeImp
+				.usingSqlConnectionProviderAndQueryResultCache(oldSqlConnectionProvider, cache);
+		return cache;
+	}
+
+	@Test
+	public void testExecuteSqlWithValuesUnknownStatementInvalidatesAll() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSqlWithValues("with x as (delete from y) select 1", values);
+
+		cache.MCR.assertMethodNotCalled("invalidateTable");
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 1);
+	}
+
+	@Test
+	public void testExecuteSqlWithValuesWithErrorDoesNotInvalidate() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+		oldConnection.throwErrorConnection = true;
+		try {
+			databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+			fail();
+		} catch (SqlDatabaseException _) {
+			cache.MCR.assertMethodNotCalled("invalidateTable");
+		}
+	}
+
+	@Test
+	public void testExecuteSqlReturningColumnsInvalidatesWrittenTable() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSqlWithValuesReturningColumns(UPDATE_SQL, values, List.of("id"));
+
+		cache.MCR.assertParameters("invalidateTable", 0, "testTable");
+	}
+
+	@Test
+	public void testExecuteSqlInvalidatesAll() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSql("truncate someTable");
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 1);
+	}
+
+	@Test
+	public void testEndTransactionInvalidatesWrittenTablesAgain() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.startTransaction();
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 2);
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 3);
+		cache.MCR.assertParameters("invalidateTable", 2, "testTable");
+		databaseFacade.endTransaction();
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 3);
+	}
+
+	@Test
+	public void testEndTransactionInvalidatesAllAgainIfUnknownWrite() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.startTransaction();
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSql("truncate someTable");
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 2);
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 1);
+	}
+
+	@Test
+	public void testRollbackForgetsWritesInTransaction() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.startTransaction();
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.rollback();
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 1);
+	}
+
+	@Test
+	public void testWritesOutsideTransactionAreNotInvalidatedAtEndTransaction() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.startTransaction();
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 1);
+	}
+
+	@Test
+	public void testReadDoesNotInvalidate() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.readUsingSqlAndValues(SELECT_SQL, values);
+
+		cache.MCR.assertMethodNotCalled("invalidateTable");
+		cache.MCR.assertMethodNotCalled("invalidateAll");
+	}
+
+	@Test
+	public void testUsingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+
+		DatabaseFacadeImp databaseFacadeImp = DatabaseFacadeImp
+				.usingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel(
+						oldSqlConnectionProvider, cache, "someChannel");
+
+		assertEquals(databaseFacadeImp.getSqlConnectionProvider(), oldSqlConnectionProvider);
+		assertEquals(databaseFacadeImp.onlyForTestGetQueryResultCache(), cache);
+		assertEquals(databaseFacadeImp.onlyForTestGetInvalidationChannel(), "someChannel");
+	}
+
+	@Test
+	public void testNoInvalidationChannelDoesNotPublish() {
+		createDatabaseFacadeUsingQueryResultCacheSpy();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+	}
+
+	@Test
+	public void testWriteWithInvalidationChannelPublishesWrittenTable() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingInvalidationChannel();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		cache.MCR.assertParameters("invalidateTable", 0, "testTable");
+		oldConnection.MCR.assertParameters("prepareStatement", 1, "select pg_notify(?, ?)");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("1"), "someChannel");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "testTable");
+		assertTrue(oldPreparedStatement.executeQueryWasCalled);
+	}
+
+	private QueryResultCacheSpy createDatabaseFacadeUsingInvalidationChannel() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		databaseFacade = DatabaseFacadeImp
+				.usingSqlConnectionProviderAndQueryResultCacheAndInvalidationChannel(
+						oldSqlConnectionProvider, cache, "someChannel");
+		return cache;
+	}
+
+	@Test
+	public void testUnknownWriteWithInvalidationChannelPublishesInvalidateAll() {
+		createDatabaseFacadeUsingInvalidationChannel();
+
+		databaseFacade.executeSql("truncate someTable");
+
+		oldConnection.MCR.assertParameters("prepareStatement", 1, "select pg_notify(?, ?)");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "*");
+	}
+
+	@Test
+	public void testReturningWriteWithInvalidationChannelPublishesWrittenTable() {
+		createDatabaseFacadeUsingInvalidationChannel();
+
+		databaseFacade.executeSqlWithValuesReturningColumns(UPDATE_SQL, values, List.of("id"));
+
+		oldConnection.MCR.assertParameters("prepareStatement", 1, "select pg_notify(?, ?)");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "testTable");
+	}
+
+	@Test
+	public void testWritesInTransactionArePublishedOncePerTableWhenTransactionEnds() {
+		createDatabaseFacadeUsingInvalidationChannel();
+		databaseFacade.startTransaction();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertParameters("prepareStatement", 2, "select pg_notify(?, ?)");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+		assertEquals(oldPreparedStatement.usedSetObjects.get("1"), "someChannel");
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "testTable");
+	}
+
+	@Test
+	public void testUnknownWriteInTransactionPublishesInvalidateAllWhenTransactionEnds() {
+		createDatabaseFacadeUsingInvalidationChannel();
+		databaseFacade.startTransaction();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.executeSql("truncate someTable");
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertParameters("prepareStatement", 2, "select pg_notify(?, ?)");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "*");
+	}
+
+	@Test
+	public void testWritesInRolledBackTransactionAreNotPublished() {
+		createDatabaseFacadeUsingInvalidationChannel();
+		databaseFacade.startTransaction();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.rollback();
+		databaseFacade.endTransaction();
+
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+	}
+
+	@Test
+	public void testWritesAfterRollbackAreInvalidatedAndPublishedWhenTransactionEnds() {
+		QueryResultCacheSpy cache = createDatabaseFacadeUsingInvalidationChannel();
+		databaseFacade.startTransaction();
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		databaseFacade.rollback();
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 2);
+		databaseFacade.endTransaction();
+
+		cache.MCR.assertNumberOfCallsToMethod("invalidateTable", 3);
+		cache.MCR.assertParameters("invalidateTable", 2, "testTable");
+		oldConnection.MCR.assertParameters("prepareStatement", 2, "select pg_notify(?, ?)");
+		oldConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+		assertEquals(oldPreparedStatement.usedSetObjects.get("2"), "testTable");
+	}
+
+	@Test
+	public void testWritesAfterFailedRunInTransactionArePublishedDirectly() {
+		createDatabaseFacadeUsingInvalidationChannel();
+		try {
+			databaseFacade.runInTransaction(facade -> {
+				throw SqlDatabaseException.withMessage("some error");
+			});
+		} catch (SqlDatabaseException e) {
+			// expected
+		}
+
+		databaseFacade.executeSqlWithValues(UPDATE_SQL, values);
+
+		oldConnection.MCR.assertParameters("prepareStatement", 1, "select pg_notify(?, ?)");
+	}
+
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2019 Uppsala University Library
+ * Copyright 2019, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,8 +20,13 @@ package se.uu.ub.cora.sqldatabase;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
 
 public class OldDatabaseFacadeSpy implements DatabaseFacade {
@@ -37,6 +42,7 @@ public class OldDatabaseFacadeSpy implements DatabaseFacade {
 	public MethodCallRecorder MCR = new MethodCallRecorder();
 	public boolean throwDuplicatedKeyError = false;
 	public int numberOfAffectedRows = 0;
+	public List<Row> returnedRows = new ArrayList<>();
 
 	@Override
 	public List<Row> readUsingSqlAndValues(String sql, List<Object> values) {
@@ -62,6 +68,13 @@ public class OldDatabaseFacadeSpy implements DatabaseFacade {
 		return innerResult;
 	}
 
+	@Override
+	public void readUsingSqlAndValuesRowByRow(String sql, List<Object> values, int fetchSize,
+			Predicate<Row> rowHandler) {
+		MCR.addCall("sql", sql, "values", values, "fetchSize", fetchSize, "rowHandler",
+				rowHandler);
+	}
+
 	@Override
 	public Row readOneRowOrFailUsingSqlAndValues(String sql, List<Object> values) {
 		MCR.addCall("sql", sql, "values", values);
@@ -102,6 +115,22 @@ public class OldDatabaseFacadeSpy implements DatabaseFacade {
 		return numberOfAffectedRows;
 	}
 
+	@Override
+	public List<Row> executeSqlWithValuesReturningColumns(String sql, List<Object> values,
+			List<String> returningColumns) {
+		MCR.addCall("sql", sql, "values", values, "returningColumns", returningColumns);
+		if (throwError) {
+			throw SqlDatabaseException.withMessage(
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+		if (throwDuplicatedKeyError) {
+			throw SqlConflictException.withMessage(
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+		MCR.addReturned(returnedRows);
+		return returnedRows;
+	}
+
 	@Override
 	public void close() {
 		MCR.addCall();
@@ -119,6 +148,48 @@ public class OldDatabaseFacadeSpy implements DatabaseFacade {
 		}
 	}
 
+	@Override
+	public void startTransactionUsingReadCache() {
+		MCR.addCall();
+	}
+
+	@Override
+	public <T> T runInTransaction(Function<DatabaseFacade, T> work) {
+		MCR.addCall("work", work);
+		T result = work.apply(this);
+		MCR.addReturned(result);
+		return result;
+	}
+
+	@Override
+	public void startTransactionUsingOptions(TransactionOptions options) {
+		MCR.addCall("options", options);
+	}
+
+	@Override
+	public <T> T runInTransactionUsingOptions(TransactionOptions options,
+			Function<DatabaseFacade, T> work) {
+		MCR.addCall("options", options, "work", work);
+		T result = work.apply(this);
+		MCR.addReturned(result);
+		return result;
+	}
+
+	@Override
+	public void beginNested() {
+		MCR.addCall();
+	}
+
+	@Override
+	public void releaseNested() {
+		MCR.addCall();
+	}
+
+	@Override
+	public void rollbackToNested() {
+		MCR.addCall();
+	}
+
 	@Override
 	public void endTransaction() {
 		MCR.addCall();
@@ -143,4 +214,17 @@ public class OldDatabaseFacadeSpy implements DatabaseFacade {
 
 	}
 
+	@Override
+	public Optional<ConsistencyToken> getConsistencyToken() {
+		MCR.addCall();
+		Optional<ConsistencyToken> token = Optional.empty();
+		MCR.addReturned(token);
+		return token;
+	}
+
+	@Override
+	public void useConsistencyToken(ConsistencyToken token) {
+		MCR.addCall("token", token);
+	}
+
 }
@@ -341,4 +341,42 @@ public class RealDbTest {
 		assertNotNull(result);
 	}
 
+	@Test(enabled = false)
+	private void benchmarkSequenceCallsPerSecond() {
+		String name = "benchmarksequence";
+		int numberOfValues = 10000;
+		try (Sequence sequence = databaseFactory.factorSequence()) {
+			sequence.createSequence(name, 0);
+
+			long start = System.nanoTime();
+			for (int i = 0; i < numberOfValues; i++) {
+				sequence.getNextValueForSequence(name);
+			}
+			printCallsPerSecond("getNextValueForSequence", numberOfValues, start);
+
+			start = System.nanoTime();
+			for (int i = 0; i < numberOfValues; i++) {
+				sequence.getCurrentValueForSequence(name);
+			}
+			printCallsPerSecond("getCurrentValueForSequence", numberOfValues, start);
+
+			start = System.nanoTime();
+			sequence.getNextValuesForSequence(name, numberOfValues);
+			printCallsPerSecond("getNextValuesForSequence (values)", numberOfValues, start);
+		}
+		try (Sequence sequence = databaseFactory.factorAllocatingSequence()) {
+			long start = System.nanoTime();
+			for (int i = 0; i < numberOfValues; i++) {
+				sequence.getNextValueForSequence(name);
+			}
+			printCallsPerSecond("allocating getNextValueForSequence", numberOfValues, start);
+			sequence.deleteSequence(name);
+		}
+	}
+
+	private void printCallsPerSecond(String operation, int numberOfCalls, long startNanos) {
+		double seconds = (System.nanoTime() - startNanos) / 1_000_000_000d;
+		System.out.println(operation + ": " + Math.round(numberOfCalls / seconds) + " calls/s");
+	}
+
 }
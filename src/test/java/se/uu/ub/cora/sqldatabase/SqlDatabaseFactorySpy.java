@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase;
+
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.sequence.Sequence;
+import se.uu.ub.cora.sqldatabase.sequence.SequenceSpy;
+import se.uu.ub.cora.sqldatabase.table.RowLoader;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.TableFacadeImp;
+import se.uu.ub.cora.sqldatabase.table.internal.TableQuerySpy;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class SqlDatabaseFactorySpy implements SqlDatabaseFactory {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public SqlDatabaseFactorySpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("factorDatabaseFacade", DatabaseFacadeSpy::new);
+		MRV.setDefaultReturnValuesSupplier("factorTableFacade",
+				() -> TableFacadeImp.usingDatabaseFacade(new DatabaseFacadeSpy()));
+		MRV.setDefaultReturnValuesSupplier("factorTableQuery", TableQuerySpy::new);
+		MRV.setDefaultReturnValuesSupplier("factorSequence", SequenceSpy::new);
+		MRV.setDefaultReturnValuesSupplier("factorAllocatingSequence", SequenceSpy::new);
+	}
+
+	@Override
+	public DatabaseFacade factorDatabaseFacade() {
+		return (DatabaseFacade) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public TableFacade factorTableFacade() {
+		return (TableFacade) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public TableQuery factorTableQuery(String tableName) {
+		return (TableQuery) MCR.addCallAndReturnFromMRV("tableName", tableName);
+	}
+
+	@Override
+	public RowLoader factorRowLoader(String tableName, String keyColumn, String keySqlType) {
+		return (RowLoader) MCR.addCallAndReturnFromMRV("tableName", tableName, "keyColumn",
+				keyColumn, "keySqlType", keySqlType);
+	}
+
+	@Override
+	public Sequence factorSequence() {
+		return (Sequence) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public Sequence factorAllocatingSequence() {
+		return (Sequence) MCR.addCallAndReturnFromMRV();
+	}
+}
@@ -20,15 +20,20 @@
 package se.uu.ub.cora.sqldatabase;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
 
 import javax.naming.InitialContext;
 
@@ -36,17 +41,34 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescer;
+import se.uu.ub.cora.sqldatabase.cache.internal.QueryResultCacheImp;
+import se.uu.ub.cora.sqldatabase.cache.internal.QueryResultCacheInvalidationListener;
+import se.uu.ub.cora.sqldatabase.cache.internal.ReadCoalescerImp;
 import se.uu.ub.cora.sqldatabase.connection.ContextConnectionProviderImp;
 import se.uu.ub.cora.sqldatabase.connection.DriverSpy;
 import se.uu.ub.cora.sqldatabase.connection.ParameterConnectionProviderImp;
 import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
 import se.uu.ub.cora.sqldatabase.internal.DatabaseFacadeImp;
+import se.uu.ub.cora.sqldatabase.replica.HedgeStatistics;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedger;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouter;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaSelection;
+import se.uu.ub.cora.sqldatabase.replica.internal.ReadHedgerImp;
+import se.uu.ub.cora.sqldatabase.replica.internal.ReplicaRouterImp;
 import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.sequence.internal.AllocatingSequenceImp;
+import se.uu.ub.cora.sqldatabase.sequence.internal.SequenceBlockAllocator;
 import se.uu.ub.cora.sqldatabase.sequence.internal.SequenceImp;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.RowLoaderImp;
 import se.uu.ub.cora.sqldatabase.table.internal.TableFacadeImp;
 import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetryStatistics;
+import se.uu.ub.cora.sqldatabase.transaction.internal.TransactionRetrierImp;
 import se.uu.ub.cora.testspies.logger.LoggerFactorySpy;
 import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
 import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
@@ -131,6 +153,17 @@ public class SqlDatabaseFactoryTest {
 		assertTrue(tableFacade instanceof TableFacadeImp);
 	}
 
+	@Test
+	public void testFactorTableFacadeSetsScanDatabaseFacadeSupplier() {
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		Supplier<DatabaseFacade> supplier = tableFacade.onlyForTestGetScanDatabaseFacadeSupplier();
+		DatabaseFacade scanDatabaseFacade = supplier.get();
+		assertTrue(scanDatabaseFacade instanceof DatabaseFacadeImp);
+		assertNotSame(scanDatabaseFacade, tableFacade.getDatabaseFacade());
+		assertNotSame(supplier.get(), scanDatabaseFacade);
+	}
+
 	@Test
 	public void testTwoCallsToFactoryReturnsDifferentInstances() {
 		TableFacade tableFacade = sqlDatabaseFactory.factorTableFacade();
@@ -229,6 +262,375 @@ public class SqlDatabaseFactoryTest {
 		assertEquals(sequence.onlyForTestGetDatabaseFacade(), databaseFacade);
 	}
 
+	@Test
+	public void testFactorAllocatingSequence() {
+		SqlDatabaseFactoryWithMCR sqlDatabaseFactoryWithMCR = new SqlDatabaseFactoryWithMCR();
+
+		AllocatingSequenceImp sequence = (AllocatingSequenceImp) sqlDatabaseFactoryWithMCR
+				.factorAllocatingSequence();
+
+		SequenceImp wrappedSequence = (SequenceImp) sequence.onlyForTestGetSequence();
+		var databaseFacade = sqlDatabaseFactoryWithMCR.MCR
+				.assertCalledParametersReturn("factorDatabaseFacade");
+		assertEquals(wrappedSequence.onlyForTestGetDatabaseFacade(), databaseFacade);
+		SequenceBlockAllocator allocator = sequence.onlyForTestGetAllocator();
+		allocator.onlyForTestGetDatabaseFacadeSupplier().get();
+		sqlDatabaseFactoryWithMCR.MCR.assertNumberOfCallsToMethod("factorDatabaseFacade", 2);
+	}
+
+	@Test
+	public void testAllocatingSequencesShareAllocator() {
+		AllocatingSequenceImp sequence1 = (AllocatingSequenceImp) sqlDatabaseFactory
+				.factorAllocatingSequence();
+		AllocatingSequenceImp sequence2 = (AllocatingSequenceImp) sqlDatabaseFactory
+				.factorAllocatingSequence();
+
+		assertSame(sequence1.onlyForTestGetAllocator(), sequence2.onlyForTestGetAllocator());
+	}
+
+	@Test
+	public void testSetSequenceBlockSize() {
+		sqlDatabaseFactory.setSequenceBlockSize("someSequence", 1000);
+
+		AllocatingSequenceImp sequence = (AllocatingSequenceImp) sqlDatabaseFactory
+				.factorAllocatingSequence();
+		assertEquals(sequence.onlyForTestGetAllocator().getBlockSizeForSequence("someSequence"),
+				1000);
+	}
+
+	@Test
+	public void testNoQueryResultCacheByDefault() {
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) tableFacade.getDatabaseFacade();
+
+		assertEquals(tableFacade.onlyForTestGetQueryResultCache(), null);
+		assertEquals(databaseFacade.onlyForTestGetQueryResultCache(), null);
+	}
+
+	@Test
+	public void testUseQueryResultCache() {
+		QueryResultCache cache = sqlDatabaseFactory.useQueryResultCache(50,
+				Duration.ofSeconds(30));
+
+		QueryResultCacheImp cacheImp = (QueryResultCacheImp) cache;
+		assertEquals(cacheImp.onlyForTestGetMaxNumberOfEntries(), 50);
+		assertEquals(cacheImp.onlyForTestGetTimeToLive(), Duration.ofSeconds(30));
+	}
+
+	@Test
+	public void testFactoredFacadesShareQueryResultCache() {
+		QueryResultCache cache = sqlDatabaseFactory.useQueryResultCache(50,
+				Duration.ofSeconds(30));
+
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) tableFacade.getDatabaseFacade();
+		DatabaseFacadeImp otherDatabaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+
+		assertSame(tableFacade.onlyForTestGetQueryResultCache(), cache);
+		assertSame(databaseFacade.onlyForTestGetQueryResultCache(), cache);
+		assertSame(otherDatabaseFacade.onlyForTestGetQueryResultCache(), cache);
+		assertSame(databaseFacade.getSqlConnectionProvider(),
+				sqlDatabaseFactory.getSqlConnectionProvider());
+	}
+
+	@Test
+	public void testInvalidationChannelRequiresQueryResultCache() {
+		try {
+			sqlDatabaseFactory.useQueryResultCacheInvalidationChannel("someChannel");
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(),
+					"Query result cache must be used before setting an invalidation channel.");
+		}
+	}
+
+	@Test
+	public void testUseQueryResultCacheInvalidationChannel() throws Exception {
+		QueryResultCache cache = sqlDatabaseFactory.useQueryResultCache(50,
+				Duration.ofSeconds(30));
+
+		sqlDatabaseFactory.useQueryResultCacheInvalidationChannel("someChannel");
+
+		QueryResultCacheInvalidationListener listener = sqlDatabaseFactory
+				.onlyForTestGetInvalidationListener();
+		assertSame(listener.onlyForTestGetQueryResultCache(), cache);
+		assertSame(listener.onlyForTestGetSqlConnectionProvider(),
+				sqlDatabaseFactory.getSqlConnectionProvider());
+		assertEquals(listener.onlyForTestGetChannel(), "someChannel");
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		assertEquals(databaseFacade.onlyForTestGetInvalidationChannel(), "someChannel");
+		assertSame(databaseFacade.onlyForTestGetQueryResultCache(), cache);
+		listener.close();
+	}
+
+	@Test
+	public void testUseQueryResultCacheAgainStopsInvalidationListener() {
+		sqlDatabaseFactory.useQueryResultCache(50, Duration.ofSeconds(30));
+		sqlDatabaseFactory.useQueryResultCacheInvalidationChannel("someChannel");
+		QueryResultCacheInvalidationListener listener = sqlDatabaseFactory
+				.onlyForTestGetInvalidationListener();
+
+		sqlDatabaseFactory.useQueryResultCache(50, Duration.ofSeconds(30));
+
+		assertFalse(listener.onlyForTestIsRunning());
+		assertEquals(sqlDatabaseFactory.onlyForTestGetInvalidationListener(), null);
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		assertEquals(databaseFacade.onlyForTestGetInvalidationChannel(), null);
+	}
+
+	@Test
+	public void testNoReadCoalescingByDefault() {
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		assertEquals(tableFacade.onlyForTestGetReadCoalescer(), null);
+	}
+
+	@Test
+	public void testUseReadCoalescing() {
+		ReadCoalescer coalescer = sqlDatabaseFactory.useReadCoalescing();
+
+		assertTrue(coalescer instanceof ReadCoalescerImp);
+		assertSame(sqlDatabaseFactory.useReadCoalescing(), coalescer);
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+		assertSame(tableFacade.onlyForTestGetReadCoalescer(), coalescer);
+		assertEquals(tableFacade.onlyForTestGetQueryResultCache(), null);
+		TableFacadeImp otherTableFacade = (TableFacadeImp) sqlDatabaseFactory
+				.factorTableFacade();
+		assertSame(otherTableFacade.onlyForTestGetReadCoalescer(), coalescer);
+	}
+
+	@Test
+	public void testUseReadCoalescingAndQueryResultCache() {
+		ReadCoalescer coalescer = sqlDatabaseFactory.useReadCoalescing();
+		QueryResultCache cache = sqlDatabaseFactory.useQueryResultCache(50,
+				Duration.ofSeconds(30));
+
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		assertSame(tableFacade.onlyForTestGetReadCoalescer(), coalescer);
+		assertSame(tableFacade.onlyForTestGetQueryResultCache(), cache);
+	}
+
+	@Test
+	public void testFactorRowLoader() {
+		RowLoaderImp rowLoader = (RowLoaderImp) sqlDatabaseFactory.factorRowLoader("someTableName",
+				"someKeyColumn", "bigint");
+
+		assertEquals(rowLoader.onlyForTestGetKeyColumn(), "someKeyColumn");
+		assertEquals(rowLoader.onlyForTestGetKeySqlType(), "bigint");
+		TableQuery tableQuery = rowLoader.onlyForTestGetTableQuerySupplier().get();
+		assertEquals(tableQuery.getTableName(), "someTableName");
+		assertNotSame(rowLoader.onlyForTestGetTableQuerySupplier().get(), tableQuery);
+		TableFacade tableFacade = rowLoader.onlyForTestGetTableFacadeSupplier().get();
+		assertTrue(tableFacade instanceof TableFacadeImp);
+	}
+
+	@Test
+	public void testFactorDatabaseFacadeUsesDefaultTransactionRetrier() {
+		DatabaseFacadeImp databaseFacade1 = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		DatabaseFacadeImp databaseFacade2 = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+
+		TransactionRetrierImp retrier = (TransactionRetrierImp) databaseFacade1
+				.onlyForTestGetTransactionRetrier();
+		assertEquals(retrier.onlyForTestGetMaxAttempts(), 5);
+		assertSame(databaseFacade2.onlyForTestGetTransactionRetrier(), retrier);
+	}
+
+	@Test
+	public void testUseTransactionRetries() {
+		TransactionRetrierImp retrier = (TransactionRetrierImp) sqlDatabaseFactory
+				.useTransactionRetries(3, Duration.ofMillis(5), Duration.ofMillis(50));
+
+		assertEquals(retrier.onlyForTestGetMaxAttempts(), 3);
+		assertEquals(retrier.onlyForTestGetInitialBackoff(), Duration.ofMillis(5));
+		assertEquals(retrier.onlyForTestGetMaxBackoff(), Duration.ofMillis(50));
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		assertSame(databaseFacade.onlyForTestGetTransactionRetrier(), retrier);
+	}
+
+	@Test
+	public void testGetTransactionRetryStatistics() {
+		TransactionRetrier retrier = sqlDatabaseFactory.useTransactionRetries(3, Duration.ZERO,
+				Duration.ZERO);
+		retrier.runUsingRetries(() -> "someResult");
+
+		assertEquals(sqlDatabaseFactory.getTransactionRetryStatistics(),
+				new TransactionRetryStatistics(1, 0, 0, 0));
+	}
+
+	@Test
+	public void testNoReplicaRouterByDefault() {
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+
+		assertEquals(databaseFacade.onlyForTestGetReplicaRouter(), null);
+	}
+
+	@Test
+	public void testUseReadReplicasFromContext() {
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName1", "replicaLookupName2"), ReplicaSelection.LEAST_LOADED,
+				Duration.ofSeconds(5));
+
+		assertEquals(router.onlyForTestGetSelection(), ReplicaSelection.LEAST_LOADED);
+		assertEquals(router.onlyForTestGetProbeInterval(), Duration.ofSeconds(5));
+		List<SqlConnectionProvider> providers = router.onlyForTestGetReplicaProviders();
+		assertEquals(providers.size(), 2);
+		ContextConnectionProviderImp provider = (ContextConnectionProviderImp) providers.get(1);
+		assertTrue(provider.getContext() instanceof InitialContext);
+		assertEquals(provider.getName(), "replicaLookupName2");
+		assertTrue(router.onlyForTestIsRunning());
+		router.close();
+	}
+
+	@Test
+	public void testUseReadReplicasFromUriUserPassword() throws Exception {
+		driver = new DriverSpy();
+		DriverManager.registerDriver(driver);
+		sqlDatabaseFactory = SqlDatabaseFactoryImp.usingUriAndUserAndPassword(url, user, password);
+
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("someReplicaUrl"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		ParameterConnectionProviderImp provider = (ParameterConnectionProviderImp) router
+				.onlyForTestGetReplicaProviders().get(0);
+		Connection connection = provider.getConnection();
+		assertEquals(connection, driver.connectionSpy);
+		assertEquals(driver.url, "someReplicaUrl");
+		assertEquals(driver.info.getProperty("user"), user);
+		assertEquals(driver.info.getProperty("password"), password);
+		DriverManager.deregisterDriver(driver);
+		router.close();
+	}
+
+	@Test
+	public void testFactoredFacadesShareReplicaRouter() {
+		ReplicaRouter router = sqlDatabaseFactory.useReadReplicas(List.of("replicaLookupName"),
+				ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		assertSame(databaseFacade.onlyForTestGetReplicaRouter(), router);
+		DatabaseFacadeImp tableDatabaseFacade = (DatabaseFacadeImp) tableFacade
+				.getDatabaseFacade();
+		assertSame(tableDatabaseFacade.onlyForTestGetReplicaRouter(), router);
+		((ReplicaRouterImp) router).close();
+	}
+
+	@Test
+	public void testTableFacadeDoesNotCacheReadsWhenReadReplicasAreUsed() {
+		QueryResultCache cache = sqlDatabaseFactory.useQueryResultCache(50,
+				Duration.ofSeconds(30));
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+		ReadCoalescer coalescer = sqlDatabaseFactory.useReadCoalescing();
+
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		assertEquals(tableFacade.onlyForTestGetQueryResultCache(), null);
+		assertSame(tableFacade.onlyForTestGetReadCoalescer(), coalescer);
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) tableFacade.getDatabaseFacade();
+		assertSame(databaseFacade.onlyForTestGetQueryResultCache(), cache);
+		router.close();
+	}
+
+	@Test
+	public void testTableFacadeDoesNotCacheReadsWhenReadReplicasAreUsedWithoutCoalescing() {
+		sqlDatabaseFactory.useQueryResultCache(50, Duration.ofSeconds(30));
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		TableFacadeImp tableFacade = (TableFacadeImp) sqlDatabaseFactory.factorTableFacade();
+
+		assertEquals(tableFacade.onlyForTestGetQueryResultCache(), null);
+		assertEquals(tableFacade.onlyForTestGetReadCoalescer(), null);
+		router.close();
+	}
+
+	@Test
+	public void testUseReadReplicasAgainClosesPreviousRouter() {
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		ReplicaRouterImp router2 = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		assertFalse(router.onlyForTestIsRunning());
+		assertTrue(router2.onlyForTestIsRunning());
+		router2.close();
+	}
+
+	@Test
+	public void testReplicaCatchUpWaitRequiresReadReplicas() {
+		try {
+			sqlDatabaseFactory.useReplicaCatchUpWait(Duration.ofSeconds(1));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Read replicas must be used before setting a catch up wait.");
+		}
+	}
+
+	@Test
+	public void testUseReplicaCatchUpWait() {
+		ReplicaRouterImp router = (ReplicaRouterImp) sqlDatabaseFactory.useReadReplicas(
+				List.of("replicaLookupName"), ReplicaSelection.ROUND_ROBIN, Duration.ofSeconds(5));
+
+		sqlDatabaseFactory.useReplicaCatchUpWait(Duration.ofSeconds(1));
+
+		assertEquals(router.onlyForTestGetMaxCatchUpWait(), Duration.ofSeconds(1));
+		router.close();
+	}
+
+	@Test
+	public void testNoReadHedgerByDefault() {
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+
+		assertEquals(databaseFacade.onlyForTestGetReadHedger(), null);
+		assertEquals(sqlDatabaseFactory.getHedgeStatistics(),
+				new HedgeStatistics(0, 0, 0, 0, null));
+	}
+
+	@Test
+	public void testUseHedgedReads() {
+		ReadHedgerImp hedger = (ReadHedgerImp) sqlDatabaseFactory.useHedgedReads(95,
+				Duration.ofMillis(2), 0.05);
+
+		assertEquals(hedger.onlyForTestGetPercentile(), 95.0);
+		assertEquals(hedger.onlyForTestGetMinimumDelay(), Duration.ofMillis(2));
+		assertEquals(hedger.onlyForTestGetMaxHedgeRate(), 0.05);
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		assertSame(databaseFacade.onlyForTestGetReadHedger(), hedger);
+		assertEquals(sqlDatabaseFactory.getHedgeStatistics(), hedger.getStatistics());
+		hedger.close();
+	}
+
+	@Test
+	public void testUseHedgedReadsWithInvalidSettingsKeepsHedger() {
+		ReadHedger hedger = sqlDatabaseFactory.useHedgedReads(95, Duration.ofMillis(2), 0.05);
+		try {
+			sqlDatabaseFactory.useHedgedReads(95, Duration.ofMillis(2), 2);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Max hedge rate must be between 0 and 1.");
+		}
+		DatabaseFacadeImp databaseFacade = (DatabaseFacadeImp) sqlDatabaseFactory
+				.factorDatabaseFacade();
+		assertSame(databaseFacade.onlyForTestGetReadHedger(), hedger);
+		((ReadHedgerImp) hedger).close();
+	}
+
 	@Test
 	public void testOnlyForTestGetLookupName() {
 		assertEquals(sqlDatabaseFactory.onlyForTestGetLookupName(), lookupName);
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+public class TextArrayTest {
+
+	@Test
+	public void testFromValuesConvertsValuesToText() {
+		TextArray textArray = TextArray.fromValues(List.of(1L, "two", 3));
+
+		assertEquals(textArray.texts(), List.of("1", "two", "3"));
+	}
+
+	@Test
+	public void testFromValuesConvertsNullAndDatabaseNullToNull() {
+		TextArray textArray = TextArray.fromValues(Arrays.asList("a", null, DatabaseValues.NULL));
+
+		assertEquals(textArray.texts(), Arrays.asList("a", null, null));
+	}
+
+	@Test
+	public void testEqualTextsAreEqual() {
+		TextArray textArray = TextArray.fromValues(List.of(1L, 2L));
+		TextArray otherTextArray = new TextArray(List.of("1", "2"));
+
+		assertEquals(textArray, otherTextArray);
+		assertEquals(textArray.hashCode(), otherTextArray.hashCode());
+		assertNotEquals(textArray, new TextArray(List.of("2", "1")));
+	}
+
+	@Test
+	public void testTextsAreCopiedAndUnmodifiable() {
+		List<String> texts = new ArrayList<>(List.of("a"));
+		TextArray textArray = new TextArray(texts);
+		texts.add("b");
+
+		assertEquals(textArray.texts(), List.of("a"));
+		try {
+			textArray.texts().add("c");
+			fail();
+		} catch (UnsupportedOperationException e) {
+			assertEquals(textArray.texts(), List.of("a"));
+		}
+	}
+
+	@Test
+	public void testToArray() {
+		TextArray textArray = new TextArray(Arrays.asList("a", null));
+
+		assertEquals(textArray.toArray(), new String[] { "a", null });
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
+
+import java.util.List;
+import java.util.Optional;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class QueryResultCacheSpy implements QueryResultCache {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public QueryResultCacheSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("getRowsForSqlAndValues", Optional::empty);
+		MRV.setDefaultReturnValuesSupplier("getGeneration", () -> 17L);
+		MRV.setDefaultReturnValuesSupplier("getStatistics",
+				() -> new QueryResultCacheStatistics(0, 0, 0, 0, 0, 0));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<List<Row>> getRowsForSqlAndValues(String sql, List<Object> values) {
+		return (Optional<List<Row>>) MCR.addCallAndReturnFromMRV("sql", sql, "values", values);
+	}
+
+	@Override
+	public long getGeneration() {
+		return (long) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public void putRowsForSqlAndValues(String tableName, String sql, List<Object> values,
+			List<Row> rows, long generation) {
+		MCR.addCall("tableName", tableName, "sql", sql, "values", values, "rows", rows,
+				"generation", generation);
+	}
+
+	@Override
+	public void invalidateTable(String tableName) {
+		MCR.addCall("tableName", tableName);
+	}
+
+	@Override
+	public void invalidateAll() {
+		MCR.addCall();
+	}
+
+	@Override
+	public QueryResultCacheStatistics getStatistics() {
+		return (QueryResultCacheStatistics) MCR.addCallAndReturnFromMRV();
+	}
+}
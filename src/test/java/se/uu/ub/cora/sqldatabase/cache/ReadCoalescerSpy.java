@@ -0,0 +1,51 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class ReadCoalescerSpy implements ReadCoalescer {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public ReadCoalescerSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("getStatistics",
+				() -> new ReadCoalescerStatistics(0, 0));
+	}
+
+	@Override
+	public List<Row> readUsingSqlAndValues(String sql, List<Object> values,
+			Supplier<List<Row>> reader) {
+		MCR.addCall("sql", sql, "values", values, "reader", reader);
+		List<Row> rows = reader.get();
+		MCR.addReturned(rows);
+		return rows;
+	}
+
+	@Override
+	public ReadCoalescerStatistics getStatistics() {
+		return (ReadCoalescerStatistics) MCR.addCallAndReturnFromMRV();
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.sqldatabase.SqlConnectionProviderSpy;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCacheSpy;
+import se.uu.ub.cora.sqldatabase.connection.ConnectionSpy;
+import se.uu.ub.cora.sqldatabase.connection.PreparedStatementSpy;
+import se.uu.ub.cora.testspies.logger.LoggerFactorySpy;
+import se.uu.ub.cora.testspies.logger.LoggerSpy;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class QueryResultCacheInvalidationListenerTest {
+	private LoggerFactorySpy loggerFactorySpy;
+	private SqlConnectionProviderSpy sqlConnectionProvider;
+	private QueryResultCacheSpy cache;
+	private ConnectionSpy connection;
+	private PGConnectionHandler pgConnectionHandler;
+	private QueryResultCacheInvalidationListener listener;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		loggerFactorySpy = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactorySpy);
+		cache = new QueryResultCacheSpy();
+		pgConnectionHandler = new PGConnectionHandler();
+		connection = createConnectionUnwrappingToPGConnection();
+		sqlConnectionProvider = new SqlConnectionProviderSpy();
+		sqlConnectionProvider.MRV.setDefaultReturnValuesSupplier("getConnection",
+				() -> connection);
+		listener = QueryResultCacheInvalidationListener
+				.usingSqlConnectionProviderAndCacheAndChannel(sqlConnectionProvider, cache,
+						"someChannel");
+		listener.setReconnectDelayMillis(0);
+	}
+
+	private ConnectionSpy createConnectionUnwrappingToPGConnection() {
+		ConnectionSpy connectionSpy = new ConnectionSpy();
+		PGConnection pgConnection = (PGConnection) Proxy.newProxyInstance(
+				PGConnection.class.getClassLoader(), new Class<?>[] { PGConnection.class },
+				pgConnectionHandler);
+		connectionSpy.MRV.setDefaultReturnValuesSupplier("unwrap", () -> pgConnection);
+		return connectionSpy;
+	}
+
+	@Test
+	public void testUsingSqlConnectionProviderAndCacheAndChannel() {
+		assertSame(listener.onlyForTestGetSqlConnectionProvider(), sqlConnectionProvider);
+		assertSame(listener.onlyForTestGetQueryResultCache(), cache);
+		assertEquals(listener.onlyForTestGetChannel(), "someChannel");
+	}
+
+	@Test
+	public void testChannelMustBeValidIdentifier() {
+		try {
+			QueryResultCacheInvalidationListener.usingSqlConnectionProviderAndCacheAndChannel(
+					sqlConnectionProvider, cache, "some channel; drop table x");
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(),
+					"Invalidation channel contains character outside the allowed regexp.");
+		}
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class)
+	public void testChannelMustNotBeNull() {
+		QueryResultCacheInvalidationListener.throwErrorIfChannelIsNotValid(null);
+	}
+
+	@Test
+	public void testFirstReadConnectsListensAndInvalidatesAll() {
+		listener.readNotificationsOnce();
+
+		sqlConnectionProvider.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		connection.MCR.assertParameters("prepareStatement", 0, "listen someChannel");
+		PreparedStatementSpy listenStatement = (PreparedStatementSpy) connection.MCR
+				.getReturnValue("prepareStatement", 0);
+		listenStatement.MCR.assertMethodWasCalled("execute");
+		listenStatement.MCR.assertMethodWasCalled("close");
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 1);
+		connection.MCR.assertParameters("unwrap", 0, PGConnection.class);
+		pgConnectionHandler.MCR.assertParameters("getNotifications", 0, 1000);
+	}
+
+	@Test
+	public void testSecondReadDoesNotReconnect() {
+		listener.readNotificationsOnce();
+		listener.readNotificationsOnce();
+
+		sqlConnectionProvider.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 1);
+		pgConnectionHandler.MCR.assertNumberOfCallsToMethod("getNotifications", 2);
+	}
+
+	@Test
+	public void testNoNotifications() {
+		pgConnectionHandler.MRV.setDefaultReturnValuesSupplier("getNotifications", () -> null);
+
+		listener.readNotificationsOnce();
+
+		cache.MCR.assertMethodNotCalled("invalidateTable");
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 1);
+	}
+
+	@Test
+	public void testNotificationsInvalidateTables() {
+		pgConnectionHandler.MRV.setDefaultReturnValuesSupplier("getNotifications",
+				() -> new PGNotification[] { new Notification("someTable"),
+						new Notification("public.otherTable") });
+
+		listener.readNotificationsOnce();
+
+		cache.MCR.assertParameters("invalidateTable", 0, "someTable");
+		cache.MCR.assertParameters("invalidateTable", 1, "public.otherTable");
+	}
+
+	@Test
+	public void testNotificationInvalidateAll() {
+		pgConnectionHandler.MRV.setDefaultReturnValuesSupplier("getNotifications",
+				() -> new PGNotification[] {
+						new Notification(QueryResultCacheInvalidationListener.INVALIDATE_ALL) });
+
+		listener.readNotificationsOnce();
+
+		cache.MCR.assertMethodNotCalled("invalidateTable");
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 2);
+	}
+
+	@Test
+	public void testLostConnectionIsClosedAndLogged() {
+		listener.readNotificationsOnce();
+		pgConnectionHandler.throwSqlException = true;
+
+		listener.readNotificationsOnce();
+
+		connection.MCR.assertMethodWasCalled("close");
+		assertEquals(listener.onlyForTestGetConnection(), null);
+		LoggerSpy logger = (LoggerSpy) loggerFactorySpy.MCR.getReturnValue("factorForClass", 0);
+		logger.MCR.assertParameter("logWarnUsingMessageAndException", 0, "message",
+				"Lost connection listening for cache invalidations on channel: someChannel,"
+						+ " reconnecting.");
+	}
+
+	@Test
+	public void testReconnectInvalidatesAll() {
+		listener.readNotificationsOnce();
+		pgConnectionHandler.throwSqlException = true;
+		listener.readNotificationsOnce();
+		pgConnectionHandler.throwSqlException = false;
+
+		listener.readNotificationsOnce();
+
+		sqlConnectionProvider.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+		cache.MCR.assertNumberOfCallsToMethod("invalidateAll", 2);
+	}
+
+	@Test
+	public void testFailingConnectIsRetried() {
+		sqlConnectionProvider.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+
+		listener.readNotificationsOnce();
+		listener.readNotificationsOnce();
+
+		sqlConnectionProvider.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+		cache.MCR.assertMethodNotCalled("invalidateAll");
+	}
+
+	@Test
+	public void testStartAndClose() throws Exception {
+		listener.start();
+		Thread listenerThread = listener.onlyForTestGetListenerThread();
+		assertTrue(listenerThread.isVirtual());
+		assertEquals(listenerThread.getName(), "query-result-cache-invalidation-listener");
+		waitForListenerToConnect();
+
+		listener.close();
+		listenerThread.join(5000);
+
+		assertFalse(listenerThread.isAlive());
+		assertFalse(listener.onlyForTestIsRunning());
+		connection.MCR.assertMethodWasCalled("close");
+		assertEquals(listener.onlyForTestGetConnection(), null);
+	}
+
+	private void waitForListenerToConnect() throws InterruptedException {
+		long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (listener.onlyForTestGetConnection() == null && System.nanoTime() < waitUntil) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testCloseBeforeStart() {
+		listener.close();
+
+		assertFalse(listener.onlyForTestIsRunning());
+	}
+
+	private class PGConnectionHandler implements InvocationHandler {
+		MethodCallRecorder MCR = new MethodCallRecorder();
+		MethodReturnValues MRV = new MethodReturnValues();
+		volatile boolean throwSqlException = false;
+
+		PGConnectionHandler() {
+			MCR.useMRV(MRV);
+			MRV.setDefaultReturnValuesSupplier("getNotifications", () -> new PGNotification[0]);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (!"getNotifications".equals(method.getName())) {
+				throw new UnsupportedOperationException(method.getName());
+			}
+			if (throwSqlException) {
+				throw new SQLException("error from getNotifications in spy");
+			}
+			return getNotifications(args[0]);
+		}
+
+		private Object getNotifications(Object timeoutMillis) {
+			return MCR.addCallAndReturnFromMRV("timeoutMillis", timeoutMillis);
+		}
+	}
+
+	private record Notification(String getParameter) implements PGNotification {
+		@Override
+		public String getName() {
+			return "someChannel";
+		}
+
+		@Override
+		public int getPID() {
+			return 1;
+		}
+	}
+}
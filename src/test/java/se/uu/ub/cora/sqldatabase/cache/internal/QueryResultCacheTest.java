@@ -0,0 +1,281 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.TextArray;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCache;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCacheStatistics;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+
+public class QueryResultCacheTest {
+	private static final String SOME_SQL = "select * from someTable where id = ?";
+	private static final List<Object> SOME_VALUES = List.of("someId");
+	private QueryResultCacheImp cache;
+	private long now;
+	private List<Row> rows;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		now = 1000;
+		cache = QueryResultCacheImp.usingMaxNumberOfEntriesAndTimeToLiveAndNanoClock(2,
+				Duration.ofNanos(100), () -> now);
+		rows = List.of(new RowImp());
+	}
+
+	@Test
+	public void testImplementsQueryResultCache() {
+		assertTrue(cache instanceof QueryResultCache);
+	}
+
+	@Test
+	public void testUsingMaxNumberOfEntriesAndTimeToLive() {
+		QueryResultCacheImp createdCache = QueryResultCacheImp
+				.usingMaxNumberOfEntriesAndTimeToLive(10, Duration.ofSeconds(5));
+
+		assertEquals(createdCache.onlyForTestGetMaxNumberOfEntries(), 10);
+		assertEquals(createdCache.onlyForTestGetTimeToLive(), Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void testMaxNumberOfEntriesMustBePositive() {
+		try {
+			QueryResultCacheImp.usingMaxNumberOfEntriesAndTimeToLive(0, Duration.ofSeconds(5));
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(),
+					"Max number of entries must be positive for query result cache.");
+		}
+	}
+
+	@Test
+	public void testGetNotCachedIsMiss() {
+		assertEquals(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES), Optional.empty());
+
+		assertStatistics(0, 1, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void testPutAndGet() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+
+		List<Row> cachedRows = cache.getRowsForSqlAndValues(SOME_SQL, List.of("someId")).get();
+
+		assertEquals(cachedRows, rows);
+		assertNotSame(cachedRows, rows);
+		assertStatistics(1, 0, 0, 0, 0, 1);
+	}
+
+	@Test
+	public void testPutAndGetUsingEqualTextArrayValues() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL,
+				List.of(TextArray.fromValues(List.of(1L, 2L))), rows, cache.getGeneration());
+
+		Optional<List<Row>> cachedRows = cache.getRowsForSqlAndValues(SOME_SQL,
+				List.of(TextArray.fromValues(List.of("1", "2"))));
+
+		assertEquals(cachedRows.get(), rows);
+	}
+
+	@Test
+	public void testGetReturnsNewListEachTime() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+
+		List<Row> cachedRows = cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).get();
+		cachedRows.clear();
+
+		assertEquals(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).get(), rows);
+	}
+
+	@Test
+	public void testChangingPutValuesDoesNotChangeKey() {
+		List<Object> values = new ArrayList<>(SOME_VALUES);
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, values, rows, cache.getGeneration());
+		values.add("otherValue");
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isPresent());
+	}
+
+	@Test
+	public void testOtherValuesIsMiss() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, List.of("otherId")).isEmpty());
+	}
+
+	@Test
+	public void testExpiredEntryIsRemoved() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+		now += 99;
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isPresent());
+		now += 1;
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isEmpty());
+		assertStatistics(1, 1, 0, 1, 0, 0);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() {
+		long generation = cache.getGeneration();
+		cache.putRowsForSqlAndValues("someTable", "sql1", SOME_VALUES, rows, generation);
+		cache.putRowsForSqlAndValues("someTable", "sql2", SOME_VALUES, rows, generation);
+		cache.getRowsForSqlAndValues("sql1", SOME_VALUES);
+
+		cache.putRowsForSqlAndValues("someTable", "sql3", SOME_VALUES, rows, generation);
+
+		assertTrue(cache.getRowsForSqlAndValues("sql1", SOME_VALUES).isPresent());
+		assertTrue(cache.getRowsForSqlAndValues("sql2", SOME_VALUES).isEmpty());
+		assertTrue(cache.getRowsForSqlAndValues("sql3", SOME_VALUES).isPresent());
+		assertStatistics(3, 1, 1, 0, 0, 2);
+	}
+
+	@Test
+	public void testInvalidateTableRemovesOnlyEntriesForTable() {
+		long generation = cache.getGeneration();
+		cache.putRowsForSqlAndValues("someTable", "sql1", SOME_VALUES, rows, generation);
+		cache.putRowsForSqlAndValues("otherTable", "sql2", SOME_VALUES, rows, generation);
+
+		cache.invalidateTable("someTable");
+
+		assertTrue(cache.getRowsForSqlAndValues("sql1", SOME_VALUES).isEmpty());
+		assertTrue(cache.getRowsForSqlAndValues("sql2", SOME_VALUES).isPresent());
+		assertStatistics(1, 1, 0, 0, 1, 1);
+	}
+
+	@Test
+	public void testInvalidateTableComparesWithoutSchemaQuotesAndCase() {
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+
+		cache.invalidateTable("public.\"SOMETABLE\"");
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isEmpty());
+	}
+
+	@Test
+	public void testInvalidateAll() {
+		long generation = cache.getGeneration();
+		cache.putRowsForSqlAndValues("someTable", "sql1", SOME_VALUES, rows, generation);
+		cache.putRowsForSqlAndValues("otherTable", "sql2", SOME_VALUES, rows, generation);
+
+		cache.invalidateAll();
+
+		assertTrue(cache.getRowsForSqlAndValues("sql1", SOME_VALUES).isEmpty());
+		assertTrue(cache.getRowsForSqlAndValues("sql2", SOME_VALUES).isEmpty());
+		assertStatistics(0, 2, 0, 0, 2, 0);
+	}
+
+	@Test
+	public void testInvalidateIncreasesGeneration() {
+		long generation = cache.getGeneration();
+		cache.invalidateTable("someTable");
+		assertEquals(cache.getGeneration(), generation + 1);
+		cache.invalidateAll();
+		assertEquals(cache.getGeneration(), generation + 2);
+	}
+
+	@Test
+	public void testPutIsIgnoredIfTableInvalidatedAfterGeneration() {
+		long generationBeforeRead = cache.getGeneration();
+		cache.invalidateTable("someTable");
+
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				generationBeforeRead);
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isEmpty());
+	}
+
+	@Test
+	public void testPutIsNotIgnoredIfOtherTableInvalidatedAfterGeneration() {
+		long generationBeforeRead = cache.getGeneration();
+		cache.invalidateTable("otherTable");
+
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				generationBeforeRead);
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isPresent());
+	}
+
+	@Test
+	public void testPutIsIgnoredIfAllInvalidatedAfterGeneration() {
+		long generationBeforeRead = cache.getGeneration();
+		cache.invalidateAll();
+
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				generationBeforeRead);
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isEmpty());
+	}
+
+	@Test
+	public void testPutIsNotIgnoredIfTableInvalidatedBeforeGeneration() {
+		cache.invalidateTable("someTable");
+
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+
+		assertTrue(cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES).isPresent());
+	}
+
+	@Test
+	public void testStatisticsHitRatio() {
+		assertEquals(cache.getStatistics().hitRatio(), 0.0);
+		cache.putRowsForSqlAndValues("someTable", SOME_SQL, SOME_VALUES, rows,
+				cache.getGeneration());
+		cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES);
+		cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES);
+		cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES);
+		cache.getRowsForSqlAndValues("otherSql", SOME_VALUES);
+
+		assertEquals(cache.getStatistics().hitRatio(), 0.75);
+	}
+
+	@Test
+	public void testStatisticsIsSnapshot() {
+		QueryResultCacheStatistics statistics = cache.getStatistics();
+		cache.getRowsForSqlAndValues(SOME_SQL, SOME_VALUES);
+
+		assertEquals(statistics.misses(), 0);
+	}
+
+	private void assertStatistics(long hits, long misses, long evictions, long expirations,
+			long invalidations, int numberOfEntries) {
+		assertEquals(cache.getStatistics(), new QueryResultCacheStatistics(hits, misses, evictions,
+				expirations, invalidations, numberOfEntries));
+	}
+}
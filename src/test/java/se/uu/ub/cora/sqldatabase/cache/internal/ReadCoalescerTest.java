@@ -0,0 +1,199 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.cache.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescer;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescerStatistics;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+
+public class ReadCoalescerTest {
+	private static final String SOME_SQL = "select * from someTable where id = ?";
+	private static final List<Object> SOME_VALUES = List.of("someId");
+	private ReadCoalescerImp coalescer;
+	private ExecutorService executor;
+	private AtomicInteger numberOfReads;
+	private CountDownLatch releaseRead;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		coalescer = ReadCoalescerImp.create();
+		executor = Executors.newVirtualThreadPerTaskExecutor();
+		numberOfReads = new AtomicInteger();
+		releaseRead = new CountDownLatch(1);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testImplementsReadCoalescer() {
+		assertTrue(coalescer instanceof ReadCoalescer);
+	}
+
+	@Test
+	public void testReadIsMadeUsingReader() {
+		List<Row> rows = new ArrayList<>(List.of(new RowImp()));
+
+		List<Row> readRows = coalescer.readUsingSqlAndValues(SOME_SQL, SOME_VALUES, () -> rows);
+
+		assertSame(readRows, rows);
+		assertEquals(coalescer.getStatistics(), new ReadCoalescerStatistics(1, 0));
+	}
+
+	@Test
+	public void testReadsAfterEachOtherAreNotCoalesced() {
+		coalescer.readUsingSqlAndValues(SOME_SQL, SOME_VALUES, this::countRead);
+		coalescer.readUsingSqlAndValues(SOME_SQL, SOME_VALUES, this::countRead);
+
+		assertEquals(numberOfReads.get(), 2);
+		assertEquals(coalescer.getStatistics(), new ReadCoalescerStatistics(2, 0));
+	}
+
+	private List<Row> countRead() {
+		numberOfReads.incrementAndGet();
+		return new ArrayList<>(List.of(new RowImp()));
+	}
+
+	@Test
+	public void testConcurrentIdenticalReadsAreCoalesced() throws Exception {
+		Future<List<Row>> firstRead = startRead(SOME_VALUES, this::blockingRead);
+		waitForReadsInFlight(1, 0);
+		List<Future<List<Row>>> joiningReads = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			joiningReads.add(startRead(List.of("someId"), this::blockingRead));
+		}
+		waitForReadsInFlight(1, 5);
+
+		releaseRead.countDown();
+
+		List<Row> firstRows = firstRead.get(5, TimeUnit.SECONDS);
+		for (Future<List<Row>> joiningRead : joiningReads) {
+			List<Row> joinedRows = joiningRead.get(5, TimeUnit.SECONDS);
+			assertEquals(joinedRows, firstRows);
+			assertNotSame(joinedRows, firstRows);
+		}
+		assertEquals(numberOfReads.get(), 1);
+		assertEquals(coalescer.getStatistics(), new ReadCoalescerStatistics(1, 5));
+	}
+
+	private Future<List<Row>> startRead(List<Object> values, Supplier<List<Row>> reader) {
+		return executor.submit(() -> coalescer.readUsingSqlAndValues(SOME_SQL, values, reader));
+	}
+
+	private List<Row> blockingRead() {
+		numberOfReads.incrementAndGet();
+		try {
+			releaseRead.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return new ArrayList<>(List.of(new RowImp()));
+	}
+
+	private void waitForReadsInFlight(long reads, long coalescedReads) throws Exception {
+		ReadCoalescerStatistics expected = new ReadCoalescerStatistics(reads, coalescedReads);
+		long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while ((!coalescer.getStatistics().equals(expected) || numberOfReads.get() != reads)
+				&& System.nanoTime() < waitUntil) {
+			Thread.sleep(1);
+		}
+		assertEquals(coalescer.getStatistics(), expected);
+	}
+
+	@Test
+	public void testConcurrentReadsWithOtherValuesAreNotCoalesced() throws Exception {
+		Future<List<Row>> firstRead = startRead(SOME_VALUES, this::blockingRead);
+		waitForReadsInFlight(1, 0);
+		Future<List<Row>> otherRead = startRead(List.of("otherId"), this::countRead);
+
+		otherRead.get(5, TimeUnit.SECONDS);
+		releaseRead.countDown();
+		firstRead.get(5, TimeUnit.SECONDS);
+
+		assertEquals(numberOfReads.get(), 2);
+		assertEquals(coalescer.getStatistics(), new ReadCoalescerStatistics(2, 0));
+	}
+
+	@Test
+	public void testFailedReadIsThrownToAllCallers() throws Exception {
+		SqlDatabaseException error = SqlDatabaseException.withMessage("some error");
+		Future<List<Row>> firstRead = startRead(SOME_VALUES, () -> {
+			blockingRead();
+			throw error;
+		});
+		waitForReadsInFlight(1, 0);
+		Future<List<Row>> joiningRead = startRead(SOME_VALUES, this::countRead);
+		waitForReadsInFlight(1, 1);
+
+		releaseRead.countDown();
+
+		assertSame(getExceptionFromRead(firstRead), error);
+		assertSame(getExceptionFromRead(joiningRead), error);
+	}
+
+	private Throwable getExceptionFromRead(Future<List<Row>> read) throws Exception {
+		try {
+			read.get(5, TimeUnit.SECONDS);
+			fail();
+			return null;
+		} catch (ExecutionException e) {
+			return e.getCause();
+		}
+	}
+
+	@Test
+	public void testReadAfterFailedReadReadsAgain() {
+		try {
+			coalescer.readUsingSqlAndValues(SOME_SQL, SOME_VALUES, () -> {
+				throw SqlDatabaseException.withMessage("some error");
+			});
+			fail();
+		} catch (SqlDatabaseException _) {
+			coalescer.readUsingSqlAndValues(SOME_SQL, SOME_VALUES, this::countRead);
+		}
+
+		assertEquals(numberOfReads.get(), 1);
+		assertEquals(coalescer.getStatistics(), new ReadCoalescerStatistics(2, 0));
+	}
+}
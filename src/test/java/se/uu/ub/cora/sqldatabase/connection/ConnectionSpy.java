@@ -1,5 +1,5 @@
 /*
- * Copyright 2025 Uppsala University Library
+ * Copyright 2025, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -50,12 +50,13 @@ public class ConnectionSpy implements Connection {
 		MRV.setDefaultReturnValuesSupplier("prepareStatement", PreparedStatementSpy::new);
 		MRV.setDefaultReturnValuesSupplier("getAutoCommit", () -> true);
 		MRV.setDefaultReturnValuesSupplier("createArrayOf", ArraySpy::new);
+		MRV.setDefaultReturnValuesSupplier("isValid", () -> true);
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return (T) MCR.addCallAndReturnFromMRV("iface", iface);
 	}
 
 	@Override
@@ -322,8 +323,7 @@ public class ConnectionSpy implements Connection {
 
 	@Override
 	public boolean isValid(int timeout) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return (boolean) MCR.addCallAndReturnFromMRV("timeout", timeout);
 	}
 
 	@Override
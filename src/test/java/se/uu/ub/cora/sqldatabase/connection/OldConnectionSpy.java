@@ -30,6 +30,9 @@ public class OldConnectionSpy implements Connection {
 	private boolean autoCommit = true;
 	public MethodCallRecorder MCR = new MethodCallRecorder();
 	public boolean throwErrorRollback = false;
+	public boolean throwErrorSavepoint = false;
+	public boolean throwErrorReadOnly = false;
+	public String sqlStateToThrow = null;
 
 	@Override
 	public <T> T unwrap(Class<T> iface) throws SQLException {
@@ -56,7 +59,7 @@ public class OldConnectionSpy implements Connection {
 		this.sql = sql;
 		if (throwErrorConnection) {
 			SQLException sqlException = new SQLException(
-					"error thrown from prepareStatement in spy");
+					"error thrown from prepareStatement in spy", sqlStateToThrow);
 			MCR.addReturned(sqlException);
 			throw sqlException;
 		}
@@ -79,6 +82,7 @@ public class OldConnectionSpy implements Connection {
 
 	@Override
 	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		MCR.addCall("autoCommit", autoCommit);
 		if (throwErrorConnection) {
 			throw new SQLException("error thrown from setAutoCommit in spy");
 		}
@@ -127,8 +131,10 @@ public class OldConnectionSpy implements Connection {
 
 	@Override
 	public void setReadOnly(boolean readOnly) throws SQLException {
-		// TODO Auto-generated method stub
-
+		MCR.addCall("readOnly", readOnly);
+		if (throwErrorReadOnly) {
+			throw new SQLException("error thrown from setReadOnly in ConnectionSpy");
+		}
 	}
 
 	@Override
@@ -220,8 +226,17 @@ public class OldConnectionSpy implements Connection {
 
 	@Override
 	public Savepoint setSavepoint() throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		MCR.addCall();
+		throwErrorIfThrowErrorSavepoint();
+		Savepoint savepoint = new SavepointSpy();
+		MCR.addReturned(savepoint);
+		return savepoint;
+	}
+
+	private void throwErrorIfThrowErrorSavepoint() throws SQLException {
+		if (throwErrorSavepoint) {
+			throw new SQLException("error thrown from savepoint method in ConnectionSpy");
+		}
 	}
 
 	@Override
@@ -232,14 +247,14 @@ public class OldConnectionSpy implements Connection {
 
 	@Override
 	public void rollback(Savepoint savepoint) throws SQLException {
-		// TODO Auto-generated method stub
-
+		MCR.addCall("savepoint", savepoint);
+		throwErrorIfThrowErrorSavepoint();
 	}
 
 	@Override
 	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
-		// TODO Auto-generated method stub
-
+		MCR.addCall("savepoint", savepoint);
+		throwErrorIfThrowErrorSavepoint();
 	}
 
 	@Override
@@ -41,6 +41,7 @@ public class OldPreparedStatementSpy implements PreparedStatement {
 	public MethodCallRecorder MCR = new MethodCallRecorder();
 	public static String DUPLICATE_ERROR_MESSAGE = "duplicate key value violates unique constraint \"organisation_pkey\"";;
 	public boolean throwDuplicateKeyException = false;
+	public String duplicateErrorMessage = DUPLICATE_ERROR_MESSAGE;
 
 	@Override
 	public ResultSet executeQuery(String sql) throws SQLException {
@@ -163,8 +164,7 @@ public class OldPreparedStatementSpy implements PreparedStatement {
 
 	@Override
 	public void setFetchSize(int rows) throws SQLException {
-		// TODO Auto-generated method stub
-
+		MCR.addCall("rows", rows);
 	}
 
 	@Override
@@ -308,6 +308,9 @@ public class OldPreparedStatementSpy implements PreparedStatement {
 	@Override
 	public ResultSet executeQuery() throws SQLException {
 		executeQueryWasCalled = true;
+		if (throwDuplicateKeyException) {
+			throw new SQLException(duplicateErrorMessage, "23505");
+		}
 		return resultSet;
 	}
 
@@ -315,7 +318,7 @@ public class OldPreparedStatementSpy implements PreparedStatement {
 	public int executeUpdate() throws SQLException {
 		executeUpdateWasCalled = true;
 		if (throwDuplicateKeyException) {
-			throw new SQLException(DUPLICATE_ERROR_MESSAGE);
+			throw new SQLException(duplicateErrorMessage, "23505");
 		}
 		return noOfAffectedRows;
 	}
@@ -56,6 +56,7 @@ public class OldResultSetSpy implements ResultSet {
 	@Override
 	public void close() throws SQLException {
 		closeWasCalled = true;
+		currentRow = -1;
 	}
 
 	@Override
@@ -99,8 +99,7 @@ public class PreparedStatementSpy implements PreparedStatement {
 
 	@Override
 	public void cancel() throws SQLException {
-		// TODO Auto-generated method stub
-
+		MCR.addCall();
 	}
 
 	@Override
@@ -0,0 +1,18 @@
+package se.uu.ub.cora.sqldatabase.connection;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+public class SavepointSpy implements Savepoint {
+
+	@Override
+	public int getSavepointId() throws SQLException {
+		return 0;
+	}
+
+	@Override
+	public String getSavepointName() throws SQLException {
+		return null;
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+
+public class TransactionReadCacheTest {
+	private static final String SELECT_SQL = "select * from someTable where id = ?";
+	private TransactionReadCache readCache;
+	private List<Object> values;
+	private List<Row> rows;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		readCache = new TransactionReadCache();
+		values = List.of("someId");
+		rows = List.of(new RowImp());
+	}
+
+	@Test
+	public void testGetRowsNotPutReturnsEmpty() {
+		assertEquals(readCache.getRowsForSqlAndValues(SELECT_SQL, values), Optional.empty());
+	}
+
+	@Test
+	public void testGetRowsReturnsCopyOfPutRows() {
+		readCache.putRowsForSqlAndValues(SELECT_SQL, values, rows);
+
+		List<Row> cachedRows = readCache.getRowsForSqlAndValues(SELECT_SQL, values).get();
+
+		assertEquals(cachedRows, rows);
+		assertNotSame(cachedRows, rows);
+		cachedRows.clear();
+		assertSame(readCache.getRowsForSqlAndValues(SELECT_SQL, values).get().get(0), rows.get(0));
+	}
+
+	@Test
+	public void testChangingPutValuesDoesNotChangeKey() {
+		List<Object> changingValues = new ArrayList<>(values);
+		readCache.putRowsForSqlAndValues(SELECT_SQL, changingValues, rows);
+
+		changingValues.add("otherValue");
+
+		assertTrue(readCache.getRowsForSqlAndValues(SELECT_SQL, values).isPresent());
+	}
+
+	@Test
+	public void testVolatileSqlIsNotCached() {
+		readCache.putRowsForSqlAndValues("select nextval('someSequence')", values, rows);
+		readCache.putRowsForSqlAndValues("select SetVal ('someSequence', ?)", values, rows);
+		readCache.putRowsForSqlAndValues("select * from someTable order by random()", values,
+				rows);
+
+		assertEquals(readCache.onlyForTestGetNumberOfEntries(), 0);
+	}
+
+	@Test
+	public void testInvalidateTableRemovesEntriesMentioningTable() {
+		readCache.putRowsForSqlAndValues(SELECT_SQL, values, rows);
+		readCache.putRowsForSqlAndValues("select * from otherTable join sometable using (id)",
+				values, rows);
+		readCache.putRowsForSqlAndValues("select * from someTableWithLongerName", values, rows);
+
+		readCache.invalidateTable("public.\"someTable\"");
+
+		assertEquals(readCache.onlyForTestGetNumberOfEntries(), 1);
+		assertTrue(readCache
+				.getRowsForSqlAndValues("select * from someTableWithLongerName", values)
+				.isPresent());
+	}
+
+	@Test
+	public void testInvalidateAll() {
+		readCache.putRowsForSqlAndValues(SELECT_SQL, values, rows);
+		readCache.putRowsForSqlAndValues("select * from otherTable", values, rows);
+
+		readCache.invalidateAll();
+
+		assertEquals(readCache.onlyForTestGetNumberOfEntries(), 0);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+
+public class ConsistencyTokenTest {
+
+	@Test
+	public void testFromLsn() {
+		ConsistencyToken token = ConsistencyToken.fromLsn("16/B374D848");
+
+		assertEquals(token.lsn(), 0x16B374D848L);
+	}
+
+	@Test
+	public void testToLsn() {
+		ConsistencyToken token = ConsistencyToken.fromLsn("16/B374D848");
+
+		assertEquals(token.toLsn(), "16/B374D848");
+		assertEquals(ConsistencyToken.fromLsn("0/0").toLsn(), "0/0");
+	}
+
+	@Test
+	public void testFromLsnWithoutSlashThrowsError() {
+		assertNotLsn("16B374D848");
+	}
+
+	private void assertNotLsn(String lsn) {
+		try {
+			ConsistencyToken.fromLsn(lsn);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Not a log sequence number: " + lsn);
+			assertTrue(e.getCause() instanceof RuntimeException);
+		}
+	}
+
+	@Test
+	public void testFromLsnWithoutHexadecimalNumbersThrowsError() {
+		assertNotLsn("16/someText");
+	}
+
+	@Test
+	public void testIsReachedBy() {
+		ConsistencyToken token = ConsistencyToken.fromLsn("1/10");
+
+		assertTrue(token.isReachedBy(ConsistencyToken.fromLsn("1/10")));
+		assertTrue(token.isReachedBy(ConsistencyToken.fromLsn("2/0")));
+		assertFalse(token.isReachedBy(ConsistencyToken.fromLsn("1/F")));
+		assertFalse(token.isReachedBy(ConsistencyToken.fromLsn("0/FFFFFFFF")));
+	}
+
+	@Test
+	public void testLatest() {
+		ConsistencyToken earlier = ConsistencyToken.fromLsn("1/10");
+		ConsistencyToken later = ConsistencyToken.fromLsn("1/20");
+
+		assertSame(earlier.latest(later), later);
+		assertSame(later.latest(earlier), later);
+	}
+}
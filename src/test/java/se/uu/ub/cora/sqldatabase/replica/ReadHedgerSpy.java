@@ -0,0 +1,52 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class ReadHedgerSpy implements ReadHedger {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public ReadHedgerSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("readUsingHedging",
+				() -> new HedgedRead<>(Collections.emptyList(), new ReplicaLeaseSpy()));
+		MRV.setDefaultReturnValuesSupplier("getStatistics",
+				() -> new HedgeStatistics(0, 0, 0, 0, null));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> HedgedRead<T> readUsingHedging(ReplicaLease lease,
+			Supplier<Optional<ReplicaLease>> hedgeLeaser, String sql, StatementReader<T> reader) {
+		return (HedgedRead<T>) MCR.addCallAndReturnFromMRV("lease", lease, "hedgeLeaser",
+				hedgeLeaser, "sql", sql, "reader", reader);
+	}
+
+	@Override
+	public HedgeStatistics getStatistics() {
+		return (HedgeStatistics) MCR.addCallAndReturnFromMRV();
+	}
+}
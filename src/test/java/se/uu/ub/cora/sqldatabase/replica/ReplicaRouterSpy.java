@@ -0,0 +1,63 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica;
+
+import java.util.Optional;
+
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class ReplicaRouterSpy implements ReplicaRouter {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public ReplicaRouterSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("leaseReplicaConnection",
+				() -> Optional.of(new ReplicaLeaseSpy()));
+		MRV.setDefaultReturnValuesSupplier("leaseAnotherReplicaConnection",
+				() -> Optional.of(new ReplicaLeaseSpy()));
+		MRV.setDefaultReturnValuesSupplier("leaseReplicaConnectionCaughtUpTo",
+				() -> Optional.of(new ReplicaLeaseSpy()));
+		MRV.setDefaultReturnValuesSupplier("getNumberOfHealthyReplicas", () -> 1);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<ReplicaLease> leaseReplicaConnection() {
+		return (Optional<ReplicaLease>) MCR.addCallAndReturnFromMRV();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<ReplicaLease> leaseAnotherReplicaConnection(ReplicaLease lease) {
+		return (Optional<ReplicaLease>) MCR.addCallAndReturnFromMRV("lease", lease);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<ReplicaLease> leaseReplicaConnectionCaughtUpTo(ConsistencyToken token) {
+		return (Optional<ReplicaLease>) MCR.addCallAndReturnFromMRV("token", token);
+	}
+
+	@Override
+	public int getNumberOfHealthyReplicas() {
+		return (int) MCR.addCallAndReturnFromMRV();
+	}
+}
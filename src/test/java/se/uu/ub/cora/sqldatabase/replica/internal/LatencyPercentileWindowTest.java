@@ -0,0 +1,82 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.time.Duration;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class LatencyPercentileWindowTest {
+	private LatencyPercentileWindow window;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		window = new LatencyPercentileWindow(10);
+	}
+
+	@Test
+	public void testNoLatenciesHasNoPercentile() {
+		assertEquals(window.getNumberOfLatencies(), 0);
+		assertTrue(window.getPercentile(95).isEmpty());
+	}
+
+	@Test
+	public void testPercentile() {
+		recordLatenciesInMillisFromOneTo(10);
+
+		assertEquals(window.getNumberOfLatencies(), 10);
+		assertEquals(window.getPercentile(50).get(), Duration.ofMillis(5));
+		assertEquals(window.getPercentile(90).get(), Duration.ofMillis(9));
+		assertEquals(window.getPercentile(95).get(), Duration.ofMillis(10));
+		assertEquals(window.getPercentile(100).get(), Duration.ofMillis(10));
+		assertEquals(window.getPercentile(1).get(), Duration.ofMillis(1));
+	}
+
+	private void recordLatenciesInMillisFromOneTo(int last) {
+		for (int millis = 1; millis <= last; millis++) {
+			window.recordLatency(Duration.ofMillis(millis));
+		}
+	}
+
+	@Test
+	public void testPercentileIsIndependentOfRecordingOrder() {
+		window.recordLatency(Duration.ofMillis(30));
+		window.recordLatency(Duration.ofMillis(10));
+		window.recordLatency(Duration.ofMillis(20));
+
+		assertEquals(window.getPercentile(50).get(), Duration.ofMillis(20));
+	}
+
+	@Test
+	public void testOldestLatenciesAreReplacedWhenWindowIsFull() {
+		recordLatenciesInMillisFromOneTo(10);
+		for (int i = 0; i < 5; i++) {
+			window.recordLatency(Duration.ofMillis(100));
+		}
+
+		assertEquals(window.getNumberOfLatencies(), 10);
+		assertEquals(window.getPercentile(1).get(), Duration.ofMillis(6));
+		assertEquals(window.getPercentile(50).get(), Duration.ofMillis(10));
+		assertEquals(window.getPercentile(60).get(), Duration.ofMillis(100));
+	}
+}
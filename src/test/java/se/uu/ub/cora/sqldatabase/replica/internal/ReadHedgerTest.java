@@ -0,0 +1,402 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.connection.ConnectionSpy;
+import se.uu.ub.cora.sqldatabase.connection.PreparedStatementSpy;
+import se.uu.ub.cora.sqldatabase.replica.HedgeStatistics;
+import se.uu.ub.cora.sqldatabase.replica.HedgedRead;
+import se.uu.ub.cora.sqldatabase.replica.ReadHedger;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLeaseSpy;
+import se.uu.ub.cora.sqldatabase.replica.StatementReader;
+
+public class ReadHedgerTest {
+	private static final String SOME_SQL = "select * from someTable";
+	private static final int WAIT_SECONDS = 5;
+	private ReadHedgerImp hedger;
+	private TestLease firstLease;
+	private TestLease hedgeLease;
+	private AtomicInteger hedgeLeaserCalls;
+	private Supplier<Optional<ReplicaLease>> hedgeLeaser;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		hedger = ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(95,
+				Duration.ofMillis(1), 1);
+		firstLease = new TestLease();
+		hedgeLease = new TestLease();
+		hedgeLeaserCalls = new AtomicInteger();
+		hedgeLeaser = () -> {
+			hedgeLeaserCalls.incrementAndGet();
+			return Optional.of(hedgeLease);
+		};
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		hedger.close();
+	}
+
+	@Test
+	public void testImplementsReadHedger() {
+		assertTrue(hedger instanceof ReadHedger);
+		assertTrue(hedger instanceof AutoCloseable);
+	}
+
+	@Test
+	public void testOnlyForTestGetters() {
+		assertEquals(hedger.onlyForTestGetPercentile(), 95.0);
+		assertEquals(hedger.onlyForTestGetMinimumDelay(), Duration.ofMillis(1));
+		assertEquals(hedger.onlyForTestGetMaxHedgeRate(), 1.0);
+	}
+
+	@Test
+	public void testPercentileOutOfRangeThrowsError() {
+		assertPercentileOutOfRange(0);
+		assertPercentileOutOfRange(100.5);
+	}
+
+	private void assertPercentileOutOfRange(double percentile) {
+		try {
+			ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(percentile, Duration.ZERO,
+					0.1);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Hedge percentile must be greater than 0 and at most 100.");
+		}
+	}
+
+	@Test
+	public void testMaxHedgeRateOutOfRangeThrowsError() {
+		assertMaxHedgeRateOutOfRange(-0.1);
+		assertMaxHedgeRateOutOfRange(1.1);
+	}
+
+	private void assertMaxHedgeRateOutOfRange(double maxHedgeRate) {
+		try {
+			ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(95, Duration.ZERO,
+					maxHedgeRate);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Max hedge rate must be between 0 and 1.");
+		}
+	}
+
+	@Test
+	public void testReadReturnsResultAndLeaseOfFirstRead() throws Exception {
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				statement -> "result from " + getLeaseName(statement));
+
+		assertEquals(hedgedRead.result(), "result from first");
+		assertSame(hedgedRead.lease(), firstLease);
+		firstLease.connection.MCR.assertParameters("prepareStatement", 0, SOME_SQL);
+		firstLease.statement.MCR.assertMethodWasCalled("close");
+		firstLease.MCR.assertMethodNotCalled("release");
+		assertEquals(hedger.getStatistics(), new HedgeStatistics(1, 0, 0, 0, null));
+	}
+
+	private String getLeaseName(PreparedStatement statement) {
+		return statement == firstLease.statement ? "first" : "hedge";
+	}
+
+	@Test
+	public void testNoHedgeBeforeEnoughLatenciesAreRecorded() throws Exception {
+		recordLatencies(19, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				slowFirstRead(Duration.ofMillis(20)));
+
+		assertEquals(hedgedRead.result(), "result from first");
+		assertEquals(hedgeLeaserCalls.get(), 0);
+		assertEquals(hedger.getStatistics().hedgeDelay(), Duration.ofMillis(1));
+	}
+
+	private void recordLatencies(int numberOfLatencies, Duration latency) {
+		for (int i = 0; i < numberOfLatencies; i++) {
+			hedger.recordReadLatency(latency);
+		}
+	}
+
+	private StatementReader<String> slowFirstRead(Duration firstReadTime) {
+		return statement -> {
+			if (statement == firstLease.statement) {
+				sleep(firstReadTime);
+			}
+			return "result from " + getLeaseName(statement);
+		};
+	}
+
+	private void sleep(Duration time) {
+		try {
+			Thread.sleep(time);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testHedgeDelayIsPercentileOfRecordedLatencies() {
+		for (int millis = 1; millis <= 20; millis++) {
+			hedger.recordReadLatency(Duration.ofMillis(millis));
+		}
+
+		assertEquals(hedger.getStatistics().hedgeDelay(), Duration.ofMillis(19));
+	}
+
+	@Test
+	public void testHedgeDelayIsNeverShorterThanMinimumDelay() {
+		hedger.close();
+		hedger = ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(95,
+				Duration.ofMillis(50), 1);
+
+		recordLatencies(20, Duration.ofMillis(1));
+
+		assertEquals(hedger.getStatistics().hedgeDelay(), Duration.ofMillis(50));
+	}
+
+	@Test
+	public void testHedgeDelayIsUpdatedAfterEveryFiftyLatencies() {
+		recordLatencies(20, Duration.ofMillis(1));
+		recordLatencies(49, Duration.ofMillis(30));
+		assertEquals(hedger.getStatistics().hedgeDelay(), Duration.ofMillis(1));
+
+		hedger.recordReadLatency(Duration.ofMillis(30));
+
+		assertEquals(hedger.getStatistics().hedgeDelay(), Duration.ofMillis(30));
+	}
+
+	@Test
+	public void testSlowReadIsHedgedAndHedgeWins() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				firstReadAnswersOnlyWhenCancelled());
+
+		assertEquals(hedgedRead.result(), "result from hedge");
+		assertSame(hedgedRead.lease(), hedgeLease);
+		hedgeLease.connection.MCR.assertParameters("prepareStatement", 0, SOME_SQL);
+		assertTrue(firstLease.awaitRelease());
+		hedgeLease.MCR.assertMethodNotCalled("release");
+		assertEquals(hedger.getStatistics(),
+				new HedgeStatistics(1, 1, 1, 0, Duration.ofMillis(1)));
+	}
+
+	private StatementReader<String> firstReadAnswersOnlyWhenCancelled() {
+		return statement -> {
+			if (statement == firstLease.statement) {
+				return firstLease.statement.awaitCancel();
+			}
+			return "result from hedge";
+		};
+	}
+
+	@Test
+	public void testSlowReadIsHedgedAndFirstReadWins() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				statement -> {
+					if (statement == hedgeLease.statement) {
+						return hedgeLease.statement.awaitCancel();
+					}
+					sleep(Duration.ofMillis(20));
+					return "result from first";
+				});
+
+		assertEquals(hedgedRead.result(), "result from first");
+		assertSame(hedgedRead.lease(), firstLease);
+		assertTrue(hedgeLease.awaitRelease());
+		firstLease.MCR.assertMethodNotCalled("release");
+		assertEquals(hedger.getStatistics().hedges(), 1);
+		assertEquals(hedger.getStatistics().hedgeWins(), 0);
+	}
+
+	@Test
+	public void testNoHedgeWhenMaxHedgeRateIsReached() throws Exception {
+		hedger.close();
+		hedger = ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(95,
+				Duration.ofMillis(1), 0);
+		recordLatencies(20, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				slowFirstRead(Duration.ofMillis(20)));
+
+		assertEquals(hedgedRead.result(), "result from first");
+		assertEquals(hedgeLeaserCalls.get(), 0);
+		assertEquals(hedger.getStatistics(),
+				new HedgeStatistics(1, 0, 0, 1, Duration.ofMillis(1)));
+	}
+
+	@Test
+	public void testHedgeRateIsCapped() throws Exception {
+		hedger.close();
+		hedger = ReadHedgerImp.usingPercentileAndMinimumDelayAndMaxHedgeRate(95,
+				Duration.ofMillis(1), 0.5);
+		recordLatencies(20, Duration.ofMillis(1));
+
+		for (int i = 0; i < 4; i++) {
+			firstLease = new TestLease();
+			hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+					slowFirstRead(Duration.ofMillis(20)));
+		}
+
+		HedgeStatistics statistics = hedger.getStatistics();
+		assertEquals(statistics.hedges(), 2);
+		assertEquals(statistics.cappedHedges(), 2);
+		assertEquals(statistics.hedgeRate(), 0.5);
+	}
+
+	@Test
+	public void testNoHedgeWhenNoOtherReplicaCanBeLeased() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, Optional::empty,
+				SOME_SQL, slowFirstRead(Duration.ofMillis(20)));
+
+		assertEquals(hedgedRead.result(), "result from first");
+		assertEquals(hedger.getStatistics().hedges(), 0);
+	}
+
+	@Test
+	public void testFailingFirstReadBeforeHedgeDelayIsThrown() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1000));
+		SQLException error = new SQLException("some read error");
+		try {
+			hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL, statement -> {
+				throw error;
+			});
+			fail();
+		} catch (SQLException e) {
+			assertSame(e, error);
+		}
+		assertEquals(hedgeLeaserCalls.get(), 0);
+		firstLease.MCR.assertMethodNotCalled("release");
+	}
+
+	@Test
+	public void testFailingFirstReadAfterHedgeWaitsForHedge() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1));
+
+		HedgedRead<String> hedgedRead = hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL,
+				statement -> {
+					sleep(Duration.ofMillis(20));
+					if (statement == firstLease.statement) {
+						throw new SQLException("some read error");
+					}
+					return "result from hedge";
+				});
+
+		assertEquals(hedgedRead.result(), "result from hedge");
+		assertTrue(firstLease.awaitRelease());
+	}
+
+	@Test
+	public void testErrorFromFirstReadIsThrownWhenAllReadsFail() throws Exception {
+		recordLatencies(20, Duration.ofMillis(1));
+		SQLException firstError = new SQLException("first read error");
+		try {
+			hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL, statement -> {
+				if (statement == firstLease.statement) {
+					sleep(Duration.ofMillis(20));
+					throw firstError;
+				}
+				throw new SQLException("hedge read error");
+			});
+			fail();
+		} catch (SQLException e) {
+			assertSame(e, firstError);
+		}
+		assertTrue(hedgeLease.awaitRelease());
+		firstLease.MCR.assertMethodNotCalled("release");
+	}
+
+	@Test
+	public void testRuntimeExceptionFromReadIsThrown() throws Exception {
+		RuntimeException error = new RuntimeException("some runtime error");
+		try {
+			hedger.readUsingHedging(firstLease, hedgeLeaser, SOME_SQL, statement -> {
+				throw error;
+			});
+			fail();
+		} catch (RuntimeException e) {
+			assertSame(e, error);
+		}
+	}
+
+	private static class CancellableStatementSpy extends PreparedStatementSpy {
+		private final CountDownLatch cancelled = new CountDownLatch(1);
+
+		@Override
+		public void cancel() throws SQLException {
+			super.cancel();
+			cancelled.countDown();
+		}
+
+		private String awaitCancel() throws SQLException {
+			try {
+				cancelled.await(WAIT_SECONDS, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new SQLException("canceling statement due to user request", "57014");
+		}
+	}
+
+	private static class TestLease extends ReplicaLeaseSpy {
+		private final CancellableStatementSpy statement = new CancellableStatementSpy();
+		private final ConnectionSpy connection = new ConnectionSpy();
+		private final CountDownLatch released = new CountDownLatch(1);
+
+		private TestLease() {
+			connection.MRV.setDefaultReturnValuesSupplier("prepareStatement", () -> statement);
+			MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		}
+
+		@Override
+		public void release() {
+			super.release();
+			released.countDown();
+		}
+
+		private boolean awaitRelease() throws InterruptedException {
+			return released.await(WAIT_SECONDS, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.replica.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.sqldatabase.SqlConnectionProviderSpy;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.connection.ConnectionSpy;
+import se.uu.ub.cora.sqldatabase.connection.OldConnectionSpy;
+import se.uu.ub.cora.sqldatabase.connection.PreparedStatementSpy;
+import se.uu.ub.cora.sqldatabase.connection.ResultSetSpy;
+import se.uu.ub.cora.sqldatabase.connection.SqlConnectionProvider;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLease;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaLeaseSpy;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaRouter;
+import se.uu.ub.cora.sqldatabase.replica.ReplicaSelection;
+import se.uu.ub.cora.testspies.logger.LoggerFactorySpy;
+import se.uu.ub.cora.testspies.logger.LoggerSpy;
+
+public class ReplicaRouterTest {
+	private static final Duration PROBE_INTERVAL = Duration.ofSeconds(5);
+	private LoggerFactorySpy loggerFactorySpy;
+	private List<SqlConnectionProvider> providers;
+	private SqlConnectionProviderSpy provider0;
+	private SqlConnectionProviderSpy provider1;
+	private ReplicaRouterImp router;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		loggerFactorySpy = new LoggerFactorySpy();
+		LoggerProvider.setLoggerFactory(loggerFactorySpy);
+		provider0 = new SqlConnectionProviderSpy();
+		provider1 = new SqlConnectionProviderSpy();
+		providers = List.of(provider0, provider1);
+		router = createRouterUsingSelection(ReplicaSelection.ROUND_ROBIN);
+	}
+
+	private ReplicaRouterImp createRouterUsingSelection(ReplicaSelection selection) {
+		return ReplicaRouterImp.usingReplicaProvidersAndSelectionAndProbeInterval(providers,
+				selection, PROBE_INTERVAL);
+	}
+
+	@Test
+	public void testImplementsReplicaRouter() {
+		assertTrue(router instanceof ReplicaRouter);
+		assertTrue(router instanceof AutoCloseable);
+	}
+
+	@Test
+	public void testOnlyForTestGetters() {
+		assertEquals(router.onlyForTestGetSelection(), ReplicaSelection.ROUND_ROBIN);
+		assertEquals(router.onlyForTestGetProbeInterval(), PROBE_INTERVAL);
+		assertEquals(router.onlyForTestGetReplicaProviders(), providers);
+		assertEquals(router.onlyForTestGetMaxCatchUpWait(), Duration.ofMillis(500));
+	}
+
+	@Test
+	public void testSetMaxCatchUpWait() {
+		router.setMaxCatchUpWait(Duration.ofSeconds(2));
+
+		assertEquals(router.onlyForTestGetMaxCatchUpWait(), Duration.ofSeconds(2));
+	}
+
+	@Test
+	public void testNoReplicasThrowsError() {
+		try {
+			ReplicaRouterImp.usingReplicaProvidersAndSelectionAndProbeInterval(
+					new ArrayList<>(), ReplicaSelection.ROUND_ROBIN, PROBE_INTERVAL);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "At least one replica must be provided.");
+		}
+	}
+
+	@Test
+	public void testLeaseReturnsConnectionFromProvider() {
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+
+		var connection = provider0.MCR.assertCalledParametersReturn("getConnection");
+		assertSame(lease.getConnection(), connection);
+	}
+
+	@Test
+	public void testRoundRobinUsesReplicasInTurn() {
+		router.leaseReplicaConnection();
+		router.leaseReplicaConnection();
+		router.leaseReplicaConnection();
+
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+		provider1.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+	}
+
+	@Test
+	public void testLeastLoadedUsesReplicaWithFewestConnectionsInUse() {
+		router = createRouterUsingSelection(ReplicaSelection.LEAST_LOADED);
+
+		ReplicaLease lease0 = router.leaseReplicaConnection().get();
+		router.leaseReplicaConnection();
+		lease0.release();
+		router.leaseReplicaConnection();
+		router.leaseReplicaConnection();
+
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 3);
+		provider1.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 2);
+		assertEquals(router.onlyForTestGetLoadForReplica(1), 1);
+	}
+
+	@Test
+	public void testReleaseClosesConnectionAndLowersLoadOnce() {
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 1);
+
+		lease.release();
+		lease.release();
+
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+		ConnectionSpy connection = (ConnectionSpy) lease.getConnection();
+		connection.MCR.assertNumberOfCallsToMethod("close", 1);
+	}
+
+	@Test
+	public void testFailingReplicaIsEvictedAndNextReplicaUsed() {
+		SqlDatabaseException error = SqlDatabaseException.withMessage("no connection");
+		provider0.MRV.setAlwaysThrowException("getConnection", error);
+
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		router.leaseReplicaConnection();
+
+		var connection = provider1.MCR.assertCalledParametersReturn("getConnection");
+		assertSame(lease.getConnection(), connection);
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		provider1.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+		getLogger().MCR.assertParameters("logWarnUsingMessageAndException", 0,
+				"Replica number 0 is unhealthy, evicted until it answers a probe.", error);
+	}
+
+	private LoggerSpy getLogger() {
+		return (LoggerSpy) loggerFactorySpy.MCR.getReturnValue("factorForClass", 0);
+	}
+
+	@Test
+	public void testNoHealthyReplicaReturnsEmpty() {
+		provider0.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+		provider1.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+
+		Optional<ReplicaLease> lease = router.leaseReplicaConnection();
+		router.leaseReplicaConnection();
+
+		assertTrue(lease.isEmpty());
+		assertEquals(router.getNumberOfHealthyReplicas(), 0);
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		provider1.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+	}
+
+	@Test
+	public void testReleaseAsFailedEvictsReplica() {
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		Exception error = new RuntimeException("some read error");
+
+		lease.releaseAsFailed(error);
+
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+		getLogger().MCR.assertParameters("logWarnUsingMessageAndException", 0,
+				"Replica number 0 is unhealthy, evicted until it answers a probe.", error);
+	}
+
+	@Test
+	public void testLeaseAnotherUsesOtherReplica() {
+		router = createRouterUsingSelection(ReplicaSelection.LEAST_LOADED);
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		lease.release();
+
+		ReplicaLease anotherLease = router.leaseAnotherReplicaConnection(lease).get();
+
+		var connection = provider1.MCR.assertCalledParametersReturn("getConnection");
+		assertSame(anotherLease.getConnection(), connection);
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+	}
+
+	@Test
+	public void testLeaseAnotherUsingRoundRobinSkipsReplicaOfLease() {
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		router.leaseReplicaConnection();
+
+		router.leaseAnotherReplicaConnection(lease);
+
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		provider1.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+	}
+
+	@Test
+	public void testLeaseAnotherReturnsEmptyWhenNoOtherReplicaIsHealthy() {
+		ReplicaLease lease = router.leaseReplicaConnection().get();
+		provider1.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+
+		Optional<ReplicaLease> anotherLease = router.leaseAnotherReplicaConnection(lease);
+
+		assertTrue(anotherLease.isEmpty());
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 1);
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+	}
+
+	@Test
+	public void testLeaseAnotherUsingLeaseFromOtherRouterUsesAnyReplica() {
+		ReplicaLease anotherLease = router.leaseAnotherReplicaConnection(new ReplicaLeaseSpy())
+				.get();
+
+		var connection = provider0.MCR.assertCalledParametersReturn("getConnection");
+		assertSame(anotherLease.getConnection(), connection);
+	}
+
+	@Test
+	public void testLeaseCaughtUpReturnsLeaseWhenReplicaHasCaughtUp() {
+		ConnectionSpy connection = createConnectionReplayedTo("0/3000060");
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertSame(lease.get().getConnection(), connection);
+		connection.MCR.assertParameters("prepareStatement", 0,
+				"select pg_last_wal_replay_lsn()");
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 1);
+	}
+
+	private ConnectionSpy createConnectionReplayedTo(Object... replayedLsns) {
+		ResultSetSpy resultSet = new ResultSetSpy();
+		resultSet.MRV.setReturnValues("getString", List.of(replayedLsns), 1);
+		return createConnectionReturningResultSet(resultSet);
+	}
+
+	private ConnectionSpy createConnectionForProviderReplayedTo(
+			SqlConnectionProviderSpy provider, Object... replayedLsns) {
+		ConnectionSpy connection = createConnectionReplayedTo(replayedLsns);
+		provider.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		return connection;
+	}
+
+	private ConnectionSpy createConnectionReturningResultSet(ResultSetSpy resultSet) {
+		PreparedStatementSpy statement = new PreparedStatementSpy();
+		statement.MRV.setDefaultReturnValuesSupplier("executeQuery", () -> resultSet);
+		ConnectionSpy connection = new ConnectionSpy();
+		connection.MRV.setDefaultReturnValuesSupplier("prepareStatement", () -> statement);
+		return connection;
+	}
+
+	@Test
+	public void testLeaseCaughtUpWaitsForReplicaToCatchUp() {
+		router.setMaxCatchUpWait(Duration.ofSeconds(5));
+		ConnectionSpy connection = createConnectionReplayedTo("0/3000000", "0/3000050",
+				"1/0");
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		createConnectionForProviderReplayedTo(provider1, "0/0");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertTrue(lease.isPresent());
+		connection.MCR.assertNumberOfCallsToMethod("prepareStatement", 3);
+	}
+
+	@Test
+	public void testLeaseCaughtUpReleasesLeaseWhenReplicaDoesNotCatchUpInTime() {
+		router.setMaxCatchUpWait(Duration.ofMillis(30));
+		ConnectionSpy connection = createConnectionReplayedTo("0/3000000");
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		createConnectionForProviderReplayedTo(provider1, "0/0");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertTrue(lease.isEmpty());
+		connection.MCR.assertMethodWasCalled("close");
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+		assertEquals(router.getNumberOfHealthyReplicas(), 2);
+	}
+
+	@Test
+	public void testLeaseCaughtUpTreatsReplicaWithoutReplayPositionAsNotCaughtUp() {
+		router.setMaxCatchUpWait(Duration.ZERO);
+		ResultSetSpy resultSet = new ResultSetSpy();
+		resultSet.MRV.setSpecificReturnValuesSupplier("getString", () -> null, 1);
+		ConnectionSpy connection = createConnectionReturningResultSet(resultSet);
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		createConnectionForProviderReplayedTo(provider1, "0/0");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/1"));
+
+		assertTrue(lease.isEmpty());
+	}
+
+	@Test
+	public void testLeaseCaughtUpEvictsReplicaWhenReplayPositionCanNotBeRead() {
+		router.setMaxCatchUpWait(Duration.ZERO);
+		OldConnectionSpy connection = new OldConnectionSpy();
+		connection.throwErrorConnection = true;
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> connection);
+		createConnectionForProviderReplayedTo(provider1, "0/0");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/1"));
+
+		assertTrue(lease.isEmpty());
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+		assertTrue(connection.closeWasCalled);
+		var error = connection.MCR.getReturnValue("prepareStatement", 0);
+		getLogger().MCR.assertParameters("logWarnUsingMessageAndException", 0,
+				"Replica number 0 is unhealthy, evicted until it answers a probe.", error);
+	}
+
+	@Test
+	public void testLeaseCaughtUpChoosesReplicaThatHasCaughtUpBeforeWaiting() {
+		router.setMaxCatchUpWait(Duration.ZERO);
+		ConnectionSpy laggingConnection = createConnectionForProviderReplayedTo(provider0,
+				"0/3000000");
+		ConnectionSpy connection = createConnectionForProviderReplayedTo(provider1, "0/3000060");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertSame(lease.get().getConnection(), connection);
+		laggingConnection.MCR.assertMethodWasCalled("close");
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+		assertEquals(router.onlyForTestGetLoadForReplica(1), 1);
+	}
+
+	@Test
+	public void testLeaseCaughtUpWaitsForReplicaFurthestAhead() {
+		router.setMaxCatchUpWait(Duration.ofSeconds(5));
+		ConnectionSpy laggingConnection = createConnectionForProviderReplayedTo(provider0, "0/1");
+		ConnectionSpy connection = createConnectionForProviderReplayedTo(provider1, "0/3000000",
+				"0/3000060");
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertSame(lease.get().getConnection(), connection);
+		connection.MCR.assertNumberOfCallsToMethod("prepareStatement", 2);
+		laggingConnection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		assertEquals(router.onlyForTestGetLoadForReplica(0), 0);
+	}
+
+	@Test
+	public void testLeaseCaughtUpUsesRememberedReplayPosition() {
+		ConnectionSpy connection = createConnectionForProviderReplayedTo(provider0, "0/3000060");
+		router.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060")).get()
+				.release();
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000000"));
+
+		assertSame(lease.get().getConnection(), connection);
+		provider0.MCR.assertNumberOfCallsToMethod("getConnection", 2);
+		connection.MCR.assertNumberOfCallsToMethod("prepareStatement", 1);
+		provider1.MCR.assertMethodNotCalled("getConnection");
+	}
+
+	@Test
+	public void testLeaseCaughtUpForgetsReplayPositionOfEvictedReplica() {
+		router.setMaxCatchUpWait(Duration.ZERO);
+		createConnectionForProviderReplayedTo(provider0, "0/3000060");
+		createConnectionForProviderReplayedTo(provider1, "0/0");
+		router.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060")).get()
+				.releaseAsFailed(new RuntimeException());
+		router.probeEvictedReplicasOnce();
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/3000060"));
+
+		assertTrue(lease.isPresent());
+		provider1.MCR.assertMethodWasCalled("getConnection");
+	}
+
+	@Test
+	public void testLeaseCaughtUpReturnsEmptyWhenNoReplicaIsHealthy() {
+		provider0.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+		provider1.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+
+		Optional<ReplicaLease> lease = router
+				.leaseReplicaConnectionCaughtUpTo(ConsistencyToken.fromLsn("0/1"));
+
+		assertTrue(lease.isEmpty());
+	}
+
+	@Test
+	public void testProbeTakesBackEvictedReplicaThatAnswers() {
+		router.leaseReplicaConnection().get().releaseAsFailed(new RuntimeException());
+
+		router.probeEvictedReplicasOnce();
+
+		assertEquals(router.getNumberOfHealthyReplicas(), 2);
+		ConnectionSpy probeConnection = (ConnectionSpy) provider0.MCR
+				.getReturnValue("getConnection", 1);
+		probeConnection.MCR.assertParameters("isValid", 0, 2);
+		probeConnection.MCR.assertMethodWasCalled("close");
+		provider1.MCR.assertMethodNotCalled("getConnection");
+		getLogger().MCR.assertParameters("logInfoUsingMessage", 0,
+				"Replica number 0 answered probe, back in use.");
+	}
+
+	@Test
+	public void testProbeKeepsEvictedReplicaWithInvalidConnection() {
+		router.leaseReplicaConnection().get().releaseAsFailed(new RuntimeException());
+		ConnectionSpy invalidConnection = new ConnectionSpy();
+		invalidConnection.MRV.setDefaultReturnValuesSupplier("isValid", () -> false);
+		provider0.MRV.setDefaultReturnValuesSupplier("getConnection", () -> invalidConnection);
+
+		router.probeEvictedReplicasOnce();
+
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+		invalidConnection.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testProbeKeepsEvictedReplicaThatCanNotBeConnectedTo() {
+		router.leaseReplicaConnection().get().releaseAsFailed(new RuntimeException());
+		provider0.MRV.setAlwaysThrowException("getConnection",
+				SqlDatabaseException.withMessage("no connection"));
+
+		router.probeEvictedReplicasOnce();
+
+		assertEquals(router.getNumberOfHealthyReplicas(), 1);
+		getLogger().MCR.assertMethodNotCalled("logInfoUsingMessage");
+	}
+
+	@Test
+	public void testStartAndCloseProber() throws Exception {
+		router.start();
+		Thread proberThread = router.onlyForTestGetProberThread();
+		assertTrue(proberThread.isVirtual());
+		assertEquals(proberThread.getName(), "replica-health-prober");
+
+		router.close();
+		proberThread.join(5000);
+
+		assertFalse(proberThread.isAlive());
+		assertFalse(router.onlyForTestIsRunning());
+	}
+}
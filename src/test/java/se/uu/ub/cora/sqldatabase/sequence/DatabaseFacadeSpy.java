@@ -1,5 +1,5 @@
 /*
- * Copyright 2025 Uppsala University Library
+ * Copyright 2025, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,9 +20,14 @@ package se.uu.ub.cora.sqldatabase.sequence;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import se.uu.ub.cora.sqldatabase.DatabaseFacade;
 import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
 import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
 
@@ -34,7 +39,12 @@ public class DatabaseFacadeSpy implements DatabaseFacade {
 		MCR.useMRV(MRV);
 		MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues", Collections::emptyList);
 		MRV.setDefaultReturnValuesSupplier("readOneRowOrFailUsingSqlAndValues", RowSpy::new);
+		MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValuesRowByRow",
+				Collections::emptyList);
 		MRV.setDefaultReturnValuesSupplier("executeSqlWithValues", () -> 0);
+		MRV.setDefaultReturnValuesSupplier("getConsistencyToken", Optional::empty);
+		MRV.setDefaultReturnValuesSupplier("executeSqlWithValuesReturningColumns",
+				Collections::emptyList);
 	}
 
 	@SuppressWarnings("unchecked")
@@ -48,11 +58,32 @@ public class DatabaseFacadeSpy implements DatabaseFacade {
 		return (Row) MCR.addCallAndReturnFromMRV("sql", sql, "values", values);
 	}
 
+	@Override
+	public void readUsingSqlAndValuesRowByRow(String sql, List<Object> values, int fetchSize,
+			Predicate<Row> rowHandler) {
+		@SuppressWarnings("unchecked")
+		List<Row> rowsToHandle = (List<Row>) MCR.addCallAndReturnFromMRV("sql", sql, "values",
+				values, "fetchSize", fetchSize, "rowHandler", rowHandler);
+		for (Row row : rowsToHandle) {
+			if (!rowHandler.test(row)) {
+				return;
+			}
+		}
+	}
+
 	@Override
 	public int executeSqlWithValues(String sql, List<Object> values) {
 		return (int) MCR.addCallAndReturnFromMRV("sql", sql, "values", values);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Row> executeSqlWithValuesReturningColumns(String sql, List<Object> values,
+			List<String> returningColumns) {
+		return (List<Row>) MCR.addCallAndReturnFromMRV("sql", sql, "values", values,
+				"returningColumns", returningColumns);
+	}
+
 	@Override
 	public void executeSql(String sql) {
 		MCR.addCall("sql", sql);
@@ -63,6 +94,48 @@ public class DatabaseFacadeSpy implements DatabaseFacade {
 		MCR.addCall();
 	}
 
+	@Override
+	public void startTransactionUsingReadCache() {
+		MCR.addCall();
+	}
+
+	@Override
+	public <T> T runInTransaction(Function<DatabaseFacade, T> work) {
+		MCR.addCall("work", work);
+		T result = work.apply(this);
+		MCR.addReturned(result);
+		return result;
+	}
+
+	@Override
+	public void startTransactionUsingOptions(TransactionOptions options) {
+		MCR.addCall("options", options);
+	}
+
+	@Override
+	public <T> T runInTransactionUsingOptions(TransactionOptions options,
+			Function<DatabaseFacade, T> work) {
+		MCR.addCall("options", options, "work", work);
+		T result = work.apply(this);
+		MCR.addReturned(result);
+		return result;
+	}
+
+	@Override
+	public void beginNested() {
+		MCR.addCall();
+	}
+
+	@Override
+	public void releaseNested() {
+		MCR.addCall();
+	}
+
+	@Override
+	public void rollbackToNested() {
+		MCR.addCall();
+	}
+
 	@Override
 	public void endTransaction() {
 		MCR.addCall();
@@ -78,4 +151,15 @@ public class DatabaseFacadeSpy implements DatabaseFacade {
 		MCR.addCall();
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<ConsistencyToken> getConsistencyToken() {
+		return (Optional<ConsistencyToken>) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public void useConsistencyToken(ConsistencyToken token) {
+		MCR.addCall("token", token);
+	}
+
 }
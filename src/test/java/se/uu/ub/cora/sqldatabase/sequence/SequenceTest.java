@@ -32,6 +32,7 @@ import se.uu.ub.cora.sqldatabase.sequence.internal.SequenceImp;
 public class SequenceTest {
 
 	private static final String SEQUENCE_NAME = "someSequence";
+	private static final String NEXTVAL_SQL = "select nextval(?::regclass) as nextval";
 	private Sequence sequence;
 	private DatabaseFacadeSpy databaseFacade;
 
@@ -97,9 +98,10 @@ public class SequenceTest {
 	}
 
 	private void assertSequenceNextValueCalled() {
-		String nextValue = "select nextval('" + SEQUENCE_NAME + "');";
-		databaseFacade.MCR.assertCalledParameters("readOneRowOrFailUsingSqlAndValues", nextValue,
-				Collections.emptyList());
+		databaseFacade.MCR.assertParameter("readOneRowOrFailUsingSqlAndValues", 1, "sql",
+				NEXTVAL_SQL);
+		databaseFacade.MCR.assertParameterAsEqual("readOneRowOrFailUsingSqlAndValues", 1,
+				"values", List.of(SEQUENCE_NAME));
 	}
 
 	@Test
@@ -108,24 +110,79 @@ public class SequenceTest {
 
 		long currentValue = sequence.getCurrentValueForSequence(SEQUENCE_NAME);
 
-		databaseFacade.MCR.assertParameters("readOneRowOrFailUsingSqlAndValues", 0,
-				"select last_value FROM " + SEQUENCE_NAME + ";", Collections.emptyList());
+		databaseFacade.MCR.assertParametersAsEqual("readOneRowOrFailUsingSqlAndValues", 0,
+				"select last_value from " + SEQUENCE_NAME + ";", Collections.emptyList());
 
 		assertEquals(currentValue, 5);
 	}
 
+	@Test
+	public void testGetCurrentValueForSequenceAfterUpdateReadsLastValueFromSequence() {
+		setReturnValueInRowByName("last_value", 26);
+
+		sequence.updateSequenceValue(SEQUENCE_NAME, 26);
+		long currentValue = sequence.getCurrentValueForSequence(SEQUENCE_NAME);
+
+		databaseFacade.MCR.assertParameters("executeSql", 0,
+				"alter sequence " + SEQUENCE_NAME + " restart with 26;");
+		databaseFacade.MCR.assertParametersAsEqual("readOneRowOrFailUsingSqlAndValues", 0,
+				"select last_value from " + SEQUENCE_NAME + ";", Collections.emptyList());
+		assertEquals(currentValue, 26);
+	}
+
+	@Test
+	public void testGetCurrentValueForSchemaQualifiedSequence() {
+		setReturnValueInRowByName("last_value", 5);
+
+		sequence.getCurrentValueForSequence("someSchema.\"SomeSequence\"");
+
+		databaseFacade.MCR.assertParameter("readOneRowOrFailUsingSqlAndValues", 0, "sql",
+				"select last_value from someSchema.\"SomeSequence\";");
+	}
+
 	@Test
 	public void testGetBextValueForSequence() {
 		setReturnValueInRowByName("nextval", 5);
 
 		long nextId = sequence.getNextValueForSequence(SEQUENCE_NAME);
 
-		databaseFacade.MCR.assertParameters("readOneRowOrFailUsingSqlAndValues", 0,
-				"select nextval('" + SEQUENCE_NAME + "');", Collections.emptyList());
+		databaseFacade.MCR.assertParameter("readOneRowOrFailUsingSqlAndValues", 0, "sql",
+				NEXTVAL_SQL);
+		databaseFacade.MCR.assertParameterAsEqual("readOneRowOrFailUsingSqlAndValues", 0,
+				"values", List.of(SEQUENCE_NAME));
 
 		assertEquals(nextId, 5);
 	}
 
+	@Test
+	public void testGetNextValuesForSequence() {
+		databaseFacade.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues",
+				() -> List.of(createRowWithNextval(5), createRowWithNextval(6),
+						createRowWithNextval(8)));
+
+		long[] nextIds = sequence.getNextValuesForSequence(SEQUENCE_NAME, 3);
+
+		databaseFacade.MCR.assertParameter("readUsingSqlAndValues", 0, "sql",
+				"select nextval(?::regclass) as nextval from generate_series(1, ?)");
+		databaseFacade.MCR.assertParameterAsEqual("readUsingSqlAndValues", 0, "values",
+				List.of(SEQUENCE_NAME, 3));
+		assertEquals(nextIds, new long[] { 5, 6, 8 });
+	}
+
+	private RowSpy createRowWithNextval(long value) {
+		RowSpy row = new RowSpy();
+		row.MRV.setSpecificReturnValuesSupplier("getValueByColumn", () -> Long.valueOf(value),
+				"nextval");
+		return row;
+	}
+
+	@Test
+	public void testGetNextValuesForSequenceNoValues() {
+		long[] nextIds = sequence.getNextValuesForSequence(SEQUENCE_NAME, 0);
+
+		assertEquals(nextIds, new long[0]);
+	}
+
 	private void setReturnValueInRowByName(String columnName, int value) {
 		RowSpy row = new RowSpy();
 		row.MRV.setSpecificReturnValuesSupplier("getValueByColumn", () -> Long.valueOf(value),
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.sequence.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.sequence.SequenceSpy;
+
+public class AllocatingSequenceTest {
+	private static final String SEQUENCE_NAME = "someSequence";
+	private SequenceSpy sequenceSpy;
+	private DatabaseFacadeSpy databaseFacade;
+	private SequenceBlockAllocator allocator;
+	private AllocatingSequenceImp sequence;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		sequenceSpy = new SequenceSpy();
+		databaseFacade = new DatabaseFacadeSpy();
+		databaseFacade.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues",
+				() -> List.of(createRowWithNextval(17L), createRowWithNextval(18L)));
+		allocator = SequenceBlockAllocator
+				.usingDatabaseFacadeSupplierAndExecutor(() -> databaseFacade, Runnable::run);
+		sequence = AllocatingSequenceImp.usingSequenceAndAllocator(sequenceSpy, allocator);
+	}
+
+	private RowImp createRowWithNextval(long nextval) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("nextval", nextval);
+		return row;
+	}
+
+	@Test
+	public void testOnlyForTest() {
+		assertSame(sequence.onlyForTestGetSequence(), sequenceSpy);
+		assertSame(sequence.onlyForTestGetAllocator(), allocator);
+	}
+
+	@Test
+	public void testNextValueIsTakenFromAllocator() {
+		long value = sequence.getNextValueForSequence(SEQUENCE_NAME);
+
+		assertEquals(value, 17L);
+		sequenceSpy.MCR.assertMethodNotCalled("getNextValueForSequence");
+		databaseFacade.MCR.assertMethodWasCalled("readUsingSqlAndValues");
+	}
+
+	@Test
+	public void testNextValuesAreDelegated() {
+		long[] values = sequence.getNextValuesForSequence(SEQUENCE_NAME, 3);
+
+		sequenceSpy.MCR.assertParameters("getNextValuesForSequence", 0, SEQUENCE_NAME, 3);
+		sequenceSpy.MCR.assertReturn("getNextValuesForSequence", 0, values);
+	}
+
+	@Test
+	public void testCreateSequenceIsDelegated() {
+		sequence.createSequence(SEQUENCE_NAME, 10L);
+
+		sequenceSpy.MCR.assertParameters("createSequence", 0, SEQUENCE_NAME, 10L);
+	}
+
+	@Test
+	public void testCurrentValueIsDelegated() {
+		sequenceSpy.MRV.setDefaultReturnValuesSupplier("getCurrentValueForSequence", () -> 42L);
+
+		assertEquals(sequence.getCurrentValueForSequence(SEQUENCE_NAME), 42L);
+	}
+
+	@Test
+	public void testUpdateSequenceValueIsDelegatedAndDiscardsBlocks() {
+		sequence.getNextValueForSequence(SEQUENCE_NAME);
+
+		sequence.updateSequenceValue(SEQUENCE_NAME, 100L);
+		sequence.getNextValueForSequence(SEQUENCE_NAME);
+
+		sequenceSpy.MCR.assertParameters("updateSequenceValue", 0, SEQUENCE_NAME, 100L);
+		databaseFacade.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 2);
+	}
+
+	@Test
+	public void testDeleteSequenceIsDelegatedAndDiscardsBlocks() {
+		sequence.getNextValueForSequence(SEQUENCE_NAME);
+
+		sequence.deleteSequence(SEQUENCE_NAME);
+		sequence.getNextValueForSequence(SEQUENCE_NAME);
+
+		sequenceSpy.MCR.assertParameters("deleteSequence", 0, SEQUENCE_NAME);
+		databaseFacade.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 2);
+	}
+
+	@Test
+	public void testCloseIsDelegated() {
+		sequence.close();
+
+		sequenceSpy.MCR.assertMethodWasCalled("close");
+	}
+}
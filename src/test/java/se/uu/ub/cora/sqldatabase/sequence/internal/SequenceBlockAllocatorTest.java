@@ -0,0 +1,206 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.sequence.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+
+public class SequenceBlockAllocatorTest {
+	private static final String SEQUENCE_NAME = "someSequence";
+	private static final String BLOCK_SQL = "select nextval(?::regclass) as nextval"
+			+ " from generate_series(1, ?)";
+	private List<DatabaseFacadeSpy> factoredFacades;
+	private AtomicLong lastReservedValue;
+	private int blockSizeToReturn;
+	private SequenceBlockAllocator allocator;
+
+	@BeforeMethod
+	private void beforeMethod() {
+		factoredFacades = new ArrayList<>();
+		lastReservedValue = new AtomicLong();
+		blockSizeToReturn = 4;
+		allocator = SequenceBlockAllocator
+				.usingDatabaseFacadeSupplierAndExecutor(this::factorDatabaseFacade, Runnable::run);
+	}
+
+	private synchronized DatabaseFacade factorDatabaseFacade() {
+		DatabaseFacadeSpy databaseFacade = new DatabaseFacadeSpy();
+		databaseFacade.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues",
+				this::createRowsForBlock);
+		factoredFacades.add(databaseFacade);
+		return databaseFacade;
+	}
+
+	private List<Row> createRowsForBlock() {
+		List<Row> rows = new ArrayList<>();
+		for (int i = 0; i < blockSizeToReturn; i++) {
+			RowImp row = new RowImp();
+			row.addColumnWithValue("nextval", lastReservedValue.incrementAndGet());
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	@Test
+	public void testFirstValueReservesBlock() {
+		long value = allocator.getNextValueForSequence(SEQUENCE_NAME);
+
+		assertEquals(value, 1L);
+		assertEquals(factoredFacades.size(), 1);
+		DatabaseFacadeSpy databaseFacade = factoredFacades.get(0);
+		databaseFacade.MCR.assertParameter("readUsingSqlAndValues", 0, "sql", BLOCK_SQL);
+		databaseFacade.MCR.assertParameterAsEqual("readUsingSqlAndValues", 0, "values",
+				List.of(SEQUENCE_NAME, 100));
+		databaseFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testValuesAreHandedOutFromBlockAndNextBlockReservedWhenHalfIsUsed() {
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 1L);
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 2L);
+		assertEquals(factoredFacades.size(), 1);
+
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 3L);
+		assertEquals(factoredFacades.size(), 2);
+
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 4L);
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 5L);
+		assertEquals(allocator.getNextValueForSequence(SEQUENCE_NAME), 6L);
+		assertEquals(factoredFacades.size(), 2);
+	}
+
+	@Test
+	public void testSequencesHaveSeparateBlocks() {
+		allocator.getNextValueForSequence(SEQUENCE_NAME);
+		allocator.getNextValueForSequence("otherSequence");
+
+		assertEquals(factoredFacades.size(), 2);
+		factoredFacades.get(1).MCR.assertParameterAsEqual("readUsingSqlAndValues", 0, "values",
+				List.of("otherSequence", 100));
+	}
+
+	@Test
+	public void testBlockSizePerSequence() {
+		allocator.setBlockSizeForSequence(SEQUENCE_NAME, 5000);
+
+		allocator.getNextValueForSequence(SEQUENCE_NAME);
+
+		assertEquals(allocator.getBlockSizeForSequence(SEQUENCE_NAME), 5000);
+		assertEquals(allocator.getBlockSizeForSequence("otherSequence"), 100);
+		factoredFacades.get(0).MCR.assertParameterAsEqual("readUsingSqlAndValues", 0, "values",
+				List.of(SEQUENCE_NAME, 5000));
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Block size must be positive for sequence: someSequence")
+	public void testBlockSizeMustBePositive() {
+		allocator.setBlockSizeForSequence(SEQUENCE_NAME, 0);
+	}
+
+	@Test
+	public void testErrorReservingBlockIsThrownAndRetriedOnNextCall() {
+		allocator = SequenceBlockAllocator.usingDatabaseFacadeSupplierAndExecutor(
+				this::factorDatabaseFacadeThrowingError, Runnable::run);
+		try {
+			allocator.getNextValueForSequence(SEQUENCE_NAME);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error reserving values for sequence: someSequence");
+			assertEquals(e.getCause().getMessage(), "error from spy");
+		}
+		try {
+			allocator.getNextValueForSequence(SEQUENCE_NAME);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(factoredFacades.size(), 2);
+		}
+	}
+
+	private synchronized DatabaseFacade factorDatabaseFacadeThrowingError() {
+		DatabaseFacadeSpy databaseFacade = new DatabaseFacadeSpy();
+		databaseFacade.MRV.setAlwaysThrowException("readUsingSqlAndValues",
+				SqlDatabaseException.withMessage("error from spy"));
+		factoredFacades.add(databaseFacade);
+		return databaseFacade;
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Error reserving values for sequence: someSequence")
+	public void testNoValuesReservedThrowsError() {
+		blockSizeToReturn = 0;
+
+		allocator.getNextValueForSequence(SEQUENCE_NAME);
+	}
+
+	@Test
+	public void testDiscardBlocksReservesNewBlock() {
+		allocator.getNextValueForSequence(SEQUENCE_NAME);
+
+		allocator.discardBlocksForSequence(SEQUENCE_NAME);
+		long value = allocator.getNextValueForSequence(SEQUENCE_NAME);
+
+		assertEquals(value, 5L);
+		assertEquals(factoredFacades.size(), 2);
+	}
+
+	@Test
+	public void testConcurrentCallsGetUniqueValues() throws Exception {
+		ExecutorService reservingExecutor = Executors.newFixedThreadPool(2);
+		ExecutorService callingExecutor = Executors.newFixedThreadPool(8);
+		allocator = SequenceBlockAllocator
+				.usingDatabaseFacadeSupplierAndExecutor(this::factorDatabaseFacade, reservingExecutor);
+		blockSizeToReturn = 10;
+		Set<Long> values = ConcurrentHashMap.newKeySet();
+		List<Future<?>> calls = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			calls.add(callingExecutor.submit(() -> getValuesAddingTo(values, 1000)));
+		}
+		for (Future<?> call : calls) {
+			call.get();
+		}
+		callingExecutor.shutdown();
+		reservingExecutor.shutdown();
+
+		assertEquals(values.size(), 8000);
+	}
+
+	private void getValuesAddingTo(Set<Long> values, int numberOfValues) {
+		for (int i = 0; i < numberOfValues; i++) {
+			values.add(allocator.getNextValueForSequence(SEQUENCE_NAME));
+		}
+	}
+}
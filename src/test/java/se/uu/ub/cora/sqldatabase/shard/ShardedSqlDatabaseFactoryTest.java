@@ -0,0 +1,269 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactorySpy;
+import se.uu.ub.cora.sqldatabase.shard.internal.ScatterGatherReaderImp;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
+
+public class ShardedSqlDatabaseFactoryTest {
+	private Map<String, SqlDatabaseFactory> shards;
+	private ShardedSqlDatabaseFactoryImp factory;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		shards = new LinkedHashMap<>();
+		shards.put("shard1", new SqlDatabaseFactorySpy());
+		shards.put("shard2", new SqlDatabaseFactorySpy());
+		shards.put("shard3", new SqlDatabaseFactorySpy());
+		factory = ShardedSqlDatabaseFactoryImp.usingShardsAndShardKeyColumns(shards,
+				List.of("type", "id"));
+	}
+
+	@Test
+	public void testInit() {
+		assertTrue(factory instanceof ShardedSqlDatabaseFactory);
+		assertEquals(factory.onlyForTestGetShardKeyColumns(), List.of("type", "id"));
+		assertEquals(factory.onlyForTestGetShards(), shards);
+		assertEquals(factory.onlyForTestGetVirtualNodesPerShard(), 160);
+	}
+
+	@Test
+	public void testNoShardsThrowsError() {
+		try {
+			ShardedSqlDatabaseFactoryImp.usingShardsAndShardKeyColumns(Map.of(), List.of("id"));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "At least one shard must be provided.");
+		}
+	}
+
+	@Test
+	public void testNoShardKeyColumnsThrowsError() {
+		try {
+			ShardedSqlDatabaseFactoryImp.usingShardsAndShardKeyColumns(shards, List.of());
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "At least one shard key column must be provided.");
+		}
+	}
+
+	@Test
+	public void testFactorTableQuery() {
+		TableQuery tableQuery = factory.factorTableQuery("someTable");
+
+		assertTrue(tableQuery instanceof TableQueryImp);
+		assertEquals(tableQuery.getTableName(), "someTable");
+	}
+
+	@Test
+	public void testFactorTableFacadeForQueryUsesShardOwningKey() {
+		TableQuery tableQuery = factory.factorTableQuery("record");
+		tableQuery.addCondition("type", "someType");
+		tableQuery.addCondition("id", "someId");
+
+		TableFacade tableFacade = factory.factorTableFacadeForQuery(tableQuery);
+
+		assertTableFacadeFromShardOwningKey(tableFacade, List.of("someType", "someId"));
+	}
+
+	private void assertTableFacadeFromShardOwningKey(TableFacade tableFacade,
+			List<Object> shardKeyValues) {
+		String shardName = factory.getShardNameForShardKey(shardKeyValues);
+		for (var shard : shards.entrySet()) {
+			SqlDatabaseFactorySpy shardSpy = (SqlDatabaseFactorySpy) shard.getValue();
+			if (shard.getKey().equals(shardName)) {
+				shardSpy.MCR.assertReturn("factorTableFacade", 0, tableFacade);
+			} else {
+				shardSpy.MCR.assertMethodNotCalled("factorTableFacade");
+			}
+		}
+	}
+
+	@Test
+	public void testFactorTableFacadeForQueryUsesParametersForInsert() {
+		TableQuery tableQuery = factory.factorTableQuery("record");
+		tableQuery.addParameter("type", "someType");
+		tableQuery.addParameter("id", "someId");
+
+		TableFacade tableFacade = factory.factorTableFacadeForQuery(tableQuery);
+
+		assertTableFacadeFromShardOwningKey(tableFacade, List.of("someType", "someId"));
+	}
+
+	@Test
+	public void testFactorTableFacadeForQueryWithoutShardKeyThrowsError() {
+		TableQuery tableQuery = factory.factorTableQuery("record");
+		tableQuery.addCondition("type", "someType");
+
+		try {
+			factory.factorTableFacadeForQuery(tableQuery);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No shard key value for column id in query for table "
+					+ "record.");
+		}
+		assertNoShardContacted();
+	}
+
+	private void assertNoShardContacted() {
+		for (SqlDatabaseFactory shard : shards.values()) {
+			((SqlDatabaseFactorySpy) shard).MCR.assertMethodNotCalled("factorTableFacade");
+		}
+	}
+
+	@Test
+	public void testFactorTableFacadeForQueryWithListConditionThrowsError() {
+		TableQuery tableQuery = factory.factorTableQuery("record");
+		tableQuery.addCondition("type", "someType");
+		tableQuery.addCondition("id", List.of("id1", "id2"));
+
+		try {
+			factory.factorTableFacadeForQuery(tableQuery);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "No shard key value for column id in query for table "
+					+ "record.");
+		}
+		assertNoShardContacted();
+	}
+
+	@Test
+	public void testFactorTableFacadeForShardKey() {
+		TableFacade tableFacade = factory
+				.factorTableFacadeForShardKey(List.of("someType", "someId"));
+
+		assertTableFacadeFromShardOwningKey(tableFacade, List.of("someType", "someId"));
+	}
+
+	@Test
+	public void testFactorTableFacadeForShardKeyWrongNumberOfValuesThrowsError() {
+		try {
+			factory.factorTableFacadeForShardKey(List.of("someType"));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Expected 2 shard key values but got 1.");
+		}
+		assertNoShardContacted();
+	}
+
+	@Test
+	public void testGetShardNameForShardKeyWrongNumberOfValuesThrowsError() {
+		try {
+			factory.getShardNameForShardKey(List.of("someType", "someId", "extra"));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Expected 2 shard key values but got 3.");
+		}
+	}
+
+	@Test
+	public void testFactorScatterGatherReader() {
+		ScatterGatherReader reader = factory.factorScatterGatherReader();
+
+		ScatterGatherReaderImp readerImp = (ScatterGatherReaderImp) reader;
+		assertEquals(readerImp.onlyForTestGetShards(), shards);
+	}
+
+	@Test
+	public void testFactorScatterGatherReaderUsesShardsAddedBefore() {
+		ScatterGatherReaderImp readerBefore = (ScatterGatherReaderImp) factory
+				.factorScatterGatherReader();
+
+		factory.addShard("shard4", new SqlDatabaseFactorySpy());
+
+		ScatterGatherReaderImp readerAfter = (ScatterGatherReaderImp) factory
+				.factorScatterGatherReader();
+		assertEquals(readerBefore.onlyForTestGetShards().size(), 3);
+		assertEquals(readerAfter.onlyForTestGetShards().size(), 4);
+	}
+
+	@Test
+	public void testShardKeyValuesUseTextForm() {
+		assertEquals(factory.getShardNameForShardKey(List.of("someType", 12)),
+				factory.getShardNameForShardKey(List.of("someType", "12")));
+	}
+
+	@Test
+	public void testKeysAreSpreadOverAllShards() {
+		Map<String, Integer> keysPerShard = new LinkedHashMap<>();
+		for (int i = 0; i < 300; i++) {
+			keysPerShard.merge(factory.getShardNameForShardKey(List.of("someType", "id" + i)), 1,
+					Integer::sum);
+		}
+
+		assertEquals(keysPerShard.keySet(), shards.keySet());
+	}
+
+	@Test
+	public void testAddShard() {
+		SqlDatabaseFactorySpy newShard = new SqlDatabaseFactorySpy();
+
+		factory.addShard("shard4", newShard);
+
+		assertEquals(factory.onlyForTestGetShards().size(), 4);
+		assertEquals(factory.onlyForTestGetShards().get("shard4"), newShard);
+	}
+
+	@Test
+	public void testAddShardOnlyMovesKeysToNewShard() {
+		Map<Integer, String> shardNamesBefore = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			shardNamesBefore.put(i, factory.getShardNameForShardKey(List.of("someType", i)));
+		}
+
+		factory.addShard("shard4", new SqlDatabaseFactorySpy());
+
+		int movedKeys = 0;
+		for (int i = 0; i < 1000; i++) {
+			String shardName = factory.getShardNameForShardKey(List.of("someType", i));
+			if (!shardName.equals(shardNamesBefore.get(i))) {
+				assertEquals(shardName, "shard4");
+				movedKeys++;
+			}
+		}
+		assertTrue(movedKeys > 0);
+	}
+
+	@Test
+	public void testAddShardWithExistingNameThrowsError() {
+		try {
+			factory.addShard("shard2", new SqlDatabaseFactorySpy());
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Shard already exists: shard2");
+		}
+		assertEquals(factory.onlyForTestGetShards(), shards);
+	}
+}
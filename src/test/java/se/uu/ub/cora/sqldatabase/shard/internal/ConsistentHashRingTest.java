@@ -0,0 +1,149 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ConsistentHashRingTest {
+	private static final int NUMBER_OF_KEYS = 10000;
+	private Map<String, String> nodes;
+	private ConsistentHashRing<String> ring;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		nodes = new LinkedHashMap<>();
+		nodes.put("shard1", "node1");
+		nodes.put("shard2", "node2");
+		nodes.put("shard3", "node3");
+		ring = ConsistentHashRing.usingNodesAndVirtualNodesPerNode(nodes, 160);
+	}
+
+	@Test
+	public void testInit() {
+		assertEquals(ring.getNodes(), nodes);
+		assertEquals(ring.onlyForTestGetVirtualNodesPerNode(), 160);
+	}
+
+	@Test
+	public void testNodesAreCopied() {
+		nodes.put("shard4", "node4");
+
+		assertFalse(ring.hasNode("shard4"));
+	}
+
+	@Test(expectedExceptions = UnsupportedOperationException.class)
+	public void testNodesCanNotBeChanged() {
+		ring.getNodes().put("shard4", "node4");
+	}
+
+	@Test
+	public void testHasNode() {
+		assertTrue(ring.hasNode("shard1"));
+		assertFalse(ring.hasNode("shard4"));
+	}
+
+	@Test
+	public void testHashIsFirstEightBytesOfMd5() {
+		assertEquals(ConsistentHashRing.hash(""), 0xd41d8cd98f00b204L);
+	}
+
+	@Test
+	public void testSameKeySameNode() {
+		ConsistentHashRing<String> otherRing = ConsistentHashRing
+				.usingNodesAndVirtualNodesPerNode(nodes, 160);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(ring.getNodeNameForKey("key" + i), otherRing.getNodeNameForKey("key" + i));
+		}
+	}
+
+	@Test
+	public void testNodeForKeyIsNodeForNodeName() {
+		String nodeName = ring.getNodeNameForKey("someKey");
+
+		assertEquals(ring.getNodeForKey("someKey"), nodes.get(nodeName));
+	}
+
+	@Test
+	public void testSingleNodeGetsAllKeys() {
+		ConsistentHashRing<String> singleRing = ConsistentHashRing
+				.usingNodesAndVirtualNodesPerNode(Map.of("shard1", "node1"), 1);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(singleRing.getNodeNameForKey("key" + i), "shard1");
+		}
+	}
+
+	@Test
+	public void testKeysAreSpreadOverNodes() {
+		Map<String, Integer> keysPerNode = countKeysPerNode(ring);
+
+		for (String nodeName : nodes.keySet()) {
+			int keys = keysPerNode.get(nodeName);
+			assertTrue(keys > NUMBER_OF_KEYS / 4 && keys < NUMBER_OF_KEYS * 5 / 12,
+					nodeName + " has " + keys + " keys");
+		}
+	}
+
+	private Map<String, Integer> countKeysPerNode(ConsistentHashRing<String> ringToCount) {
+		Map<String, Integer> keysPerNode = new HashMap<>();
+		for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+			keysPerNode.merge(ringToCount.getNodeNameForKey("key" + i), 1, Integer::sum);
+		}
+		return keysPerNode;
+	}
+
+	@Test
+	public void testWithNodeReturnsNewRing() {
+		ConsistentHashRing<String> newRing = ring.withNode("shard4", "node4");
+
+		assertNotSame(newRing, ring);
+		assertFalse(ring.hasNode("shard4"));
+		assertTrue(newRing.hasNode("shard4"));
+		assertEquals(newRing.getNodes().size(), 4);
+		assertEquals(newRing.onlyForTestGetVirtualNodesPerNode(), 160);
+	}
+
+	@Test
+	public void testWithNodeOnlyMovesKeysToNewNode() {
+		ConsistentHashRing<String> newRing = ring.withNode("shard4", "node4");
+
+		int movedKeys = 0;
+		for (int i = 0; i < NUMBER_OF_KEYS; i++) {
+			String oldNodeName = ring.getNodeNameForKey("key" + i);
+			String newNodeName = newRing.getNodeNameForKey("key" + i);
+			if (!oldNodeName.equals(newNodeName)) {
+				assertEquals(newNodeName, "shard4");
+				movedKeys++;
+			}
+		}
+		assertTrue(movedKeys > NUMBER_OF_KEYS / 6 && movedKeys < NUMBER_OF_KEYS / 3,
+				"moved " + movedKeys + " keys");
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.table.OrderByColumn;
+
+public class OrderByRowComparatorTest {
+	private static final OrderByColumn ID_ASC = new OrderByColumn("id", true);
+	private static final OrderByColumn ID_DESC = new OrderByColumn("id", false);
+
+	@Test
+	public void testNoOrderByColumnsRowsAreEqual() {
+		OrderByRowComparator comparator = new OrderByRowComparator(Collections.emptyList());
+
+		assertEquals(comparator.compare(createRow(1, "a"), createRow(2, "b")), 0);
+	}
+
+	private Row createRow(Object id, Object name) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("id", id);
+		row.addColumnWithValue("name", name);
+		return row;
+	}
+
+	@Test
+	public void testAscending() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_ASC));
+
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(2, "a")) < 0);
+		assertTrue(comparator.compare(createRow(2, "a"), createRow(1, "a")) > 0);
+		assertEquals(comparator.compare(createRow(2, "a"), createRow(2, "b")), 0);
+	}
+
+	@Test
+	public void testDescending() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_DESC));
+
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(2, "a")) > 0);
+		assertTrue(comparator.compare(createRow(2, "a"), createRow(1, "a")) < 0);
+	}
+
+	@Test
+	public void testNullsLastWhenAscending() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_ASC));
+
+		assertTrue(comparator.compare(createRow(null, "a"), createRow(1, "a")) > 0);
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(null, "a")) < 0);
+		assertEquals(comparator.compare(createRow(null, "a"), createRow(null, "b")), 0);
+	}
+
+	@Test
+	public void testNullsFirstWhenDescending() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_DESC));
+
+		assertTrue(comparator.compare(createRow(null, "a"), createRow(1, "a")) < 0);
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(null, "a")) > 0);
+	}
+
+	@Test
+	public void testNextColumnIsUsedWhenFirstIsEqual() {
+		OrderByRowComparator comparator = new OrderByRowComparator(
+				List.of(ID_ASC, new OrderByColumn("name", false)));
+
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(1, "b")) > 0);
+		assertTrue(comparator.compare(createRow(1, "b"), createRow(2, "a")) < 0);
+	}
+
+	@Test
+	public void testTextIsComparedInCodePointOrderAsTheCCollation() {
+		OrderByRowComparator comparator = new OrderByRowComparator(
+				List.of(new OrderByColumn("name", true)));
+
+		assertTrue(comparator.compare(createRow(1, "B"), createRow(1, "a")) < 0);
+		assertTrue(comparator.compare(createRow(1, "a"), createRow(1, "ä")) < 0);
+		assertTrue(comparator.compare(createRow(1, "ab"), createRow(1, "abc")) < 0);
+		assertEquals(comparator.compare(createRow(1, "abc"), createRow(1, "abc")), 0);
+	}
+
+	@Test
+	public void testTextOutsideBasicMultilingualPlaneIsComparedInCodePointOrder() {
+		OrderByRowComparator comparator = new OrderByRowComparator(
+				List.of(new OrderByColumn("name", true)));
+		String emoji = new String(Character.toChars(0x1F600));
+
+		assertTrue(emoji.compareTo("\uFFFD") < 0);
+		assertTrue(comparator.compare(createRow(1, emoji), createRow(1, "\uFFFD")) > 0);
+		assertTrue(comparator.compare(createRow(1, "a" + emoji), createRow(1, "a\uFFFD")) > 0);
+	}
+
+	@Test
+	public void testValuesThatCanNotBeComparedThrowsError() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_ASC));
+
+		try {
+			comparator.compare(createRow(new Object(), "a"), createRow(1, "a"));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Rows can not be merged on column id as its values can not be compared.");
+		}
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Column: id, does not exist")
+	public void testMissingOrderByColumnThrowsError() {
+		OrderByRowComparator comparator = new OrderByRowComparator(List.of(ID_ASC));
+		RowImp rowWithoutId = new RowImp();
+
+		comparator.compare(rowWithoutId, createRow(1, "a"));
+	}
+}
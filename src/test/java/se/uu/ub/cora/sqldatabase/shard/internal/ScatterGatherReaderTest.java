@@ -0,0 +1,441 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.shard.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactory;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseFactorySpy;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.shard.RowCursor;
+import se.uu.ub.cora.sqldatabase.shard.ScatterGatherReader;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
+
+public class ScatterGatherReaderTest {
+	private Map<String, SqlDatabaseFactory> shards;
+	private List<DatabaseFacadeSpy> databaseFacades;
+	private ScatterGatherReaderImp reader;
+	private TableQuery tableQuery;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		shards = new LinkedHashMap<>();
+		databaseFacades = new ArrayList<>();
+		addShardWithDatabaseFacade("shard1", new DatabaseFacadeSpy());
+		addShardWithDatabaseFacade("shard2", new DatabaseFacadeSpy());
+		addShardWithDatabaseFacade("shard3", new DatabaseFacadeSpy());
+		reader = ScatterGatherReaderImp.usingShards(shards);
+		tableQuery = TableQueryImp.usingTableName("record");
+	}
+
+	private void addShardWithDatabaseFacade(String shardName, DatabaseFacadeSpy databaseFacade) {
+		SqlDatabaseFactorySpy shard = new SqlDatabaseFactorySpy();
+		shard.MRV.setDefaultReturnValuesSupplier("factorDatabaseFacade", () -> databaseFacade);
+		shards.put(shardName, shard);
+		databaseFacades.add(databaseFacade);
+	}
+
+	private void setRowsOnShard(int shardIndex, Object... ids) {
+		List<Row> rows = new ArrayList<>();
+		for (Object id : ids) {
+			rows.add(createRow(id));
+		}
+		databaseFacades.get(shardIndex).MRV.setDefaultReturnValuesSupplier(
+				"readUsingSqlAndValuesRowByRow", () -> rows);
+	}
+
+	private Row createRow(Object id) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("id", id);
+		return row;
+	}
+
+	private void assertIds(List<Row> rows, Object... expectedIds) {
+		List<Object> ids = new ArrayList<>();
+		for (Row row : rows) {
+			ids.add(row.getValueByColumn("id"));
+		}
+		assertEquals(ids, List.of(expectedIds));
+	}
+
+	@Test
+	public void testInit() {
+		assertTrue(reader instanceof ScatterGatherReader);
+		assertEquals(reader.onlyForTestGetShards(), shards);
+		assertNotSame(reader.onlyForTestGetShards(), shards);
+	}
+
+	@Test
+	public void testReadRowsMergesShardsInAscendingOrder() {
+		setRowsOnShard(0, 1, 4, 7);
+		setRowsOnShard(1, 2, 5, 8);
+		setRowsOnShard(2, 3, 6, 9);
+		tableQuery.addOrderByAsc("id");
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+	}
+
+	@Test
+	public void testReadRowsMergesShardsInDescendingOrder() {
+		setRowsOnShard(0, 7, 4, 1);
+		setRowsOnShard(1, 9, 8);
+		setRowsOnShard(2);
+		tableQuery.addOrderByDesc("id");
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, 9, 8, 7, 4, 1);
+	}
+
+	@Test
+	public void testReadRowsWithoutOrderByReturnsRowsFromAllShards() {
+		setRowsOnShard(0, 1);
+		setRowsOnShard(1, 2, 3);
+		setRowsOnShard(2, 4);
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, 1, 2, 3, 4);
+	}
+
+	@Test
+	public void testReadRowsSendsQueryWithoutOffsetToAllShards() {
+		tableQuery.addCondition("type", "someType");
+		tableQuery.addOrderByAsc("id");
+		tableQuery.setFromNo(3L);
+		tableQuery.setToNo(5L);
+
+		reader.readRowsForQuery(tableQuery);
+
+		for (DatabaseFacadeSpy databaseFacade : databaseFacades) {
+			databaseFacade.MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "sql",
+					"select * from record where type = ? order by id asc limit 5");
+			databaseFacade.MCR.assertParameterAsEqual("readUsingSqlAndValuesRowByRow", 0,
+					"values", List.of("someType"));
+			databaseFacade.MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "fetchSize",
+					3);
+			databaseFacade.MCR.assertMethodWasCalled("close");
+		}
+	}
+
+	@Test
+	public void testReadRowsWithoutOrderByDoesNotReadCollatableColumns() {
+		reader.readRowsForQuery(tableQuery);
+
+		for (DatabaseFacadeSpy databaseFacade : databaseFacades) {
+			databaseFacade.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+		}
+	}
+
+	@Test
+	public void testReadRowsOrdersCollatableColumnsUsingCCollationOnAllShards() {
+		setCollatableColumnsOnFirstShard("id", "name");
+		tableQuery.addOrderByAsc("id");
+
+		reader.readRowsForQuery(tableQuery);
+
+		databaseFacades.get(0).MCR.assertParametersAsEqual("readUsingSqlAndValues", 0,
+				"select attname as column_name from pg_attribute where attrelid = 'record'"
+						+ "::regclass and attnum > 0 and not attisdropped and attcollation <> 0"
+						+ " order by attnum",
+				Collections.emptyList());
+		for (DatabaseFacadeSpy databaseFacade : databaseFacades) {
+			databaseFacade.MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "sql",
+					"select * from record order by id collate \"C\" asc");
+		}
+	}
+
+	private void setCollatableColumnsOnFirstShard(String... columnNames) {
+		List<Row> rows = new ArrayList<>();
+		for (String columnName : columnNames) {
+			RowImp row = new RowImp();
+			row.addColumnWithValue("column_name", columnName);
+			rows.add(row);
+		}
+		databaseFacades.get(0).MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues",
+				() -> rows);
+	}
+
+	@Test
+	public void testReadRowsReadsCollatableColumnsOncePerTable() {
+		setCollatableColumnsOnFirstShard("id");
+		tableQuery.addOrderByAsc("id");
+		TableQuery otherQuery = TableQueryImp.usingTableName("record");
+		otherQuery.addOrderByDesc("id");
+
+		reader.readRowsForQuery(tableQuery);
+		reader.readRowsForQuery(otherQuery);
+
+		databaseFacades.get(0).MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+		databaseFacades.get(1).MCR.assertParameter("readUsingSqlAndValuesRowByRow", 1, "sql",
+				"select * from record order by id collate \"C\" desc");
+	}
+
+	@Test
+	public void testReadRowsMergesMixedCaseTextInCCollationOrder() {
+		setCollatableColumnsOnFirstShard("id");
+		setRowsOnShard(0, "B", "a", "ä");
+		setRowsOnShard(1, "A", "b");
+		setRowsOnShard(2, "C", "c");
+		tableQuery.addOrderByAsc("id");
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, "A", "B", "C", "a", "b", "c", "ä");
+	}
+
+	@Test
+	public void testReadRowsDoesNotChangeTheQuery() {
+		setCollatableColumnsOnFirstShard("id");
+		tableQuery.addOrderByAsc("id");
+
+		reader.readRowsForQuery(tableQuery);
+
+		assertEquals(tableQuery.assembleReadSql(), "select * from record order by id asc");
+		assertEquals(tableQuery.assembleReadWithoutOffsetSql(),
+				"select * from record order by id asc");
+	}
+
+	@Test
+	public void testReadRowsMergesMixedCaseTextDescendingInCCollationOrder() {
+		setCollatableColumnsOnFirstShard("id");
+		setRowsOnShard(0, "b", "B");
+		setRowsOnShard(1, "ä", "a", "A");
+		tableQuery.addOrderByDesc("id");
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, "ä", "b", "a", "B", "A");
+	}
+
+	@Test
+	public void testErrorReadingCollatableColumnsThrowsError() {
+		SqlDatabaseException error = SqlDatabaseException.withMessage("error from shard");
+		databaseFacades.get(0).MRV.setAlwaysThrowException("readUsingSqlAndValues", error);
+		tableQuery.addOrderByAsc("id");
+
+		try {
+			reader.readRowsForQuery(tableQuery);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error reading collatable columns using sql: "
+					+ tableQuery.assembleCollatableColumnsSql());
+			assertSame(e.getCause(), error);
+		}
+		databaseFacades.get(0).MCR.assertMethodWasCalled("close");
+		databaseFacades.get(1).MCR.assertMethodNotCalled("readUsingSqlAndValuesRowByRow");
+	}
+
+	@Test
+	public void testReadRowsAppliesFromNoAndToNoAfterMerge() {
+		setRowsOnShard(0, 1, 4, 7);
+		setRowsOnShard(1, 2, 5, 8);
+		setRowsOnShard(2, 3, 6, 9);
+		tableQuery.addOrderByAsc("id");
+		tableQuery.setFromNo(3L);
+		tableQuery.setToNo(5L);
+
+		List<Row> rows = reader.readRowsForQuery(tableQuery);
+
+		assertIds(rows, 3, 4, 5);
+	}
+
+	@Test
+	public void testReadRowsFromNoAfterLastRow() {
+		setRowsOnShard(0, 1, 3);
+		setRowsOnShard(1, 2);
+		tableQuery.addOrderByAsc("id");
+		tableQuery.setFromNo(10L);
+
+		assertTrue(reader.readRowsForQuery(tableQuery).isEmpty());
+	}
+
+	@Test
+	public void testReadRowsToNoBeforeFromNo() {
+		setRowsOnShard(0, 1, 3);
+		tableQuery.setFromNo(3L);
+		tableQuery.setToNo(1L);
+
+		assertTrue(reader.readRowsForQuery(tableQuery).isEmpty());
+	}
+
+	@Test
+	public void testCursorHasNoMoreRows() {
+		setRowsOnShard(0, 1);
+		try (RowCursor cursor = reader.openCursorForQuery(tableQuery)) {
+			assertTrue(cursor.hasNext());
+			cursor.next();
+			assertFalse(cursor.hasNext());
+			try {
+				cursor.next();
+				fail();
+			} catch (NoSuchElementException e) {
+				assertTrue(true);
+			}
+		}
+	}
+
+	@Test
+	public void testCursorPageSize() {
+		try (RowCursor cursor = reader.openCursorForQuery(tableQuery)) {
+			ShardMergingCursor mergingCursor = (ShardMergingCursor) cursor;
+			assertEquals(mergingCursor.onlyForTestGetNumberOfShardStreams(), 3);
+			assertEquals(mergingCursor.onlyForTestGetPageSize(), 100);
+		}
+	}
+
+	@Test
+	public void testCalculatePageSize() {
+		assertEquals(reader.calculatePageSize(tableQuery), 100);
+		tableQuery.setToNo(20L);
+		assertEquals(reader.calculatePageSize(tableQuery), 20);
+		tableQuery.setFromNo(11L);
+		assertEquals(reader.calculatePageSize(tableQuery), 10);
+		tableQuery.setToNo(5000L);
+		assertEquals(reader.calculatePageSize(tableQuery), 1000);
+		tableQuery.setToNo(5L);
+		assertEquals(reader.calculatePageSize(tableQuery), 1);
+	}
+
+	@Test
+	public void testClosingCursorStopsReadingFromShards() throws Exception {
+		CountDownLatch shardClosed = new CountDownLatch(1);
+		shards.clear();
+		databaseFacades.clear();
+		addShardWithDatabaseFacade("shard1", new DatabaseFacadeSpy() {
+			@Override
+			public void close() {
+				super.close();
+				shardClosed.countDown();
+			}
+		});
+		setRowsOnShard(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+		reader = ScatterGatherReaderImp.usingShards(shards);
+		tableQuery.setToNo(1L);
+
+		try (RowCursor cursor = reader.openCursorForQuery(tableQuery)) {
+			assertEquals(cursor.next().getValueByColumn("id"), 1);
+			assertFalse(cursor.hasNext());
+		}
+
+		assertTrue(shardClosed.await(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testErrorReadingFromShardThrowsError() {
+		setRowsOnShard(0, 1);
+		SqlDatabaseException shardError = SqlDatabaseException.withMessage("error from shard");
+		databaseFacades.get(1).MRV.setAlwaysThrowException("readUsingSqlAndValuesRowByRow",
+				shardError);
+
+		try {
+			reader.readRowsForQuery(tableQuery);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error reading from shard: shard2");
+			assertSame(e.getCause(), shardError);
+		}
+	}
+
+	@Test
+	public void testReadNumberOfRowsSumsCountsFromAllShards() {
+		setCountOnShard(0, 10L);
+		setCountOnShard(1, 20L);
+		setCountOnShard(2, 30L);
+		tableQuery.addCondition("type", "someType");
+
+		long numberOfRows = reader.readNumberOfRows(tableQuery);
+
+		assertEquals(numberOfRows, 60);
+		for (DatabaseFacadeSpy databaseFacade : databaseFacades) {
+			databaseFacade.MCR.assertParameter("readOneRowOrFailUsingSqlAndValues", 0, "sql",
+					"select count(*) from record where type = ?");
+			databaseFacade.MCR.assertParameterAsEqual("readOneRowOrFailUsingSqlAndValues", 0,
+					"values", List.of("someType"));
+			databaseFacade.MCR.assertMethodWasCalled("close");
+		}
+	}
+
+	private void setCountOnShard(int shardIndex, long count) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("count", count);
+		databaseFacades.get(shardIndex).MRV
+				.setDefaultReturnValuesSupplier("readOneRowOrFailUsingSqlAndValues", () -> row);
+	}
+
+	@Test
+	public void testReadNumberOfRowsAppliesFromNoAndToNoToSum() {
+		setCountOnShard(0, 10L);
+		setCountOnShard(1, 20L);
+		setCountOnShard(2, 30L);
+
+		tableQuery.setFromNo(11L);
+		tableQuery.setToNo(20L);
+		assertEquals(reader.readNumberOfRows(tableQuery), 10);
+		assertEquals(databaseFacades.get(0).MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"readOneRowOrFailUsingSqlAndValues", 0, "sql"),
+				"select count(*) from (select 1 from record limit 20) as count");
+
+		tableQuery.setToNo(100L);
+		assertEquals(reader.readNumberOfRows(tableQuery), 50);
+
+		tableQuery.setFromNo(70L);
+		assertEquals(reader.readNumberOfRows(tableQuery), 0);
+	}
+
+	@Test
+	public void testErrorReadingNumberOfRowsFromShardThrowsError() {
+		setCountOnShard(0, 10L);
+		setCountOnShard(1, 20L);
+		SqlDatabaseException shardError = SqlDatabaseException.withMessage("error from shard");
+		databaseFacades.get(2).MRV.setAlwaysThrowException("readOneRowOrFailUsingSqlAndValues",
+				shardError);
+
+		try {
+			reader.readNumberOfRows(tableQuery);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Error reading number of rows from shard: shard3");
+			assertSame(e.getCause(), shardError);
+		}
+	}
+}
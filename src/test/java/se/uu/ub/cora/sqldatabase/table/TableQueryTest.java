@@ -1,5 +1,5 @@
 /*
- * Copyright 2021, 2022 Uppsala University Library
+ * Copyright 2021, 2022, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,15 +21,20 @@ package se.uu.ub.cora.sqldatabase.table;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.BeforeTest;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.sqldatabase.DatabaseValues;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.TextArray;
 import se.uu.ub.cora.sqldatabase.table.internal.TableQueryImp;
 
 public class TableQueryTest {
@@ -184,6 +189,35 @@ public class TableQueryTest {
 		assertTrue(true);
 	}
 
+	@Test
+	public void testOrderByColumnsEmptyFromStart() throws Exception {
+		assertEquals(tableQuery.getOrderByColumns(), Collections.emptyList());
+	}
+
+	@Test
+	public void testGetOrderByColumns() throws Exception {
+		tableQuery.addOrderByDesc("columnA");
+		tableQuery.addOrderByAsc("columnB");
+
+		assertEquals(tableQuery.getOrderByColumns(), List.of(new OrderByColumn("columnA", false),
+				new OrderByColumn("columnB", true)));
+	}
+
+	@Test
+	public void testFromNoAndToNoEmptyFromStart() throws Exception {
+		assertTrue(tableQuery.getFromNo().isEmpty());
+		assertTrue(tableQuery.getToNo().isEmpty());
+	}
+
+	@Test
+	public void testGetFromNoAndToNo() throws Exception {
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+
+		assertEquals(tableQuery.getFromNo().get(), Long.valueOf(10));
+		assertEquals(tableQuery.getToNo().get(), Long.valueOf(19));
+	}
+
 	@Test
 	public void testInitTableQueryImp() throws Exception {
 		assertTrue(tableQuery instanceof TableQuery);
@@ -206,6 +240,230 @@ public class TableQueryTest {
 		assertQueryValues("parameterValue1", "parameterValue2");
 	}
 
+	@Test
+	public void testUpsertSql() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addParameter("parameterNameB", "parameterValue2");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleUpsertSql(), "insert into " + tableName
+				+ "(id, parameterNameA, parameterNameB) values(?, ?, ?) on conflict (id)"
+				+ " do update set parameterNameA = excluded.parameterNameA,"
+				+ " parameterNameB = excluded.parameterNameB");
+		assertQueryValues("someId", "parameterValue1", "parameterValue2");
+	}
+
+	@Test
+	public void testUpsertSqlTwoConflictColumns() throws Exception {
+		tableQuery.addParameter("type", "someType");
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addConflictColumn("type");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleUpsertSql(),
+				"insert into " + tableName + "(type, id, parameterNameA) values(?, ?, ?)"
+						+ " on conflict (type, id)"
+						+ " do update set parameterNameA = excluded.parameterNameA");
+	}
+
+	@Test
+	public void testUpsertSqlOnlyConflictColumnsDoesNothing() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleUpsertSql(), "insert into " + tableName
+				+ "(id) values(?) on conflict (id) do nothing");
+	}
+
+	@Test
+	public void testUpsertSqlForNumberOfRows() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleUpsertSqlForNumberOfRows(2),
+				"insert into " + tableName + "(id, parameterNameA) values(?, ?), (?, ?)"
+						+ " on conflict (id) do update set parameterNameA = excluded.parameterNameA");
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Upsert requires at least one conflict column.")
+	public void testUpsertSqlForNumberOfRowsWithoutConflictColumns() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.assembleUpsertSqlForNumberOfRows(2);
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Upsert requires at least one conflict column.")
+	public void testUpsertSqlWithoutConflictColumns() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.assembleUpsertSql();
+	}
+
+	@Test
+	public void testAddConflictColumnFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(() -> tableQuery.addConflictColumn(text));
+		}
+	}
+
+	@Test
+	public void testReturningColumnsEmptyFromStart() throws Exception {
+		assertEquals(tableQuery.getReturningColumns(), Collections.emptyList());
+	}
+
+	@Test
+	public void testAddReturningColumns() throws Exception {
+		tableQuery.addReturningColumn("id");
+		tableQuery.addReturningColumn("created");
+		assertEquals(tableQuery.getReturningColumns(), List.of("id", "created"));
+	}
+
+	@Test
+	public void testConditionOrParameterValueEmptyFromStart() throws Exception {
+		assertTrue(tableQuery.getConditionOrParameterValue("id").isEmpty());
+	}
+
+	@Test
+	public void testConditionOrParameterValueFromCondition() throws Exception {
+		tableQuery.addCondition("type", "someType");
+		tableQuery.addCondition("id", 12);
+
+		assertEquals(tableQuery.getConditionOrParameterValue("type").get(), "someType");
+		assertEquals(tableQuery.getConditionOrParameterValue("id").get(), 12);
+	}
+
+	@Test
+	public void testConditionOrParameterValueFromParameter() throws Exception {
+		tableQuery.addParameter("type", "someType");
+		tableQuery.addParameter("id", 12);
+
+		assertEquals(tableQuery.getConditionOrParameterValue("id").get(), 12);
+	}
+
+	@Test
+	public void testConditionOrParameterValueConditionBeforeParameter() throws Exception {
+		tableQuery.addParameter("id", "newId");
+		tableQuery.addCondition("id", "oldId");
+
+		assertEquals(tableQuery.getConditionOrParameterValue("id").get(), "oldId");
+	}
+
+	@Test
+	public void testConditionOrParameterValueFirstAddedConditionIsUsed() throws Exception {
+		tableQuery.addCondition("id", "firstId");
+		tableQuery.addCondition("id", "secondId");
+
+		assertEquals(tableQuery.getConditionOrParameterValue("id").get(), "firstId");
+	}
+
+	@Test
+	public void testConditionOrParameterValueNotForListCondition() throws Exception {
+		tableQuery.addCondition("id", List.of("id1", "id2"));
+
+		assertTrue(tableQuery.getConditionOrParameterValue("id").isEmpty());
+	}
+
+	@Test
+	public void testConditionOrParameterValueNotForOtherConditionTypes() throws Exception {
+		tableQuery.addJsonContainsCondition("id", "{}");
+		tableQuery.addAnyCondition("id", "text", List.of("id1"));
+
+		assertTrue(tableQuery.getConditionOrParameterValue("id").isEmpty());
+	}
+
+	@Test
+	public void testConditionOrParameterValueEmptyForNullValue() throws Exception {
+		tableQuery.addCondition("type", null);
+		tableQuery.addParameter("id", null);
+
+		assertTrue(tableQuery.getConditionOrParameterValue("type").isEmpty());
+		assertTrue(tableQuery.getConditionOrParameterValue("id").isEmpty());
+	}
+
+	@Test
+	public void testAddReturningColumnFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(() -> tableQuery.addReturningColumn(text));
+		}
+	}
+
+	@Test
+	public void testInsertIfAbsentSql() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		assertEquals(tableQuery.assembleInsertIfAbsentSql(), "insert into " + tableName
+				+ "(id, parameterNameA) values(?, ?) on conflict do nothing");
+		assertQueryValues("someId", "parameterValue1");
+	}
+
+	@Test
+	public void testInsertIfAbsentSqlWithConflictColumns() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleInsertIfAbsentSql(), "insert into " + tableName
+				+ "(id, parameterNameA) values(?, ?) on conflict (id) do nothing");
+	}
+
+	@Test
+	public void testInsertIfAbsentSqlForNumberOfRows() throws Exception {
+		tableQuery.addParameter("id", "someId");
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addConflictColumn("id");
+		assertEquals(tableQuery.assembleInsertIfAbsentSqlForNumberOfRows(3),
+				"insert into " + tableName + "(id, parameterNameA)"
+						+ " values(?, ?), (?, ?), (?, ?) on conflict (id) do nothing");
+	}
+
+	@Test
+	public void testCreateSqlForNumberOfRows() throws Exception {
+		tableQuery.addParameter("parameterNameA", "parameterValue1");
+		tableQuery.addParameter("parameterNameB", "parameterValue2");
+		assertEquals(tableQuery.assembleCreateSqlForNumberOfRows(3),
+				"insert into " + tableName + "(parameterNameA, parameterNameB)"
+						+ " values(?, ?), (?, ?), (?, ?)");
+		assertQueryValues("parameterValue1", "parameterValue2");
+	}
+
+	@Test
+	public void testUpdateFromArraysSql() throws Exception {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of(1L, 2L));
+		List<ColumnValues> valueColumns = List.of(
+				new ColumnValues("status", "varchar(20)", List.of("a", "b")),
+				new ColumnValues("updated", "timestamp with time zone", List.of("x", "y")));
+		assertEquals(tableQuery.assembleUpdateFromArraysSql(keyColumn, valueColumns),
+				"update " + tableName + " set status = v.status, updated = v.updated"
+						+ " from (select arrays.* from " + tableName + " as locking"
+						+ " join unnest(?::bigint[], ?::varchar(20)[],"
+						+ " ?::timestamp with time zone[]) as arrays(id, status, updated)"
+						+ " on locking.id = arrays.id order by locking.id for update of locking)"
+						+ " as v where " + tableName + ".id = v.id");
+	}
+
+	@Test
+	public void testUpdateFromArraysSqlColumnFindsForbiddenCharacters() throws Exception {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of());
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(() -> tableQuery.assembleUpdateFromArraysSql(
+					keyColumn, List.of(new ColumnValues(text, "text", List.of()))));
+		}
+	}
+
+	@Test
+	public void testUpdateFromArraysSqlTypeFindsForbiddenCharacters() throws Exception {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of());
+		for (String sqlType : List.of("text[]); drop table x", "text;", "text'", "int)",
+				"numeric(1,2,3)", "")) {
+			try {
+				tableQuery.assembleUpdateFromArraysSql(keyColumn,
+						List.of(new ColumnValues("status", sqlType, List.of())));
+				assertFalse(true);
+			} catch (SqlDatabaseException e) {
+				assertEquals(e.getMessage(),
+						"Sql type contains character outside the allowed regexp.");
+			}
+		}
+	}
+
 	private void assertQueryValues(Object... expectedValues) {
 		List<Object> values = tableQuery.getQueryValues();
 		int i = 0;
@@ -222,6 +480,259 @@ public class TableQueryTest {
 		assertTrue(tableQuery.getQueryValues().isEmpty());
 	}
 
+	@Test
+	public void testReadSqlWithReadColumns() throws Exception {
+		tableQuery.addReadColumn("id");
+		tableQuery.addReadColumn("type");
+		assertEquals(tableQuery.assembleReadSql(), "select id, type from " + tableName);
+		assertFalse(tableQuery.hasExcludedColumns());
+	}
+
+	@Test
+	public void testAddReadColumnFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(() -> tableQuery.addReadColumn(text));
+		}
+	}
+
+	private void assertForbiddenCharactersThrowError(Runnable addingForbiddenText) {
+		try {
+			addingForbiddenText.run();
+			assertFalse(true);
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Input contains character outside the allowed regexp.");
+		}
+	}
+
+	@Test
+	public void testAddExcludedColumnFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(() -> tableQuery.addExcludedColumn(text));
+		}
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "Table columns must be set when columns are excluded.")
+	public void testReadSqlWithExcludedColumnsWithoutTableColumns() throws Exception {
+		tableQuery.addExcludedColumn("data");
+		tableQuery.assembleReadSql();
+	}
+
+	@Test
+	public void testReadSqlWithExcludedColumns() throws Exception {
+		tableQuery.addExcludedColumn("data");
+		tableQuery.addExcludedColumn("search");
+		tableQuery.setTableColumns(List.of("id", "data", "type", "search", "updated"));
+		assertTrue(tableQuery.hasExcludedColumns());
+		assertEquals(tableQuery.assembleReadSql(), "select id, type, updated from " + tableName);
+	}
+
+	@Test
+	public void testReadSqlWithReadAndExcludedColumnsNoTableColumnsNeeded() throws Exception {
+		tableQuery.addReadColumn("id");
+		tableQuery.addReadColumn("data");
+		tableQuery.addExcludedColumn("data");
+		assertEquals(tableQuery.assembleReadSql(), "select id from " + tableName);
+	}
+
+	@Test(expectedExceptions = SqlDatabaseException.class, expectedExceptionsMessageRegExp = ""
+			+ "No columns left to read for: someTableName")
+	public void testReadSqlWithAllColumnsExcluded() throws Exception {
+		tableQuery.addExcludedColumn("data");
+		tableQuery.setTableColumns(List.of("data"));
+		tableQuery.assembleReadSql();
+	}
+
+	@Test
+	public void testReadWithTotalNumberOfRowsSqlWithReadColumns() throws Exception {
+		tableQuery.addReadColumn("id");
+		String sql = tableQuery.assembleReadWithTotalNumberOfRowsSql();
+		assertTrue(sql.startsWith("with matching as not materialized (select * from " + tableName
+				+ ")"));
+		assertTrue(sql.contains(" left join (select id, row_number() over () as page_row_number"
+				+ " from matching)"));
+	}
+
+	@Test
+	public void testReadWithTotalNumberOfRowsSqlWithReadColumnsAndOrderByOtherColumn()
+			throws Exception {
+		tableQuery.addReadColumn("id");
+		tableQuery.addOrderByAsc("name");
+		assertEquals(tableQuery.assembleReadWithTotalNumberOfRowsSql(),
+				"with matching as not materialized (select * from " + tableName + ")"
+						+ " select page.*, total.total_number_of_rows"
+						+ " from (select count(*) as total_number_of_rows from matching) as total"
+						+ " left join (select id, row_number() over (order by name asc)"
+						+ " as page_row_number from matching order by name asc)"
+						+ " as page on true order by page.page_row_number");
+	}
+
+	@Test
+	public void testReadWithTotalNumberOfRowsSqlWithExcludedColumns() throws Exception {
+		tableQuery.addExcludedColumn("data");
+		tableQuery.setTableColumns(List.of("id", "data"));
+		String sql = tableQuery.assembleReadWithTotalNumberOfRowsSql();
+		assertTrue(sql.startsWith("with matching as not materialized (select * from " + tableName
+				+ ")"));
+		assertTrue(sql.contains(" left join (select id, row_number() over ()"));
+	}
+
+	@Test
+	public void testTableColumnsSql() throws Exception {
+		assertEquals(tableQuery.assembleTableColumnsSql(),
+				"select attname as column_name from pg_attribute where attrelid = '" + tableName
+						+ "'::regclass and attnum > 0 and not attisdropped order by attnum");
+	}
+
+	@Test
+	public void testCollatableColumnsSql() throws Exception {
+		assertEquals(tableQuery.assembleCollatableColumnsSql(),
+				"select attname as column_name from pg_attribute where attrelid = '" + tableName
+						+ "'::regclass and attnum > 0 and not attisdropped and attcollation <> 0"
+						+ " order by attnum");
+	}
+
+	@Test
+	public void testReadWithoutOffsetSqlUsingBinaryCollationColumns() throws Exception {
+		tableQuery.addOrderByAsc("name");
+		tableQuery.addOrderByDesc("id");
+		tableQuery.addOrderByDesc("title");
+		tableQuery.setFromNo(3L);
+		tableQuery.setToNo(5L);
+
+		assertEquals(
+				tableQuery.assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(
+						List.of("name", "title", "notOrderedBy")),
+				"select * from " + tableName + " order by name collate \"C\" asc, id desc,"
+						+ " title collate \"C\" desc limit 5");
+	}
+
+	@Test
+	public void testBinaryCollationColumnsAreNotUsedBySqlAssembledAfterwards() throws Exception {
+		tableQuery.addOrderByAsc("name");
+		tableQuery.assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(List.of("name"));
+
+		assertEquals(tableQuery.assembleReadWithoutOffsetSql(),
+				"select * from " + tableName + " order by name asc");
+		assertEquals(tableQuery.assembleReadSql(),
+				"select * from " + tableName + " order by name asc");
+	}
+
+	@Test
+	public void testReadSqlWithReadJsonPath() throws Exception {
+		tableQuery.addReadColumn("id");
+		tableQuery.addReadJsonPath("title", "data", List.of("children", "0", "title-text"));
+		assertEquals(tableQuery.assembleReadSql(),
+				"select id, data #>> '{children,0,title-text}' as title from " + tableName);
+		assertTrue(tableQuery.getQueryValues().isEmpty());
+	}
+
+	@Test
+	public void testAddReadJsonPathFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(
+					() -> tableQuery.addReadJsonPath(text, "data", List.of("name")));
+			assertForbiddenCharactersThrowError(
+					() -> tableQuery.addReadJsonPath("alias", text, List.of("name")));
+		}
+	}
+
+	@Test
+	public void testAddReadJsonPathFindsForbiddenCharactersInPath() throws Exception {
+		List<String> forbiddenPathElements = List.of("a,b", "a}", "{a", "a'b", "a\"b", "a b", "");
+		for (String pathElement : forbiddenPathElements) {
+			try {
+				tableQuery.addReadJsonPath("alias", "data", List.of("name", pathElement));
+				assertFalse(true);
+			} catch (SqlDatabaseException e) {
+				assertEquals(e.getMessage(),
+						"Json path element contains character outside the allowed regexp.");
+			}
+		}
+	}
+
+	@Test
+	public void testReadSqlWithJsonContainsCondition() throws Exception {
+		tableQuery.addCondition("type", "book");
+		tableQuery.addJsonContainsCondition("data", "{\"name\":\"book\"}");
+		assertEquals(tableQuery.assembleReadSql(),
+				"select * from " + tableName + " where type = ? and data @> ?::jsonb");
+		assertQueryValues("book", "{\"name\":\"book\"}");
+	}
+
+	@Test
+	public void testReadSqlWithJsonPathExistsCondition() throws Exception {
+		tableQuery.addJsonPathExistsCondition("data", "$.children[*] ? (@.name == \"x\")");
+		tableQuery.addCondition("id", List.of("id1", "id2"));
+		assertEquals(tableQuery.assembleReadSql(), "select * from " + tableName
+				+ " where data @?? ?::jsonpath and id in (?, ?)");
+		assertQueryValues("$.children[*] ? (@.name == \"x\")", "id1", "id2");
+	}
+
+	@Test
+	public void testAddJsonConditionsFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(
+					() -> tableQuery.addJsonContainsCondition(text, "{}"));
+			assertForbiddenCharactersThrowError(
+					() -> tableQuery.addJsonPathExistsCondition(text, "$.a"));
+		}
+	}
+
+	@Test
+	public void testReadSqlWithAnyCondition() throws Exception {
+		tableQuery.addCondition("type", "book");
+		tableQuery.addAnyCondition("id", "bigint", List.of(3L, 1L, 2L));
+		assertEquals(tableQuery.assembleReadSql(), "select * from " + tableName
+				+ " where type = ? and id = any(?::bigint[])");
+		List<Object> values = tableQuery.getQueryValues();
+		assertEquals(values.size(), 2);
+		assertEquals(values.get(0), "book");
+		assertEquals(values.get(1), new TextArray(List.of("3", "1", "2")));
+	}
+
+	@Test
+	public void testAnyConditionValuesAreEqualForEqualValues() throws Exception {
+		TableQuery otherQuery = TableQueryImp.usingTableName(tableName);
+		tableQuery.addAnyCondition("id", "bigint", List.of(3L, 1L));
+		otherQuery.addAnyCondition("id", "bigint", List.of("3", "1"));
+
+		assertEquals(tableQuery.getQueryValues(), otherQuery.getQueryValues());
+	}
+
+	@Test
+	public void testAnyConditionWithNullValues() throws Exception {
+		List<Object> anyValues = new ArrayList<>();
+		anyValues.add("a");
+		anyValues.add(null);
+		anyValues.add(DatabaseValues.NULL);
+		tableQuery.addAnyCondition("id", "text", anyValues);
+		assertEquals(tableQuery.getQueryValues().get(0),
+				new TextArray(Arrays.asList("a", null, null)));
+	}
+
+	@Test
+	public void testAddAnyConditionFindsForbiddenCharacters() throws Exception {
+		for (String text : textsWithForbiddenCharacters) {
+			assertForbiddenCharactersThrowError(
+					() -> tableQuery.addAnyCondition(text, "text", List.of("a")));
+		}
+		try {
+			tableQuery.addAnyCondition("id", "text[]); drop table x; --", List.of("a"));
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(),
+					"Sql type contains character outside the allowed regexp.");
+		}
+	}
+
+	@Test
+	public void testDeleteSqlWithJsonContainsCondition() throws Exception {
+		tableQuery.addJsonContainsCondition("data", "{}");
+		assertEquals(tableQuery.assembleDeleteSql(),
+				"delete from " + tableName + " where data @> ?::jsonb");
+	}
+
 	@Test
 	public void testReadSqlWithOneCondition() throws Exception {
 
@@ -334,6 +845,81 @@ public class TableQueryTest {
 		assertQueryValues("conditionValue1", "conditionValue2");
 	}
 
+	@Test
+	public void testReadWithoutOffsetSql() throws Exception {
+		assertEquals(tableQuery.assembleReadWithoutOffsetSql(), "select * from " + tableName);
+	}
+
+	@Test
+	public void testReadWithoutOffsetSqlWithEverything() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		tableQuery.addOrderByDesc("columnA");
+		assertEquals(tableQuery.assembleReadWithoutOffsetSql(), "select * from " + tableName
+				+ " where conditionNameA = ? order by columnA desc limit 19");
+		assertQueryValues("conditionValue1");
+	}
+
+	@Test
+	public void testReadWithoutOffsetSqlOnlyFromNo() throws Exception {
+		tableQuery.setFromNo(10L);
+		assertEquals(tableQuery.assembleReadWithoutOffsetSql(), "select * from " + tableName);
+	}
+
+	@Test
+	public void testReadForBlockRangeSql() throws Exception {
+		assertEquals(tableQuery.assembleReadForBlockRangeSql(),
+				"select * from " + tableName + " where ctid >= ?::tid and ctid < ?::tid");
+	}
+
+	@Test
+	public void testReadForBlockRangeSqlWithEverything() throws Exception {
+		tableQuery.addReadColumn("id");
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		tableQuery.addOrderByDesc("columnA");
+		assertEquals(tableQuery.assembleReadForBlockRangeSql(), "select id from " + tableName
+				+ " where conditionNameA = ? and ctid >= ?::tid and ctid < ?::tid");
+		assertQueryValues("conditionValue1");
+	}
+
+	@Test
+	public void testCountWithoutOffsetSql() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.setFromNo(10L);
+		assertEquals(tableQuery.assembleCountWithoutOffsetSql(),
+				"select count(*) from " + tableName + " where conditionNameA = ?");
+		assertQueryValues("conditionValue1");
+	}
+
+	@Test
+	public void testCountWithoutOffsetSqlWithFromNoAndToNo() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		assertEquals(tableQuery.assembleCountWithoutOffsetSql(),
+				"select count(*) from (select 1 from " + tableName
+						+ " where conditionNameA = ? limit 19) as count");
+	}
+
+	@Test
+	public void testCountSqlNoConditions() throws Exception {
+		assertEquals(tableQuery.assembleCountSql(), "select count(*) from " + tableName);
+		assertTrue(tableQuery.getQueryValues().isEmpty());
+	}
+
+	@Test
+	public void testCountSqlWithConditionsAndOrderBy() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.addCondition("conditionNameB", "conditionValue2");
+		tableQuery.addOrderByAsc("columnA");
+		assertEquals(tableQuery.assembleCountSql(), "select count(*) from " + tableName
+				+ " where conditionNameA = ? and conditionNameB = ?");
+		assertQueryValues("conditionValue1", "conditionValue2");
+	}
+
 	@Test
 	public void testCountSql() throws Exception {
 		tableQuery.addCondition("conditionNameA", "conditionValue1");
@@ -341,7 +927,7 @@ public class TableQueryTest {
 		tableQuery.setFromNo(10L);
 		tableQuery.setToNo(19L);
 		assertEquals(tableQuery.assembleCountSql(),
-				"select count (*) from (select * from " + tableName
+				"select count(*) from (select 1 from " + tableName
 						+ " where conditionNameA = ? and conditionNameB = ?"
 						+ " offset 9 limit 10) as count");
 		assertQueryValues("conditionValue1", "conditionValue2");
@@ -354,12 +940,92 @@ public class TableQueryTest {
 		tableQuery.setFromNo(1L);
 		tableQuery.setToNo(2L);
 		assertEquals(tableQuery.assembleCountSql(),
-				"select count (*) from (select * from " + tableName
+				"select count(*) from (select 1 from " + tableName
 						+ " where conditionNameA = ? and conditionNameB = ?"
 						+ " offset 0 limit 2) as count");
 		assertQueryValues("conditionValue1", "conditionValue2");
 	}
 
+	@Test
+	public void testCountSqlOnlyFromNo() throws Exception {
+		tableQuery.setFromNo(10L);
+		assertEquals(tableQuery.assembleCountSql(),
+				"select count(*) from (select 1 from " + tableName + " offset 9) as count");
+	}
+
+	@Test
+	public void testCappedCountSql() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		assertEquals(tableQuery.assembleCappedCountSql(10000),
+				"select count(*) from (select 1 from " + tableName
+						+ " where conditionNameA = ? limit 10000) as count");
+		assertQueryValues("conditionValue1");
+	}
+
+	@Test
+	public void testCappedCountSqlWithFromNoAndToNoBelowCap() throws Exception {
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		assertEquals(tableQuery.assembleCappedCountSql(10000), "select count(*) from (select 1 from "
+				+ tableName + " offset 9 limit 10) as count");
+	}
+
+	@Test
+	public void testCappedCountSqlWithToNoAboveCap() throws Exception {
+		tableQuery.setToNo(20000L);
+		assertEquals(tableQuery.assembleCappedCountSql(10000),
+				"select count(*) from (select 1 from " + tableName + " limit 10000) as count");
+	}
+
+	@Test
+	public void testEstimatedCountSql() throws Exception {
+		assertEquals(tableQuery.assembleEstimatedCountSql(),
+				"explain (format json) select 1 from " + tableName);
+		assertTrue(tableQuery.getQueryValues().isEmpty());
+	}
+
+	@Test
+	public void testEstimatedCountSqlWithEverything() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		tableQuery.addOrderByAsc("columnA");
+		assertEquals(tableQuery.assembleEstimatedCountSql(), "explain (format json) select 1 from "
+				+ tableName + " where conditionNameA = ? offset 9 limit 10");
+		assertQueryValues("conditionValue1");
+	}
+
+	@Test
+	public void testReadWithTotalNumberOfRowsSql() throws Exception {
+		assertEquals(tableQuery.assembleReadWithTotalNumberOfRowsSql(),
+				"with matching as not materialized (select * from " + tableName + ")"
+						+ " select page.*, total.total_number_of_rows"
+						+ " from (select count(*) as total_number_of_rows from matching) as total"
+						+ " left join (select *, row_number() over () as page_row_number"
+						+ " from matching) as page on true order by page.page_row_number");
+		assertTrue(tableQuery.getQueryValues().isEmpty());
+	}
+
+	@Test
+	public void testReadWithTotalNumberOfRowsSqlWithEverything() throws Exception {
+		tableQuery.addCondition("conditionNameA", "conditionValue1");
+		tableQuery.addCondition("conditionNameB", List.of("value1", "value2"));
+		tableQuery.setFromNo(10L);
+		tableQuery.setToNo(19L);
+		tableQuery.addOrderByDesc("columnA");
+		tableQuery.addOrderByAsc("columnB");
+		assertEquals(tableQuery.assembleReadWithTotalNumberOfRowsSql(),
+				"with matching as not materialized (select * from " + tableName
+						+ " where conditionNameA = ? and conditionNameB in (?, ?))"
+						+ " select page.*, total.total_number_of_rows"
+						+ " from (select count(*) as total_number_of_rows from matching) as total"
+						+ " left join (select *, row_number() over"
+						+ " (order by columnA desc, columnB asc) as page_row_number"
+						+ " from matching order by columnA desc, columnB asc offset 9 limit 10)"
+						+ " as page on true order by page.page_row_number");
+		assertQueryValues("conditionValue1", "value1", "value2");
+	}
+
 	@Test
 	public void testUpdateSqlOneParameter() throws Exception {
 		tableQuery.addParameter("parameterNameA", "parameterValue1");
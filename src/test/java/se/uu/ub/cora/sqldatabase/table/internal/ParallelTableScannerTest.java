@@ -0,0 +1,239 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.DatabaseFacade;
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.table.internal.ParallelTableScanner.BlockRange;
+import se.uu.ub.cora.sqldatabase.transaction.IsolationLevel;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
+
+public class ParallelTableScannerTest {
+	private static final String SNAPSHOT_ID = "00000003-0000001B-1";
+	private static final TransactionOptions SNAPSHOT_OPTIONS = TransactionOptions
+			.readOnlyDefaults().withIsolationLevel(IsolationLevel.REPEATABLE_READ);
+	private static final String BLOCK_RANGE_SQL = "sql for read block range from spy";
+	private DatabaseFacadeSpy exportingFacade;
+	private List<DatabaseFacadeSpy> partFacades;
+	private Supplier<DatabaseFacade> partFacadeSupplier;
+	private List<Row> handledRows;
+	private AtomicBoolean exportingFacadeReturned;
+	private TableQuerySpy tableQuery;
+	private ParallelTableScanner scanner;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		exportingFacade = new DatabaseFacadeSpy();
+		setSnapshotIdAndNumberOfBlocks(SNAPSHOT_ID, 10L);
+		partFacades = new CopyOnWriteArrayList<>();
+		partFacadeSupplier = this::createPartFacade;
+		handledRows = new CopyOnWriteArrayList<>();
+		exportingFacadeReturned = new AtomicBoolean();
+		tableQuery = new TableQuerySpy();
+		scanner = new ParallelTableScanner(this::getExportingFacadeThenPartFacades);
+	}
+
+	private void setSnapshotIdAndNumberOfBlocks(String snapshotId, long numberOfBlocks) {
+		Iterator<Row> rows = List.<Row> of(createRow("snapshot", snapshotId),
+				createRow("blocks", numberOfBlocks)).iterator();
+		exportingFacade.MRV.setDefaultReturnValuesSupplier("readOneRowOrFailUsingSqlAndValues",
+				rows::next);
+	}
+
+	private RowImp createRow(String column, Object value) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue(column, value);
+		return row;
+	}
+
+	private DatabaseFacade getExportingFacadeThenPartFacades() {
+		if (exportingFacadeReturned.getAndSet(true)) {
+			return partFacadeSupplier.get();
+		}
+		return exportingFacade;
+	}
+
+	private DatabaseFacade createPartFacade() {
+		DatabaseFacadeSpy partFacade = new DatabaseFacadeSpy();
+		partFacade.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValuesRowByRow",
+				() -> List.of(createRow("id", "someId"), createRow("id", "someOtherId")));
+		partFacades.add(partFacade);
+		return partFacade;
+	}
+
+	@Test
+	public void testCreatePartsForEmptyTableCreatesOnePartToEndOfTable() {
+		List<BlockRange> parts = scanner.createParts(0, 4);
+
+		assertEquals(parts, List.of(new BlockRange(0, 4294967295L)));
+	}
+
+	@Test
+	public void testCreatePartsSplitsBlocksEvenlyAndLastPartReadsToEndOfTable() {
+		List<BlockRange> parts = scanner.createParts(10, 4);
+
+		assertEquals(parts, List.of(new BlockRange(0, 3), new BlockRange(3, 6),
+				new BlockRange(6, 9), new BlockRange(9, 4294967295L)));
+	}
+
+	@Test
+	public void testCreatePartsWhenBlocksDoNotDivideEvenly() {
+		List<BlockRange> parts = scanner.createParts(10, 3);
+
+		assertEquals(parts, List.of(new BlockRange(0, 4), new BlockRange(4, 8),
+				new BlockRange(8, 4294967295L)));
+	}
+
+	@Test
+	public void testCreatePartsCreatesNoMorePartsThanBlocks() {
+		List<BlockRange> parts = scanner.createParts(2, 8);
+
+		assertEquals(parts, List.of(new BlockRange(0, 1), new BlockRange(1, 4294967295L)));
+	}
+
+	@Test
+	public void testScanExportsSnapshotInReadOnlyRepeatableReadTransaction() {
+		scanner.scan(tableQuery, 2, handledRows::add);
+
+		exportingFacade.MCR.assertParameterAsEqual("startTransactionUsingOptions", 0, "options",
+				SNAPSHOT_OPTIONS);
+		exportingFacade.MCR.assertParametersAsEqual("readOneRowOrFailUsingSqlAndValues", 0,
+				"select pg_export_snapshot() as snapshot", Collections.emptyList());
+		exportingFacade.MCR.assertParameterAsEqual("readOneRowOrFailUsingSqlAndValues", 1,
+				"sql", "select pg_relation_size(?::regclass)"
+						+ " / current_setting('block_size')::bigint as blocks");
+		exportingFacade.MCR.assertParameterAsEqual("readOneRowOrFailUsingSqlAndValues", 1,
+				"values", List.of("someTableNameFromSpy"));
+		exportingFacade.MCR.assertMethodWasCalled("endTransaction");
+		exportingFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testScanReadsEachPartInTransactionUsingExportedSnapshot() {
+		scanner.scan(tableQuery, 2, handledRows::add);
+
+		assertEquals(partFacades.size(), 2);
+		for (DatabaseFacadeSpy partFacade : partFacades) {
+			partFacade.MCR.assertParameterAsEqual("startTransactionUsingOptions", 0, "options",
+					SNAPSHOT_OPTIONS.withSnapshot(SNAPSHOT_ID));
+			partFacade.MCR.assertMethodNotCalled("executeSql");
+			partFacade.MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "sql",
+					BLOCK_RANGE_SQL);
+			partFacade.MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "fetchSize",
+					1000);
+			partFacade.MCR.assertMethodWasCalled("endTransaction");
+			partFacade.MCR.assertMethodWasCalled("close");
+		}
+	}
+
+	@Test
+	public void testScanReadsEachBlockRangeUsingQueryValuesAndTids() {
+		scanner.scan(tableQuery, 2, handledRows::add);
+
+		List<Object> allValues = new ArrayList<>();
+		for (DatabaseFacadeSpy partFacade : partFacades) {
+			allValues.add(partFacade.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+					"readUsingSqlAndValuesRowByRow", 0, "values"));
+		}
+		assertTrue(allValues.contains(List.of("someValueFromSpy", "(0,0)", "(5,0)")));
+		assertTrue(allValues.contains(List.of("someValueFromSpy", "(5,0)", "(4294967295,0)")));
+	}
+
+	@Test
+	public void testScanHandsAllRowsFromAllPartsToRowHandler() {
+		scanner.scan(tableQuery, 3, handledRows::add);
+
+		assertEquals(partFacades.size(), 3);
+		assertEquals(handledRows.size(), 6);
+	}
+
+	@Test
+	public void testScanThrowsErrorIfSnapshotIdIsNotValid() {
+		setSnapshotIdAndNumberOfBlocks("1'; drop table some", 10L);
+
+		try {
+			scanner.scan(tableQuery, 2, handledRows::add);
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Not a snapshot id: 1'; drop table some");
+		}
+		assertEquals(partFacades.size(), 0);
+		exportingFacade.MCR.assertMethodWasCalled("endTransaction");
+		exportingFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testScanThrowsErrorFromFailingPartAfterAllPartsAreDone() {
+		RuntimeException error = SqlDatabaseException.withMessage("some part error");
+		partFacadeSupplier = () -> {
+			DatabaseFacadeSpy partFacade = (DatabaseFacadeSpy) createPartFacade();
+			if (partFacades.size() == 1) {
+				partFacade.MRV.setAlwaysThrowException("readUsingSqlAndValuesRowByRow", error);
+			}
+			return partFacade;
+		};
+
+		try {
+			scanner.scan(tableQuery, 2, handledRows::add);
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertSame(e, error);
+		}
+		for (DatabaseFacadeSpy partFacade : partFacades) {
+			partFacade.MCR.assertMethodWasCalled("endTransaction");
+			partFacade.MCR.assertMethodWasCalled("close");
+		}
+		exportingFacade.MCR.assertMethodWasCalled("endTransaction");
+		exportingFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testScanThrowsErrorFromRowHandler() {
+		RuntimeException error = new RuntimeException("some handler error");
+
+		try {
+			scanner.scan(tableQuery, 2, row -> {
+				throw error;
+			});
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertSame(e, error);
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.table.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.Row;
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.table.RowLoader;
+import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+
+public class RowLoaderTest {
+	private RowLoaderImp rowLoader;
+	private DatabaseFacadeSpy databaseFacade;
+	private List<TableQuerySpy> tableQueries;
+	private MethodCallRecorder suppliersMCR;
+	private List<Runnable> scheduledCommands;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		databaseFacade = new DatabaseFacadeSpy();
+		tableQueries = new ArrayList<>();
+		suppliersMCR = new MethodCallRecorder();
+		scheduledCommands = Collections.synchronizedList(new ArrayList<>());
+		rowLoader = RowLoaderImp.usingTableFacadeSupplierAndTableQuerySupplierAndExecutor(
+				this::createTableFacade, this::createTableQuery, "id", "bigint",
+				scheduledCommands::add);
+	}
+
+	private TableFacade createTableFacade() {
+		suppliersMCR.addCall();
+		TableFacade tableFacade = TableFacadeImp.usingDatabaseFacade(databaseFacade);
+		suppliersMCR.addReturned(tableFacade);
+		return tableFacade;
+	}
+
+	private TableQuery createTableQuery() {
+		TableQuerySpy tableQuery = new TableQuerySpy();
+		tableQueries.add(tableQuery);
+		return tableQuery;
+	}
+
+	@Test
+	public void testImplementsRowLoader() {
+		assertTrue(rowLoader instanceof RowLoader);
+	}
+
+	@Test
+	public void testUsingTableFacadeSupplierAndTableQuerySupplier() {
+		RowLoaderImp createdLoader = RowLoaderImp.usingTableFacadeSupplierAndTableQuerySupplier(
+				this::createTableFacade, this::createTableQuery, "someColumn", "text");
+
+		createdLoader.onlyForTestGetTableFacadeSupplier().get();
+		suppliersMCR.assertNumberOfCallsToMethod("createTableFacade", 1);
+		createdLoader.onlyForTestGetTableQuerySupplier().get();
+		assertEquals(tableQueries.size(), 1);
+		assertEquals(createdLoader.onlyForTestGetKeyColumn(), "someColumn");
+		assertEquals(createdLoader.onlyForTestGetKeySqlType(), "text");
+		assertEquals(createdLoader.onlyForTestGetBatchWindow(), null);
+	}
+
+	@Test
+	public void testLoadDoesNotReadBeforeDispatch() {
+		CompletableFuture<Optional<Row>> load = rowLoader.loadRowByKey(1L);
+
+		assertFalse(load.isDone());
+		databaseFacade.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+	}
+
+	@Test
+	public void testDispatchWithoutLoadsDoesNotRead() {
+		rowLoader.dispatch();
+
+		suppliersMCR.assertMethodNotCalled("createTableFacade");
+		assertTrue(tableQueries.isEmpty());
+	}
+
+	@Test
+	public void testDispatchReadsAllKeysUsingOneQuery() {
+		rowLoader.loadRowByKey(3L);
+		rowLoader.loadRowByKey(1L);
+		rowLoader.loadRowByKey(3L);
+
+		rowLoader.dispatch();
+
+		assertEquals(tableQueries.size(), 1);
+		tableQueries.get(0).MCR.assertParameters("addAnyCondition", 0, "id", "bigint");
+		tableQueries.get(0).MCR.assertParameterAsEqual("addAnyCondition", 0, "values",
+				List.of("3", "1"));
+		databaseFacade.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+		databaseFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	@Test
+	public void testDispatchCompletesLoadsWithRowsByKeyAndMissesAsEmpty() throws Exception {
+		Row row1 = createRowWithId(1L);
+		Row row3 = createRowWithId(3L);
+		databaseFacade.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues",
+				() -> List.of(row3, row1));
+		CompletableFuture<Optional<Row>> load1 = rowLoader.loadRowByKey(1L);
+		CompletableFuture<Optional<Row>> load2 = rowLoader.loadRowByKey(2L);
+		CompletableFuture<Optional<Row>> load3 = rowLoader.loadRowByKey("3");
+		CompletableFuture<Optional<Row>> load3Again = rowLoader.loadRowByKey(3L);
+
+		rowLoader.dispatch();
+
+		assertSame(load1.get().get(), row1);
+		assertEquals(load2.get(), Optional.empty());
+		assertSame(load3.get().get(), row3);
+		assertSame(load3Again.get().get(), row3);
+	}
+
+	private Row createRowWithId(long id) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("id", id);
+		return row;
+	}
+
+	@Test
+	public void testFailedReadCompletesLoadsExceptionally() throws Exception {
+		SqlDatabaseException error = SqlDatabaseException.withMessage("some error");
+		databaseFacade.MRV.setAlwaysThrowException("readUsingSqlAndValues", error);
+		CompletableFuture<Optional<Row>> load1 = rowLoader.loadRowByKey(1L);
+		CompletableFuture<Optional<Row>> load2 = rowLoader.loadRowByKey(2L);
+
+		rowLoader.dispatch();
+
+		assertLoadFailed(load1);
+		assertLoadFailed(load2);
+		databaseFacade.MCR.assertMethodWasCalled("close");
+	}
+
+	private void assertLoadFailed(CompletableFuture<Optional<Row>> load) throws Exception {
+		try {
+			load.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SqlDatabaseException);
+			assertEquals(e.getCause().getMessage(), "Error loading rows by key for keys: [1, 2]");
+			assertEquals(e.getCause().getCause().getMessage(),
+					"Error reading data using sql: sql for read from spy");
+		}
+	}
+
+	@Test
+	public void testKeysLoadedAfterDispatchAreReadInNextDispatch() {
+		rowLoader.loadRowByKey(1L);
+		rowLoader.dispatch();
+		CompletableFuture<Optional<Row>> load = rowLoader.loadRowByKey(2L);
+
+		assertFalse(load.isDone());
+		rowLoader.dispatch();
+
+		assertTrue(load.isDone());
+		assertEquals(tableQueries.size(), 2);
+		tableQueries.get(1).MCR.assertParameterAsEqual("addAnyCondition", 0, "values",
+				List.of("2"));
+	}
+
+	@Test
+	public void testNullKeyThrowsError() {
+		try {
+			rowLoader.loadRowByKey(null);
+			fail();
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Key to load row for can not be null.");
+		}
+	}
+
+	@Test
+	public void testNoBatchWindowDoesNotScheduleDispatch() {
+		rowLoader.loadRowByKey(1L);
+
+		assertTrue(scheduledCommands.isEmpty());
+	}
+
+	@Test
+	public void testBatchWindowSchedulesOneDispatchPerBatch() throws Exception {
+		rowLoader.setBatchWindow(Duration.ofMillis(1));
+		assertEquals(rowLoader.onlyForTestGetBatchWindow(), Duration.ofMillis(1));
+
+		CompletableFuture<Optional<Row>> load1 = rowLoader.loadRowByKey(1L);
+		rowLoader.loadRowByKey(2L);
+		waitForScheduledCommands(1);
+		scheduledCommands.get(0).run();
+		rowLoader.loadRowByKey(3L);
+		waitForScheduledCommands(2);
+
+		assertTrue(load1.isDone());
+		assertEquals(tableQueries.size(), 1);
+	}
+
+	private void waitForScheduledCommands(int numberOfCommands) throws InterruptedException {
+		long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (scheduledCommands.size() < numberOfCommands && System.nanoTime() < waitUntil) {
+			Thread.sleep(1);
+		}
+		assertEquals(scheduledCommands.size(), numberOfCommands);
+	}
+
+	@Test
+	public void testBatchWindowDispatchesUsingDefaultExecutor() throws Exception {
+		RowLoaderImp windowedLoader = RowLoaderImp.usingTableFacadeSupplierAndTableQuerySupplier(
+				this::createTableFacade, this::createTableQuery, "id", "bigint");
+		windowedLoader.setBatchWindow(Duration.ofMillis(1));
+
+		CompletableFuture<Optional<Row>> load = windowedLoader.loadRowByKey(1L);
+
+		assertEquals(load.get(5, TimeUnit.SECONDS), Optional.empty());
+	}
+}
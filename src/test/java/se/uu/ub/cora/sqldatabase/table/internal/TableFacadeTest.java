@@ -1,5 +1,5 @@
 /*
- * Copyright 2018, 2019, 2021 Uppsala University Library
+ * Copyright 2018, 2019, 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,18 +20,37 @@
 package se.uu.ub.cora.sqldatabase.table.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import se.uu.ub.cora.sqldatabase.DatabaseValues;
 import se.uu.ub.cora.sqldatabase.OldDatabaseFacadeSpy;
 import se.uu.ub.cora.sqldatabase.Row;
 import se.uu.ub.cora.sqldatabase.SqlConflictException;
 import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.TextArray;
+import se.uu.ub.cora.sqldatabase.cache.QueryResultCacheSpy;
+import se.uu.ub.cora.sqldatabase.cache.ReadCoalescerSpy;
+import se.uu.ub.cora.sqldatabase.internal.RowImp;
+import se.uu.ub.cora.sqldatabase.replica.ConsistencyToken;
+import se.uu.ub.cora.sqldatabase.sequence.DatabaseFacadeSpy;
+import se.uu.ub.cora.sqldatabase.table.ColumnValues;
+import se.uu.ub.cora.sqldatabase.table.RowsAndTotalNumberOfRows;
 import se.uu.ub.cora.sqldatabase.table.TableFacade;
+import se.uu.ub.cora.sqldatabase.table.TableQuery;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionOptions;
 
 public class TableFacadeTest {
 	private TableFacade tableFacade;
@@ -62,6 +81,105 @@ public class TableFacadeTest {
 		databaseFacadeSpy.MCR.assertMethodWasCalled("startTransaction");
 	}
 
+	@Test
+	public void testStartTransactionUsingReadCacheCallsDbFacade() {
+		tableFacade.startTransactionUsingReadCache();
+		databaseFacadeSpy.MCR.assertMethodWasCalled("startTransactionUsingReadCache");
+	}
+
+	@Test
+	public void testReadRowsForQueryInTransactionUsingReadCacheDoesNotUseQueryResultCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.startTransactionUsingReadCache();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertMethodNotCalled("getRowsForSqlAndValues");
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+	}
+
+	@Test
+	public void testBeginNestedCallsDbFacade() {
+		tableFacade.beginNested();
+		databaseFacadeSpy.MCR.assertMethodWasCalled("beginNested");
+	}
+
+	@Test
+	public void testReleaseNestedCallsDbFacade() {
+		tableFacade.releaseNested();
+		databaseFacadeSpy.MCR.assertMethodWasCalled("releaseNested");
+	}
+
+	@Test
+	public void testRollbackToNestedCallsDbFacade() {
+		tableFacade.rollbackToNested();
+		databaseFacadeSpy.MCR.assertMethodWasCalled("rollbackToNested");
+	}
+
+	@Test
+	public void testGetConsistencyTokenCallsDbFacade() {
+		Optional<ConsistencyToken> token = tableFacade.getConsistencyToken();
+
+		databaseFacadeSpy.MCR.assertReturn("getConsistencyToken", 0, token);
+	}
+
+	@Test
+	public void testUseConsistencyTokenCallsDbFacade() {
+		ConsistencyToken token = ConsistencyToken.fromLsn("0/3000060");
+
+		tableFacade.useConsistencyToken(token);
+
+		databaseFacadeSpy.MCR.assertParameters("useConsistencyToken", 0, token);
+	}
+
+	@Test
+	public void testRunInTransactionRunsWorkUsingDbFacade() {
+		String result = tableFacade.runInTransaction(facade -> {
+			assertSame(facade, tableFacade);
+			return "someResult";
+		});
+
+		assertEquals(result, "someResult");
+		databaseFacadeSpy.MCR.assertMethodWasCalled("runInTransaction");
+	}
+
+	@Test
+	public void testReadRowsForQueryInRunInTransactionDoesNotUseQueryResultCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.runInTransaction(facade -> facade.readRowsForQuery(tableQuerySpy));
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertNumberOfCallsToMethod("getRowsForSqlAndValues", 1);
+	}
+
+	@Test
+	public void testStartTransactionUsingOptionsCallsDbFacade() {
+		TransactionOptions options = TransactionOptions.readOnlyDefaults();
+
+		tableFacade.startTransactionUsingOptions(options);
+
+		databaseFacadeSpy.MCR.assertParameters("startTransactionUsingOptions", 0, options);
+	}
+
+	@Test
+	public void testRunInTransactionUsingOptionsRunsWorkUsingDbFacade() {
+		TransactionOptions options = TransactionOptions.readOnlyDefaults();
+
+		String result = tableFacade.runInTransactionUsingOptions(options, facade -> {
+			assertSame(facade, tableFacade);
+			return "someResult";
+		});
+
+		assertEquals(result, "someResult");
+		databaseFacadeSpy.MCR.assertParameter("runInTransactionUsingOptions", 0, "options",
+				options);
+	}
+
 	@Test
 	public void testEndTransactionCallsDbFacade() {
 		tableFacade.endTransaction();
@@ -98,6 +216,415 @@ public class TableFacadeTest {
 		databaseFacadeSpy.MCR.assertReturn("readUsingSqlAndValues", 0, results);
 	}
 
+	@Test
+	public void testScanRowsInParallelWithoutDatabaseFacadeSupplierThrowsError() {
+		try {
+			tableFacade.scanRowsInParallelForQuery(tableQuerySpy, 2, row -> {
+			});
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(),
+					"A database facade supplier must be set to scan in parallel.");
+		}
+	}
+
+	@Test
+	public void testScanRowsInParallelWithLessThanOnePartThrowsError() {
+		((TableFacadeImp) tableFacade).setScanDatabaseFacadeSupplier(DatabaseFacadeSpy::new);
+		try {
+			tableFacade.scanRowsInParallelForQuery(tableQuerySpy, 0, row -> {
+			});
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Number of parts must be at least 1.");
+		}
+	}
+
+	@Test
+	public void testScanRowsInParallelReadsPartsUsingFacadesFromSupplier() {
+		createDatabaseFacadeSpyReturningTableColumns();
+		List<DatabaseFacadeSpy> scanFacades = new CopyOnWriteArrayList<>();
+		((TableFacadeImp) tableFacade).setScanDatabaseFacadeSupplier(() -> {
+			DatabaseFacadeSpy scanFacade = createScanFacadeWithSnapshotAndTenBlocks();
+			scanFacades.add(scanFacade);
+			return scanFacade;
+		});
+		tableQuerySpy.MRV.setDefaultReturnValuesSupplier("hasExcludedColumns", () -> true);
+
+		tableFacade.scanRowsInParallelForQuery(tableQuerySpy, 2, row -> {
+		});
+
+		tableQuerySpy.MCR.assertParameterAsEqual("setTableColumns", 0, "tableColumns",
+				List.of("id", "data"));
+		assertEquals(scanFacades.size(), 3);
+		scanFacades.get(1).MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "sql",
+				"sql for read block range from spy");
+		scanFacades.get(2).MCR.assertParameter("readUsingSqlAndValuesRowByRow", 0, "sql",
+				"sql for read block range from spy");
+	}
+
+	private DatabaseFacadeSpy createScanFacadeWithSnapshotAndTenBlocks() {
+		DatabaseFacadeSpy scanFacade = new DatabaseFacadeSpy();
+		RowImp row = new RowImp();
+		row.addColumnWithValue("snapshot", "00000003-0000001B-1");
+		row.addColumnWithValue("blocks", 10L);
+		scanFacade.MRV.setDefaultReturnValuesSupplier("readOneRowOrFailUsingSqlAndValues",
+				() -> row);
+		return scanFacade;
+	}
+
+	@Test
+	public void testScanRowsInParallelErrorThrowsErrorAndSendsAlongOriginalError() {
+		RuntimeException error = new RuntimeException("some scan error");
+		((TableFacadeImp) tableFacade).setScanDatabaseFacadeSupplier(() -> {
+			throw error;
+		});
+		try {
+			tableFacade.scanRowsInParallelForQuery(tableQuerySpy, 2, row -> {
+			});
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(),
+					"Error scanning table in parallel: someTableNameFromSpy");
+			assertSame(e.getCause(), error);
+		}
+	}
+
+	@Test
+	public void testUsingDatabaseFacadeHasNoQueryResultCache() {
+		TableFacadeImp tableFacadeImp = (TableFacadeImp) tableFacade;
+
+		assertEquals(tableFacadeImp.onlyForTestGetQueryResultCache(), null);
+	}
+
+	@Test
+	public void testUsingDatabaseFacadeAndQueryResultCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+
+		TableFacadeImp tableFacadeImp = TableFacadeImp
+				.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy, cache);
+
+		assertSame(tableFacadeImp.getDatabaseFacade(), databaseFacadeSpy);
+		assertSame(tableFacadeImp.onlyForTestGetQueryResultCache(), cache);
+	}
+
+	@Test
+	public void testReadRowsForQueryNotInCacheReadsAndPutsInCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		List<Row> results = tableFacade.readRowsForQuery(tableQuerySpy);
+
+		var sql = tableQuerySpy.MCR.getReturnValue("assembleReadSql", 0);
+		var values = tableQuerySpy.MCR.getReturnValue("getQueryValues", 0);
+		cache.MCR.assertParameters("getRowsForSqlAndValues", 0, sql, values);
+		databaseFacadeSpy.MCR.assertParameters("readUsingSqlAndValues", 0, sql, values);
+		databaseFacadeSpy.MCR.assertReturn("readUsingSqlAndValues", 0, results);
+		cache.MCR.assertParameters("putRowsForSqlAndValues", 0,
+				tableQuerySpy.MCR.getReturnValue("getTableName", 0), sql, values, results, 17L);
+	}
+
+	@Test
+	public void testReadRowsForQueryGenerationIsReadBeforeDatabase() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		cache.MRV.setDefaultReturnValuesSupplier("getGeneration", () -> {
+			databaseFacadeSpy.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+			return 5L;
+		});
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertParameter("putRowsForSqlAndValues", 0, "generation", 5L);
+	}
+
+	@Test
+	public void testReadRowsForQueryInCacheDoesNotReadDatabase() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		List<Row> cachedRows = List.of(new RowImp());
+		cache.MRV.setDefaultReturnValuesSupplier("getRowsForSqlAndValues",
+				() -> Optional.of(cachedRows));
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		List<Row> results = tableFacade.readRowsForQuery(tableQuerySpy);
+
+		assertSame(results, cachedRows);
+		databaseFacadeSpy.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+		cache.MCR.assertMethodNotCalled("putRowsForSqlAndValues");
+	}
+
+	@Test
+	public void testReadRowsForQueryWithErrorIsNotCached() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.readRowsForQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error reading data using sql: sql for read from spy");
+		}
+		cache.MCR.assertMethodNotCalled("putRowsForSqlAndValues");
+	}
+
+	@Test
+	public void testReadRowsForQueryInTransactionDoesNotUseCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.startTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+		tableFacade.endTransaction();
+		tableFacade.startTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+		tableFacade.rollback();
+
+		cache.MCR.assertMethodNotCalled("getRowsForSqlAndValues");
+		cache.MCR.assertMethodNotCalled("putRowsForSqlAndValues");
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 2);
+	}
+
+	@Test
+	public void testReadRowsForQueryAfterTransactionUsesCache() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.startTransaction();
+		tableFacade.endTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+		tableFacade.startTransaction();
+		tableFacade.rollback();
+		tableFacade.endTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertNumberOfCallsToMethod("getRowsForSqlAndValues", 2);
+	}
+
+	@Test
+	public void testReadRowsForQueryAfterRollbackDoesNotUseCacheUntilTransactionIsEnded() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(databaseFacadeSpy,
+				cache);
+
+		tableFacade.startTransaction();
+		tableFacade.rollback();
+		tableFacade.insertRowUsingQuery(tableQuerySpy);
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertMethodNotCalled("getRowsForSqlAndValues");
+		cache.MCR.assertMethodNotCalled("putRowsForSqlAndValues");
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+		tableFacade.endTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+		cache.MCR.assertNumberOfCallsToMethod("getRowsForSqlAndValues", 1);
+	}
+
+	@Test
+	public void testUsingDatabaseFacadeAndQueryResultCacheAndReadCoalescer() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+
+		TableFacadeImp tableFacadeImp = TableFacadeImp
+				.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(databaseFacadeSpy, cache,
+						coalescer);
+
+		assertSame(tableFacadeImp.getDatabaseFacade(), databaseFacadeSpy);
+		assertSame(tableFacadeImp.onlyForTestGetQueryResultCache(), cache);
+		assertSame(tableFacadeImp.onlyForTestGetReadCoalescer(), coalescer);
+	}
+
+	@Test
+	public void testReadRowsForQueryIsCoalesced() {
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, null, coalescer);
+
+		List<Row> results = tableFacade.readRowsForQuery(tableQuerySpy);
+
+		var sql = tableQuerySpy.MCR.getReturnValue("assembleReadSql", 0);
+		var values = tableQuerySpy.MCR.getReturnValue("getQueryValues", 0);
+		coalescer.MCR.assertParameter("readUsingSqlAndValues", 0, "sql", sql);
+		coalescer.MCR.assertParameter("readUsingSqlAndValues", 0, "values", values);
+		databaseFacadeSpy.MCR.assertParameters("readUsingSqlAndValues", 0, sql, values);
+		coalescer.MCR.assertReturn("readUsingSqlAndValues", 0, results);
+	}
+
+	@Test
+	public void testReadRowsForQueryCacheMissIsCoalescedAndPutInCacheByReader() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, cache, coalescer);
+
+		List<Row> results = tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertMethodWasCalled("getRowsForSqlAndValues");
+		coalescer.MCR.assertMethodWasCalled("readUsingSqlAndValues");
+		cache.MCR.assertParameter("putRowsForSqlAndValues", 0, "rows", results);
+		coalescer.MCR.assertReturn("readUsingSqlAndValues", 0, results);
+	}
+
+	@Test
+	public void testReadRowsForQueryCacheHitIsNotCoalesced() {
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		cache.MRV.setDefaultReturnValuesSupplier("getRowsForSqlAndValues",
+				() -> Optional.of(List.of(new RowImp())));
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, cache, coalescer);
+
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		coalescer.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+	}
+
+	@Test
+	public void testReadRowsForQueryInTransactionIsNotCoalesced() {
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, null, coalescer);
+
+		tableFacade.startTransaction();
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		coalescer.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+	}
+
+	@Test
+	public void testReadRowsForQueryAfterWriteIsNotCoalesced() {
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, null, coalescer);
+
+		tableFacade.readRowsForQuery(tableQuerySpy);
+		tableFacade.updateRowsUsingQuery(tableQuerySpy);
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		coalescer.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 2);
+	}
+
+	@Test
+	public void testReadRowsForQueryAfterWriteReturningRowsIsNotCoalesced() {
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				databaseFacadeSpy, null, coalescer);
+
+		tableFacade.deleteRowsForQueryReturningRows(tableQuerySpy);
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		coalescer.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+	}
+
+	@Test
+	public void testReadRowsForQueryWithConsistencyTokenIsNotCoalesced() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("getConsistencyToken",
+				() -> Optional.of(ConsistencyToken.fromLsn("0/3000060")));
+		ReadCoalescerSpy coalescer = new ReadCoalescerSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCacheAndReadCoalescer(
+				dbFacadeSpy, null, coalescer);
+
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		coalescer.MCR.assertMethodNotCalled("readUsingSqlAndValues");
+		dbFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+	}
+
+	@Test
+	public void testReadRowsForQueryWithConsistencyTokenDoesNotUseCache() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("getConsistencyToken",
+				() -> Optional.of(ConsistencyToken.fromLsn("0/3000060")));
+		QueryResultCacheSpy cache = new QueryResultCacheSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacadeAndQueryResultCache(dbFacadeSpy, cache);
+
+		List<Row> results = tableFacade.readRowsForQuery(tableQuerySpy);
+
+		cache.MCR.assertMethodNotCalled("getRowsForSqlAndValues");
+		cache.MCR.assertMethodNotCalled("getGeneration");
+		cache.MCR.assertMethodNotCalled("putRowsForSqlAndValues");
+		dbFacadeSpy.MCR.assertReturn("readUsingSqlAndValues", 0, results);
+	}
+
+	@Test
+	public void testReadRowsForQueryNoExcludedColumnsDoesNotReadTableColumns() {
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		tableQuerySpy.MCR.assertMethodNotCalled("setTableColumns");
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+	}
+
+	@Test
+	public void testReadRowsForQueryWithExcludedColumnsSetsTableColumns() {
+		DatabaseFacadeSpy dbFacadeSpy = createDatabaseFacadeSpyReturningTableColumns();
+		tableQuerySpy.MRV.setDefaultReturnValuesSupplier("hasExcludedColumns", () -> true);
+
+		tableFacade.readRowsForQuery(tableQuerySpy);
+
+		dbFacadeSpy.MCR.assertParameters("readUsingSqlAndValues", 0,
+				"sql for table columns from spy", Collections.emptyList());
+		tableQuerySpy.MCR.assertParameterAsEqual("setTableColumns", 0, "tableColumns",
+				List.of("id", "data"));
+		dbFacadeSpy.MCR.assertParameters("readUsingSqlAndValues", 1,
+				tableQuerySpy.MCR.getReturnValue("assembleReadSql", 0));
+	}
+
+	private DatabaseFacadeSpy createDatabaseFacadeSpyReturningTableColumns() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		List<Row> columnRows = List.of(createColumnNameRow("id"), createColumnNameRow("data"));
+		dbFacadeSpy.MRV.setSpecificReturnValuesSupplier("readUsingSqlAndValues",
+				() -> columnRows, "sql for table columns from spy", Collections.emptyList());
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
+		return dbFacadeSpy;
+	}
+
+	private Row createColumnNameRow(String columnName) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("column_name", columnName);
+		return row;
+	}
+
+	@Test
+	public void testTableColumnsAreOnlyReadOncePerTable() {
+		DatabaseFacadeSpy dbFacadeSpy = createDatabaseFacadeSpyReturningTableColumns();
+		tableQuerySpy.MRV.setDefaultReturnValuesSupplier("hasExcludedColumns", () -> true);
+
+		tableFacade.readOneRowForQuery(tableQuerySpy);
+		tableFacade.readOneRowForQuery(tableQuerySpy);
+
+		dbFacadeSpy.MCR.assertNumberOfCallsToMethod("readUsingSqlAndValues", 1);
+		tableQuerySpy.MCR.assertNumberOfCallsToMethod("setTableColumns", 2);
+		assertEquals(
+				tableQuerySpy.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+						"setTableColumns", 1, "tableColumns"),
+				tableQuerySpy.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+						"setTableColumns", 0, "tableColumns"));
+	}
+
+	@Test
+	public void testReadTableColumnsErrorThrowsError() {
+		databaseFacadeSpy.throwError = true;
+		tableQuerySpy.MRV.setDefaultReturnValuesSupplier("hasExcludedColumns", () -> true);
+		try {
+			tableFacade.readRowsForQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(),
+					"Error reading table columns using sql: sql for table columns from spy");
+		}
+	}
+
 	@Test
 	public void testReadOneSqlErrorThrowsErrorAndSendsAlongOriginalError() {
 		databaseFacadeSpy.throwError = true;
@@ -150,65 +677,539 @@ public class TableFacadeTest {
 	}
 
 	@Test
-	public void testDeleteWithError() {
+	public void testReadNumberOfRowsCappedAt() {
+		long numberOfRows = tableFacade.readNumberOfRowsCappedAt(tableQuerySpy, 10000);
+
+		tableQuerySpy.MCR.assertParameters("assembleCappedCountSql", 0, 10000L);
+		databaseFacadeSpy.MCR.assertParameters("readOneRowOrFailUsingSqlAndValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleCappedCountSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+		assertEquals(numberOfRows, 453L);
+	}
+
+	@Test
+	public void testReadNumberOfRowsCappedAtSqlErrorThrowsError() {
 		databaseFacadeSpy.throwError = true;
 		try {
-			tableFacade.deleteRowsForQuery(tableQuerySpy);
+			tableFacade.readNumberOfRowsCappedAt(tableQuerySpy, 100);
 			assertTrue(false);
 		} catch (Exception e) {
-			assertEquals(e.getMessage(), "Error deleting rows using sql: sql for delete from spy");
-			assertEquals(e.getCause().getMessage(),
-					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+			assertEquals(e.getMessage(), "Error reading number of rows using sql: "
+					+ "sql for count from spy capped at 100");
 		}
 	}
 
 	@Test
-	public void testDeleteRowsForQuery() {
-		databaseFacadeSpy.numberOfAffectedRows = 23;
+	public void testReadEstimatedNumberOfRows() {
+		DatabaseFacadeSpy dbFacadeSpy = createDatabaseFacadeSpyReturningQueryPlan(
+				"[{\"Plan\": {\"Node Type\": \"Limit\", \"Plan Rows\": 1234, "
+						+ "\"Plans\": [{\"Node Type\": \"Seq Scan\", \"Plan Rows\": 98765}]}}]");
 
-		int deletedRows = tableFacade.deleteRowsForQuery(tableQuerySpy);
+		long numberOfRows = tableFacade.readEstimatedNumberOfRows(tableQuerySpy);
 
-		databaseFacadeSpy.MCR.assertReturn("executeSqlWithValues", 0, deletedRows);
-		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValues", 0,
-				tableQuerySpy.MCR.getReturnValue("assembleDeleteSql", 0),
+		dbFacadeSpy.MCR.assertParameters("readOneRowOrFailUsingSqlAndValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleEstimatedCountSql", 0),
 				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+		assertEquals(numberOfRows, 1234L);
+	}
+
+	private DatabaseFacadeSpy createDatabaseFacadeSpyReturningQueryPlan(String plan) {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		RowImp row = new RowImp();
+		row.addColumnWithValue("QUERY PLAN", plan);
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("readOneRowOrFailUsingSqlAndValues",
+				() -> row);
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
+		return dbFacadeSpy;
 	}
 
 	@Test
-	public void testInsertWithError() {
-		databaseFacadeSpy.throwError = true;
+	public void testReadEstimatedNumberOfRowsNoPlanRowsInPlan() {
+		createDatabaseFacadeSpyReturningQueryPlan("[{}]");
 		try {
-			tableFacade.insertRowUsingQuery(tableQuerySpy);
+			tableFacade.readEstimatedNumberOfRows(tableQuerySpy);
 			assertTrue(false);
 		} catch (Exception e) {
-			assertEquals(e.getMessage(), "Error inserting row using sql: sql for create from spy");
-			assertEquals(e.getCause().getMessage(),
-					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error reading estimated number of rows using sql: "
+					+ "sql for estimated count from spy");
+			assertEquals(e.getCause().getMessage(), "No estimated number of rows found in: [{}]");
 		}
 	}
 
 	@Test
-	public void testInsertWithDuplicatedKeyError() {
-		databaseFacadeSpy.throwDuplicatedKeyError = true;
+	public void testReadRowsAndTotalNumberOfRowsSqlErrorThrowsError() {
+		databaseFacadeSpy.throwError = true;
 		try {
-			tableFacade.insertRowUsingQuery(tableQuerySpy);
+			tableFacade.readRowsAndTotalNumberOfRowsForQuery(tableQuerySpy);
 			assertTrue(false);
 		} catch (Exception e) {
-			assertTrue(e instanceof SqlConflictException);
-			assertEquals(e.getMessage(),
-					"Error inserting row, duplicated key, using sql: sql for create from spy");
+			assertEquals(e.getMessage(), "Error reading rows and total number of rows using sql: "
+					+ "sql for read with total number of rows from spy");
 			assertEquals(e.getCause().getMessage(),
-					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+					"Error from executePreparedStatementQueryUsingSqlAndValues in DatabaseFacadeSpy");
 		}
 	}
 
 	@Test
-	public void testInsertRowsForQuery() {
-		tableFacade.insertRowUsingQuery(tableQuerySpy);
+	public void testReadRowsAndTotalNumberOfRows() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		List<Row> readRows = List.of(createRowWithTotalAndPageRowNumber("id1", 1L),
+				createRowWithTotalAndPageRowNumber("id2", 2L));
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues", () -> readRows);
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
 
-		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValues", 0,
-				tableQuerySpy.MCR.getReturnValue("assembleCreateSql", 0),
+		RowsAndTotalNumberOfRows result = tableFacade
+				.readRowsAndTotalNumberOfRowsForQuery(tableQuerySpy);
+
+		dbFacadeSpy.MCR.assertParameters("readUsingSqlAndValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleReadWithTotalNumberOfRowsSql", 0),
 				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+		assertEquals(result.totalNumberOfRows(), 57L);
+		assertEquals(result.rows().size(), 2);
+		assertRowOnlyHasIdColumnWithValue(result.rows().get(0), "id1");
+		assertRowOnlyHasIdColumnWithValue(result.rows().get(1), "id2");
+	}
+
+	private Row createRowWithTotalAndPageRowNumber(Object id, Object pageRowNumber) {
+		RowImp row = new RowImp();
+		row.addColumnWithValue("id", id);
+		row.addColumnWithValue("total_number_of_rows", 57L);
+		row.addColumnWithValue("page_row_number", pageRowNumber);
+		return row;
+	}
+
+	private void assertRowOnlyHasIdColumnWithValue(Row row, String id) {
+		assertEquals(row.columnSet(), Set.of("id"));
+		assertEquals(row.getValueByColumn("id"), id);
+	}
+
+	@Test
+	public void testReadRowsAndTotalNumberOfRowsWhenNoRowsInPage() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		List<Row> readRows = List.of(createRowWithTotalAndPageRowNumber(null, null));
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("readUsingSqlAndValues", () -> readRows);
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
+
+		RowsAndTotalNumberOfRows result = tableFacade
+				.readRowsAndTotalNumberOfRowsForQuery(tableQuerySpy);
+
+		assertEquals(result.totalNumberOfRows(), 57L);
+		assertEquals(result.rows(), Collections.emptyList());
+	}
+
+	@Test
+	public void testDeleteWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.deleteRowsForQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error deleting rows using sql: sql for delete from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testDeleteRowsForQuery() {
+		databaseFacadeSpy.numberOfAffectedRows = 23;
+
+		int deletedRows = tableFacade.deleteRowsForQuery(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertReturn("executeSqlWithValues", 0, deletedRows);
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleDeleteSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+	}
+
+	@Test
+	public void testInsertWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.insertRowUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error inserting row using sql: sql for create from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertWithDuplicatedKeyError() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.insertRowUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(),
+					"Error inserting row, duplicated key, using sql: sql for create from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertRowsForQuery() {
+		tableFacade.insertRowUsingQuery(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleCreateSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+	}
+
+	@Test
+	public void testInsertRowsNoQueries() {
+		int inserted = tableFacade.insertRowsUsingQueries(Collections.emptyList());
+
+		assertEquals(inserted, 0);
+		databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+	}
+
+	@Test
+	public void testInsertRowsUsingQueries() {
+		databaseFacadeSpy.numberOfAffectedRows = 3;
+		TableQuerySpy tableQuerySpy2 = new TableQuerySpy();
+		TableQuerySpy tableQuerySpy3 = new TableQuerySpy();
+
+		int inserted = tableFacade.insertRowsUsingQueries(
+				List.of(tableQuerySpy, tableQuerySpy2, tableQuerySpy3));
+
+		assertEquals(inserted, 3);
+		tableQuerySpy.MCR.assertParameters("assembleCreateSqlForNumberOfRows", 0, 3);
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("executeSqlWithValues", 1);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 0, "sql",
+				"sql for create from spy for 3 rows");
+		databaseFacadeSpy.MCR.assertParameterAsEqual("executeSqlWithValues", 0, "values",
+				List.of("someValueFromSpy", "someValueFromSpy", "someValueFromSpy"));
+	}
+
+	@Test
+	public void testInsertRowsQueriesWithDifferentShape() {
+		TableQuerySpy otherTableQuerySpy = new TableQuerySpy();
+		otherTableQuerySpy.MRV.setDefaultReturnValuesSupplier("assembleCreateSql",
+				() -> "other sql for create from spy");
+		try {
+			tableFacade.insertRowsUsingQueries(
+					List.of(tableQuerySpy, tableQuerySpy, otherTableQuerySpy));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error inserting rows, query at index 2 does not have"
+					+ " the same table and parameters as the first query"
+					+ " using sql: sql for create from spy");
+			databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+		}
+	}
+
+	@Test
+	public void testInsertRowsAreChunkedToStayUnderBindParameterLimit() {
+		databaseFacadeSpy.numberOfAffectedRows = 2;
+		List<Object> manyValues = Collections.nCopies(30000, "someValue");
+		List<TableQuery> queries = createQueriesReturningValues(5, manyValues);
+
+		int inserted = tableFacade.insertRowsUsingQueries(queries);
+
+		assertEquals(inserted, 6);
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("executeSqlWithValues", 3);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 0, "sql",
+				"sql for create from spy for 2 rows");
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 1, "sql",
+				"sql for create from spy for 2 rows");
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 2, "sql",
+				"sql for create from spy for 1 rows");
+		List<?> valuesForLastChunk = (List<?>) databaseFacadeSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("executeSqlWithValues", 2,
+						"values");
+		assertEquals(valuesForLastChunk.size(), 30000);
+	}
+
+	private List<TableQuery> createQueriesReturningValues(int numberOfQueries,
+			List<Object> values) {
+		List<TableQuery> queries = new ArrayList<>();
+		for (int i = 0; i < numberOfQueries; i++) {
+			TableQuerySpy query = new TableQuerySpy();
+			query.MRV.setDefaultReturnValuesSupplier("getQueryValues", () -> values);
+			queries.add(query);
+		}
+		return queries;
+	}
+
+	@Test
+	public void testInsertRowsChunkErrorStatesRowsInChunk() {
+		List<TableQuery> queries = createQueriesReturningValues(3,
+				Collections.nCopies(30000, "someValue"));
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.insertRowsUsingQueries(queries);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(),
+					"Error inserting rows 0 to 1 using sql: sql for create from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertRowsChunkDuplicatedKeyErrorStatesRowsInChunk() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.insertRowsUsingQueries(List.of(tableQuerySpy, tableQuerySpy));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(), "Error inserting rows 0 to 1, duplicated key,"
+					+ " using sql: sql for create from spy");
+		}
+	}
+
+	@Test
+	public void testInsertRowsIfAbsentUsingQueries() {
+		databaseFacadeSpy.numberOfAffectedRows = 1;
+		TableQuerySpy tableQuerySpy2 = new TableQuerySpy();
+
+		int inserted = tableFacade
+				.insertRowsIfAbsentUsingQueries(List.of(tableQuerySpy, tableQuerySpy2));
+
+		assertEquals(inserted, 1);
+		tableQuerySpy.MCR.assertParameters("assembleInsertIfAbsentSqlForNumberOfRows", 0, 2);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 0, "sql",
+				"sql for insert if absent from spy for 2 rows");
+		databaseFacadeSpy.MCR.assertParameterAsEqual("executeSqlWithValues", 0, "values",
+				List.of("someValueFromSpy", "someValueFromSpy"));
+	}
+
+	@Test
+	public void testInsertRowsIfAbsentNoQueries() {
+		int inserted = tableFacade.insertRowsIfAbsentUsingQueries(Collections.emptyList());
+
+		assertEquals(inserted, 0);
+		databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+	}
+
+	@Test
+	public void testInsertRowsIfAbsentQueriesWithDifferentConflictColumns() {
+		TableQuerySpy otherTableQuerySpy = new TableQuerySpy();
+		otherTableQuerySpy.MRV.setDefaultReturnValuesSupplier("assembleInsertIfAbsentSql",
+				() -> "other sql for insert if absent from spy");
+		try {
+			tableFacade.insertRowsIfAbsentUsingQueries(List.of(tableQuerySpy, otherTableQuerySpy));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error inserting if absent rows, query at index 1 does"
+					+ " not have the same table and parameters as the first query"
+					+ " using sql: sql for insert if absent from spy");
+			databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+		}
+	}
+
+	@Test
+	public void testInsertRowsIfAbsentDuplicatedKeyErrorStatesRowsInChunk() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.insertRowsIfAbsentUsingQueries(List.of(tableQuerySpy, tableQuerySpy));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(), "Error inserting if absent rows 0 to 1, duplicated key,"
+					+ " using sql: sql for insert if absent from spy");
+		}
+	}
+
+	@Test
+	public void testUpsertRowsUsingQueries() {
+		databaseFacadeSpy.numberOfAffectedRows = 2;
+		TableQuerySpy tableQuerySpy2 = new TableQuerySpy();
+
+		int upserted = tableFacade.upsertRowsUsingQueries(List.of(tableQuerySpy, tableQuerySpy2));
+
+		assertEquals(upserted, 2);
+		tableQuerySpy.MCR.assertParameters("assembleUpsertSqlForNumberOfRows", 0, 2);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 0, "sql",
+				"sql for upsert from spy for 2 rows");
+		databaseFacadeSpy.MCR.assertParameterAsEqual("executeSqlWithValues", 0, "values",
+				List.of("someValueFromSpy", "someValueFromSpy"));
+	}
+
+	@Test
+	public void testUpsertRowsAreChunkedToStayUnderBindParameterLimit() {
+		List<TableQuery> queries = createQueriesReturningValues(3,
+				Collections.nCopies(30000, "someValue"));
+
+		tableFacade.upsertRowsUsingQueries(queries);
+
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("executeSqlWithValues", 2);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 1, "sql",
+				"sql for upsert from spy for 1 rows");
+	}
+
+	@Test
+	public void testUpsertRowsChunkErrorStatesRowsInChunk() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.upsertRowsUsingQueries(List.of(tableQuerySpy, tableQuerySpy));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(),
+					"Error upserting rows 0 to 1 using sql: sql for upsert from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertReturningRowWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.insertRowUsingQueryReturningRow(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error inserting row using sql: sql for create from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertReturningRowWithDuplicatedKeyError() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.insertRowUsingQueryReturningRow(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(),
+					"Error inserting row, duplicated key, using sql: sql for create from spy");
+		}
+	}
+
+	@Test
+	public void testInsertRowUsingQueryReturningRow() {
+		RowImp returnedRow = new RowImp();
+		databaseFacadeSpy.returnedRows = List.of(returnedRow);
+
+		Row row = tableFacade.insertRowUsingQueryReturningRow(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValuesReturningColumns", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleCreateSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0),
+				tableQuerySpy.MCR.getReturnValue("getReturningColumns", 0));
+		assertSame(row, returnedRow);
+	}
+
+	@Test
+	public void testUpsertWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.upsertRowUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error upserting row using sql: sql for upsert from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testUpsertWithDuplicatedKeyError() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.upsertRowUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(),
+					"Error upserting row, duplicated key, using sql: sql for upsert from spy");
+		}
+	}
+
+	@Test
+	public void testUpsertRowInserted() {
+		DatabaseFacadeSpy dbFacadeSpy = createDatabaseFacadeSpyReturningInserted(true);
+
+		boolean inserted = tableFacade.upsertRowUsingQuery(tableQuerySpy);
+
+		dbFacadeSpy.MCR.assertParameters("executeSqlWithValuesReturningColumns", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleUpsertSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+		dbFacadeSpy.MCR.assertParameterAsEqual("executeSqlWithValuesReturningColumns", 0,
+				"returningColumns", List.of("(xmax = 0) as inserted"));
+		assertTrue(inserted);
+	}
+
+	private DatabaseFacadeSpy createDatabaseFacadeSpyReturningInserted(boolean inserted) {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		RowImp row = new RowImp();
+		row.addColumnWithValue("inserted", inserted);
+		dbFacadeSpy.MRV.setDefaultReturnValuesSupplier("executeSqlWithValuesReturningColumns",
+				() -> List.of(row));
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
+		return dbFacadeSpy;
+	}
+
+	@Test
+	public void testUpsertRowUpdated() {
+		createDatabaseFacadeSpyReturningInserted(false);
+
+		assertFalse(tableFacade.upsertRowUsingQuery(tableQuerySpy));
+	}
+
+	@Test
+	public void testUpsertRowNothingToUpdate() {
+		DatabaseFacadeSpy dbFacadeSpy = new DatabaseFacadeSpy();
+		tableFacade = TableFacadeImp.usingDatabaseFacade(dbFacadeSpy);
+
+		assertFalse(tableFacade.upsertRowUsingQuery(tableQuerySpy));
+	}
+
+	@Test
+	public void testInsertIfAbsentWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.insertRowIfAbsentUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(),
+					"Error inserting row if absent using sql: sql for insert if absent from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testInsertIfAbsentWithDuplicatedKeyError() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.insertRowIfAbsentUsingQuery(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(), "Error inserting row if absent, duplicated key, "
+					+ "using sql: sql for insert if absent from spy");
+		}
+	}
+
+	@Test
+	public void testInsertIfAbsentRowInserted() {
+		databaseFacadeSpy.numberOfAffectedRows = 1;
+
+		boolean inserted = tableFacade.insertRowIfAbsentUsingQuery(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValues", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleInsertIfAbsentSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0));
+		assertTrue(inserted);
+	}
+
+	@Test
+	public void testInsertIfAbsentRowAlreadyExists() {
+		databaseFacadeSpy.numberOfAffectedRows = 0;
+
+		assertFalse(tableFacade.insertRowIfAbsentUsingQuery(tableQuerySpy));
 	}
 
 	@Test
@@ -239,6 +1240,173 @@ public class TableFacadeTest {
 		}
 	}
 
+	@Test
+	public void testUpdateReturningRowsWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.updateRowsUsingQueryReturningRows(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error updating rows using sql: sql for update from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testUpdateReturningRowsWithDuplicatedKeyError() {
+		databaseFacadeSpy.throwDuplicatedKeyError = true;
+		try {
+			tableFacade.updateRowsUsingQueryReturningRows(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlConflictException);
+			assertEquals(e.getMessage(),
+					"Error updating rows, duplicated key, using sql: sql for update from spy");
+		}
+	}
+
+	@Test
+	public void testUpdateRowsUsingQueryReturningRows() {
+		List<Row> rows = tableFacade.updateRowsUsingQueryReturningRows(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValuesReturningColumns", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleUpdateSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0),
+				tableQuerySpy.MCR.getReturnValue("getReturningColumns", 0));
+		databaseFacadeSpy.MCR.assertReturn("executeSqlWithValuesReturningColumns", 0, rows);
+	}
+
+	@Test
+	public void testDeleteReturningRowsWithError() {
+		databaseFacadeSpy.throwError = true;
+		try {
+			tableFacade.deleteRowsForQueryReturningRows(tableQuerySpy);
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error deleting rows using sql: sql for delete from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValuesReturningColumns in DatabaseFacadeSpy");
+		}
+	}
+
+	@Test
+	public void testDeleteRowsForQueryReturningRows() {
+		List<Row> rows = tableFacade.deleteRowsForQueryReturningRows(tableQuerySpy);
+
+		databaseFacadeSpy.MCR.assertParameters("executeSqlWithValuesReturningColumns", 0,
+				tableQuerySpy.MCR.getReturnValue("assembleDeleteSql", 0),
+				tableQuerySpy.MCR.getReturnValue("getQueryValues", 0),
+				tableQuerySpy.MCR.getReturnValue("getReturningColumns", 0));
+		databaseFacadeSpy.MCR.assertReturn("executeSqlWithValuesReturningColumns", 0, rows);
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValues() {
+		databaseFacadeSpy.numberOfAffectedRows = 3;
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of(30L, 10L, 20L));
+		ColumnValues statusColumn = new ColumnValues("status", "text",
+				Arrays.asList("c", null, DatabaseValues.NULL));
+		ColumnValues countColumn = new ColumnValues("count", "integer", List.of(3, 1, 2));
+
+		int updated = tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+				List.of(statusColumn, countColumn));
+
+		assertEquals(updated, 3);
+		tableQuerySpy.MCR.assertParameters("assembleUpdateFromArraysSql", 0, keyColumn);
+		databaseFacadeSpy.MCR.assertParameter("executeSqlWithValues", 0, "sql",
+				"sql for update from arrays from spy");
+		List<?> values = (List<?>) databaseFacadeSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("executeSqlWithValues", 0,
+						"values");
+		assertEquals(values.get(0), new TextArray(List.of("10", "20", "30")));
+		assertEquals(values.get(1), new TextArray(Arrays.asList(null, null, "c")));
+		assertEquals(values.get(2), new TextArray(List.of("1", "2", "3")));
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValuesIsChunked() {
+		databaseFacadeSpy.numberOfAffectedRows = 1;
+		List<Long> keys = new ArrayList<>();
+		for (long i = 25000; i > 0; i--) {
+			keys.add(i);
+		}
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", keys);
+
+		int updated = tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+				List.of(new ColumnValues("status", "text", keys)));
+
+		assertEquals(updated, 3);
+		databaseFacadeSpy.MCR.assertNumberOfCallsToMethod("executeSqlWithValues", 3);
+		TextArray lastKeys = (TextArray) ((List<?>) databaseFacadeSpy.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("executeSqlWithValues", 2,
+						"values")).get(0);
+		assertEquals(lastKeys.texts().size(), 5000);
+		assertEquals(lastKeys.texts().get(0), "20001");
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValuesDifferentNumberOfValues() {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of(1L, 2L));
+		try {
+			tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+					List.of(new ColumnValues("status", "text", List.of("a"))));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error updating rows, column status does not have the"
+					+ " same number of values as the key column using sql:"
+					+ " sql for update from arrays from spy");
+			databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+		}
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValuesNullKey() {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", Arrays.asList(1L, null));
+		try {
+			tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+					List.of(new ColumnValues("status", "text", List.of("a", "b"))));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error updating rows, key values can not be null"
+					+ " using sql: sql for update from arrays from spy");
+		}
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValuesKeysThatCanNotBeCompared() {
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of(1L, "2"));
+		try {
+			tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+					List.of(new ColumnValues("status", "text", List.of("a", "b"))));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertTrue(e instanceof SqlDatabaseException);
+			assertEquals(e.getMessage(), "Error updating rows, key values can not be compared"
+					+ " using sql: sql for update from arrays from spy");
+			assertTrue(e.getCause() instanceof ClassCastException);
+			databaseFacadeSpy.MCR.assertMethodNotCalled("executeSqlWithValues");
+		}
+	}
+
+	@Test
+	public void testUpdateRowsUsingColumnValuesWithError() {
+		databaseFacadeSpy.throwError = true;
+		ColumnValues keyColumn = new ColumnValues("id", "bigint", List.of(1L, 2L));
+		try {
+			tableFacade.updateRowsUsingColumnValues(tableQuerySpy, keyColumn,
+					List.of(new ColumnValues("status", "text", List.of("a", "b"))));
+			assertTrue(false);
+		} catch (Exception e) {
+			assertEquals(e.getMessage(), "Error updating rows 0 to 1 in key order using sql:"
+					+ " sql for update from arrays from spy");
+			assertEquals(e.getCause().getMessage(),
+					"Error from executeSqlWithValues in DatabaseFacadeSpy");
+		}
+	}
+
 	@Test
 	public void testUpdateRowsForQuery() {
 		databaseFacadeSpy.numberOfAffectedRows = 19;
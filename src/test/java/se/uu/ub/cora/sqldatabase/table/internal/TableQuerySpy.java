@@ -1,5 +1,5 @@
 /*
- * Copyright 2021 Uppsala University Library
+ * Copyright 2021, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,13 +19,50 @@
 package se.uu.ub.cora.sqldatabase.table.internal;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 
+import se.uu.ub.cora.sqldatabase.table.ColumnValues;
+import se.uu.ub.cora.sqldatabase.table.OrderByColumn;
 import se.uu.ub.cora.sqldatabase.table.TableQuery;
 import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
 
 public class TableQuerySpy implements TableQuery {
 	MethodCallRecorder MCR = new MethodCallRecorder();
+	MethodReturnValues MRV = new MethodReturnValues();
+
+	public TableQuerySpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("hasExcludedColumns", () -> false);
+		MRV.setDefaultReturnValuesSupplier("getReturningColumns",
+				() -> List.of("someReturningColumn"));
+		MRV.setDefaultReturnValuesSupplier("assembleCreateSql", () -> "sql for create from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleUpsertSql", () -> "sql for upsert from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleInsertIfAbsentSql",
+				() -> "sql for insert if absent from spy");
+		MRV.setDefaultReturnValuesSupplier("getQueryValues",
+				() -> new ArrayList<>(List.of("someValueFromSpy")));
+		MRV.setDefaultReturnValuesSupplier("getTableName", () -> "someTableNameFromSpy");
+		MRV.setDefaultReturnValuesSupplier("getConditionOrParameterValue", Optional::empty);
+		MRV.setDefaultReturnValuesSupplier("getOrderByColumns", Collections::emptyList);
+		MRV.setDefaultReturnValuesSupplier("getFromNo", Optional::empty);
+		MRV.setDefaultReturnValuesSupplier("getToNo", Optional::empty);
+		MRV.setDefaultReturnValuesSupplier("assembleReadWithoutOffsetSql",
+				() -> "sql for read without offset from spy");
+		MRV.setDefaultReturnValuesSupplier(
+				"assembleReadWithoutOffsetSqlUsingBinaryCollationColumns",
+				() -> "sql for read without offset using binary collation from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleReadForBlockRangeSql",
+				() -> "sql for read block range from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleCountWithoutOffsetSql",
+				() -> "sql for count without offset from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleTableColumnsSql",
+				() -> "sql for table columns from spy");
+		MRV.setDefaultReturnValuesSupplier("assembleCollatableColumnsSql",
+				() -> "sql for collatable columns from spy");
+	}
 
 	@Override
 	public void addParameter(String name, Object value) {
@@ -39,6 +76,83 @@ public class TableQuerySpy implements TableQuery {
 
 	}
 
+	@Override
+	public void addAnyCondition(String column, String sqlType, List<?> values) {
+		MCR.addCall("column", column, "sqlType", sqlType, "values", values);
+	}
+
+	@Override
+	public void addConflictColumn(String column) {
+		MCR.addCall("column", column);
+	}
+
+	@Override
+	public void addReturningColumn(String column) {
+		MCR.addCall("column", column);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<String> getReturningColumns() {
+		return (List<String>) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String getTableName() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<Object> getConditionOrParameterValue(String column) {
+		return (Optional<Object>) MCR.addCallAndReturnFromMRV("column", column);
+	}
+
+	@Override
+	public void addReadColumn(String column) {
+		MCR.addCall("column", column);
+	}
+
+	@Override
+	public void addReadJsonPath(String alias, String column, List<String> path) {
+		MCR.addCall("alias", alias, "column", column, "path", path);
+	}
+
+	@Override
+	public void addJsonContainsCondition(String column, String json) {
+		MCR.addCall("column", column, "json", json);
+	}
+
+	@Override
+	public void addJsonPathExistsCondition(String column, String jsonPath) {
+		MCR.addCall("column", column, "jsonPath", jsonPath);
+	}
+
+	@Override
+	public void addExcludedColumn(String column) {
+		MCR.addCall("column", column);
+	}
+
+	@Override
+	public boolean hasExcludedColumns() {
+		return (boolean) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public void setTableColumns(List<String> tableColumns) {
+		MCR.addCall("tableColumns", tableColumns);
+	}
+
+	@Override
+	public String assembleTableColumnsSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleCollatableColumnsSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
 	@Override
 	public void setFromNo(Long fromNo) {
 		// TODO Auto-generated method stub
@@ -63,10 +177,59 @@ public class TableQuerySpy implements TableQuery {
 
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<OrderByColumn> getOrderByColumns() {
+		return (List<OrderByColumn>) MCR.addCallAndReturnFromMRV();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<Long> getFromNo() {
+		return (Optional<Long>) MCR.addCallAndReturnFromMRV();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Optional<Long> getToNo() {
+		return (Optional<Long>) MCR.addCallAndReturnFromMRV();
+	}
+
 	@Override
 	public String assembleCreateSql() {
-		MCR.addCall();
-		String sql = "sql for create from spy";
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleCreateSqlForNumberOfRows(int numberOfRows) {
+		MCR.addCall("numberOfRows", numberOfRows);
+		String sql = "sql for create from spy for " + numberOfRows + " rows";
+		MCR.addReturned(sql);
+		return sql;
+	}
+
+	@Override
+	public String assembleUpsertSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleUpsertSqlForNumberOfRows(int numberOfRows) {
+		MCR.addCall("numberOfRows", numberOfRows);
+		String sql = "sql for upsert from spy for " + numberOfRows + " rows";
+		MCR.addReturned(sql);
+		return sql;
+	}
+
+	@Override
+	public String assembleInsertIfAbsentSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleInsertIfAbsentSqlForNumberOfRows(int numberOfRows) {
+		MCR.addCall("numberOfRows", numberOfRows);
+		String sql = "sql for insert if absent from spy for " + numberOfRows + " rows";
 		MCR.addReturned(sql);
 		return sql;
 	}
@@ -79,6 +242,31 @@ public class TableQuerySpy implements TableQuery {
 		return sql;
 	}
 
+	@Override
+	public String assembleReadForBlockRangeSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleReadWithoutOffsetSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleReadWithoutOffsetSqlUsingBinaryCollationColumns(
+			List<String> binaryCollationColumns) {
+		return (String) MCR.addCallAndReturnFromMRV("binaryCollationColumns",
+				binaryCollationColumns);
+	}
+
+	@Override
+	public String assembleReadWithTotalNumberOfRowsSql() {
+		MCR.addCall();
+		String sql = "sql for read with total number of rows from spy";
+		MCR.addReturned(sql);
+		return sql;
+	}
+
 	@Override
 	public String assembleUpdateSql() {
 		MCR.addCall();
@@ -87,6 +275,15 @@ public class TableQuerySpy implements TableQuery {
 		return sql;
 	}
 
+	@Override
+	public String assembleUpdateFromArraysSql(ColumnValues keyColumn,
+			List<ColumnValues> valueColumns) {
+		MCR.addCall("keyColumn", keyColumn, "valueColumns", valueColumns);
+		String sql = "sql for update from arrays from spy";
+		MCR.addReturned(sql);
+		return sql;
+	}
+
 	@Override
 	public String assembleDeleteSql() {
 		MCR.addCall();
@@ -95,13 +292,10 @@ public class TableQuerySpy implements TableQuery {
 		return sql;
 	}
 
+	@SuppressWarnings("unchecked")
 	@Override
 	public List<Object> getQueryValues() {
-		MCR.addCall();
-		List<Object> out = new ArrayList<>();
-		out.add("someValueFromSpy");
-		MCR.addReturned(out);
-		return out;
+		return (List<Object>) MCR.addCallAndReturnFromMRV();
 	}
 
 	@Override
@@ -112,4 +306,25 @@ public class TableQuerySpy implements TableQuery {
 		return sql;
 	}
 
+	@Override
+	public String assembleCountWithoutOffsetSql() {
+		return (String) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public String assembleCappedCountSql(long cap) {
+		MCR.addCall("cap", cap);
+		String sql = "sql for count from spy capped at " + cap;
+		MCR.addReturned(sql);
+		return sql;
+	}
+
+	@Override
+	public String assembleEstimatedCountSql() {
+		MCR.addCall();
+		String sql = "sql for estimated count from spy";
+		MCR.addReturned(sql);
+		return sql;
+	}
+
 }
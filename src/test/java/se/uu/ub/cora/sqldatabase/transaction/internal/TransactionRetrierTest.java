@@ -0,0 +1,232 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.sqldatabase.transaction.internal;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.sqldatabase.SqlDatabaseException;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetrier;
+import se.uu.ub.cora.sqldatabase.transaction.TransactionRetryStatistics;
+
+public class TransactionRetrierTest {
+	private TransactionRetrierImp retrier;
+	private List<Duration> sleeps;
+	private List<Long> jitterCaps;
+	private boolean interruptSleep;
+	private int attempts;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		sleeps = new ArrayList<>();
+		jitterCaps = new ArrayList<>();
+		interruptSleep = false;
+		attempts = 0;
+		retrier = TransactionRetrierImp
+				.usingMaxAttemptsAndInitialBackoffAndMaxBackoffAndJitterAndSleeper(4,
+						Duration.ofNanos(100), Duration.ofNanos(300), this::halfOfCap,
+						this::sleep);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		Thread.interrupted();
+	}
+
+	private long halfOfCap(long cap) {
+		jitterCaps.add(cap);
+		return cap / 2;
+	}
+
+	private void sleep(Duration duration) throws InterruptedException {
+		if (interruptSleep) {
+			throw new InterruptedException();
+		}
+		sleeps.add(duration);
+	}
+
+	@Test
+	public void testImplementsTransactionRetrier() {
+		assertTrue(retrier instanceof TransactionRetrier);
+	}
+
+	@Test
+	public void testUsingMaxAttemptsAndInitialBackoffAndMaxBackoff() {
+		TransactionRetrierImp createdRetrier = TransactionRetrierImp
+				.usingMaxAttemptsAndInitialBackoffAndMaxBackoff(3, Duration.ofMillis(5),
+						Duration.ofMillis(50));
+
+		assertEquals(createdRetrier.onlyForTestGetMaxAttempts(), 3);
+		assertEquals(createdRetrier.onlyForTestGetInitialBackoff(), Duration.ofMillis(5));
+		assertEquals(createdRetrier.onlyForTestGetMaxBackoff(), Duration.ofMillis(50));
+	}
+
+	@Test
+	public void testUsingDefaults() {
+		TransactionRetrierImp createdRetrier = TransactionRetrierImp.usingDefaults();
+
+		assertEquals(createdRetrier.onlyForTestGetMaxAttempts(), 5);
+		assertEquals(createdRetrier.onlyForTestGetInitialBackoff(), Duration.ofMillis(10));
+		assertEquals(createdRetrier.onlyForTestGetMaxBackoff(), Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void testMaxAttemptsMustBePositive() {
+		try {
+			TransactionRetrierImp.usingMaxAttemptsAndInitialBackoffAndMaxBackoff(0,
+					Duration.ZERO, Duration.ZERO);
+			fail();
+		} catch (SqlDatabaseException e) {
+			assertEquals(e.getMessage(), "Max attempts must be positive for transaction retries.");
+		}
+	}
+
+	@Test
+	public void testSuccessfulAttemptIsRunOnce() {
+		String result = retrier.runUsingRetries(() -> {
+			attempts++;
+			return "someResult";
+		});
+
+		assertEquals(result, "someResult");
+		assertEquals(attempts, 1);
+		assertTrue(sleeps.isEmpty());
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(1, 0, 0, 0));
+	}
+
+	@Test
+	public void testNotRetryableErrorIsThrownWithoutRetry() {
+		SqlDatabaseException error = createErrorWithSqlState("23505");
+
+		RuntimeException thrown = runExpectingError(failingAttempts(10, error));
+
+		assertSame(thrown, error);
+		assertEquals(attempts, 1);
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(1, 0, 0, 0));
+	}
+
+	private SqlDatabaseException createErrorWithSqlState(String sqlState) {
+		SQLException sqlException = new SQLException("some sql error", sqlState);
+		return SqlDatabaseException.withMessageAndException("Error executing statement: x",
+				sqlException);
+	}
+
+	private Supplier<String> failingAttempts(int numberOfFailures, RuntimeException error) {
+		return () -> {
+			attempts++;
+			if (attempts <= numberOfFailures) {
+				throw error;
+			}
+			return "result from attempt " + attempts;
+		};
+	}
+
+	private RuntimeException runExpectingError(Supplier<String> attempt) {
+		try {
+			retrier.runUsingRetries(attempt);
+			fail();
+			return null;
+		} catch (RuntimeException e) {
+			return e;
+		}
+	}
+
+	@Test
+	public void testSerializationFailureIsRetried() {
+		String result = retrier
+				.runUsingRetries(failingAttempts(2, createErrorWithSqlState("40001")));
+
+		assertEquals(result, "result from attempt 3");
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(1, 2, 0, 0));
+	}
+
+	@Test
+	public void testDeadlockIsRetried() {
+		String result = retrier
+				.runUsingRetries(failingAttempts(1, createErrorWithSqlState("40P01")));
+
+		assertEquals(result, "result from attempt 2");
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(1, 0, 1, 0));
+		assertEquals(retrier.getStatistics().retries(), 1);
+	}
+
+	@Test
+	public void testRetryableStateIsFoundDeepInCauses() {
+		SqlDatabaseException error = SqlDatabaseException.withMessageAndException("outer",
+				createErrorWithSqlState("40001"));
+
+		String result = retrier.runUsingRetries(failingAttempts(1, error));
+
+		assertEquals(result, "result from attempt 2");
+	}
+
+	@Test
+	public void testBackoffDoublesUpToMaxBackoffWithJitter() {
+		retrier.runUsingRetries(failingAttempts(3, createErrorWithSqlState("40001")));
+
+		assertEquals(jitterCaps, List.of(100L, 200L, 300L));
+		assertEquals(sleeps,
+				List.of(Duration.ofNanos(50), Duration.ofNanos(100), Duration.ofNanos(150)));
+	}
+
+	@Test
+	public void testLastErrorIsThrownWhenAttemptsAreExhausted() {
+		SqlDatabaseException error = createErrorWithSqlState("40001");
+
+		RuntimeException thrown = runExpectingError(failingAttempts(10, error));
+
+		assertSame(thrown, error);
+		assertEquals(attempts, 4);
+		assertEquals(sleeps.size(), 3);
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(1, 3, 0, 1));
+	}
+
+	@Test
+	public void testInterruptedWaitThrowsErrorAndKeepsInterrupt() {
+		interruptSleep = true;
+		SqlDatabaseException error = createErrorWithSqlState("40001");
+
+		RuntimeException thrown = runExpectingError(failingAttempts(10, error));
+
+		assertSame(thrown, error);
+		assertEquals(attempts, 1);
+		assertTrue(Thread.currentThread().isInterrupted());
+	}
+
+	@Test
+	public void testStatisticsAreSummedOverTransactions() {
+		retrier.runUsingRetries(failingAttempts(1, createErrorWithSqlState("40001")));
+		attempts = 0;
+		retrier.runUsingRetries(failingAttempts(1, createErrorWithSqlState("40P01")));
+
+		assertEquals(retrier.getStatistics(), new TransactionRetryStatistics(2, 1, 1, 0));
+	}
+}